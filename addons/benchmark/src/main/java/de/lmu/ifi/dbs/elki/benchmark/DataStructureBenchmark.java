@@ -0,0 +1,128 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+
+/**
+ * Benchmark of core data structures: kNN heaps, quickselect and DBID sorting.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataStructureBenchmark {
+  /**
+   * Number of elements.
+   */
+  @Param({ "100000" })
+  public int size;
+
+  /**
+   * Heap size.
+   */
+  @Param({ "10", "100" })
+  public int k;
+
+  /**
+   * Object ids.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Random values.
+   */
+  private double[] values;
+
+  /**
+   * Values, as data store.
+   */
+  private WritableDoubleDataStore store;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    ids = DBIDUtil.generateStaticDBIDRange(size);
+    Random rnd = new Random(0L);
+    values = new double[size];
+    store = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_TEMP);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      store.putDouble(it, values[it.getOffset()] = rnd.nextDouble());
+    }
+  }
+
+  @Benchmark
+  public double knnHeap() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      heap.insert(values[it.getOffset()], it);
+    }
+    return heap.getKNNDistance();
+  }
+
+  @Benchmark
+  public double quickSelect() {
+    return QuickSelect.quickSelect(Arrays.copyOf(values, size), k);
+  }
+
+  @Benchmark
+  public double median() {
+    return QuickSelect.median(Arrays.copyOf(values, size));
+  }
+
+  @Benchmark
+  public ArrayModifiableDBIDs sortDBIDs() {
+    ArrayModifiableDBIDs sorted = DBIDUtil.newArray(ids);
+    sorted.sort(new DataStoreUtil.AscendingByDoubleDataStore(store));
+    return sorted;
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
+
+/**
+ * Benchmark of the distance function kernels, and vector operations.
+ * <p>
+ * Each invocation computes the distances of all consecutive pairs of a small
+ * synthetic data set, stored either as double or as float vectors.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DistanceFunctionBenchmark {
+  /**
+   * Number of vector pairs per invocation.
+   */
+  private static final int PAIRS = 1024;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10", "100" })
+  public int dim;
+
+  /**
+   * Vector type.
+   */
+  @Param({ "double", "float" })
+  public String type;
+
+  /**
+   * Data vectors.
+   */
+  private NumberVector[] vecs;
+
+  /**
+   * Raw data.
+   */
+  private double[][] data;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    data = SyntheticData.gaussianClusters(PAIRS + 1, dim, 5, 0L);
+    vecs = new NumberVector[data.length];
+    for(int i = 0; i < data.length; i++) {
+      vecs[i] = "float".equals(type) ? FloatVector.FACTORY.newNumberVector(data[i]) : DoubleVector.wrap(data[i]);
+    }
+  }
+
+  /**
+   * Sum the distances of all pairs.
+   *
+   * @param df Distance function
+   * @return Sum, to prevent dead code elimination
+   */
+  private double run(PrimitiveDistanceFunction<? super NumberVector> df) {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += df.distance(vecs[i], vecs[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double euclidean() {
+    return run(EuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double squaredEuclidean() {
+    return run(SquaredEuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double manhattan() {
+    return run(ManhattanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double maximum() {
+    return run(MaximumDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double lp3() {
+    return run(new LPNormDistanceFunction(3.));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double cosine() {
+    return run(CosineDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double vmathDot() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += VMath.dot(data[i], data[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double vmathSquaredDistance() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += VMath.squareSum(VMath.minus(data[i], data[i + 1]));
+    }
+    return sum;
+  }
+}
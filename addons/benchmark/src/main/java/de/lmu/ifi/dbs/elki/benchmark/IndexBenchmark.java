@@ -0,0 +1,215 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.MinimalisticMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Benchmark of index construction and kNN / range queries, compared to a
+ * linear scan.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IndexBenchmark {
+  /**
+   * Number of queries per invocation.
+   */
+  private static final int QUERIES = 100;
+
+  /**
+   * Index to use.
+   */
+  @Param({ "scan", "rstar", "rstar-str", "rstar-packed", "mtree", "covertree", "kdtree" })
+  public String index;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8" })
+  public int dim;
+
+  /**
+   * Number of neighbors to query.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * Data set.
+   */
+  private double[][] data;
+
+  /**
+   * Query objects.
+   */
+  private DoubleVector[] queries;
+
+  /**
+   * kNN query on the prebuilt index.
+   */
+  private KNNQuery<DoubleVector> knnq;
+
+  /**
+   * Range query on the prebuilt index.
+   */
+  private RangeQuery<DoubleVector> rangeq;
+
+  /**
+   * Query radius, approximately yielding k results.
+   */
+  private double radius;
+
+  /**
+   * Generate data, and build the index once for the query benchmarks.
+   */
+  @Setup
+  public void setup() {
+    data = SyntheticData.gaussianClusters(size, dim, 10, 0L);
+    double[][] qdata = SyntheticData.gaussianClusters(QUERIES, dim, 10, 1L);
+    queries = new DoubleVector[QUERIES];
+    for(int i = 0; i < QUERIES; i++) {
+      queries[i] = DoubleVector.wrap(qdata[i]);
+    }
+    Database db = build();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(dq, k);
+    rangeq = db.getRangeQuery(dq);
+    double sum = 0.;
+    for(DoubleVector q : queries) {
+      sum += knnq.getKNNForObject(q, k).getKNNDistance();
+    }
+    radius = sum / QUERIES;
+  }
+
+  /**
+   * Build a database with the selected index.
+   *
+   * @return Database
+   */
+  private Database build() {
+    return index.equals("scan") ? SyntheticData.database(data) : SyntheticData.database(data, makeFactory(index));
+  }
+
+  /**
+   * Make an index factory.
+   *
+   * @param name Index name
+   * @return Factory
+   */
+  private static IndexFactory<?> makeFactory(String name) {
+    switch(name){
+    case "rstar":
+      return new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1024).build();
+    case "rstar-str":
+      return new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1024) //
+          .with(AbstractRStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class).build();
+    case "rstar-packed":
+      return new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1024) //
+          .with(AbstractRStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+          .with(RStarTreeFactory.Parameterizer.PACKED_ID).build();
+    case "mtree":
+      return new ELKIBuilder<>(MTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1024).build();
+    case "covertree":
+      return new CoverTree.Factory<>(EuclideanDistanceFunction.STATIC, 1.3, 10);
+    case "kdtree":
+      return new MinimalisticMemoryKDTree.Factory<>();
+    default:
+      throw new IllegalArgumentException("Unknown index: " + name);
+    }
+  }
+
+  @Benchmark
+  public Database buildIndex() {
+    return build();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public double knnQuery() {
+    double sum = 0.;
+    for(DoubleVector q : queries) {
+      sum += knnq.getKNNForObject(q, k).getKNNDistance();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int rangeQuery() {
+    int count = 0;
+    for(DoubleVector q : queries) {
+      for(DBIDIter it = rangeq.getRangeForObject(q, radius).iter(); it.valid(); it.advance()) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansAnnulus;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansExponion;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansLloyd;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansSimplifiedElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelKMeansAnnulus;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelKMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelKMeansExponion;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelKMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelKMeansSimplifiedElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelLloydKMeans;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Benchmark of the sequential and parallel k-means variants.
+ * <p>
+ * All variants use the same random initialization, and hence (for the exact
+ * variants) perform the same number of iterations.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class KMeansBenchmark {
+  /**
+   * Algorithm to benchmark.
+   */
+  @Param({ "lloyd", "hamerly", "elkan", "simplifiedelkan", "exponion", "annulus", //
+      "parallel-lloyd", "parallel-hamerly", "parallel-elkan", "parallel-simplifiedelkan", "parallel-exponion", "parallel-annulus" })
+  public String algorithm;
+
+  /**
+   * Number of threads for the parallel variants.
+   */
+  @Param({ "1", "4" })
+  public int threads;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "8" })
+  public int dim;
+
+  /**
+   * Number of clusters.
+   */
+  @Param({ "20" })
+  public int k;
+
+  /**
+   * Database.
+   */
+  private Database db;
+
+  /**
+   * Data relation.
+   */
+  private Relation<DoubleVector> rel;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    ParallelCore.getCore().setParallelism(threads);
+    db = SyntheticData.database(SyntheticData.gaussianClusters(size, dim, k, 0L));
+    rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+
+  /**
+   * Restore the default parallelism.
+   */
+  @TearDown
+  public void teardown() {
+    ParallelCore.getCore().setParallelism(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Make the algorithm instance.
+   *
+   * @return k-means instance
+   */
+  private KMeans<DoubleVector, KMeansModel> makeAlgorithm() {
+    final SquaredEuclideanDistanceFunction df = SquaredEuclideanDistanceFunction.STATIC;
+    final int maxiter = 1000;
+    // Fresh initialization, with a fixed seed, for every run:
+    final KMeansInitialization init = new RandomlyChosenInitialMeans<>(new RandomFactory(0L));
+    switch(algorithm){
+    case "lloyd":
+      return new KMeansLloyd<>(df, k, maxiter, init);
+    case "hamerly":
+      return new KMeansHamerly<>(df, k, maxiter, init, false);
+    case "elkan":
+      return new KMeansElkan<>(df, k, maxiter, init, false);
+    case "simplifiedelkan":
+      return new KMeansSimplifiedElkan<>(df, k, maxiter, init, false);
+    case "exponion":
+      return new KMeansExponion<>(df, k, maxiter, init, false);
+    case "annulus":
+      return new KMeansAnnulus<>(df, k, maxiter, init, false);
+    case "parallel-lloyd":
+      return new ParallelLloydKMeans<>(df, k, maxiter, init);
+    case "parallel-hamerly":
+      return new ParallelKMeansHamerly<>(df, k, maxiter, init, false);
+    case "parallel-elkan":
+      return new ParallelKMeansElkan<>(df, k, maxiter, init, false);
+    case "parallel-simplifiedelkan":
+      return new ParallelKMeansSimplifiedElkan<>(df, k, maxiter, init, false);
+    case "parallel-exponion":
+      return new ParallelKMeansExponion<>(df, k, maxiter, init, false);
+    case "parallel-annulus":
+      return new ParallelKMeansAnnulus<>(df, k, maxiter, init, false);
+    default:
+      throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+    }
+  }
+
+  @Benchmark
+  public Clustering<KMeansModel> kmeans() {
+    return makeAlgorithm().run(db, rel);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.ParallelNumberVectorLabelParser;
+
+/**
+ * Benchmark of the CSV number vector parsers, on in-memory data.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParserBenchmark {
+  /**
+   * Number of rows.
+   */
+  @Param({ "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "20" })
+  public int dim;
+
+  /**
+   * Serialized data.
+   */
+  private byte[] csv;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    csv = SyntheticData.csv(SyntheticData.gaussianClusters(size, dim, 10, 0L));
+  }
+
+  @Benchmark
+  public MultipleObjectsBundle parse() {
+    return new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(csv));
+  }
+
+  @Benchmark
+  public MultipleObjectsBundle parseParallel() {
+    return new ParallelNumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(csv));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.synthetic.bymodel.GeneratorMain;
+import de.lmu.ifi.dbs.elki.data.synthetic.bymodel.GeneratorSingleCluster;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.math.statistics.distribution.NormalDistribution;
+
+/**
+ * Synthetic data sets for the benchmarks, produced with the data generator.
+ * <p>
+ * All data is generated from a fixed seed, so that results are comparable
+ * across runs.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public final class SyntheticData {
+  /**
+   * Private constructor. Static methods only.
+   */
+  private SyntheticData() {
+    // Do not use.
+  }
+
+  /**
+   * Generate a data set of axis-parallel Gaussian clusters, in random order.
+   *
+   * @param size Data set size
+   * @param dim Dimensionality
+   * @param clusters Number of clusters
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] gaussianClusters(int size, int dim, int clusters, long seed) {
+    Random rnd = new Random(seed);
+    GeneratorMain gen = new GeneratorMain();
+    gen.setTestAgainstModel(false);
+    for(int c = 0; c < clusters; c++) {
+      final int csize = size / clusters + (c < size % clusters ? 1 : 0);
+      GeneratorSingleCluster clus = new GeneratorSingleCluster("Cluster " + c, csize, 1., new Random(rnd.nextLong()));
+      for(int d = 0; d < dim; d++) {
+        clus.addGenerator(new NormalDistribution(rnd.nextDouble() * 10., .1 + rnd.nextDouble(), new Random(rnd.nextLong())));
+      }
+      gen.addCluster(clus);
+    }
+    MultipleObjectsBundle bundle = gen.generate();
+    double[][] data = new double[bundle.dataLength()][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = ((NumberVector) bundle.data(i, 0)).toArray();
+    }
+    // Shuffle, as the generator produces one cluster after the other.
+    for(int i = data.length - 1; i > 0; i--) {
+      final int j = rnd.nextInt(i + 1);
+      double[] tmp = data[i];
+      data[i] = data[j];
+      data[j] = tmp;
+    }
+    return data;
+  }
+
+  /**
+   * Build an in-memory database, with optional indexes.
+   *
+   * @param data Data
+   * @param indexes Index factories
+   * @return Initialized database
+   */
+  public static Database database(double[][] data, IndexFactory<?>... indexes) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), Arrays.asList(indexes));
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Serialize a data set as CSV text.
+   *
+   * @param data Data
+   * @return CSV, encoded as UTF-8
+   */
+  public static byte[] csv(double[][] data) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * (data.length > 0 ? data[0].length : 1) * 20);
+    StringBuilder buf = new StringBuilder(1000);
+    for(double[] row : data) {
+      buf.setLength(0);
+      for(int d = 0; d < row.length; d++) {
+        buf.append(d > 0 ? "," : "").append(row[d]);
+      }
+      buf.append('\n');
+      byte[] line = buf.toString().getBytes(StandardCharsets.UTF_8);
+      out.write(line, 0, line.length);
+    }
+    return out.toByteArray();
+  }
+}
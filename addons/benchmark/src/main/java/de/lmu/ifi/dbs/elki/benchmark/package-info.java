@@ -0,0 +1,30 @@
+/**
+ * Microbenchmarks of ELKI components, using the
+ * <a href="http://openjdk.java.net/projects/code-tools/jmh/">JMH</a> harness.
+ * <p>
+ * Run all benchmarks with {@code gradle :elki-benchmark:jmh}; select
+ * benchmarks with {@code -Pjmh.include=<regexp>}, and pass further JMH options
+ * with {@code -Pjmh.args="..."}. Results are written as JSON to
+ * {@code addons/benchmark/build/reports/jmh/results.json}.
+ */
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
@@ -150,7 +150,17 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       LOG.warning("Invalid grid width (less than 2*epsilon, recommended 10*epsilon). Increasing grid width automatically.");
       gridwidth = 2. * epsilon;
     }
-    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth).run(relation);
+    return newInstance(gridwidth).run(relation);
+  }
+
+  /**
+   * Make a new instance for a single run.
+   *
+   * @param gridwidth Grid width (validated)
+   * @return Instance
+   */
+  protected Instance<V> newInstance(double gridwidth) {
+    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth);
   }
 
   /**
@@ -401,7 +411,7 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
      *
      * @return Total number of grid cells
      */
-    private long computeGridBaseOffsets() {
+    protected long computeGridBaseOffsets() {
       StringBuffer buf = LOG.isDebuggingFinest() ? new StringBuffer() : null;
       double[] min = domain[0], max = domain[1];
       long total = 1;
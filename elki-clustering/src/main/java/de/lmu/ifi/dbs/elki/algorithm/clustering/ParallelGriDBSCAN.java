@@ -0,0 +1,384 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.ProxyView;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFind;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFindUtil;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of {@link GriDBSCAN}: the overlapping grid cells are
+ * processed concurrently, and the partial clusters are merged with a
+ * union-find data structure afterwards.
+ * <p>
+ * Every object has a <em>home</em> cell, the grid cell that contains it. Since
+ * the cells overlap by epsilon, the entire epsilon-neighborhood of an object
+ * is contained in its home cell. Therefore, each cell can decide the core
+ * status of its home objects independently. In a second pass, each cell links
+ * its home core objects to their core neighbors, and assigns its non-core home
+ * objects to the nearest core neighbor, if any. Because every core-core edge
+ * is seen in the home cell of at least one of its ends, the final union of the
+ * cell results yields exactly the clusters of DBSCAN on the core points.
+ * Border points are assigned to the cluster of their nearest core point, which
+ * is one of the valid DBSCAN results, and does not depend on the processing
+ * order.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <V> the type of vector the algorithm is applied to
+ */
+@Title("Parallel GriDBSCAN")
+public class ParallelGriDBSCAN<V extends NumberVector> extends GriDBSCAN<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGriDBSCAN.class);
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param gridwidth Grid width
+   */
+  public ParallelGriDBSCAN(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth) {
+    super(distanceFunction, epsilon, minpts, gridwidth);
+  }
+
+  @Override
+  protected GriDBSCAN.Instance<V> newInstance(double gridwidth) {
+    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Instance, for a single run.
+   *
+   * @author agent
+   *
+   * @param <V> Vector type
+   */
+  protected static class Instance<V extends NumberVector> extends GriDBSCAN.Instance<V> {
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param epsilon Epsilon
+     * @param minpts MinPts
+     * @param gridwidth Grid width
+     */
+    public Instance(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth) {
+      super(distanceFunction, epsilon, minpts, gridwidth);
+    }
+
+    @Override
+    public Clustering<Model> run(Relation<V> relation) {
+      final DBIDs ids = relation.getDBIDs();
+      final int size = ids.size();
+
+      // Domain of the database
+      this.domain = RelationUtil.computeMinMax(relation);
+      this.dim = domain[0].length;
+      this.offset = new double[dim];
+      this.cells = new int[dim];
+      // Compute the grid start, and the number of cells in each dimension.
+      long numcells = computeGridBaseOffsets();
+      if(numcells > size) {
+        LOG.warning("The generated grid has more cells than data points. This may need excessive amounts of memory.");
+      }
+      buildGrid(relation, (int) numcells, offset);
+      checkGridCellSizes(size, numcells);
+
+      // Cells, in an array for parallel processing.
+      final int ncells = grid.size();
+      final int[] keys = new int[ncells];
+      final ArrayDBIDs[] cellids = new ArrayDBIDs[ncells];
+      {
+        int i = 0;
+        for(Long2ObjectMap.Entry<ModifiableDBIDs> e : grid.long2ObjectEntrySet()) {
+          keys[i] = (int) e.getLongKey();
+          cellids[i++] = DBIDUtil.ensureArray(e.getValue());
+        }
+      }
+
+      // Pass 1: core points, in their home cells.
+      final ModifiableDBIDs[] cellcores = new ModifiableDBIDs[ncells];
+      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Finding core points", ncells, LOG) : null;
+      ParallelExecutor.run(ncells, 1, (start, end) -> {
+        for(int c = start; c < end; c++) {
+          cellcores[c] = findCorePoints(relation, keys[c], cellids[c]);
+          if(cprog != null) {
+            cprog.incrementProcessed(LOG);
+          }
+        }
+      });
+      LOG.ensureCompleted(cprog);
+      final HashSetModifiableDBIDs coreset = DBIDUtil.newHashSet();
+      for(ModifiableDBIDs c : cellcores) {
+        coreset.addDBIDs(c);
+      }
+
+      // Pass 2: link core points, and assign border points.
+      final CellResult[] results = new CellResult[ncells];
+      FiniteProgress lprog = LOG.isVerbose() ? new FiniteProgress("Linking core points", ncells, LOG) : null;
+      ParallelExecutor.run(ncells, 1, (start, end) -> {
+        for(int c = start; c < end; c++) {
+          results[c] = linkCell(relation, keys[c], cellids[c], coreset);
+          if(lprog != null) {
+            lprog.incrementProcessed(LOG);
+          }
+        }
+      });
+      LOG.ensureCompleted(lprog);
+
+      // Merge the cell results.
+      UnionFind uf = UnionFindUtil.make(DBIDUtil.makeUnmodifiable(ids));
+      for(CellResult r : results) {
+        for(DBIDArrayIter a = r.links.iter(), b = r.links.iter(); a.valid(); a.advance(2)) {
+          uf.union(a, b.seek(a.getOffset() + 1));
+        }
+      }
+      return buildResult(ids, coreset, results, uf);
+    }
+
+    /**
+     * Compute the home cell of an object.
+     *
+     * @param obj Object
+     * @return Cell key
+     */
+    protected int homeCell(V obj) {
+      int v = 0;
+      for(int d = 0; d < dim; d++) {
+        final int cn = cells[d];
+        final int i = (int) FastMath.floor((obj.doubleValue(d) - offset[d]) / gridwidth);
+        v = v * cn + (i < 0 ? 0 : i >= cn ? cn - 1 : i);
+      }
+      return v;
+    }
+
+    /**
+     * Find the core points of a cell, among the objects whose home is this
+     * cell.
+     *
+     * @param relation Data relation
+     * @param key Cell key
+     * @param cellids Objects in the cell
+     * @return Core points
+     */
+    protected ModifiableDBIDs findCorePoints(Relation<V> relation, int key, ArrayDBIDs cellids) {
+      ModifiableDBIDs cores = DBIDUtil.newArray();
+      if(cellids.size() < minpts) {
+        return cores; // Too few objects.
+      }
+      ProxyView<V> rel = new ProxyView<>(cellids, relation);
+      RangeQuery<V> rq = rel.getRangeQuery(distanceFunction, epsilon);
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList(minpts << 1);
+      for(DBIDIter id = cellids.iter(); id.valid(); id.advance()) {
+        if(homeCell(relation.get(id)) != key) {
+          continue;
+        }
+        neighbors.clear();
+        rq.getRangeForDBID(id, epsilon, neighbors);
+        if(neighbors.size() >= minpts) {
+          cores.add(id);
+        }
+      }
+      return cores;
+    }
+
+    /**
+     * Link the core points of a cell to their core neighbors, and find the
+     * nearest core point of each border point.
+     *
+     * @param relation Data relation
+     * @param key Cell key
+     * @param cellids Objects in the cell
+     * @param coreset Global set of core points (read only)
+     * @return Cell result
+     */
+    protected CellResult linkCell(Relation<V> relation, int key, ArrayDBIDs cellids, DBIDs coreset) {
+      CellResult res = new CellResult();
+      ProxyView<V> rel = new ProxyView<>(cellids, relation);
+      RangeQuery<V> rq = rel.getRangeQuery(distanceFunction, epsilon);
+      UnionFind local = UnionFindUtil.make(DBIDUtil.makeUnmodifiable(cellids));
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList(minpts << 1);
+      DBIDVar best = DBIDUtil.newVar();
+      boolean hascore = false;
+      for(DBIDIter id = cellids.iter(); id.valid(); id.advance()) {
+        if(homeCell(relation.get(id)) != key) {
+          continue;
+        }
+        final boolean iscore = coreset.contains(id);
+        neighbors.clear();
+        rq.getRangeForDBID(id, epsilon, neighbors);
+        if(iscore) {
+          hascore = true;
+          for(DoubleDBIDListIter it = neighbors.iter(); it.valid(); it.advance()) {
+            if(coreset.contains(it)) {
+              local.union(id, it);
+            }
+          }
+          continue;
+        }
+        // Border point: attach to the nearest core point.
+        double bestd = Double.POSITIVE_INFINITY;
+        for(DoubleDBIDListIter it = neighbors.iter(); it.valid(); it.advance()) {
+          if(it.doubleValue() < bestd && coreset.contains(it)) {
+            bestd = it.doubleValue();
+            best.set(it);
+          }
+        }
+        if(bestd < Double.POSITIVE_INFINITY) {
+          res.borders.add(id);
+          res.borders.add(best);
+        }
+      }
+      if(!hascore) {
+        return res;
+      }
+      // Emit one link per core point that is not a local representative.
+      Int2IntOpenHashMap first = new Int2IntOpenHashMap();
+      first.defaultReturnValue(-1);
+      DBIDArrayIter rep = cellids.iter();
+      for(DBIDArrayIter it = cellids.iter(); it.valid(); it.advance()) {
+        if(!coreset.contains(it)) {
+          continue;
+        }
+        final int c = local.find(it), f = first.get(c);
+        if(f < 0) {
+          first.put(c, it.getOffset());
+          continue;
+        }
+        res.links.add(rep.seek(f));
+        res.links.add(it);
+      }
+      return res;
+    }
+
+    /**
+     * Build the final clustering.
+     *
+     * @param ids All objects
+     * @param coreset Core points
+     * @param results Cell results
+     * @param uf Union-find of core points
+     * @return Clustering
+     */
+    protected Clustering<Model> buildResult(DBIDs ids, DBIDs coreset, CellResult[] results, UnionFind uf) {
+      Int2IntOpenHashMap index = new Int2IntOpenHashMap();
+      index.defaultReturnValue(-1);
+      List<ModifiableDBIDs> clusters = new ArrayList<>();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        if(coreset.contains(it)) {
+          final int c = uf.find(it);
+          int i = index.get(c);
+          if(i < 0) {
+            index.put(c, i = clusters.size());
+            clusters.add(DBIDUtil.newArray());
+          }
+          clusters.get(i).add(it);
+        }
+      }
+      HashSetModifiableDBIDs borders = DBIDUtil.newHashSet();
+      for(CellResult r : results) {
+        for(DBIDArrayIter it = r.borders.iter(), co = r.borders.iter(); it.valid(); it.advance(2)) {
+          borders.add(it);
+          clusters.get(index.get(uf.find(co.seek(it.getOffset() + 1)))).add(it);
+        }
+      }
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        if(!coreset.contains(it) && !borders.contains(it)) {
+          noise.add(it);
+        }
+      }
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      for(ModifiableDBIDs c : clusters) {
+        result.addToplevelCluster(new Cluster<Model>(c, ClusterModel.CLUSTER));
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Result of processing a single cell.
+   *
+   * @author agent
+   */
+  protected static class CellResult {
+    /**
+     * Pairs of core points to link.
+     */
+    ArrayModifiableDBIDs links = DBIDUtil.newArray();
+
+    /**
+     * Pairs of border point and nearest core point.
+     */
+    ArrayModifiableDBIDs borders = DBIDUtil.newArray();
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @hidden
+   *
+   * @param <O> Vector type to use
+   */
+  public static class Parameterizer<O extends NumberVector> extends GriDBSCAN.Parameterizer<O> {
+    @Override
+    protected ParallelGriDBSCAN<O> makeInstance() {
+      return new ParallelGriDBSCAN<>(distanceFunction, epsilon, minpts, gridwidth);
+    }
+  }
+}
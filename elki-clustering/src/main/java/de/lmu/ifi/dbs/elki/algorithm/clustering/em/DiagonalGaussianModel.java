@@ -36,7 +36,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.0
  */
-public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
+public class DiagonalGaussianModel implements EMClusterModel.PartialE<EMModel> {
   /**
    * Constant to avoid singular matrixes.
    */
@@ -107,6 +107,17 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for partial models, see {@link #newPartialE()}.
+   * 
+   * @param dim Dimensionality
+   */
+  private DiagonalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.variances = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -136,6 +147,37 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newPartialE() {
+    return new DiagonalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeInto(EMClusterModel<?> model, double scale) {
+    ((DiagonalGaussianModel) model).merge(this, scale);
+  }
+
+  /**
+   * Merge the statistics of a partial model.
+   *
+   * @param o Partial model
+   * @param scale Factor for the weights of the partial model
+   */
+  private void merge(DiagonalGaussianModel o, double scale) {
+    final double owsum = o.wsum * scale;
+    if(!(owsum >= Double.MIN_NORMAL)) {
+      return;
+    }
+    final double nwsum = wsum + owsum;
+    final double f = owsum / nwsum, g = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      variances[i] += o.variances[i] * scale + delta * delta * g;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
@@ -23,7 +23,9 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
 import static de.lmu.ifi.dbs.elki.math.linearalgebra.VMath.argmax;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
@@ -36,18 +38,24 @@ import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.ProxyView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -60,6 +68,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameteriz
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
 
 import net.jafama.FastMath;
 
@@ -79,6 +89,15 @@ import net.jafama.FastMath;
  * Bayesian Regularization for Normal Mixture Estimation and Model-Based
  * Clustering<br>
  * J. Classification 24(2)
+ * <p>
+ * The E step is computed in parallel on large data sets, merging the partial
+ * statistics of each thread (if supported by the cluster models). Optionally,
+ * the models can be updated from random mini-batches only, using the stepwise
+ * EM of
+ * <p>
+ * P. Liang, D. Klein<br>
+ * Online EM for Unsupervised Models<br>
+ * Proc. Human Language Technologies: NAACL 2009
  * 
  * @author Arthur Zimek
  * @author Erich Schubert
@@ -101,6 +120,11 @@ import net.jafama.FastMath;
     booktitle = "J. Classification 24(2)", //
     url = "https://doi.org/10.1007/s00357-007-0004-5", //
     bibkey = "DBLP:journals/classification/FraleyR07")
+@Reference(title = "Online EM for Unsupervised Models", //
+    authors = "P. Liang, D. Klein", //
+    booktitle = "Proc. Human Language Technologies: NAACL 2009", //
+    url = "http://www.aclweb.org/anthology/N09-1069", //
+    bibkey = "DBLP:conf/naacl/LiangK09")
 @Alias("de.lmu.ifi.dbs.elki.algorithm.clustering.EM")
 @Priority(Priority.RECOMMENDED)
 public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlgorithm<Clustering<M>> implements ClusteringAlgorithm<Clustering<M>> {
@@ -144,11 +168,31 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    */
   private boolean soft;
 
+  /**
+   * Mini-batch size (0 to use all data in each iteration).
+   */
+  private int minibatch;
+
+  /**
+   * Random generator for sampling mini-batches.
+   */
+  private RandomFactory rnd;
+
   /**
    * Minimum loglikelihood to avoid -infinity.
    */
   private static final double MIN_LOGLIKELIHOOD = -100000;
 
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_PARALLEL_BLOCK = 1 << 8;
+
+  /**
+   * Decay exponent of the step size of mini-batch EM, in (0.5;1].
+   */
+  private static final double STEP_DECAY = .6;
+
   /**
    * Soft assignment result type.
    */
@@ -189,6 +233,22 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    * @param soft Include soft assignments
    */
   public EM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, double prior, boolean soft) {
+    this(k, delta, mfactory, maxiter, prior, soft, 0, RandomFactory.DEFAULT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param prior MAP prior
+   * @param soft Include soft assignments
+   * @param minibatch Mini-batch size (0 to use all data in each iteration)
+   * @param rnd Random generator for sampling mini-batches
+   */
+  public EM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, double prior, boolean soft, int minibatch, RandomFactory rnd) {
     super();
     this.k = k;
     this.delta = delta;
@@ -196,6 +256,8 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     this.maxiter = maxiter;
     this.prior = prior;
     this.soft = soft;
+    this.minibatch = minibatch;
+    this.rnd = rnd;
   }
 
   /**
@@ -217,6 +279,17 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     // initial models
     List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
     WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
+    if(minibatch > 0 && minibatch < relation.size()) {
+      int it = iterateMinibatch(relation, models);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(KEY + ".iterations", it));
+      }
+      double loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(KEY + ".loglikelihood", loglikelihood));
+      }
+      return buildResult(relation, models, probClusterIGivenX);
+    }
     double loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
     DoubleStatistic likestat = LOG.isStatistics() ? new DoubleStatistic(this.getClass().getName() + ".loglikelihood") : null;
     if(LOG.isStatistics()) {
@@ -246,7 +319,99 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     if(LOG.isStatistics()) {
       LOG.statistics(new LongStatistic(KEY + ".iterations", it));
     }
+    return buildResult(relation, models, probClusterIGivenX);
+  }
 
+  /**
+   * Run EM on random mini-batches, until convergence.
+   * <p>
+   * If the models support merging partial statistics, a stepwise update is
+   * used, i.e., the sufficient statistics are interpolated with those of the
+   * current batch. Otherwise, the models are estimated from each batch alone.
+   *
+   * @param relation Relation
+   * @param models Cluster models to update
+   * @return Number of iterations
+   */
+  private int iterateMinibatch(Relation<V> relation, List<? extends EMClusterModel<M>> models) {
+    final int n = relation.size();
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final Random random = rnd.getSingleThreadedRandom();
+    boolean stepwise = true;
+    for(EMClusterModel<M> m : models) {
+      stepwise = stepwise && !m.needsTwoPass() && m.supportsPartialE();
+    }
+    EMClusterModel.PartialE<?>[] running = new EMClusterModel.PartialE<?>[k], stats = new EMClusterModel.PartialE<?>[k];
+    double[] runw = new double[k], bw = new double[k];
+    DoubleStatistic likestat = LOG.isStatistics() ? new DoubleStatistic(this.getClass().getName() + ".batch-loglikelihood") : null;
+
+    int it = 0, lastimprovement = 0;
+    // Convergence is tested on a running average of the batch likelihoods.
+    double loglikelihood = 0., bestloglikelihood = Double.NEGATIVE_INFINITY;
+    for(++it; it < maxiter || maxiter < 0; it++) {
+      final double oldloglikelihood = loglikelihood;
+      final double eta = FastMath.pow(it, -STEP_DECAY);
+      ArrayDBIDs batch = DBIDUtil.ensureArray(DBIDUtil.randomSample(ids, minibatch, random));
+      Relation<V> view = new ProxyView<>(batch, relation);
+      WritableDataStore<double[]> probs = DataStoreUtil.makeStorage(batch, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, double[].class);
+      final double batchloglikelihood = assignProbabilitiesToInstances(view, models, probs);
+      loglikelihood = (1. - eta) * loglikelihood + eta * batchloglikelihood;
+      if(!stepwise) {
+        recomputeCovarianceMatrices(view, probs, models, prior);
+      }
+      else {
+        // Statistics of the current batch:
+        for(int i = 0; i < k; i++) {
+          stats[i] = models.get(i).newPartialE();
+        }
+        Arrays.fill(bw, 0.);
+        collectE(view, batch, 0, batch.size(), probs, stats, bw, false);
+        // s = (1 - eta) * s + eta * n / |batch| * s_batch
+        final double bscale = eta * n / batch.size();
+        for(int i = 0; i < k; i++) {
+          EMClusterModel<M> m = models.get(i);
+          EMClusterModel.PartialE<?> next = m.newPartialE();
+          if(running[i] != null) {
+            running[i].mergeInto(next, 1. - eta);
+          }
+          stats[i].mergeInto(next, bscale);
+          running[i] = next;
+          runw[i] = (1. - eta) * runw[i] + bscale * bw[i];
+        }
+        // Update the models from the running statistics:
+        for(int i = 0; i < k; i++) {
+          EMClusterModel<M> m = models.get(i);
+          m.beginEStep();
+          running[i].mergeInto(m, 1.);
+          final double weight = prior <= 0. ? runw[i] / n : (runw[i] + prior - 1) / (n + prior * k - k);
+          m.finalizeEStep(weight, prior);
+        }
+      }
+      probs.destroy();
+
+      if(LOG.isStatistics()) {
+        LOG.statistics(likestat.setDouble(batchloglikelihood));
+      }
+      if(loglikelihood - bestloglikelihood > delta) {
+        lastimprovement = it;
+        bestloglikelihood = loglikelihood;
+      }
+      if(Math.abs(loglikelihood - oldloglikelihood) <= delta || lastimprovement < it >> 1) {
+        break;
+      }
+    }
+    return it;
+  }
+
+  /**
+   * Build the clustering result.
+   *
+   * @param relation Relation
+   * @param models Cluster models
+   * @param probClusterIGivenX Cluster probabilities
+   * @return Clustering
+   */
+  private Clustering<M> buildResult(Relation<V> relation, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
     // fill result with clusters and models
     List<ModifiableDBIDs> hardClusters = new ArrayList<>(k);
     for(int i = 0; i < k; i++) {
@@ -286,6 +451,11 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
       m.beginEStep();
       needsTwoPass |= m.needsTwoPass();
     }
+    double[] wsum = new double[k];
+    if(parallelE(relation, probClusterIGivenX, models, needsTwoPass, wsum)) {
+      finalizeEStep(relation.size(), models, wsum, prior);
+      return;
+    }
     // First pass, only for two-pass models.
     if(needsTwoPass) {
       for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
@@ -302,7 +472,6 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
         m.finalizeFirstPassE();
       }
     }
-    double[] wsum = new double[k];
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
       double[] clusterProbabilities = probClusterIGivenX.get(iditer);
       NumberVector instance = relation.get(iditer);
@@ -314,13 +483,142 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
         wsum[i] += prob;
       }
     }
-    for(int i = 0; i < models.size(); i++) {
+    finalizeEStep(relation.size(), models, wsum, prior);
+  }
+
+  /**
+   * Finish the E step, and compute the cluster weights.
+   *
+   * @param n Data set size
+   * @param models Cluster models
+   * @param wsum Weight sums
+   * @param prior MAP prior (use 0 for MLE)
+   */
+  private static void finalizeEStep(int n, List<? extends EMClusterModel<?>> models, double[] wsum, double prior) {
+    final int k = models.size();
+    for(int i = 0; i < k; i++) {
       // MLE / MAP
-      final double weight = prior <= 0. ? wsum[i] / relation.size() : (wsum[i] + prior - 1) / (relation.size() + prior * k - k);
+      final double weight = prior <= 0. ? wsum[i] / n : (wsum[i] + prior - 1) / (n + prior * k - k);
       models.get(i).finalizeEStep(weight, prior);
     }
   }
 
+  /**
+   * Compute the E step in parallel, with one partial model per thread and
+   * cluster. The partial statistics are merged in a fixed order.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   * @param needsTwoPass Perform the first pass, too
+   * @param wsum Output weight sums
+   * @return {@code false} if the data set is too small, or the models do not
+   *         support partial statistics.
+   */
+  private static boolean parallelE(Relation<? extends NumberVector> relation, DataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<?>> models, boolean needsTwoPass, double[] wsum) {
+    final int size = relation.size(), k = models.size();
+    final int parts = Math.min(ParallelCore.getCore().getParallelism(), size / MIN_PARALLEL_BLOCK);
+    if(parts <= 1) {
+      return false;
+    }
+    for(EMClusterModel<?> m : models) {
+      if(!m.supportsPartialE()) {
+        return false;
+      }
+    }
+    final EMClusterModel.PartialE<?>[][] partials = new EMClusterModel.PartialE<?>[parts][k];
+    newPartials(models, partials);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final double[][] pwsum = new double[parts][k];
+    if(needsTwoPass) {
+      ParallelExecutor.run(parts, 1, (start, end) -> {
+        for(int p = start; p < end; p++) {
+          collectE(relation, ids, begin(p, size, parts), begin(p + 1, size, parts), probClusterIGivenX, partials[p], pwsum[p], true);
+        }
+      });
+      for(int p = 0; p < parts; p++) {
+        for(int i = 0; i < k; i++) {
+          partials[p][i].mergeInto(models.get(i), 1.);
+        }
+      }
+      for(EMClusterModel<?> m : models) {
+        m.finalizeFirstPassE();
+      }
+      newPartials(models, partials);
+    }
+    ParallelExecutor.run(parts, 1, (start, end) -> {
+      for(int p = start; p < end; p++) {
+        Arrays.fill(pwsum[p], 0.);
+        collectE(relation, ids, begin(p, size, parts), begin(p + 1, size, parts), probClusterIGivenX, partials[p], pwsum[p], false);
+      }
+    });
+    for(int p = 0; p < parts; p++) {
+      for(int i = 0; i < k; i++) {
+        partials[p][i].mergeInto(models.get(i), 1.);
+        wsum[i] += pwsum[p][i];
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Allocate partial models.
+   *
+   * @param models Cluster models
+   * @param partials Output array
+   */
+  private static void newPartials(List<? extends EMClusterModel<?>> models, EMClusterModel.PartialE<?>[][] partials) {
+    for(EMClusterModel.PartialE<?>[] partial : partials) {
+      for(int i = 0; i < partial.length; i++) {
+        partial[i] = models.get(i).newPartialE();
+      }
+    }
+  }
+
+  /**
+   * Collect the E step statistics of a range of objects.
+   *
+   * @param relation Vector data
+   * @param ids Object ids
+   * @param start First offset
+   * @param end End offset (exclusive)
+   * @param probClusterIGivenX Object probabilities
+   * @param partial Partial cluster models
+   * @param wsum Weight sums output
+   * @param firstPass Perform the first pass of two-pass models
+   */
+  private static void collectE(Relation<? extends NumberVector> relation, ArrayDBIDs ids, int start, int end, DataStore<double[]> probClusterIGivenX, EMClusterModel<?>[] partial, double[] wsum, boolean firstPass) {
+    DBIDArrayIter iditer = ids.iter();
+    for(iditer.seek(start); iditer.getOffset() < end; iditer.advance()) {
+      double[] clusterProbabilities = probClusterIGivenX.get(iditer);
+      NumberVector instance = relation.get(iditer);
+      for(int i = 0; i < clusterProbabilities.length; i++) {
+        final double prob = clusterProbabilities[i];
+        if(prob > 1e-10) {
+          if(firstPass) {
+            partial[i].firstPassE(instance, prob);
+          }
+          else {
+            partial[i].updateE(instance, prob);
+          }
+        }
+        wsum[i] += prob;
+      }
+    }
+  }
+
+  /**
+   * First offset of a partition.
+   *
+   * @param p Partition number
+   * @param size Data set size
+   * @param parts Number of partitions
+   * @return Offset
+   */
+  private static int begin(int p, int size, int parts) {
+    return (int) ((long) p * size / parts);
+  }
+
   /**
    * Assigns the current probability values to the instances in the database and
    * compute the expectation value of the current mixture of distributions.
@@ -334,24 +632,74 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    * @return the expectation value of the current mixture of distributions
    */
   public static double assignProbabilitiesToInstances(Relation<? extends NumberVector> relation, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX) {
-    final int k = models.size();
+    final int k = models.size(), size = relation.size();
+    final int parts = Math.min(ParallelCore.getCore().getParallelism(), size / MIN_PARALLEL_BLOCK);
+    if(parts > 1) {
+      return assignProbabilitiesParallel(relation, models, probClusterIGivenX, parts);
+    }
     double emSum = 0.;
-
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      NumberVector vec = relation.get(iditer);
       double[] probs = new double[k];
-      for(int i = 0; i < k; i++) {
-        double v = models.get(i).estimateLogDensity(vec);
-        probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
-      }
-      final double logP = logSumExp(probs);
-      for(int i = 0; i < k; i++) {
-        probs[i] = FastMath.exp(probs[i] - logP);
-      }
+      emSum += computeProbabilities(relation.get(iditer), models, probs);
       probClusterIGivenX.put(iditer, probs);
-      emSum += logP;
     }
-    return emSum / relation.size();
+    return emSum / size;
+  }
+
+  /**
+   * Parallel version of {@link #assignProbabilitiesToInstances}.
+   *
+   * @param relation the database used for assignment to instances
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @param parts Number of partitions
+   * @return the expectation value of the current mixture of distributions
+   */
+  private static double assignProbabilitiesParallel(Relation<? extends NumberVector> relation, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX, int parts) {
+    final int k = models.size(), size = relation.size();
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final double[][] probs = new double[size][];
+    final double[] sums = new double[parts];
+    ParallelExecutor.run(parts, 1, (start, end) -> {
+      DBIDArrayIter iditer = ids.iter();
+      for(int p = start; p < end; p++) {
+        double emSum = 0.;
+        for(int j = begin(p, size, parts), e = begin(p + 1, size, parts); j < e; j++) {
+          emSum += computeProbabilities(relation.get(iditer.seek(j)), models, probs[j] = new double[k]);
+        }
+        sums[p] = emSum;
+      }
+    });
+    // The data store may not be thread safe:
+    for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      probClusterIGivenX.put(iditer, probs[iditer.getOffset()]);
+    }
+    double emSum = 0.;
+    for(double s : sums) {
+      emSum += s;
+    }
+    return emSum / size;
+  }
+
+  /**
+   * Compute the cluster probabilities of a single object.
+   *
+   * @param vec Object
+   * @param models Cluster models
+   * @param probs Output probabilities
+   * @return Log likelihood of the object
+   */
+  private static double computeProbabilities(NumberVector vec, List<? extends EMClusterModel<?>> models, double[] probs) {
+    final int k = probs.length;
+    for(int i = 0; i < k; i++) {
+      double v = models.get(i).estimateLogDensity(vec);
+      probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+    }
+    final double logP = logSumExp(probs);
+    for(int i = 0; i < k; i++) {
+      probs[i] = FastMath.exp(probs[i] - logP);
+    }
+    return logP;
   }
 
   /**
@@ -433,6 +781,18 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     public static final OptionID PRIOR_ID = new OptionID("em.map.prior", //
         "Regularization factor for MAP estimation.");
 
+    /**
+     * Parameter to enable mini-batch EM.
+     */
+    public static final OptionID MINIBATCH_ID = new OptionID("em.minibatch", //
+        "Number of random samples used in each iteration (mini-batch EM). By default, all data is used.");
+
+    /**
+     * Random seed for mini-batch sampling.
+     */
+    public static final OptionID SEED_ID = new OptionID("em.minibatch.seed", //
+        "Random seed for sampling the mini-batches.");
+
     /**
      * Number of clusters.
      */
@@ -458,6 +818,16 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
      */
     double prior = 0.;
 
+    /**
+     * Mini-batch size.
+     */
+    int minibatch = 0;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory rnd = RandomFactory.DEFAULT;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -491,11 +861,22 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
       if(config.grab(priorP)) {
         prior = priorP.doubleValue();
       }
+
+      IntParameter minibatchP = new IntParameter(MINIBATCH_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(minibatchP)) {
+        minibatch = minibatchP.intValue();
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+      }
     }
 
     @Override
     protected EM<V, M> makeInstance() {
-      return new EM<>(k, delta, initializer, maxiter, prior, false);
+      return new EM<>(k, delta, initializer, maxiter, prior, false, minibatch, rnd);
     }
   }
 }
@@ -81,6 +81,32 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   void finalizeEStep(double weight, double prior);
 
+  /**
+   * True, if the model can collect partial statistics, see
+   * {@link #newPartialE()}.
+   *
+   * @return {@code true} when partial statistics are supported.
+   */
+  default boolean supportsPartialE() {
+    return false;
+  }
+
+  /**
+   * Create an empty model of the same type, to collect the statistics of the
+   * E step for a subset of the data (e.g., in a separate thread). The partial
+   * statistics are combined with {@link PartialE#mergeInto}.
+   * <p>
+   * This is called after {@link #beginEStep()}, and, for two-pass models,
+   * again after {@link #finalizeFirstPassE()}.
+   *
+   * @return Partial model
+   * @throws UnsupportedOperationException if not supported, c.f.
+   *         {@link #supportsPartialE()}.
+   */
+  default PartialE<M> newPartialE() {
+    throw new UnsupportedOperationException("Partial statistics are not supported by " + getClass().getName());
+  }
+
   /**
    * Estimate the log likelihood of a vector.
    * 
@@ -109,4 +135,27 @@ public interface EMClusterModel<M extends MeanModel> {
    * @param weight Cluster weight
    */
   void setWeight(double weight);
+
+  /**
+   * Partial statistics of the E step, as returned by {@link #newPartialE()}.
+   *
+   * @author Erich Schubert
+   *
+   * @param <M> Model type
+   */
+  interface PartialE<M extends MeanModel> extends EMClusterModel<M> {
+    @Override
+    default boolean supportsPartialE() {
+      return true;
+    }
+
+    /**
+     * Add the statistics collected by this partial model to a model of the
+     * same type (which may be a partial model, too).
+     *
+     * @param model Model to update
+     * @param scale Factor for the weights of this partial model
+     */
+    void mergeInto(EMClusterModel<?> model, double scale);
+  }
 }
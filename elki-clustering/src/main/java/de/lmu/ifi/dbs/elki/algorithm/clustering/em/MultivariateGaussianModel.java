@@ -36,7 +36,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.0
  */
-public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
+public class MultivariateGaussianModel implements EMClusterModel.PartialE<EMModel> {
   /**
    * Class logger.
    */
@@ -115,6 +115,17 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     updateCholesky();
   }
 
+  /**
+   * Constructor for partial models, see {@link #newPartialE()}.
+   * 
+   * @param dim Dimensionality
+   */
+  private MultivariateGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -155,6 +166,47 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel newPartialE() {
+    return new MultivariateGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeInto(EMClusterModel<?> model, double scale) {
+    ((MultivariateGaussianModel) model).merge(this, scale);
+  }
+
+  /**
+   * Merge the statistics of a partial model.
+   *
+   * @param o Partial model
+   * @param scale Factor for the weights of the partial model
+   */
+  private void merge(MultivariateGaussianModel o, double scale) {
+    final double owsum = o.wsum * scale;
+    if(!(owsum >= Double.MIN_NORMAL)) {
+      return;
+    }
+    final int dim = mean.length;
+    final double nwsum = wsum + owsum;
+    final double f = owsum / nwsum, g = wsum * f;
+    for(int i = 0; i < dim; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    // Combine the lower triangles, as in updateE:
+    for(int i = 0; i < dim; i++) {
+      final double[] cov_i = covariance[i], ocov_i = o.covariance[i];
+      final double delta_i = nmea[i] * g;
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] * scale + delta_i * nmea[j];
+      }
+    }
+    for(int i = 0; i < dim; i++) {
+      mean[i] += nmea[i] * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     this.weight = weight;
@@ -35,7 +35,7 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.7.0
  */
-public class SphericalGaussianModel implements EMClusterModel<EMModel> {
+public class SphericalGaussianModel implements EMClusterModel.PartialE<EMModel> {
   /**
    * Mean vector.
    */
@@ -94,6 +94,16 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for partial models, see {@link #newPartialE()}.
+   * 
+   * @param dim Dimensionality
+   */
+  private SphericalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -122,6 +132,39 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newPartialE() {
+    return new SphericalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeInto(EMClusterModel<?> model, double scale) {
+    ((SphericalGaussianModel) model).merge(this, scale);
+  }
+
+  /**
+   * Merge the statistics of a partial model.
+   *
+   * @param o Partial model
+   * @param scale Factor for the weights of the partial model
+   */
+  private void merge(SphericalGaussianModel o, double scale) {
+    final double owsum = o.wsum * scale;
+    if(!(owsum >= Double.MIN_NORMAL)) {
+      return;
+    }
+    final double nwsum = wsum + owsum;
+    final double f = owsum / nwsum, g = wsum * f;
+    double sq = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      sq += delta * delta;
+      mean[i] += delta * f;
+    }
+    variance += o.variance * scale + sq * g;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
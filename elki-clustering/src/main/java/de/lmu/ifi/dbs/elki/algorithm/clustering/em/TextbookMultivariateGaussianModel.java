@@ -42,7 +42,7 @@ import net.jafama.FastMath;
  *
  * @author Erich Schubert
  */
-public class TextbookMultivariateGaussianModel implements EMClusterModel<EMModel> {
+public class TextbookMultivariateGaussianModel implements EMClusterModel.PartialE<EMModel> {
   /**
    * Class logger.
    */
@@ -121,6 +121,17 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<EMModel
     updateCholesky();
   }
 
+  /**
+   * Constructor for partial models, see {@link #newPartialE()}.
+   * 
+   * @param dim Dimensionality
+   */
+  private TextbookMultivariateGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.tmp = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -151,6 +162,34 @@ public class TextbookMultivariateGaussianModel implements EMClusterModel<EMModel
     wsum += wei;
   }
 
+  @Override
+  public TextbookMultivariateGaussianModel newPartialE() {
+    return new TextbookMultivariateGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeInto(EMClusterModel<?> model, double scale) {
+    ((TextbookMultivariateGaussianModel) model).merge(this, scale);
+  }
+
+  /**
+   * Merge the statistics of a partial model.
+   *
+   * @param o Partial model
+   * @param scale Factor for the weights of the partial model
+   */
+  private void merge(TextbookMultivariateGaussianModel o, double scale) {
+    // Naive aggregates are simply added:
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += o.mean[i] * scale;
+      final double[] cov_i = covariance[i], ocov_i = o.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] * scale;
+      }
+    }
+    wsum += o.wsum * scale;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     this.weight = weight;
@@ -39,7 +39,7 @@ import net.jafama.FastMath;
  * 
  * @author Erich Schubert
  */
-public class TwoPassMultivariateGaussianModel implements EMClusterModel<EMModel> {
+public class TwoPassMultivariateGaussianModel implements EMClusterModel.PartialE<EMModel> {
   /**
    * Class logger.
    */
@@ -90,6 +90,11 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<EMModel>
    */
   double[][] priormatrix;
 
+  /**
+   * Flag whether the first pass has been finished, and the mean is final.
+   */
+  boolean centered;
+
   /**
    * Constructor.
    * 
@@ -118,11 +123,25 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<EMModel>
     updateCholesky();
   }
 
+  /**
+   * Constructor for partial models, see {@link #newPartialE()}.
+   * 
+   * @param mean Mean (for the second pass), or zeros
+   * @param centered Flag for the second pass
+   */
+  private TwoPassMultivariateGaussianModel(double[] mean, boolean centered) {
+    this.mean = mean;
+    this.tmp = new double[mean.length];
+    this.covariance = new double[mean.length][mean.length];
+    this.centered = centered;
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
     clear(mean);
     clear(covariance);
+    centered = false;
   }
 
   @Override
@@ -157,6 +176,7 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<EMModel>
     for(int i = 0; i < mean.length; i++) {
       mean[i] *= s;
     }
+    centered = true;
   }
 
   /**
@@ -185,6 +205,41 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<EMModel>
     // Should we assert that the weight sum matches the first step?
   }
 
+  @Override
+  public TwoPassMultivariateGaussianModel newPartialE() {
+    return new TwoPassMultivariateGaussianModel(centered ? mean.clone() : new double[mean.length], centered);
+  }
+
+  @Override
+  public void mergeInto(EMClusterModel<?> model, double scale) {
+    ((TwoPassMultivariateGaussianModel) model).merge(this, scale);
+  }
+
+  /**
+   * Merge the statistics of a partial model.
+   *
+   * @param o Partial model
+   * @param scale Factor for the weights of the partial model
+   */
+  private void merge(TwoPassMultivariateGaussianModel o, double scale) {
+    assert (o.centered == centered);
+    if(!centered) {
+      // First pass: weighted sums
+      for(int i = 0; i < mean.length; i++) {
+        mean[i] += o.mean[i] * scale;
+      }
+      wsum += o.wsum * scale;
+      return;
+    }
+    // Second pass: centered on the same mean.
+    for(int i = 0; i < mean.length; i++) {
+      final double[] cov_i = covariance[i], ocov_i = o.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] * scale;
+      }
+    }
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     this.weight = weight;
@@ -25,6 +25,8 @@ import de.lmu.ifi.dbs.elki.algorithm.DistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.Linkage;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.SingleLinkage;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.WardLinkage;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.DoubleArrayMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
@@ -37,6 +39,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -112,11 +115,33 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    */
   private static final Logging LOG = Logging.getLogger(AGNES.class);
 
+  /**
+   * Minimum number of rows per parallel task when computing the initial
+   * distance matrix.
+   */
+  protected static final int MATRIX_ROW_BLOCK = 16;
+
+  /**
+   * Default minimum number of columns per parallel task when updating the
+   * matrix after a merge. Smaller active sets are always updated sequentially.
+   */
+  static final int UPDATE_BLOCK = 1 << 13;
+
   /**
    * Current linkage method in use.
    */
   Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Storage of the distance matrix.
+   */
+  TriangularMatrixStore.Factory storage = DoubleArrayMatrixStore.Factory.STATIC;
+
+  /**
+   * Minimum number of columns per parallel task when updating the matrix.
+   */
+  final int updateBlock;
+
   /**
    * Constructor.
    *
@@ -124,8 +149,34 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param linkage Linkage method
    */
   public AGNES(DistanceFunction<? super O> distanceFunction, Linkage linkage) {
+    this(distanceFunction, linkage, DoubleArrayMatrixStore.Factory.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   */
+  public AGNES(DistanceFunction<? super O> distanceFunction, Linkage linkage, TriangularMatrixStore.Factory storage) {
+    this(distanceFunction, linkage, storage, UPDATE_BLOCK);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   * @param updateBlock Minimum number of columns per parallel task when
+   *        updating the matrix
+   */
+  AGNES(DistanceFunction<? super O> distanceFunction, Linkage linkage, TriangularMatrixStore.Factory storage, int updateBlock) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.storage = storage;
+    this.updateBlock = updateBlock;
   }
 
   /**
@@ -144,24 +195,29 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
 
     // Compute the initial (lower triangular) distance matrix.
-    MatrixParadigm mat = new MatrixParadigm(ids);
-    initializeDistanceMatrix(mat, dq, linkage);
-
-    // Initialize space for result:
-    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
-
-    // Repeat until everything merged into 1 cluster
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
-    // Use end to shrink the matrix virtually as the tailing objects disappear
-    DBIDArrayIter ix = mat.ix;
-    for(int i = 1, end = size; i < size; i++) {
-      end = shrinkActiveSet(ix, builder, end, //
-          findMerge(end, mat, builder));
-      LOG.incrementProcessed(prog);
-    }
-    LOG.ensureCompleted(prog);
+    MatrixParadigm mat = new MatrixParadigm(ids, storage);
+    try {
+      initializeDistanceMatrix(mat, dq, linkage);
 
-    return builder.complete();
+      // Initialize space for result:
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
+
+      // Repeat until everything merged into 1 cluster
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      // Use end to shrink the matrix virtually as the tailing objects disappear
+      DBIDArrayIter ix = mat.ix;
+      for(int i = 1, end = size; i < size; i++) {
+        end = shrinkActiveSet(ix, builder, end, //
+            findMerge(end, mat, builder));
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+
+      return builder.complete();
+    }
+    finally {
+      mat.close();
+    }
   }
 
   /**
@@ -191,25 +247,24 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param linkage Linkage method
    */
   protected static void initializeDistanceMatrix(MatrixParadigm mat, DistanceQuery<?> dq, Linkage linkage) {
-    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
+    final TriangularMatrixStore matrix = mat.matrix;
     final boolean issquare = dq.getDistanceFunction().isSquared();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", matrix.length, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == MatrixParadigm.triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = linkage.initial(dq.distance(ix, iy), issquare);
+    final int size = mat.size;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", size, LOG) : null;
+    // Blocks of rows are processed independently, the longest rows first.
+    ParallelExecutor.run(size, MATRIX_ROW_BLOCK, (start, stop) -> {
+      final DBIDArrayIter ix = mat.ids.iter(), iy = mat.ids.iter();
+      for(int r = start; r < stop; r++) {
+        final int x = size - 1 - r;
+        long pos = MatrixParadigm.triangleSize(x);
+        for(ix.seek(x), iy.seek(0); iy.getOffset() < x; iy.advance()) {
+          matrix.set(pos++, linkage.initial(dq.distance(ix, iy), issquare));
+        }
       }
       if(prog != null) {
-        prog.setProcessed(pos, LOG);
+        prog.incrementProcessed(stop - start, LOG);
       }
-    }
-    // Avoid logging errors in case scratch space was too large:
-    if(prog != null) {
-      prog.setProcessed(matrix.length, LOG);
-    }
+    });
     LOG.ensureCompleted(prog);
   }
 
@@ -224,22 +279,39 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
   protected int findMerge(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     assert (end > 0);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
+    final TriangularMatrixStore matrix = mat.matrix;
+    final double[] array = mat.array;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
-    for(int ox = 0, xbase = 0; ox < end; xbase += ox++) {
+    long xbase = 0;
+    for(int ox = 0; ox < end; xbase += ox++) {
       // Skip if object has already joined a cluster:
       if(builder.isLinked(ix.seek(ox))) {
         continue;
       }
       assert (xbase == MatrixParadigm.triangleSize(ox));
+      if(array != null) { // Fast path for the default storage
+        for(int oy = 0, p = (int) xbase; oy < ox; oy++, p++) {
+          // Skip if object has already joined a cluster:
+          if(builder.isLinked(iy.seek(oy))) {
+            continue;
+          }
+          final double dist = array[p];
+          if(dist <= mindist) { // Prefer later on ==, to truncate more often.
+            mindist = dist;
+            x = ox;
+            y = oy;
+          }
+        }
+        continue;
+      }
       for(int oy = 0; oy < ox; oy++) {
         // Skip if object has already joined a cluster:
         if(builder.isLinked(iy.seek(oy))) {
           continue;
         }
-        final double dist = matrix[xbase + oy];
+        final double dist = matrix.get(xbase + oy);
         if(dist <= mindist) { // Prefer later on ==, to truncate more often.
           mindist = dist;
           x = ox;
@@ -292,35 +364,119 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param sizey Old size of second cluster
    */
   protected void updateMatrix(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    // Every column only writes its own matrix cell, so blocks of columns can
+    // be updated independently, without changing the result.
+    ParallelExecutor.run(end, updateBlock, (start, stop) -> {
+      updateRange(start, stop, mat, builder, mindist, x, y, sizex, sizey);
+    });
+  }
+
+  /**
+   * Update a range of columns of the scratch distance matrix.
+   *
+   * @param start First column (inclusive)
+   * @param stop Last column (exclusive)
+   * @param mat Matrix view
+   * @param builder Hierarchy builder (to get cluster sizes)
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   */
+  private void updateRange(int start, int stop, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    if(mat.array != null) {
+      updateRange(start, stop, mat.array, mat.ids.iter(), builder, mindist, x, y, sizex, sizey);
+      return;
+    }
     // Update distance matrix. Note: y < x
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
-    double[] scratch = mat.matrix;
-    DBIDArrayIter ij = mat.ix;
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
+    final TriangularMatrixStore scratch = mat.matrix;
+    // Use a separate iterator, as this may run in parallel:
+    DBIDArrayIter ij = mat.ids.iter();
 
     // Write to (y, j), with j < y
-    int j = 0;
-    for(; j < y; j++) {
+    int j = start;
+    for(final int e = Math.min(y, stop); j < e; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       assert (j < y); // Otherwise, ybase + j is the wrong position!
+      final long yb = ybase + j;
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), builder.getSize(ij), mindist));
+    }
+    if(j == y) {
+      j++; // Skip y
+    }
+    // Write to (j, y), with y < j < x
+    long jbase = MatrixParadigm.triangleSize(j);
+    for(final int e = Math.min(x, stop); j < e; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), builder.getSize(ij), mindist));
+    }
+    if(j == x) {
+      jbase += j++; // Skip x
+    }
+    // Write to (j, y), with y < x < j
+    for(; j < stop; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), builder.getSize(ij), mindist));
+    }
+  }
+
+  /**
+   * Update a range of columns of the distance matrix, in the default array
+   * storage.
+   *
+   * @param start First column (inclusive)
+   * @param stop Last column (exclusive)
+   * @param scratch Matrix array
+   * @param ij Iterator to use
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   */
+  private void updateRange(int start, int stop, double[] scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    // Update distance matrix. Note: y < x
+    final int xbase = (int) MatrixParadigm.triangleSize(x);
+    final int ybase = (int) MatrixParadigm.triangleSize(y);
+
+    // Write to (y, j), with j < y
+    int j = start;
+    for(final int e = Math.min(y, stop); j < e; j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
       final int yb = ybase + j;
       scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], builder.getSize(ij), mindist);
     }
-    j++; // Skip y
+    if(j == y) {
+      j++; // Skip y
+    }
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
-    for(; j < x; jbase += j++) {
+    int jbase = (int) MatrixParadigm.triangleSize(j);
+    for(final int e = Math.min(x, stop); j < e; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int jb = jbase + y;
       scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], builder.getSize(ij), mindist);
     }
-    jbase += j++; // Skip x
+    if(j == x) {
+      jbase += j++; // Skip x
+    }
     // Write to (j, y), with y < x < j
-    for(; j < end; jbase += j++) {
+    for(; j < stop; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
@@ -355,11 +511,21 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Option ID for the distance matrix storage.
+     */
+    public static final OptionID MATRIX_ID = new OptionID("hierarchical.matrix", "Storage of the distance matrix, e.g., single precision or memory-mapped for large data sets.");
+
     /**
      * Current linkage in use.
      */
     protected Linkage linkage;
 
+    /**
+     * Distance matrix storage.
+     */
+    protected TriangularMatrixStore.Factory storage;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -373,11 +539,16 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      ObjectParameter<TriangularMatrixStore.Factory> storageP = new ObjectParameter<>(MATRIX_ID, TriangularMatrixStore.Factory.class, DoubleArrayMatrixStore.Factory.class);
+      if(config.grab(storageP)) {
+        storage = storageP.instantiateClass(config);
+      }
     }
 
     @Override
     protected AGNES<O> makeInstance() {
-      return new AGNES<>(distanceFunction, linkage);
+      return new AGNES<>(distanceFunction, linkage, storage);
     }
   }
 }
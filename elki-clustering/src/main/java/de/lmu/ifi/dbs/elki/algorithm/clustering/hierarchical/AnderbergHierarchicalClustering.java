@@ -27,6 +27,8 @@ import de.lmu.ifi.dbs.elki.algorithm.DistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.Linkage;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.SingleLinkage;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.WardLinkage;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.DoubleArrayMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
@@ -39,6 +41,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
@@ -88,6 +91,16 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    */
   Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Storage of the distance matrix.
+   */
+  TriangularMatrixStore.Factory storage = DoubleArrayMatrixStore.Factory.STATIC;
+
+  /**
+   * Minimum number of columns per parallel task when updating the matrix.
+   */
+  final int updateBlock;
+
   /**
    * Constructor.
    *
@@ -95,8 +108,34 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param linkage Linkage method
    */
   public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, Linkage linkage) {
+    this(distanceFunction, linkage, DoubleArrayMatrixStore.Factory.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, Linkage linkage, TriangularMatrixStore.Factory storage) {
+    this(distanceFunction, linkage, storage, AGNES.UPDATE_BLOCK);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   * @param updateBlock Minimum number of columns per parallel task when
+   *        updating the matrix
+   */
+  AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, Linkage linkage, TriangularMatrixStore.Factory storage, int updateBlock) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.storage = storage;
+    this.updateBlock = updateBlock;
   }
 
   /**
@@ -112,31 +151,41 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
-    final int size = ids.size();
-
-    // Position counter - must agree with computeOffset!
-    AGNES.initializeDistanceMatrix(mat, dq, linkage);
-
-    // Arrays used for caching:
-    double[] bestd = new double[size];
-    int[] besti = new int[size];
-    initializeNNCache(mat.matrix, bestd, besti);
-
-    // Initialize space for result:
-    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
-
-    // Repeat until everything merged into 1 cluster
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
-    DBIDArrayIter ix = mat.ix;
-    for(int i = 1, end = size; i < size; i++) {
-      end = AGNES.shrinkActiveSet(ix, builder, end, //
-          findMerge(end, mat, bestd, besti, builder));
-      LOG.incrementProcessed(prog);
-    }
-    LOG.ensureCompleted(prog);
+    MatrixParadigm mat = new MatrixParadigm(ids, storage);
+    try {
+      final int size = ids.size();
 
-    return builder.complete();
+      // Position counter - must agree with computeOffset!
+      AGNES.initializeDistanceMatrix(mat, dq, linkage);
+
+      // Arrays used for caching:
+      double[] bestd = new double[size];
+      int[] besti = new int[size];
+      if(mat.array != null) {
+        initializeNNCache(mat.array, bestd, besti);
+      }
+      else {
+        initializeNNCache(mat.matrix, bestd, besti);
+      }
+
+      // Initialize space for result:
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
+
+      // Repeat until everything merged into 1 cluster
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      DBIDArrayIter ix = mat.ix;
+      for(int i = 1, end = size; i < size; i++) {
+        end = AGNES.shrinkActiveSet(ix, builder, end, //
+            findMerge(end, mat, bestd, besti, builder));
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+
+      return builder.complete();
+    }
+    finally {
+      mat.close();
+    }
   }
 
   /**
@@ -146,6 +195,38 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param bestd Best distance
    * @param besti Best index
    */
+  private static void initializeNNCache(TriangularMatrixStore scratch, double[] bestd, int[] besti) {
+    final int size = bestd.length;
+    Arrays.fill(bestd, Double.POSITIVE_INFINITY);
+    Arrays.fill(besti, -1);
+    long p = 0;
+    for(int x = 0; x < size; x++) {
+      assert (p == MatrixParadigm.triangleSize(x));
+      double bestdx = Double.POSITIVE_INFINITY;
+      int bestix = -1;
+      for(int y = 0; y < x; y++, p++) {
+        final double v = scratch.get(p);
+        if(v < bestd[y]) {
+          bestd[y] = v;
+          besti[y] = x;
+        }
+        if(v < bestdx) {
+          bestdx = v;
+          bestix = y;
+        }
+      }
+      bestd[x] = bestdx;
+      besti[x] = bestix;
+    }
+  }
+
+  /**
+   * Initialize the NN cache, from the default array storage.
+   *
+   * @param scratch Scratch space
+   * @param bestd Best distance
+   * @param besti Best index
+   */
   private static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
@@ -234,10 +315,14 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     // Deactivate x in cache:
     besti[x] = -1;
 
-    // Note: this changes iy.
-    updateMatrix(size, mat.matrix, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    updateMatrix(size, mat, bestd, besti, builder, mindist, x, y, sizex, sizey);
     if(besti[y] == x) {
-      findBest(size, mat.matrix, bestd, besti, y);
+      if(mat.array != null) {
+        findBest(size, mat.array, bestd, besti, y);
+      }
+      else {
+        findBest(size, mat.matrix, bestd, besti, y);
+      }
     }
   }
 
@@ -245,8 +330,105 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * Update the scratch distance matrix.
    *
    * @param size Data set size
-   * @param scratch Scratch matrix.
-   * @param ij Iterator to reuse
+   * @param mat Matrix paradigm
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   */
+  protected void updateMatrix(int size, MatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    // Every column only modifies its own matrix cell and cache entry, and the
+    // cache of other columns is only checked for being active, which does not
+    // change here. Blocks of columns can thus be updated independently.
+    ParallelExecutor.run(size, updateBlock, (start, stop) -> {
+      updateRange(start, stop, size, mat, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    });
+  }
+
+  /**
+   * Update a range of columns of the scratch distance matrix.
+   *
+   * @param start First column (inclusive)
+   * @param stop Last column (exclusive)
+   * @param size Data set size
+   * @param mat Matrix paradigm
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   */
+  private void updateRange(int start, int stop, int size, MatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    if(mat.array != null) {
+      updateRange(start, stop, size, mat.array, mat.ids.iter(), bestd, besti, builder, mindist, x, y, sizex, sizey);
+      return;
+    }
+    // Update distance matrix. Note: miny < minx
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
+    final TriangularMatrixStore scratch = mat.matrix;
+    // Use a separate iterator, as this may run in parallel:
+    DBIDArrayIter ij = mat.ids.iter();
+
+    // Write to (y, j), with j < y
+    int j = start;
+    for(final int e = Math.min(y, stop); j < e; j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final int sizej = builder.getSize(ij);
+      final long yb = ybase + j;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist);
+      scratch.set(yb, d);
+      updateCache(size, scratch, bestd, besti, x, y, j, d);
+    }
+    if(j == y) {
+      j++; // Skip y
+    }
+    // Write to (j, y), with y < j < x
+    long jbase = MatrixParadigm.triangleSize(j);
+    for(final int e = Math.min(x, stop); j < e; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final int sizej = builder.getSize(ij);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      updateCache(size, scratch, bestd, besti, x, y, j, d);
+    }
+    if(j == x) {
+      jbase += j++; // Skip x
+    }
+    // Write to (j, y), with y < x < j
+    for(; j < stop; jbase += j++) {
+      if(builder.isLinked(ij.seek(j))) {
+        continue;
+      }
+      final int sizej = builder.getSize(ij);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      updateCache(size, scratch, bestd, besti, x, y, j, d);
+    }
+  }
+
+  /**
+   * Update a range of columns of the scratch distance matrix, in the default
+   * array storage.
+   *
+   * @param start First column (inclusive)
+   * @param stop Last column (exclusive)
+   * @param size Data set size
+   * @param scratch Matrix array
+   * @param ij Iterator to use
    * @param bestd Best distance
    * @param besti Index of best distance
    * @param builder Hierarchy builder
@@ -256,14 +438,14 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  private void updateRange(int start, int stop, int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
+    final int xbase = (int) MatrixParadigm.triangleSize(x);
+    final int ybase = (int) MatrixParadigm.triangleSize(y);
 
     // Write to (y, j), with j < y
-    int j = 0;
-    for(; j < y; j++) {
+    int j = start;
+    for(final int e = Math.min(y, stop); j < e; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
@@ -272,10 +454,12 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
-    j++; // Skip y
+    if(j == y) {
+      j++; // Skip y
+    }
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
-    for(; j < x; jbase += j++) {
+    int jbase = (int) MatrixParadigm.triangleSize(j);
+    for(final int e = Math.min(x, stop); j < e; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
@@ -284,9 +468,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
-    jbase += j++; // Skip x
+    if(j == x) {
+      jbase += j++; // Skip x
+    }
     // Write to (j, y), with y < x < j
-    for(; j < size; jbase += j++) {
+    for(; j < stop; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
@@ -309,6 +495,31 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param j Updated value d(y, j)
    * @param d New distance
    */
+  private void updateCache(int size, TriangularMatrixStore scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+    // New best
+    if(d <= bestd[j]) {
+      bestd[j] = d;
+      besti[j] = y;
+      return;
+    }
+    // Needs slow update.
+    if(besti[j] == x || besti[j] == y) {
+      findBest(size, scratch, bestd, besti, j);
+    }
+  }
+
+  /**
+   * Update the cache, for the default array storage.
+   *
+   * @param size Working set size
+   * @param scratch Scratch matrix
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param x First cluster
+   * @param y Second cluster, {@code y < x}
+   * @param j Updated value d(y, j)
+   * @param d New distance
+   */
   private void updateCache(int size, double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
     // New best
     if(d <= bestd[j]) {
@@ -322,8 +533,49 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
   }
 
+  protected void findBest(int size, TriangularMatrixStore scratch, double[] bestd, int[] besti, int j) {
+    final long jbase = MatrixParadigm.triangleSize(j);
+    // The distance has increased, we may no longer be the best merge.
+    double bestdj = Double.POSITIVE_INFINITY;
+    int bestij = -1;
+    long o = jbase;
+    for(int i = 0; i < j; i++, o++) {
+      if(besti[i] < 0) {
+        continue;
+      }
+      final double dist = scratch.get(o);
+      if(dist <= bestdj) {
+        bestdj = dist;
+        bestij = i;
+      }
+    }
+    o = jbase + j + j;
+    for(int i = j + 1; i < size; o += i, i++) {
+      // assert(o == MatrixParadigm.triangleSize(i) + j);
+      if(besti[i] < 0) {
+        continue;
+      }
+      final double dist = scratch.get(o);
+      if(dist <= bestdj) {
+        bestdj = dist;
+        bestij = i;
+      }
+    }
+    bestd[j] = bestdj;
+    besti[j] = bestij;
+  }
+
+  /**
+   * Find the best merge partner of a cluster, in the default array storage.
+   *
+   * @param size Working set size
+   * @param scratch Scratch matrix
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param j Cluster to update
+   */
   protected void findBest(int size, double[] scratch, double[] bestd, int[] besti, int j) {
-    final int jbase = MatrixParadigm.triangleSize(j);
+    final int jbase = (int) MatrixParadigm.triangleSize(j);
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
@@ -338,7 +590,6 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       }
     }
     for(int i = j + 1, o = jbase + j + j; i < size; o += i, i++) {
-      // assert(o == MatrixParadigm.triangleSize(i) + j);
       if(besti[i] < 0) {
         continue;
       }
@@ -378,6 +629,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
      */
     protected Linkage linkage;
 
+    /**
+     * Distance matrix storage.
+     */
+    protected TriangularMatrixStore.Factory storage;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -391,11 +647,16 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      ObjectParameter<TriangularMatrixStore.Factory> storageP = new ObjectParameter<>(AGNES.Parameterizer.MATRIX_ID, TriangularMatrixStore.Factory.class, DoubleArrayMatrixStore.Factory.class);
+      if(config.grab(storageP)) {
+        storage = storageP.instantiateClass(config);
+      }
     }
 
     @Override
     protected AnderbergHierarchicalClustering<O> makeInstance() {
-      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage);
+      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage, storage);
     }
   }
 }
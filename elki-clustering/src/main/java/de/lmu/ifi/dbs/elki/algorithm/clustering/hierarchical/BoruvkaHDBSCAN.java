@@ -0,0 +1,600 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+
+/**
+ * HDBSCAN clustering for vector data, using Borůvka's algorithm on a k-d-tree
+ * to compute the minimum spanning tree of the mutual reachability graph.
+ * <p>
+ * The core distances are computed with bulk kNN queries (and thus use any
+ * available index), in parallel. In every Borůvka round, each point then
+ * searches its nearest neighbor in a different component with respect to
+ * mutual reachability. The k-d-tree prunes subtrees that only contain points
+ * of the same component, or whose bounding box and minimum core distance
+ * exceed the current candidate. These searches are independent, and run on
+ * all available threads; the cheapest edge of each component is then added to
+ * the spanning tree. Ties are broken by object index, so the spanning tree is
+ * minimal and does not depend on the number of threads.
+ * <p>
+ * The result is converted to the same pointer representation as produced by
+ * {@link HDBSCANLinearMemory}.
+ * <p>
+ * Reference:
+ * <p>
+ * R. J. G. B. Campello, D. Moulavi, J. Sander<br>
+ * Density-Based Clustering Based on Hierarchical Density Estimates<br>
+ * Pacific-Asia Conf. Advances in Knowledge Discovery and Data Mining (PAKDD)
+ * <p>
+ * L. McInnes, J. Healy<br>
+ * Accelerated Hierarchical Density Based Clustering<br>
+ * IEEE Int. Conf. Data Mining Workshops (ICDMW)
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @has - - - PointerDensityHierarchyRepresentationResult
+ * @composed - - - MutualReachabilityTree
+ *
+ * @param <O> Vector type
+ */
+@Title("HDBSCAN with Borůvka's minimum spanning tree")
+@Reference(authors = "L. McInnes, J. Healy", //
+    title = "Accelerated Hierarchical Density Based Clustering", //
+    booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW)", //
+    url = "https://doi.org/10.1109/ICDMW.2017.12", //
+    bibkey = "DBLP:conf/icdm/McInnesH17")
+public class BoruvkaHDBSCAN<O extends NumberVector> extends AbstractHDBSCAN<O, PointerDensityHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(BoruvkaHDBSCAN.class);
+
+  /**
+   * Number of objects per bulk kNN query.
+   */
+  private static final int KNN_BLOCK = 256;
+
+  /**
+   * Minimum number of objects per parallel task in the Borůvka rounds.
+   */
+  private static final int SEARCH_BLOCK = 64;
+
+  /**
+   * Maximum size of k-d-tree leaves.
+   */
+  private static final int LEAFSIZE = 16;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public BoruvkaHDBSCAN(DistanceFunction<? super O> distanceFunction, int minPts) {
+    super(distanceFunction, minPts);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    if(!(getDistanceFunction() instanceof SpatialPrimitiveDistanceFunction<?>)) {
+      throw new IllegalArgumentException("Distance Function must be an instance of " + SpatialPrimitiveDistanceFunction.class.getName());
+    }
+    @SuppressWarnings("unchecked")
+    final SpatialPrimitiveDistanceFunction<? super O> df = (SpatialPrimitiveDistanceFunction<? super O>) getDistanceFunction();
+    final DistanceQuery<O> distQ = db.getDistanceQuery(relation, getDistanceFunction());
+    final KNNQuery<O> knnQ = db.getKNNQuery(distQ, minPts);
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    // 1. Compute the core distances
+    final double[] core = computeCoreDists(ids, knnQ);
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      coredists.putDouble(it, core[it.getOffset()]);
+    }
+
+    // 2. Build spanning tree.
+    final int numedges = size > 0 ? size - 1 : 0;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+    if(size > 1) {
+      MutualReachabilityTree<O> tree = new MutualReachabilityTree<>(relation, ids, core, df);
+      boruvka(tree, heap);
+    }
+
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distQ.getDistanceFunction().isSquared(), coredists);
+  }
+
+  /**
+   * Compute the core distances for all objects, using bulk kNN queries.
+   *
+   * @param ids Objects
+   * @param knnQ kNN query
+   * @return Core distances, by offset
+   */
+  protected double[] computeCoreDists(ArrayDBIDs ids, KNNQuery<O> knnQ) {
+    final double[] core = new double[ids.size()];
+    FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Computing core sizes", ids.size(), LOG) : null;
+    ParallelExecutor.run(ids.size(), KNN_BLOCK, (start, end) -> {
+      for(int i = start; i < end; i += KNN_BLOCK) {
+        final int stop = Math.min(i + KNN_BLOCK, end);
+        List<? extends KNNList> knns = knnQ.getKNNForBulkDBIDs(ids.slice(i, stop), minPts);
+        for(int j = i; j < stop; j++) {
+          core[j] = knns.get(j - i).getKNNDistance();
+        }
+      }
+      if(cprog != null) {
+        cprog.incrementProcessed(end - start, LOG);
+      }
+    });
+    LOG.ensureCompleted(cprog);
+    return core;
+  }
+
+  /**
+   * Compute the minimum spanning tree with Borůvka's algorithm.
+   *
+   * @param tree Search tree
+   * @param heap Output heap, with edges encoded as in {@link HeapMSTCollector}
+   */
+  private void boruvka(MutualReachabilityTree<O> tree, DoubleLongHeap heap) {
+    final int size = tree.size();
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", size - 1, LOG) : null;
+    WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+    for(int i = 0; i < size; i++) {
+      uf.nextIndex(1);
+    }
+    final int[] comp = tree.comp;
+    final double[] bestd = new double[size];
+    final int[] besti = new int[size];
+    // Best candidate of each component, by component root:
+    final int[] cbest = new int[size];
+    Arrays.fill(cbest, -1);
+    int edges = 0;
+    while(edges < size - 1) {
+      for(int p = 0; p < size; p++) {
+        comp[p] = uf.find(p);
+      }
+      tree.updateComponents();
+      // Find the nearest neighbor in another component, for each point.
+      ParallelExecutor.run(size, SEARCH_BLOCK, (start, end) -> {
+        MutualReachabilityTree<O>.Search search = tree.new Search();
+        for(int p = start; p < end; p++) {
+          search.run(p);
+          bestd[p] = search.bestd;
+          besti[p] = search.besti;
+        }
+      });
+      // Best edge of each component:
+      for(int p = 0; p < size; p++) {
+        final int c = comp[p], q = cbest[c];
+        if(besti[p] >= 0 && (q < 0 || less(bestd[p], p, besti[p], bestd[q], q, besti[q]))) {
+          cbest[c] = p;
+        }
+      }
+      final int before = edges;
+      for(int c = 0; c < size; c++) {
+        final int p = cbest[c];
+        if(p < 0) {
+          continue;
+        }
+        cbest[c] = -1;
+        final int q = besti[p];
+        // The same edge may have been chosen by both components.
+        if(uf.isConnected(p, q)) {
+          continue;
+        }
+        uf.union(p, q);
+        final int i = tree.order[p], j = tree.order[q];
+        heap.add(bestd[p], (((long) i) << 31) | j);
+        ++edges;
+        LOG.incrementProcessed(mprog);
+      }
+      if(edges == before) {
+        throw new IllegalStateException("Borůvka round did not add any edges.");
+      }
+    }
+    LOG.ensureCompleted(mprog);
+  }
+
+  /**
+   * Total order on edges: by length, then by smaller and larger index.
+   *
+   * @param d1 First edge length
+   * @param a1 First edge endpoint
+   * @param b1 First edge endpoint
+   * @param d2 Second edge length
+   * @param a2 Second edge endpoint
+   * @param b2 Second edge endpoint
+   * @return {@code true} if the first edge is smaller
+   */
+  protected static boolean less(double d1, int a1, int b1, double d2, int a2, int b2) {
+    if(d1 != d2) {
+      return d1 < d2;
+    }
+    final int min1 = Math.min(a1, b1), min2 = Math.min(a2, b2);
+    return min1 < min2 || (min1 == min2 && Math.max(a1, b1) < Math.max(a2, b2));
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Static k-d-tree for mutual reachability searches. The points are reordered
+   * into tree order; all arrays are indexed by this position.
+   *
+   * @author agent
+   *
+   * @param <O> Vector type
+   */
+  protected static class MutualReachabilityTree<O extends NumberVector> implements QuickSelect.Adapter<List<O>> {
+    /**
+     * Vectors, in tree order.
+     */
+    final List<O> vecs;
+
+    /**
+     * Original offset of each position.
+     */
+    final int[] order;
+
+    /**
+     * Core distances, in tree order.
+     */
+    final double[] core;
+
+    /**
+     * Component of each position, maintained by the caller.
+     */
+    final int[] comp;
+
+    /**
+     * Distance function.
+     */
+    final SpatialPrimitiveDistanceFunction<? super O> df;
+
+    /**
+     * Node intervals.
+     */
+    int[] begin, end;
+
+    /**
+     * Right child of each node, -1 for leaves. The left child is the next
+     * node.
+     */
+    int[] right;
+
+    /**
+     * Component of all points in a node, or -1 if mixed.
+     */
+    int[] ncomp;
+
+    /**
+     * Minimum core distance in each node.
+     */
+    double[] mincore;
+
+    /**
+     * Bounding box of each node.
+     */
+    ModifiableHyperBoundingBox[] box;
+
+    /**
+     * Number of nodes.
+     */
+    int numnodes;
+
+    /**
+     * Current split axis, for partitioning.
+     */
+    private int axis;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     * @param core Core distances, by offset
+     * @param df Distance function
+     */
+    public MutualReachabilityTree(Relation<? extends O> relation, ArrayDBIDs ids, double[] core, SpatialPrimitiveDistanceFunction<? super O> df) {
+      final int size = ids.size();
+      this.df = df;
+      this.vecs = new ArrayList<>(size);
+      this.order = new int[size];
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        order[it.getOffset()] = it.getOffset();
+        vecs.add(relation.get(it));
+      }
+      // Every leaf has at least LEAFSIZE / 2 elements, except a tiny root.
+      final int cap = ((size / (LEAFSIZE >> 1)) + 1) << 1;
+      begin = new int[cap];
+      end = new int[cap];
+      right = new int[cap];
+      ncomp = new int[cap];
+      mincore = new double[cap];
+      box = new ModifiableHyperBoundingBox[cap];
+      this.core = new double[size];
+      this.comp = new int[size];
+      build(0, size, RelationUtil.dimensionality(relation), core);
+    }
+
+    /**
+     * Number of points.
+     *
+     * @return Size
+     */
+    public int size() {
+      return order.length;
+    }
+
+    /**
+     * Build a subtree.
+     *
+     * @param b Interval begin
+     * @param e Interval end
+     * @param dim Dimensionality
+     * @param cores Core distances, by original offset
+     * @return Node number
+     */
+    private int build(int b, int e, int dim, double[] cores) {
+      final int node = numnodes++;
+      begin[node] = b;
+      end[node] = e;
+      ModifiableHyperBoundingBox mbr = new ModifiableHyperBoundingBox(vecs.get(b));
+      for(int i = b + 1; i < e; i++) {
+        mbr.extend(vecs.get(i));
+      }
+      box[node] = mbr;
+      if(e - b <= LEAFSIZE) {
+        right[node] = -1;
+        double m = Double.POSITIVE_INFINITY;
+        for(int i = b; i < e; i++) {
+          m = Math.min(m, core[i] = cores[order[i]]);
+        }
+        mincore[node] = m;
+        return node;
+      }
+      // Split the widest dimension at the median.
+      double maxw = -1.;
+      for(int d = 0; d < dim; d++) {
+        final double w = mbr.getMax(d) - mbr.getMin(d);
+        if(w > maxw) {
+          maxw = w;
+          axis = d;
+        }
+      }
+      final int mid = (b + e) >>> 1;
+      QuickSelect.quickSelect(vecs, this, b, e, mid);
+      build(b, mid, dim, cores);
+      final int r = right[node] = build(mid, e, dim, cores);
+      mincore[node] = Math.min(mincore[node + 1], mincore[r]);
+      return node;
+    }
+
+    @Override
+    public void swap(List<O> data, int i, int j) {
+      Collections.swap(data, i, j);
+      final int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+    }
+
+    @Override
+    public boolean compareGreater(List<O> data, int i, int j) {
+      return data.get(i).doubleValue(axis) > data.get(j).doubleValue(axis);
+    }
+
+    /**
+     * Recompute the node components, after {@link #comp} was updated.
+     */
+    public void updateComponents() {
+      // Children always follow their parent.
+      for(int node = numnodes - 1; node >= 0; node--) {
+        final int r = right[node];
+        if(r >= 0) {
+          final int c = ncomp[node + 1];
+          ncomp[node] = c == ncomp[r] ? c : -1;
+          continue;
+        }
+        int c = comp[begin[node]];
+        for(int i = begin[node] + 1, e = end[node]; i < e; i++) {
+          if(comp[i] != c) {
+            c = -1;
+            break;
+          }
+        }
+        ncomp[node] = c;
+      }
+    }
+
+    /**
+     * Search for the nearest neighbor in a different component.
+     *
+     * @author agent
+     */
+    public class Search {
+      /**
+       * Query position.
+       */
+      private int p;
+
+      /**
+       * Query vector.
+       */
+      private O vp;
+
+      /**
+       * Component of the query point.
+       */
+      private int cp;
+
+      /**
+       * Core distance of the query point.
+       */
+      private double corep;
+
+      /**
+       * Best distance found.
+       */
+      double bestd;
+
+      /**
+       * Best position found, -1 if none.
+       */
+      int besti;
+
+      /**
+       * Search the nearest neighbor of a point.
+       *
+       * @param p Query position
+       */
+      public void run(int p) {
+        this.p = p;
+        this.vp = vecs.get(p);
+        this.cp = comp[p];
+        this.corep = core[p];
+        this.bestd = Double.POSITIVE_INFINITY;
+        this.besti = -1;
+        search(0);
+      }
+
+      /**
+       * Lower bound of the mutual reachability to a node.
+       *
+       * @param node Node
+       * @return Lower bound
+       */
+      private double bound(int node) {
+        final double c = Math.max(corep, mincore[node]);
+        return c > bestd ? c : Math.max(c, df.minDist(box[node], vp));
+      }
+
+      /**
+       * Search a subtree.
+       *
+       * @param node Node
+       */
+      private void search(int node) {
+        if(ncomp[node] == cp) {
+          return; // Same component only.
+        }
+        final int r = right[node];
+        if(r < 0) {
+          for(int q = begin[node], e = end[node]; q < e; q++) {
+            if(comp[q] == cp) {
+              continue;
+            }
+            double d = Math.max(corep, core[q]);
+            if(d > bestd) {
+              continue;
+            }
+            d = Math.max(d, df.distance(vp, vecs.get(q)));
+            if(besti < 0 || less(d, p, q, bestd, p, besti)) {
+              bestd = d;
+              besti = q;
+            }
+          }
+          return;
+        }
+        final int l = node + 1;
+        final double bl = bound(l), br = bound(r);
+        if(bl <= br) {
+          if(bl <= bestd) {
+            search(l);
+          }
+          if(br <= bestd) {
+            search(r);
+          }
+        }
+        else {
+          if(br <= bestd) {
+            search(r);
+          }
+          if(bl <= bestd) {
+            search(l);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author agent
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O extends NumberVector> extends AbstractHDBSCAN.Parameterizer<O> {
+    @Override
+    protected BoruvkaHDBSCAN<O> makeInstance() {
+      return new BoruvkaHDBSCAN<>(distanceFunction, minPts);
+    }
+  }
+}
@@ -20,12 +20,13 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.DoubleArrayMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * Shared code for algorithms that work on a strict matrix paradigm.
@@ -36,11 +37,20 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * the matrix view (indexed by integers 0...n-1).
  *
  * While this will usually store (merge-) distances when clustering, it can
- * store arbitrary doubles.
+ * store arbitrary doubles. The storage backend is pluggable, see
+ * {@link TriangularMatrixStore}; the default uses a single array, which limits
+ * the data set size to about 65536 objects.
  *
  * @author Erich Schubert
+ *
+ * @composed - - - TriangularMatrixStore
  */
 public class MatrixParadigm {
+  /**
+   * Object ids, in matrix order.
+   */
+  public final ArrayDBIDs ids;
+
   /**
    * Two iterators to reference to objects.
    */
@@ -49,7 +59,13 @@ public class MatrixParadigm {
   /**
    * Distance matrix (<b>modifiable</b>).
    */
-  public final double[] matrix;
+  public final TriangularMatrixStore matrix;
+
+  /**
+   * Backing array of the default in-memory storage, for direct access in inner
+   * loops; {@code null} for all other storages.
+   */
+  public final double[] array;
 
   /**
    * Number of rows/columns.
@@ -57,21 +73,27 @@ public class MatrixParadigm {
   public final int size;
 
   /**
-   * Constructor.
+   * Constructor, using the default array storage.
    *
    * @param ids Database ids.
    */
   public MatrixParadigm(DBIDs ids) {
+    this(ids, DoubleArrayMatrixStore.Factory.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids Database ids.
+   * @param storage Matrix storage factory
+   */
+  public MatrixParadigm(DBIDs ids, TriangularMatrixStore.Factory storage) {
     size = ids.size();
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-          0x10000 // = 65535
-          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-    ix = aids.iter();
-    iy = aids.iter();
-    matrix = new double[triangleSize(size)];
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
+    matrix = storage.make(triangleSize(size));
+    array = matrix instanceof DoubleArrayMatrixStore ? ((DoubleArrayMatrixStore) matrix).getData() : null;
   }
 
   /**
@@ -80,8 +102,8 @@ public class MatrixParadigm {
    * @param x Offset
    * @return Size of complete triangle
    */
-  public static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  public static long triangleSize(int x) {
+    return (((long) x) * (x - 1)) >>> 1;
   }
 
   /**
@@ -96,8 +118,8 @@ public class MatrixParadigm {
    */
   public double get(int x, int y) {
     return (x == y) ? 0 : (x < y) //
-        ? matrix[MatrixParadigm.triangleSize(y) + x] //
-        : matrix[MatrixParadigm.triangleSize(x) + y];
+        ? matrix.get(MatrixParadigm.triangleSize(y) + x) //
+        : matrix.get(MatrixParadigm.triangleSize(x) + y);
   }
 
   /**
@@ -108,15 +130,22 @@ public class MatrixParadigm {
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
     final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
+    final TriangularMatrixStore matrix = this.matrix;
+    long pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       final int x = ix.getOffset();
       assert (pos == triangleSize(x));
       for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
+        matrix.set(pos++, dq.distance(ix, iy));
       }
     }
     return this;
   }
+
+  /**
+   * Release the matrix storage.
+   */
+  public void close() {
+    matrix.close();
+  }
 }
@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
@@ -98,19 +99,24 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
 
     // Allocate working space:
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
-    initializeMatrices(mat, prots, dq);
-
-    DBIDArrayMIter protiter = prots.iter();
-    FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("MiniMax clustering", size - 1, LOG) : null;
-    DBIDArrayIter ix = mat.ix;
-    for(int i = 1, end = size; i < size; i++) {
-      end = AGNES.shrinkActiveSet(ix, builder, end, //
-          findMerge(end, mat, protiter, builder, clusters, dq));
-      LOG.incrementProcessed(progress);
+    try {
+      ArrayModifiableDBIDs prots = DBIDUtil.newArray((int) MatrixParadigm.triangleSize(size));
+      initializeMatrices(mat, prots, dq);
+
+      DBIDArrayMIter protiter = prots.iter();
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("MiniMax clustering", size - 1, LOG) : null;
+      DBIDArrayIter ix = mat.ix;
+      for(int i = 1, end = size; i < size; i++) {
+        end = AGNES.shrinkActiveSet(ix, builder, end, //
+            findMerge(end, mat, protiter, builder, clusters, dq));
+        LOG.incrementProcessed(progress);
+      }
+      LOG.ensureCompleted(progress);
+      return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
+    }
+    finally {
+      mat.close();
     }
-    LOG.ensureCompleted(progress);
-    return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
   }
 
   /**
@@ -121,11 +127,11 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
    */
   protected static <O> void initializeMatrices(MatrixParadigm mat, ArrayModifiableDBIDs prots, DistanceQuery<O> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final TriangularMatrixStore distances = mat.matrix;
     int pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        distances[pos] = dq.distance(ix, iy);
+        distances.set(pos, dq.distance(ix, iy));
         prots.add(iy);
         pos++;
       }
@@ -145,7 +151,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
    */
   protected static int findMerge(int end, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final TriangularMatrixStore distances = mat.matrix;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
 
@@ -154,7 +160,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
       if(builder.isLinked(ix.seek(dx))) {
         continue;
       }
-      final int xoffset = MatrixParadigm.triangleSize(dx);
+      final long xoffset = MatrixParadigm.triangleSize(dx);
 
       for(int dy = 0; dy < dx; dy++) {
         // Skip if object is already linked
@@ -162,7 +168,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
           continue;
         }
 
-        double dist = distances[xoffset + dy];
+        double dist = distances.get(xoffset + dy);
         if(dist < mindist) {
           mindist = dist;
           x = dx;
@@ -192,11 +198,11 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
   protected static void merge(int size, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
-    final double[] distances = mat.matrix;
-    int offset = MatrixParadigm.triangleSize(x) + y;
+    final TriangularMatrixStore distances = mat.matrix;
+    final int offset = (int) (MatrixParadigm.triangleSize(x) + y);
 
     if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances[offset]);
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances.get(offset));
     }
 
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
@@ -216,7 +222,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
     clusters.put(y, cy);
 
     // parent of x is set to y
-    builder.add(ix, distances[offset], iy, prots.seek(offset));
+    builder.add(ix, distances.get(offset), iy, prots.seek(offset));
 
     updateMatrices(size, mat, prots, builder, clusters, dq, y);
   }
@@ -272,7 +278,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
   protected static void updateEntry(MatrixParadigm mat, DBIDArrayMIter prots, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final TriangularMatrixStore distances = mat.matrix;
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
 
     DBIDVar prototype = DBIDUtil.newVar(ix.seek(x)); // Default prototype
@@ -295,8 +301,8 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
       prototype.set(ix);
     }
 
-    final int offset = MatrixParadigm.triangleSize(x) + y;
-    distances[offset] = minMaxDist;
+    final int offset = (int) (MatrixParadigm.triangleSize(x) + y);
+    distances.set(offset, minMaxDist);
     prots.seek(offset).setDBID(prototype);
   }
 
@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
@@ -97,13 +98,18 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>(ids.size());
 
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(ids.size()));
+    try {
+      ArrayModifiableDBIDs prots = DBIDUtil.newArray((int) MatrixParadigm.triangleSize(ids.size()));
 
-    MiniMax.initializeMatrices(mat, prots, dq);
+      MiniMax.initializeMatrices(mat, prots, dq);
 
-    nnChainCore(mat, prots.iter(), dq, builder, clusters);
+      nnChainCore(mat, prots.iter(), dq, builder, clusters);
 
-    return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
+      return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
+    }
+    finally {
+      mat.close();
+    }
   }
 
   /**
@@ -118,7 +124,7 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
    */
   private void nnChainCore(MatrixParadigm mat, DBIDArrayMIter prots, DistanceQuery<O> dq, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters) {
     final DBIDArrayIter ix = mat.ix;
-    final double[] distances = mat.matrix;
+    final TriangularMatrixStore distances = mat.matrix;
     final int size = mat.size;
     // The maximum chain size = number of ids + 1
     IntegerArray chain = new IntegerArray(size + 1);
@@ -153,10 +159,10 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
       double minDist = mat.get(a, b);
       do {
         int c = b;
-        final int ta = MatrixParadigm.triangleSize(a);
+        final long ta = MatrixParadigm.triangleSize(a);
         for(int i = 0; i < a; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[ta + i];
+            double dist = distances.get(ta + i);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -165,7 +171,7 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
         }
         for(int i = a + 1; i < size; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[MatrixParadigm.triangleSize(i) + a];
+            double dist = distances.get(MatrixParadigm.triangleSize(i) + a);
             if(dist < minDist) {
               minDist = dist;
               c = i;
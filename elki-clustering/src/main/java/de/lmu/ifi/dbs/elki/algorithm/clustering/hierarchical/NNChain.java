@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.Linkage;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.SingleLinkage;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
@@ -75,6 +76,17 @@ public class NNChain<O> extends AGNES<O> {
     super(distanceFunction, linkage);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, Linkage linkage, TriangularMatrixStore.Factory storage) {
+    super(distanceFunction, linkage, storage);
+  }
+
   /**
    * Run the algorithm
    * 
@@ -88,16 +100,20 @@ public class NNChain<O> extends AGNES<O> {
     }
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
-
-    // Compute the initial (lower triangular) distance matrix.
-    initializeDistanceMatrix(mat, dq, linkage);
+    MatrixParadigm mat = new MatrixParadigm(ids, storage);
+    try {
+      // Compute the initial (lower triangular) distance matrix.
+      initializeDistanceMatrix(mat, dq, linkage);
 
-    // Initialize space for result:
-    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
+      // Initialize space for result:
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
 
-    nnChainCore(mat, builder);
-    return builder.complete();
+      nnChainCore(mat, builder);
+      return builder.complete();
+    }
+    finally {
+      mat.close();
+    }
   }
 
   /**
@@ -109,7 +125,7 @@ public class NNChain<O> extends AGNES<O> {
    */
   private void nnChainCore(MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     final DBIDArrayIter ix = mat.ix;
-    final double[] distances = mat.matrix;
+    final TriangularMatrixStore distances = mat.matrix;
     final int size = mat.size;
     // The maximum chain size = number of ids + 1
     IntegerArray chain = new IntegerArray(size + 1);
@@ -144,10 +160,10 @@ public class NNChain<O> extends AGNES<O> {
       double minDist = mat.get(a, b);
       do {
         int c = b;
-        final int ta = MatrixParadigm.triangleSize(a);
+        final long ta = MatrixParadigm.triangleSize(a);
         for(int i = 0; i < a; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[ta + i];
+            double dist = distances.get(ta + i);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -156,7 +172,7 @@ public class NNChain<O> extends AGNES<O> {
         }
         for(int i = a + 1; i < size; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[MatrixParadigm.triangleSize(i) + a];
+            double dist = distances.get(MatrixParadigm.triangleSize(i) + a);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -222,7 +238,7 @@ public class NNChain<O> extends AGNES<O> {
   public static class Parameterizer<O> extends AGNES.Parameterizer<O> {
     @Override
     protected NNChain<O> makeInstance() {
-      return new NNChain<>(distanceFunction, linkage);
+      return new NNChain<>(distanceFunction, linkage, storage);
     }
   }
 }
@@ -0,0 +1,139 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Triangular matrix stored in multiple {@code double[]} chunks, to exceed the
+ * maximum array size of Java. The memory requirements are 8 bytes per entry,
+ * i.e., about 4 n² bytes for n objects.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ChunkedDoubleMatrixStore implements TriangularMatrixStore {
+  /**
+   * Default chunk size, as bit shift (1 GB chunks).
+   */
+  public static final int DEFAULT_CHUNK_SHIFT = 27;
+
+  /**
+   * Chunk size, as bit shift.
+   */
+  private final int shift;
+
+  /**
+   * Mask for the position within a chunk.
+   */
+  private final long mask;
+
+  /**
+   * Data chunks.
+   */
+  private double[][] chunks;
+
+  /**
+   * Number of entries.
+   */
+  private final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  public ChunkedDoubleMatrixStore(long size) {
+    this(size, DEFAULT_CHUNK_SHIFT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   * @param shift Chunk size, as bit shift
+   */
+  public ChunkedDoubleMatrixStore(long size, int shift) {
+    this.size = size;
+    this.shift = shift;
+    this.mask = (1L << shift) - 1;
+    final int numchunks = (int) ((size + mask) >>> shift);
+    chunks = new double[numchunks][];
+    for(int i = 0; i < numchunks; i++) {
+      chunks[i] = new double[(int) Math.min(mask + 1, size - ((long) i << shift))];
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public double get(long pos) {
+    return chunks[(int) (pos >>> shift)][(int) (pos & mask)];
+  }
+
+  @Override
+  public void set(long pos, double value) {
+    chunks[(int) (pos >>> shift)][(int) (pos & mask)] = value;
+  }
+
+  @Override
+  public void close() {
+    chunks = null;
+  }
+
+  /**
+   * Factory class.
+   *
+   * @author agent
+   *
+   * @has - - - ChunkedDoubleMatrixStore
+   */
+  @Alias({ "chunked" })
+  public static class Factory implements TriangularMatrixStore.Factory {
+    /**
+     * Static instance.
+     */
+    public static final Factory STATIC = new Factory();
+
+    @Override
+    public ChunkedDoubleMatrixStore make(long size) {
+      return new ChunkedDoubleMatrixStore(size);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author agent
+     *
+     * @hidden
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected Factory makeInstance() {
+        return STATIC;
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Triangular matrix stored in a single Java {@code double[]} array.
+ * <p>
+ * This is the fastest storage, but it is limited by the maximum array size of
+ * Java to about 65536 objects (~16 GB RAM).
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class DoubleArrayMatrixStore implements TriangularMatrixStore {
+  /**
+   * Maximum array size.
+   */
+  private static final long MAX_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Data storage.
+   */
+  private double[] data;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  public DoubleArrayMatrixStore(long size) {
+    if(size > MAX_SIZE) {
+      throw new AbortException("This matrix storage does not scale to data sets larger than " + //
+          0x10000 // = 65535
+          + " instances (~16 GB RAM), at which point the Java maximum array size is reached." //
+          + " Use a chunked, single precision, or memory-mapped matrix storage instead.");
+    }
+    this.data = new double[(int) size];
+  }
+
+  @Override
+  public long size() {
+    return data.length;
+  }
+
+  @Override
+  public double get(long pos) {
+    return data[(int) pos];
+  }
+
+  @Override
+  public void set(long pos, double value) {
+    data[(int) pos] = value;
+  }
+
+  @Override
+  public void close() {
+    data = null;
+  }
+
+  /**
+   * Get the underlying array, for direct access in inner loops.
+   *
+   * @return Data array (not a copy)
+   */
+  public double[] getData() {
+    return data;
+  }
+
+  /**
+   * Factory class.
+   *
+   * @author agent
+   *
+   * @has - - - DoubleArrayMatrixStore
+   */
+  @Alias({ "double", "array" })
+  public static class Factory implements TriangularMatrixStore.Factory {
+    /**
+     * Static instance.
+     */
+    public static final Factory STATIC = new Factory();
+
+    @Override
+    public DoubleArrayMatrixStore make(long size) {
+      return new DoubleArrayMatrixStore(size);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author agent
+     *
+     * @hidden
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected Factory makeInstance() {
+        return STATIC;
+      }
+    }
+  }
+}
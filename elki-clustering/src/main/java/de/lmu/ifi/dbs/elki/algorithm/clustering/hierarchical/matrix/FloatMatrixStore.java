@@ -0,0 +1,141 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Triangular matrix stored in single precision, in multiple {@code float[]}
+ * chunks. This halves the memory requirements to about 2 n² bytes for n
+ * objects, at the cost of rounding all (merge-) distances to single
+ * precision. Due to the reduced precision, ties may be resolved differently
+ * than with double precision storage.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class FloatMatrixStore implements TriangularMatrixStore {
+  /**
+   * Default chunk size, as bit shift (512 MB chunks).
+   */
+  public static final int DEFAULT_CHUNK_SHIFT = 27;
+
+  /**
+   * Chunk size, as bit shift.
+   */
+  private final int shift;
+
+  /**
+   * Mask for the position within a chunk.
+   */
+  private final long mask;
+
+  /**
+   * Data chunks.
+   */
+  private float[][] chunks;
+
+  /**
+   * Number of entries.
+   */
+  private final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  public FloatMatrixStore(long size) {
+    this(size, DEFAULT_CHUNK_SHIFT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   * @param shift Chunk size, as bit shift
+   */
+  public FloatMatrixStore(long size, int shift) {
+    this.size = size;
+    this.shift = shift;
+    this.mask = (1L << shift) - 1;
+    final int numchunks = (int) ((size + mask) >>> shift);
+    chunks = new float[numchunks][];
+    for(int i = 0; i < numchunks; i++) {
+      chunks[i] = new float[(int) Math.min(mask + 1, size - ((long) i << shift))];
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public double get(long pos) {
+    return chunks[(int) (pos >>> shift)][(int) (pos & mask)];
+  }
+
+  @Override
+  public void set(long pos, double value) {
+    chunks[(int) (pos >>> shift)][(int) (pos & mask)] = (float) value;
+  }
+
+  @Override
+  public void close() {
+    chunks = null;
+  }
+
+  /**
+   * Factory class.
+   *
+   * @author agent
+   *
+   * @has - - - FloatMatrixStore
+   */
+  @Alias({ "float", "float32" })
+  public static class Factory implements TriangularMatrixStore.Factory {
+    /**
+     * Static instance.
+     */
+    public static final Factory STATIC = new Factory();
+
+    @Override
+    public FloatMatrixStore make(long size) {
+      return new FloatMatrixStore(size);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author agent
+     *
+     * @hidden
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected Factory makeInstance() {
+        return STATIC;
+      }
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Triangular matrix stored in a temporary file, which is memory-mapped in
+ * chunks. The operating system will page the matrix in and out as necessary,
+ * so the matrix may exceed the main memory. Since the hierarchical clustering
+ * algorithms scan the matrix row by row, this works reasonably well if the
+ * page cache can hold a substantial part of the file, in particular on SSDs.
+ * <p>
+ * The file is unmapped and deleted when the storage is closed, so the storage
+ * must not be used afterwards. Always close the storage, even on errors, or
+ * the mappings and the file will only be released when the buffers are garbage
+ * collected, respectively when the JVM exits.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MappedMatrixStore implements TriangularMatrixStore {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedMatrixStore.class);
+
+  /**
+   * Default chunk size, as bit shift (at most 1 GB per mapping).
+   */
+  public static final int DEFAULT_CHUNK_SHIFT = 27;
+
+  /**
+   * Chunk size, as bit shift.
+   */
+  private final int shift;
+
+  /**
+   * Mask for the position within a chunk.
+   */
+  private final long mask;
+
+  /**
+   * Number of entries.
+   */
+  private final long size;
+
+  /**
+   * Storage file.
+   */
+  private final File file;
+
+  /**
+   * Random access file.
+   */
+  private RandomAccessFile raf;
+
+  /**
+   * File mappings, for unmapping.
+   */
+  private MappedByteBuffer[] maps;
+
+  /**
+   * Double precision chunks, or {@code null}.
+   */
+  private DoubleBuffer[] dchunks;
+
+  /**
+   * Single precision chunks, or {@code null}.
+   */
+  private FloatBuffer[] fchunks;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   * @param directory Directory for the temporary file, {@code null} for the
+   *        system default.
+   * @param single Use single precision
+   */
+  public MappedMatrixStore(long size, File directory, boolean single) {
+    this(size, directory, single, DEFAULT_CHUNK_SHIFT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   * @param directory Directory for the temporary file, {@code null} for the
+   *        system default.
+   * @param single Use single precision
+   * @param shift Chunk size, as bit shift
+   */
+  public MappedMatrixStore(long size, File directory, boolean single, int shift) {
+    this.size = size;
+    this.shift = shift;
+    this.mask = (1L << shift) - 1;
+    final int width = single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+    final int numchunks = (int) ((size + mask) >>> shift);
+    try {
+      file = File.createTempFile("elki-matrix", ".bin", directory);
+      file.deleteOnExit();
+      raf = new RandomAccessFile(file, "rw");
+      raf.setLength(size * width);
+      FileChannel channel = raf.getChannel();
+      maps = new MappedByteBuffer[numchunks];
+      if(single) {
+        fchunks = new FloatBuffer[numchunks];
+      }
+      else {
+        dchunks = new DoubleBuffer[numchunks];
+      }
+      for(int i = 0; i < numchunks; i++) {
+        final long start = (long) i << shift;
+        final long len = Math.min(mask + 1, size - start);
+        maps[i] = channel.map(MapMode.READ_WRITE, start * width, len * width);
+        if(single) {
+          fchunks[i] = maps[i].order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        else {
+          dchunks[i] = maps[i].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+      }
+    }
+    catch(IOException e) {
+      close();
+      throw new AbortException("Could not allocate the memory-mapped matrix file.", e);
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Using memory-mapped matrix storage: " + file + " (" + (size * width >>> 20) + " MB)");
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public double get(long pos) {
+    final int c = (int) (pos >>> shift), o = (int) (pos & mask);
+    return fchunks != null ? fchunks[c].get(o) : dchunks[c].get(o);
+  }
+
+  @Override
+  public void set(long pos, double value) {
+    final int c = (int) (pos >>> shift), o = (int) (pos & mask);
+    if(fchunks != null) {
+      fchunks[c].put(o, (float) value);
+    }
+    else {
+      dchunks[c].put(o, value);
+    }
+  }
+
+  @Override
+  public void close() {
+    dchunks = null;
+    fchunks = null;
+    // Unmap before deleting the file, as the mappings would otherwise keep the
+    // disk space (and, on Windows, the file) until they are garbage collected.
+    // Do not force the pages to disk first: the file is deleted right after.
+    if(maps != null) {
+      for(MappedByteBuffer map : maps) {
+        if(map != null) {
+          ByteArrayUtil.releaseDirectBuffer(map);
+        }
+      }
+      maps = null;
+    }
+    if(raf != null) {
+      try {
+        raf.close();
+      }
+      catch(IOException e) {
+        LOG.exception(e);
+      }
+      raf = null;
+    }
+    if(file != null && !file.delete()) {
+      LOG.warning("Could not delete temporary matrix file: " + file);
+    }
+  }
+
+  /**
+   * Factory class.
+   *
+   * @author agent
+   *
+   * @has - - - MappedMatrixStore
+   */
+  @Alias({ "mapped", "mmap" })
+  public static class Factory implements TriangularMatrixStore.Factory {
+    /**
+     * Directory for temporary files, may be {@code null}.
+     */
+    private File directory;
+
+    /**
+     * Use single precision.
+     */
+    private boolean single;
+
+    /**
+     * Constructor.
+     *
+     * @param directory Directory for temporary files, may be {@code null}.
+     * @param single Use single precision
+     */
+    public Factory(File directory, boolean single) {
+      super();
+      this.directory = directory;
+      this.single = single;
+    }
+
+    @Override
+    public MappedMatrixStore make(long size) {
+      return new MappedMatrixStore(size, directory, single);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author agent
+     *
+     * @hidden
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      /**
+       * Directory for the temporary matrix file.
+       */
+      public static final OptionID DIRECTORY_ID = new OptionID("matrix.mapped.directory", "Directory for the temporary matrix file. Defaults to the system temporary directory.");
+
+      /**
+       * Store single precision values.
+       */
+      public static final OptionID SINGLE_ID = new OptionID("matrix.mapped.float", "Store single precision values, to halve the file size.");
+
+      /**
+       * Directory for temporary files, may be {@code null}.
+       */
+      private File directory;
+
+      /**
+       * Use single precision.
+       */
+      private boolean single;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        FileParameter directoryP = new FileParameter(DIRECTORY_ID, FileParameter.FileType.OUTPUT_FILE);
+        directoryP.setOptional(true);
+        if(config.grab(directoryP)) {
+          directory = directoryP.getValue();
+        }
+        Flag singleF = new Flag(SINGLE_ID);
+        if(config.grab(singleF)) {
+          single = singleF.isTrue();
+        }
+      }
+
+      @Override
+      protected Factory makeInstance() {
+        return new Factory(directory, single);
+      }
+    }
+  }
+}
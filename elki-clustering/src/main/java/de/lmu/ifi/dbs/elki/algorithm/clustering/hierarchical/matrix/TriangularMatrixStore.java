@@ -0,0 +1,84 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+/**
+ * Storage for a strictly lower triangular matrix of doubles (i.e., without the
+ * diagonal), linearized row by row: the entry at (x, y) with {@code y < x} is
+ * stored at position {@code x * (x - 1) / 2 + y}.
+ * <p>
+ * Positions are {@code long}, so that implementations can exceed the maximum
+ * Java array size. Implementations need not be thread safe, except that
+ * concurrent writes to different positions must be supported.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @has - - - Factory
+ */
+public interface TriangularMatrixStore extends AutoCloseable {
+  /**
+   * Number of stored entries.
+   *
+   * @return Number of entries
+   */
+  long size();
+
+  /**
+   * Get the value at a linear position.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  double get(long pos);
+
+  /**
+   * Set the value at a linear position.
+   *
+   * @param pos Position
+   * @param value New value
+   */
+  void set(long pos, double value);
+
+  /**
+   * Release the storage.
+   */
+  @Override
+  void close();
+
+  /**
+   * Factory for triangular matrix storage.
+   *
+   * @author agent
+   *
+   * @stereotype factory
+   * @navassoc - create - TriangularMatrixStore
+   */
+  interface Factory {
+    /**
+     * Allocate storage.
+     *
+     * @param size Number of entries
+     * @return Storage, initialized with zeros
+     */
+    TriangularMatrixStore make(long size);
+  }
+}
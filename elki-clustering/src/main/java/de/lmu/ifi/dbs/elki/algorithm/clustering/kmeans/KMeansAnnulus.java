@@ -23,15 +23,13 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
-import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
-import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
@@ -94,10 +92,8 @@ public class KMeansAnnulus<V extends NumberVector> extends KMeansHamerly<V> {
   }
 
   @Override
-  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
-    Instance instance = new Instance(relation, getDistanceFunction(), initialMeans(database, relation));
-    instance.run(maxiter);
-    return instance.buildResult(varstat, relation);
+  protected Instance newInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, getDistanceFunction(), means);
   }
 
   /**
@@ -129,35 +125,29 @@ public class KMeansAnnulus<V extends NumberVector> extends KMeansHamerly<V> {
     }
 
     @Override
-    protected int initialAssignToNearestCluster() {
-      assert (k == means.length);
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        NumberVector fv = relation.get(it);
-        // Find closest center, and distance to two closest centers
-        double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
-        int minIndex = -1, secIndex = -1;
-        for(int i = 0; i < k; i++) {
-          double dist = distance(fv, DoubleVector.wrap(means[i]));
-          if(dist < min1) {
-            secIndex = minIndex;
-            minIndex = i;
-            min2 = min1;
-            min1 = dist;
-          }
-          else if(dist < min2) {
-            secIndex = i;
-            min2 = dist;
-          }
+    protected int initialAssign(DBIDRef it, NumberVector fv) {
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1, secIndex = -1;
+      for(int i = 0; i < k; i++) {
+        double dist = distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < min1) {
+          secIndex = minIndex;
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          secIndex = i;
+          min2 = dist;
         }
-        // Assign to nearest cluster.
-        clusters.get(minIndex).add(it);
-        assignment.putInt(it, minIndex);
-        second.putInt(it, secIndex);
-        plusEquals(sums[minIndex], fv);
-        upper.putDouble(it, isSquared ? FastMath.sqrt(min1) : min1);
-        lower.putDouble(it, isSquared ? FastMath.sqrt(min2) : min2);
       }
-      return relation.size();
+      // Assign to nearest cluster.
+      assignment.putInt(it, minIndex);
+      second.putInt(it, secIndex);
+      upper.putDouble(it, isSquared ? FastMath.sqrt(min1) : min1);
+      lower.putDouble(it, isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
     }
 
     /**
@@ -182,77 +172,73 @@ public class KMeansAnnulus<V extends NumberVector> extends KMeansHamerly<V> {
     }
 
     @Override
-    protected int assignToNearestCluster() {
-      assert (k == means.length);
+    protected void updateSeparation() {
       orderMeans();
-      int changed = 0;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        final int cur = assignment.intValue(it);
-        // Compute the current bound:
-        final double z = lower.doubleValue(it);
-        final double sa = sep[cur];
-        double u = upper.doubleValue(it);
-        if(u <= z || u <= sa) {
+    }
+
+    @Override
+    protected int reassign(DBIDRef it) {
+      final int cur = assignment.intValue(it);
+      // Compute the current bound:
+      final double z = lower.doubleValue(it);
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = distance(fv, DoubleVector.wrap(means[cur]));
+      u = isSquared ? FastMath.sqrt(curd2) : curd2;
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      final int sec = second.intValue(it);
+      double secd2 = distance(fv, DoubleVector.wrap(means[sec]));
+      double secd = isSquared ? FastMath.sqrt(secd2) : secd2;
+      double r = u > secd ? u : secd;
+      final double norm = EuclideanDistanceFunction.STATIC.norm(fv);
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = secd2;
+      int minIndex = cur, secIndex = sec;
+      if(curd2 > secd2) {
+        min1 = secd2;
+        min2 = curd2;
+        minIndex = sec;
+        secIndex = cur;
+      }
+      for(int i = 0; i < k; i++) {
+        int c = cnum[i];
+        if(c == cur || c == sec) {
           continue;
         }
-        // Update the upper bound
-        NumberVector fv = relation.get(it);
-        double curd2 = distance(fv, DoubleVector.wrap(means[cur]));
-        u = isSquared ? FastMath.sqrt(curd2) : curd2;
-        upper.putDouble(it, u);
-        if(u <= z || u <= sa) {
-          continue;
+        double d = cdist[i] - norm;
+        if(-d > r) {
+          continue; // Not yet a candidate
         }
-        final int sec = second.intValue(it);
-        double secd2 = distance(fv, DoubleVector.wrap(means[sec]));
-        double secd = isSquared ? FastMath.sqrt(secd2) : secd2;
-        double r = u > secd ? u : secd;
-        final double norm = EuclideanDistanceFunction.STATIC.norm(fv);
-        // Find closest center, and distance to two closest centers
-        double min1 = curd2, min2 = secd2;
-        int minIndex = cur, secIndex = sec;
-        if(curd2 > secd2) {
-          min1 = secd2;
-          min2 = curd2;
-          minIndex = sec;
-          secIndex = cur;
+        if(d > r) {
+          break; // No longer a candidate
         }
-        for(int i = 0; i < k; i++) {
-          int c = cnum[i];
-          if(c == cur || c == sec) {
-            continue;
-          }
-          double d = cdist[i] - norm;
-          if(-d > r) {
-            continue; // Not yet a candidate
-          }
-          if(d > r) {
-            break; // No longer a candidate
-          }
-          double dist = distance(fv, DoubleVector.wrap(means[c]));
-          if(dist < min1) {
-            secIndex = minIndex;
-            minIndex = c;
-            min2 = min1;
-            min1 = dist;
-          }
-          else if(dist < min2) {
-            secIndex = c;
-            min2 = dist;
-          }
+        double dist = distance(fv, DoubleVector.wrap(means[c]));
+        if(dist < min1) {
+          secIndex = minIndex;
+          minIndex = c;
+          min2 = min1;
+          min1 = dist;
         }
-        if(minIndex != cur) {
-          clusters.get(minIndex).add(it);
-          clusters.get(cur).remove(it);
-          assignment.putInt(it, minIndex);
-          second.putInt(it, secIndex);
-          plusMinusEquals(sums[minIndex], sums[cur], fv);
-          ++changed;
-          upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+        else if(dist < min2) {
+          secIndex = c;
+          min2 = dist;
         }
-        lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
       }
-      return changed;
+      if(minIndex != cur) {
+        assignment.putInt(it, minIndex);
+        second.putInt(it, secIndex);
+        upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+      }
+      lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
     }
 
     @Override
@@ -21,12 +21,10 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
-import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
-import de.lmu.ifi.dbs.elki.database.Database;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -80,10 +78,8 @@ public class KMeansElkan<V extends NumberVector> extends KMeansSimplifiedElkan<V
   }
 
   @Override
-  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
-    Instance instance = new Instance(relation, getDistanceFunction(), initialMeans(database, relation));
-    instance.run(maxiter);
-    return instance.buildResult(varstat, relation);
+  protected Instance newInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, getDistanceFunction(), means);
   }
 
   /**
@@ -109,54 +105,50 @@ public class KMeansElkan<V extends NumberVector> extends KMeansSimplifiedElkan<V
     }
 
     @Override
-    protected int assignToNearestCluster() {
-      assert (k == means.length);
+    protected void updateSeparation() {
       recomputeSeperation(sep, cdist); // #1
-      int changed = 0;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        final int orig = assignment.intValue(it);
-        double u = upper.doubleValue(it);
-        // Upper bound check (#2):
-        if(u <= sep[orig]) {
-          continue;
+    }
+
+    @Override
+    protected int reassign(DBIDRef it) {
+      final int orig = assignment.intValue(it);
+      double u = upper.doubleValue(it);
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        return orig;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      NumberVector fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
         }
-        boolean recompute_u = true; // Elkan's r(x)
-        NumberVector fv = relation.get(it);
-        double[] l = lower.get(it);
-        // Check all (other) means:
-        int cur = orig;
-        for(int j = 0; j < k; j++) {
-          if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
-            continue; // Condition #3 i-iii not satisfied
-          }
-          if(recompute_u) { // Need to update bound? #3a
-            u = distance(fv, DoubleVector.wrap(means[cur]));
-            u = isSquared ? FastMath.sqrt(u) : u;
-            upper.putDouble(it, u);
-            recompute_u = false; // Once only
-            if(u <= l[j] || u <= cdist[cur][j]) { // #3b
-              continue;
-            }
-          }
-          double dist = distance(fv, DoubleVector.wrap(means[j]));
-          dist = isSquared ? FastMath.sqrt(dist) : dist;
-          l[j] = dist;
-          if(dist < u) {
-            cur = j;
-            u = dist;
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance(fv, DoubleVector.wrap(means[cur]));
+          u = isSquared ? FastMath.sqrt(u) : u;
+          upper.putDouble(it, u);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
           }
         }
-        // Object is to be reassigned.
-        if(cur != orig) {
-          upper.putDouble(it, u); // Remember bound.
-          clusters.get(cur).add(it);
-          clusters.get(orig).remove(it);
-          assignment.putInt(it, cur);
-          plusMinusEquals(sums[cur], sums[orig], fv);
-          ++changed;
+        double dist = distance(fv, DoubleVector.wrap(means[j]));
+        dist = isSquared ? FastMath.sqrt(dist) : dist;
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
         }
       }
-      return changed;
+      // Object is to be reassigned.
+      if(cur != orig) {
+        upper.putDouble(it, u); // Remember bound.
+        assignment.putInt(it, cur);
+      }
+      return cur;
     }
 
     @Override
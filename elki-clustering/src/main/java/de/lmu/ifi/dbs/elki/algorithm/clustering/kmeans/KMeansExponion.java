@@ -21,15 +21,13 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
-import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
-import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -80,10 +78,8 @@ public class KMeansExponion<V extends NumberVector> extends KMeansHamerly<V> {
   }
 
   @Override
-  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
-    Instance instance = new Instance(relation, getDistanceFunction(), initialMeans(database, relation));
-    instance.run(maxiter);
-    return instance.buildResult(varstat, relation);
+  protected Instance newInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, getDistanceFunction(), means);
   }
 
   /**
@@ -114,64 +110,55 @@ public class KMeansExponion<V extends NumberVector> extends KMeansHamerly<V> {
       cnum = new int[k][k - 1];
     }
 
-    /**
-     * Reassign objects, but avoid unnecessary computations based on their
-     * bounds.
-     *
-     * @return number of objects reassigned
-     */
-    protected int assignToNearestCluster() {
-      assert (k == means.length);
+    @Override
+    protected void updateSeparation() {
       recomputeSeperation(sep, cdist);
       nearestMeans(cdist, cnum);
-      int changed = 0;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        final int cur = assignment.intValue(it);
-        // Compute the current bound:
-        final double z = lower.doubleValue(it);
-        final double sa = sep[cur];
-        double u = upper.doubleValue(it);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        // Update the upper bound
-        NumberVector fv = relation.get(it);
-        double curd2 = distance(fv, DoubleVector.wrap(means[cur]));
-        u = isSquared ? FastMath.sqrt(curd2) : curd2;
-        upper.putDouble(it, u);
-        if(u <= z || u <= sa) {
-          continue;
+    }
+
+    @Override
+    protected int reassign(DBIDRef it) {
+      final int cur = assignment.intValue(it);
+      // Compute the current bound:
+      final double z = lower.doubleValue(it);
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = distance(fv, DoubleVector.wrap(means[cur]));
+      u = isSquared ? FastMath.sqrt(curd2) : curd2;
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      double r = u + 0.5 * sa; // Our cdist are scaled 0.5
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = cur;
+      for(int i = 0; i < k - 1; i++) {
+        int c = cnum[cur][i];
+        if(cdist[cur][c] > r) {
+          break;
         }
-        double r = u + 0.5 * sa; // Our cdist are scaled 0.5
-        // Find closest center, and distance to two closest centers
-        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
-        int minIndex = cur;
-        for(int i = 0; i < k - 1; i++) {
-          int c = cnum[cur][i];
-          if(cdist[cur][c] > r) {
-            break;
-          }
-          double dist = distance(fv, DoubleVector.wrap(means[c]));
-          if(dist < min1) {
-            minIndex = c;
-            min2 = min1;
-            min1 = dist;
-          }
-          else if(dist < min2) {
-            min2 = dist;
-          }
+        double dist = distance(fv, DoubleVector.wrap(means[c]));
+        if(dist < min1) {
+          minIndex = c;
+          min2 = min1;
+          min1 = dist;
         }
-        if(minIndex != cur) {
-          clusters.get(minIndex).add(it);
-          clusters.get(cur).remove(it);
-          assignment.putInt(it, minIndex);
-          plusMinusEquals(sums[minIndex], sums[cur], fv);
-          ++changed;
-          upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+        else if(dist < min2) {
+          min2 = dist;
         }
-        lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
       }
-      return changed;
+      if(minIndex != cur) {
+        assignment.putInt(it, minIndex);
+        upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+      }
+      lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
     }
 
     @Override
@@ -32,6 +32,7 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -88,11 +89,22 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
 
   @Override
   public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
-    Instance instance = new Instance(relation, getDistanceFunction(), initialMeans(database, relation));
+    Instance instance = newInstance(relation, initialMeans(database, relation));
     instance.run(maxiter);
     return instance.buildResult(varstat, relation);
   }
 
+  /**
+   * Create the instance for processing a single data set.
+   *
+   * @param relation Relation
+   * @param means Initial means
+   * @return Instance
+   */
+  protected Instance newInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, getDistanceFunction(), means);
+  }
+
   /**
    * Inner instance, storing state for a single data set.
    *
@@ -102,7 +114,7 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Sum aggregate for the new mean.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Temporary storage for the new means.
@@ -160,30 +172,43 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
       assert (k == means.length);
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
         NumberVector fv = relation.get(it);
-        // Find closest center, and distance to two closest centers
-        double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
-        int minIndex = -1;
-        for(int i = 0; i < k; i++) {
-          double dist = distance(fv, DoubleVector.wrap(means[i]));
-          if(dist < min1) {
-            minIndex = i;
-            min2 = min1;
-            min1 = dist;
-          }
-          else if(dist < min2) {
-            min2 = dist;
-          }
-        }
-        // Assign to nearest cluster.
+        final int minIndex = initialAssign(it, fv);
         clusters.get(minIndex).add(it);
-        assignment.putInt(it, minIndex);
         plusEquals(sums[minIndex], fv);
-        upper.putDouble(it, isSquared ? FastMath.sqrt(min1) : min1);
-        lower.putDouble(it, isSquared ? FastMath.sqrt(min2) : min2);
       }
       return relation.size();
     }
 
+    /**
+     * Initial assignment of a single object, initializing its bounds. The
+     * caller is responsible for updating the clusters and sums.
+     *
+     * @param it Object
+     * @param fv Object vector
+     * @return Index of the nearest cluster
+     */
+    protected int initialAssign(DBIDRef it, NumberVector fv) {
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < k; i++) {
+        double dist = distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      // Assign to nearest cluster.
+      assignment.putInt(it, minIndex);
+      upper.putDouble(it, isSquared ? FastMath.sqrt(min1) : min1);
+      lower.putDouble(it, isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
+    }
+
     /**
      * Reassign objects, but avoid unnecessary computations based on their
      * bounds.
@@ -192,55 +217,78 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
      */
     protected int assignToNearestCluster() {
       assert (k == means.length);
-      recomputeSeperation(means, sep);
+      updateSeparation();
       int changed = 0;
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
         final int cur = assignment.intValue(it);
-        // Compute the current bound:
-        final double z = lower.doubleValue(it);
-        final double sa = sep[cur];
-        double u = upper.doubleValue(it);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        // Update the upper bound
-        NumberVector fv = relation.get(it);
-        double curd2 = distance(fv, DoubleVector.wrap(means[cur]));
-        u = isSquared ? FastMath.sqrt(curd2) : curd2;
-        upper.putDouble(it, u);
-        if(u <= z || u <= sa) {
-          continue;
-        }
-        // Find closest center, and distance to two closest centers
-        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
-        int minIndex = cur;
-        for(int i = 0; i < k; i++) {
-          if(i == cur) {
-            continue;
-          }
-          double dist = distance(fv, DoubleVector.wrap(means[i]));
-          if(dist < min1) {
-            minIndex = i;
-            min2 = min1;
-            min1 = dist;
-          }
-          else if(dist < min2) {
-            min2 = dist;
-          }
-        }
+        final int minIndex = reassign(it);
         if(minIndex != cur) {
           clusters.get(minIndex).add(it);
           clusters.get(cur).remove(it);
-          assignment.putInt(it, minIndex);
-          plusMinusEquals(sums[minIndex], sums[cur], fv);
+          plusMinusEquals(sums[minIndex], sums[cur], relation.get(it));
           ++changed;
-          upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
         }
-        lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
       }
       return changed;
     }
 
+    /**
+     * Update the separation of the cluster means before reassigning objects.
+     */
+    protected void updateSeparation() {
+      recomputeSeperation(means, sep);
+    }
+
+    /**
+     * Reassign a single object, but avoid unnecessary computations based on
+     * its bounds. The caller is responsible for updating the clusters and
+     * sums.
+     *
+     * @param it Object
+     * @return Index of the new cluster, the current cluster if unchanged
+     */
+    protected int reassign(DBIDRef it) {
+      final int cur = assignment.intValue(it);
+      // Compute the current bound:
+      final double z = lower.doubleValue(it);
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = distance(fv, DoubleVector.wrap(means[cur]));
+      u = isSquared ? FastMath.sqrt(curd2) : curd2;
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        return cur;
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = cur;
+      for(int i = 0; i < k; i++) {
+        if(i == cur) {
+          continue;
+        }
+        double dist = distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      if(minIndex != cur) {
+        assignment.putInt(it, minIndex);
+        upper.putDouble(it, min1 == curd2 ? u : isSquared ? FastMath.sqrt(min1) : min1);
+      }
+      lower.putDouble(it, min2 == curd2 ? u : isSquared ? FastMath.sqrt(min2) : min2);
+      return minIndex;
+    }
+
     /**
      * Recompute the separation of cluster means.
      * <p>
@@ -275,13 +323,23 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
      * @param delta Maximum center movement.
      */
     protected void updateBounds(double[] move, double delta) {
-      delta = -delta;
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        upper.increment(it, move[assignment.intValue(it)]);
-        lower.increment(it, delta);
+        updateBounds(it, move, delta);
       }
     }
 
+    /**
+     * Update the bounds of a single object.
+     *
+     * @param it Object
+     * @param move Movement of centers
+     * @param delta Maximum center movement.
+     */
+    protected void updateBounds(DBIDRef it, double[] move, double delta) {
+      upper.increment(it, move[assignment.intValue(it)]);
+      lower.increment(it, -delta);
+    }
+
     @Override
     protected Logging getLogger() {
       return LOG;
@@ -31,6 +31,7 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -90,11 +91,22 @@ public class KMeansSimplifiedElkan<V extends NumberVector> extends AbstractKMean
 
   @Override
   public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
-    Instance instance = new Instance(relation, getDistanceFunction(), initialMeans(database, relation));
+    Instance instance = newInstance(relation, initialMeans(database, relation));
     instance.run(maxiter);
     return instance.buildResult(varstat, relation);
   }
 
+  /**
+   * Create the instance for processing a single data set.
+   *
+   * @param relation Relation
+   * @param means Initial means
+   * @return Instance
+   */
+  protected Instance newInstance(Relation<V> relation, double[][] means) {
+    return new Instance(relation, getDistanceFunction(), means);
+  }
+
   /**
    * Inner instance, storing state for a single data set.
    *
@@ -114,7 +126,7 @@ public class KMeansSimplifiedElkan<V extends NumberVector> extends AbstractKMean
     /**
      * Sums of clusters.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Scratch space for new means.
@@ -166,28 +178,41 @@ public class KMeansSimplifiedElkan<V extends NumberVector> extends AbstractKMean
       assert (k == means.length);
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
         NumberVector fv = relation.get(it);
-        double[] l = lower.get(it);
-        // Check all (other) means:
-        double best = Double.POSITIVE_INFINITY;
-        int minIndex = -1;
-        for(int j = 0; j < k; j++) {
-          double dist = distance(fv, DoubleVector.wrap(means[j]));
-          dist = isSquared ? FastMath.sqrt(dist) : dist;
-          l[j] = dist;
-          if(dist < best) {
-            minIndex = j;
-            best = dist;
-          }
-        }
-        // Assign to nearest cluster.
+        final int minIndex = initialAssign(it, fv);
         clusters.get(minIndex).add(it);
-        assignment.putInt(it, minIndex);
-        upper.putDouble(it, best);
         plusEquals(sums[minIndex], fv);
       }
       return relation.size();
     }
 
+    /**
+     * Initial assignment of a single object, initializing its bounds. The
+     * caller is responsible for updating the clusters and sums.
+     *
+     * @param it Object
+     * @param fv Object vector
+     * @return Index of the nearest cluster
+     */
+    protected int initialAssign(DBIDRef it, NumberVector fv) {
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      double best = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int j = 0; j < k; j++) {
+        double dist = distance(fv, DoubleVector.wrap(means[j]));
+        dist = isSquared ? FastMath.sqrt(dist) : dist;
+        l[j] = dist;
+        if(dist < best) {
+          minIndex = j;
+          best = dist;
+        }
+      }
+      // Assign to nearest cluster.
+      assignment.putInt(it, minIndex);
+      upper.putDouble(it, best);
+      return minIndex;
+    }
+
     /**
      * Reassign objects, but avoid unnecessary computations based on their
      * bounds.
@@ -195,49 +220,75 @@ public class KMeansSimplifiedElkan<V extends NumberVector> extends AbstractKMean
      * @return number of objects reassigned
      */
     protected int assignToNearestCluster() {
+      assert (k == means.length);
+      updateSeparation();
       int changed = 0;
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
         final int orig = assignment.intValue(it);
-        double u = upper.doubleValue(it);
-        boolean recompute_u = true; // Elkan's r(x)
-        NumberVector fv = relation.get(it);
-        double[] l = lower.get(it);
-        // Check all (other) means:
-        int cur = orig;
-        for(int j = 0; j < k; j++) {
-          if(orig == j || u <= l[j]) {
-            continue; // Condition #3 i-iii not satisfied
-          }
-          if(recompute_u) { // Need to update bound? #3a
-            u = distance(fv, DoubleVector.wrap(means[cur]));
-            u = isSquared ? FastMath.sqrt(u) : u;
-            upper.putDouble(it, u);
-            recompute_u = false; // Once only
-            if(u <= l[j]) { // #3b
-              continue;
-            }
-          }
-          double dist = distance(fv, DoubleVector.wrap(means[j]));
-          dist = isSquared ? FastMath.sqrt(dist) : dist;
-          l[j] = dist;
-          if(dist < u) {
-            cur = j;
-            u = dist;
-          }
-        }
-        // Object is to be reassigned.
+        final int cur = reassign(it);
         if(cur != orig) {
-          upper.putDouble(it, u); // Remember bound.
           clusters.get(cur).add(it);
           clusters.get(orig).remove(it);
-          assignment.putInt(it, cur);
-          plusMinusEquals(sums[cur], sums[orig], fv);
+          plusMinusEquals(sums[cur], sums[orig], relation.get(it));
           ++changed;
         }
       }
       return changed;
     }
 
+    /**
+     * Update the separation of the cluster means before reassigning objects.
+     * Not used by the simplified variant.
+     */
+    protected void updateSeparation() {
+      // Nothing to do.
+    }
+
+    /**
+     * Reassign a single object, but avoid unnecessary computations based on
+     * its bounds. The caller is responsible for updating the clusters and
+     * sums.
+     *
+     * @param it Object
+     * @return Index of the new cluster, the current cluster if unchanged
+     */
+    protected int reassign(DBIDRef it) {
+      final int orig = assignment.intValue(it);
+      double u = upper.doubleValue(it);
+      boolean recompute_u = true; // Elkan's r(x)
+      NumberVector fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance(fv, DoubleVector.wrap(means[cur]));
+          u = isSquared ? FastMath.sqrt(u) : u;
+          upper.putDouble(it, u);
+          recompute_u = false; // Once only
+          if(u <= l[j]) { // #3b
+            continue;
+          }
+        }
+        double dist = distance(fv, DoubleVector.wrap(means[j]));
+        dist = isSquared ? FastMath.sqrt(dist) : dist;
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      // Object is to be reassigned.
+      if(cur != orig) {
+        upper.putDouble(it, u); // Remember bound.
+        assignment.putInt(it, cur);
+      }
+      return cur;
+    }
+
     /**
      * Update the bounds for k-means.
      *
@@ -245,11 +296,21 @@ public class KMeansSimplifiedElkan<V extends NumberVector> extends AbstractKMean
      */
     protected void updateBounds(double[] move) {
       for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        upper.increment(it, move[assignment.intValue(it)]);
-        VMath.minusEquals(lower.get(it), move);
+        updateBounds(it, move);
       }
     }
 
+    /**
+     * Update the bounds of a single object.
+     *
+     * @param it Object
+     * @param move Movement of centers
+     */
+    protected void updateBounds(DBIDRef it, double[] move) {
+      upper.increment(it, move[assignment.intValue(it)]);
+      VMath.minusEquals(lower.get(it), move);
+    }
+
     @Override
     protected Logging getLogger() {
       return LOG;
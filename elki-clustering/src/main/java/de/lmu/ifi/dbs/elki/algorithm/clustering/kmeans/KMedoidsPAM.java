@@ -37,6 +37,7 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.distance.CachedDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -142,6 +143,7 @@ public class KMedoidsPAM<V> extends AbstractDistanceBasedAlgorithm<V, Clustering
     Duration optd = getLogger().newDuration(getClass().getName() + ".optimization-time").begin();
     run(distQ, ids, medoids, assignment);
     getLogger().statistics(optd.end());
+    CachedDistanceQuery.logStatistics(distQ);
 
     ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, assignment, k);
 
@@ -232,8 +234,10 @@ public class KMedoidsPAM<V> extends AbstractDistanceBasedAlgorithm<V, Clustering
       this.distQ = distQ;
       this.ids = ids;
       this.assignment = assignment;
-      this.nearest = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
-      this.second = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+      // Only the given ids are stored, which may be a sample (CLARA)
+      final int hints = DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_FIXED_IDS;
+      this.nearest = DataStoreUtil.makeDoubleStorage(ids, hints);
+      this.second = DataStoreUtil.makeDoubleStorage(ids, hints);
     }
 
     /**
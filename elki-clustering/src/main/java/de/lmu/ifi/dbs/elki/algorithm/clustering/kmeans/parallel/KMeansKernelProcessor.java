@@ -0,0 +1,145 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Processor to run the per-object part of the bound-based k-means variants
+ * (initial assignment, bound updates, reassignment) in parallel.
+ * <p>
+ * The kernels are the per-object methods of the sequential implementations,
+ * and only modify per-object state (assignment, bounds); the cluster sums are
+ * updated afterwards by a sequential pass in the order of the relation, so
+ * that the floating point results are identical to the sequential
+ * implementations.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class KMeansKernelProcessor implements Processor {
+  /**
+   * Kernel, shared by all threads.
+   */
+  private final Processor.Instance kernel;
+
+  /**
+   * Constructor.
+   *
+   * @param kernel Kernel, must be safe to use from multiple threads for
+   *        different objects
+   */
+  public KMeansKernelProcessor(Processor.Instance kernel) {
+    super();
+    this.kernel = kernel;
+  }
+
+  @Override
+  public Processor.Instance instantiate(Executor executor) {
+    return kernel;
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    // Nothing to do.
+  }
+
+  /**
+   * Run a kernel on all objects in parallel.
+   *
+   * @param ids Objects to process
+   * @param kernel Kernel, must be safe to use from multiple threads for
+   *        different objects
+   */
+  public static void run(DBIDs ids, Processor.Instance kernel) {
+    ParallelExecutor.run(ids, new KMeansKernelProcessor(kernel));
+  }
+
+  /**
+   * Test whether the data stores of a relation can be written concurrently.
+   * The kernels write the assignment and bounds from multiple threads, which
+   * requires array-backed storage, i.e. a {@link DBIDRange}.
+   *
+   * @param relation Data relation
+   * @return {@code true} if the parallel implementation can be used
+   */
+  public static boolean canRunParallel(Relation<?> relation) {
+    return relation.getDBIDs() instanceof DBIDRange;
+  }
+
+  /**
+   * Build the clusters and cluster sums after the initial assignment, in the
+   * same order as the sequential implementations.
+   *
+   * @param relation Data relation
+   * @param assignment Cluster assignment
+   * @param clusters Cluster members (output)
+   * @param sums Cluster sums (output)
+   */
+  public static void applyInitialAssignment(Relation<? extends NumberVector> relation, WritableIntegerDataStore assignment, List<ModifiableDBIDs> clusters, double[][] sums) {
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int cur = assignment.intValue(it);
+      clusters.get(cur).add(it);
+      AbstractKMeans.plusEquals(sums[cur], relation.get(it));
+    }
+  }
+
+  /**
+   * Update the clusters and cluster sums for all reassigned objects, in the
+   * same order as the sequential implementations.
+   *
+   * @param relation Data relation
+   * @param assignment New cluster assignment
+   * @param previous Previous assignment of reassigned objects, -1 otherwise;
+   *        will be reset to -1.
+   * @param clusters Cluster members
+   * @param sums Cluster sums
+   * @return Number of reassigned objects
+   */
+  public static int applyReassignments(Relation<? extends NumberVector> relation, WritableIntegerDataStore assignment, WritableIntegerDataStore previous, List<ModifiableDBIDs> clusters, double[][] sums) {
+    int changed = 0;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int orig = previous.intValue(it);
+      if(orig < 0) {
+        continue;
+      }
+      final int cur = assignment.intValue(it);
+      previous.putInt(it, -1);
+      clusters.get(cur).add(it);
+      clusters.get(orig).remove(it);
+      AbstractKMeans.plusMinusEquals(sums[cur], sums[orig], relation.get(it));
+      ++changed;
+    }
+    return changed;
+  }
+}
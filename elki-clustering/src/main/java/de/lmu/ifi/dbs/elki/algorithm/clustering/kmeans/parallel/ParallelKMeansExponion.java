@@ -0,0 +1,177 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansExponion;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Parallel version of the Exponion k-means algorithm.
+ * <p>
+ * The per-object kernels of {@link KMeansExponion} are run by the workers, which
+ * only update the bounds and assignment of their objects; the cluster sums are
+ * then updated sequentially, so the result is identical to the sequential
+ * version.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @has - - - KMeansKernelProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelKMeansExponion<V extends NumberVector> extends KMeansExponion<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansExponion.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansExponion(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected KMeansExponion.Instance newInstance(Relation<V> relation, double[][] means) {
+    return KMeansKernelProcessor.canRunParallel(relation) ? new Instance(relation, getDistanceFunction(), means) : super.newInstance(relation, means);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author agent
+   */
+  protected static class Instance extends KMeansExponion.Instance {
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistanceFunction<?> df;
+
+    /**
+     * Previous assignment of reassigned objects.
+     */
+    protected WritableIntegerDataStore previous;
+
+    /**
+     * Distance computations of the current parallel phase.
+     */
+    private LongAdder distcount;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistanceFunction<?> df, double[][] means) {
+      super(relation, df, means);
+      this.df = df;
+      previous = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    }
+
+    @Override
+    protected int initialAssignToNearestCluster() {
+      runParallel(it -> initialAssign(it, relation.get(it)));
+      KMeansKernelProcessor.applyInitialAssignment(relation, assignment, clusters, sums);
+      return relation.size();
+    }
+
+    @Override
+    protected int assignToNearestCluster() {
+      updateSeparation();
+      runParallel(it -> {
+        final int cur = assignment.intValue(it);
+        if(reassign(it) != cur) {
+          previous.putInt(it, cur);
+        }
+      });
+      return KMeansKernelProcessor.applyReassignments(relation, assignment, previous, clusters, sums);
+    }
+
+    @Override
+    protected void updateBounds(double[] move, double delta) {
+      runParallel(it -> updateBounds(it, move, delta));
+    }
+
+    /**
+     * Run a kernel on all objects in parallel.
+     *
+     * @param kernel Kernel
+     */
+    private void runParallel(Processor.Instance kernel) {
+      distcount = new LongAdder();
+      KMeansKernelProcessor.run(relation.getDBIDs(), kernel);
+      diststat += distcount.sum();
+      distcount = null;
+    }
+
+    @Override
+    protected double distance(NumberVector x, NumberVector y) {
+      final LongAdder distcount = this.distcount;
+      if(distcount == null) {
+        return super.distance(x, y);
+      }
+      distcount.increment();
+      return df.distance(x, y);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   */
+  public static class Parameterizer<V extends NumberVector> extends KMeansExponion.Parameterizer<V> {
+    @Override
+    protected ParallelKMeansExponion<V> makeInstance() {
+      return new ParallelKMeansExponion<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
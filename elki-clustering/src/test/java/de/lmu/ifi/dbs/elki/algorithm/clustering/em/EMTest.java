@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
 
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
@@ -162,4 +164,42 @@ public class EMTest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, result, 0.9357286);
     testClusterSizes(result, new int[] { 103, 104, 208, 295 });
   }
+
+  @Test
+  public void testEMParallel() {
+    withParallelism(2, () -> {
+      testEMMLEMultivariate();
+      testEMMAPTwoPass();
+      testEMMLETextbook();
+      testEMMAPDiagonal();
+      testEMMLESpherical();
+    });
+  }
+
+  @Test
+  public void testEMMinibatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<EM<DoubleVector, ?>>(EM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Parameterizer.K_ID, 6) //
+        .with(EM.Parameterizer.MINIBATCH_ID, 200) //
+        .with(EM.Parameterizer.SEED_ID, 0) //
+        .build().run(db);
+    testFMeasure(db, result, 0.8362002);
+    testClusterSizes(result, new int[] { 6, 91, 94, 100, 200, 219 });
+  }
+
+  @Test
+  public void testEMMinibatchTwoPass() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<EM<DoubleVector, ?>>(EM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Parameterizer.K_ID, 6) //
+        .with(EM.Parameterizer.INIT_ID, TwoPassMultivariateGaussianModelFactory.class) //
+        .with(EM.Parameterizer.MINIBATCH_ID, 400) //
+        .with(EM.Parameterizer.SEED_ID, 0) //
+        .build().run(db);
+    testFMeasure(db, result, 0.8152150);
+    testClusterSizes(result, new int[] { 8, 92, 94, 95, 198, 223 });
+  }
 }
@@ -20,14 +20,25 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.*;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.ChunkedDoubleMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.DoubleArrayMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
 /**
@@ -183,4 +194,79 @@ public class AGNESTest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, clustering, 0.9277466);
     testClusterSizes(clustering, new int[] { 196, 200, 242 });
   }
+
+  /**
+   * Run agglomerative hierarchical clustering with chunked matrix storage.
+   */
+  @Test
+  public void testWardChunked() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, AGNES.class) //
+        .with(AGNES.Parameterizer.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Parameterizer.MATRIX_ID, ChunkedDoubleMatrixStore.Factory.class) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run with chunked matrix storage in small chunks, so the matrix spans many
+   * chunks.
+   */
+  @Test
+  public void testWardChunkedSmallChunks() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, AGNES.class) //
+        .with(AGNES.Parameterizer.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Parameterizer.MATRIX_ID, (TriangularMatrixStore.Factory) size -> new ChunkedDoubleMatrixStore(size, 10)) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with multiple threads; the result
+   * must be identical to the sequential run.
+   */
+  @Test
+  public void testWardParallel() {
+    withParallelism(2, () -> testWard());
+  }
+
+  /**
+   * Run with a small update block size, so the matrix updates after each merge
+   * are performed in parallel; the hierarchy must be identical to the
+   * sequential run.
+   */
+  @Test
+  public void testWardParallelUpdate() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    assertParallelUpdateIdentical(new AGNES<>(SquaredEuclideanDistanceFunction.STATIC, WardLinkage.STATIC), //
+        new AGNES<>(SquaredEuclideanDistanceFunction.STATIC, WardLinkage.STATIC, DoubleArrayMatrixStore.Factory.STATIC, 64), db);
+  }
+
+  /**
+   * Compare the sequential Ward hierarchy to the hierarchy obtained with two
+   * threads and parallel matrix updates.
+   *
+   * @param seqalg Algorithm with the default update block size
+   * @param paralg Algorithm with a small update block size
+   * @param db Database
+   */
+  static void assertParallelUpdateIdentical(HierarchicalClusteringAlgorithm seqalg, HierarchicalClusteringAlgorithm paralg, Database db) {
+    PointerHierarchyRepresentationResult seq = seqalg.run(db);
+    PointerHierarchyRepresentationResult par = withParallelism(2, () -> paralg.run(db));
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    for(DBIDIter it = seq.getDBIDs().iter(); it.valid(); it.advance()) {
+      seq.getParentStore().assignVar(it, p1);
+      par.getParentStore().assignVar(it, p2);
+      assertTrue("Parent differs for " + DBIDUtil.toString(it), DBIDUtil.equal(p1, p2));
+      assertEquals("Distance differs for " + DBIDUtil.toString(it), seq.getParentDistanceStore().doubleValue(it), par.getParentDistanceStore().doubleValue(it), 0.);
+    }
+  }
+
 }
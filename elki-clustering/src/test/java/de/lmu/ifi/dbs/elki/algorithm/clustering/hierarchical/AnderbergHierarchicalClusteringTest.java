@@ -20,14 +20,20 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.*;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.DoubleArrayMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.FloatMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
 /**
@@ -184,4 +190,58 @@ public class AnderbergHierarchicalClusteringTest extends AbstractClusterAlgorith
     testFMeasure(db, clustering, 0.9277466);
     testClusterSizes(clustering, new int[] { 196, 200, 242 });
   }
+
+  /**
+   * Run agglomerative hierarchical clustering with single precision matrix storage.
+   */
+  @Test
+  public void testWardFloat() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, AnderbergHierarchicalClustering.class) //
+        .with(AGNES.Parameterizer.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Parameterizer.MATRIX_ID, FloatMatrixStore.Factory.class) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run with single precision storage in small chunks, so the matrix spans many
+   * chunks.
+   */
+  @Test
+  public void testWardFloatSmallChunks() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, AnderbergHierarchicalClustering.class) //
+        .with(AGNES.Parameterizer.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Parameterizer.MATRIX_ID, (TriangularMatrixStore.Factory) size -> new FloatMatrixStore(size, 10)) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with multiple threads; the result
+   * must be identical to the sequential run.
+   */
+  @Test
+  public void testWardParallel() {
+    withParallelism(2, () -> testWard());
+  }
+
+  /**
+   * Run with a small update block size, so the matrix updates after each merge
+   * are performed in parallel; the hierarchy must be identical to the
+   * sequential run.
+   */
+  @Test
+  public void testWardParallelUpdate() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    AGNESTest.assertParallelUpdateIdentical(new AnderbergHierarchicalClustering<>(SquaredEuclideanDistanceFunction.STATIC, WardLinkage.STATIC), //
+        new AnderbergHierarchicalClustering<>(SquaredEuclideanDistanceFunction.STATIC, WardLinkage.STATIC, DoubleArrayMatrixStore.Factory.STATIC, 64), db);
+  }
 }
@@ -26,6 +26,8 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.*;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.MappedMatrixStore;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangularMatrixStore;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
@@ -183,4 +185,37 @@ public class NNChainTest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, clustering, 0.9381678);
     testClusterSizes(clustering, new int[] { 200, 217, 221 });
   }
+
+  /**
+   * Run agglomerative hierarchical clustering with memory-mapped matrix storage.
+   */
+  @Test
+  public void testWardMapped() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, NNChain.class) //
+        .with(AGNES.Parameterizer.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Parameterizer.MATRIX_ID, MappedMatrixStore.Factory.class) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run with memory-mapped storage in small chunks, so the matrix spans many
+   * chunks.
+   */
+  @Test
+  public void testWardMappedSmallChunks() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, NNChain.class) //
+        .with(AGNES.Parameterizer.LINKAGE_ID, WardLinkage.class) //
+        .with(AGNES.Parameterizer.MATRIX_ID, (TriangularMatrixStore.Factory) size -> new MappedMatrixStore(size, null, false, 10)) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
 }
@@ -0,0 +1,85 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Test the triangular matrix storages, with small chunks so that the entries
+ * cross chunk boundaries, and the last chunk is only partially used.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class TriangularMatrixStoreTest {
+  /**
+   * Number of entries, not a multiple of the chunk size.
+   */
+  private static final long SIZE = 1000;
+
+  /**
+   * Chunk size used for testing, as bit shift.
+   */
+  private static final int SHIFT = 4;
+
+  @Test
+  public void testChunked() {
+    testStore(new ChunkedDoubleMatrixStore(SIZE, SHIFT));
+  }
+
+  @Test
+  public void testFloat() {
+    testStore(new FloatMatrixStore(SIZE, SHIFT));
+  }
+
+  @Test
+  public void testMapped() {
+    testStore(new MappedMatrixStore(SIZE, null, false, SHIFT));
+  }
+
+  @Test
+  public void testMappedFloat() {
+    testStore(new MappedMatrixStore(SIZE, null, true, SHIFT));
+  }
+
+  /**
+   * Write every position, then read back.
+   *
+   * @param store Storage to test
+   */
+  private static void testStore(TriangularMatrixStore store) {
+    try {
+      assertEquals("Size", SIZE, store.size());
+      for(long i = 0; i < SIZE; i++) {
+        assertEquals("Not initialized with zero", 0., store.get(i), 0.);
+        store.set(i, i + .5);
+      }
+      for(long i = 0; i < SIZE; i++) {
+        assertEquals("Value differs at " + i, i + .5, store.get(i), 0.);
+      }
+    }
+    finally {
+      store.close();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel Elkan k-means.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ParallelKMeansElkanTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testParallelKMeansElkan() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<KMeansModel> result = new ELKIBuilder<ParallelKMeansElkan<DoubleVector>>(ParallelKMeansElkan.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.VARSTAT_ID) //
+        .with(KMeans.SEED_ID, 7) //
+        .build().run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+
+    // Must be identical to the sequential version.
+    Clustering<KMeansModel> ref = new ELKIBuilder<KMeansElkan<DoubleVector>>(KMeansElkan.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.VARSTAT_ID) //
+        .with(KMeans.SEED_ID, 7) //
+        .build().run(db);
+    List<Cluster<KMeansModel>> c1 = ref.getAllClusters(), c2 = result.getAllClusters();
+    for(int i = 0; i < c1.size(); i++) {
+      assertArrayEquals("Means differ.", c1.get(i).getModel().getMean(), c2.get(i).getModel().getMean(), 0.);
+    }
+  }
+}
@@ -60,4 +60,12 @@ public interface DatabaseQuery {
    * Optimizer hint: no cache instances
    */
   String HINT_NO_CACHE = "no-cache";
+
+  /**
+   * Optimizer hint: memoize the distances of pairs of DBIDs, with bounded
+   * memory. Only useful if the same pairs are computed many times; do not
+   * build range or kNN queries on the resulting query, as this prevents the
+   * optimized linear scans.
+   */
+  String HINT_DISTANCE_CACHE = "distance-cache";
 }
@@ -78,6 +78,9 @@
  * query will only be used once</li>
  * <li>{@link de.lmu.ifi.dbs.elki.database.query.DatabaseQuery#HINT_NO_CACHE
  * DatabaseQuery.HINT_NO_CACHE} to disallow retrieving a cache class</li>
+ * <li>{@link de.lmu.ifi.dbs.elki.database.query.DatabaseQuery#HINT_DISTANCE_CACHE
+ * DatabaseQuery.HINT_DISTANCE_CACHE} to memoize repeatedly computed distances
+ * of DBID pairs</li>
  * </ul>
  * Please set these hints appropriately, since this can effect your algorithms
  * performance!
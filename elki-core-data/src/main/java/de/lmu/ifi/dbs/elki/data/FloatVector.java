@@ -116,6 +116,15 @@ public class FloatVector implements NumberVector {
     return data;
   }
 
+  /**
+   * Get a copy of the raw float[] array.
+   *
+   * @return copy of values array.
+   */
+  public float[] getValues() {
+    return values.clone();
+  }
+
   @Override
   public String toString() {
     StringBuilder featureLine = new StringBuilder();
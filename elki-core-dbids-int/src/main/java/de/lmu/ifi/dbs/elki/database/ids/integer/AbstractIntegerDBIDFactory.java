@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.database.ids.integer;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDPair;
@@ -119,6 +120,11 @@ abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
     return new FastutilIntOpenHashSetModifiableDBIDs(existing);
   }
 
+  @Override
+  public ArrayStaticDBIDs newCompressedArray(DBIDs existing) {
+    return CompressedSortedIntegerDBIDs.fromDBIDs(existing);
+  }
+
   @Override
   public DBIDPair newPair(DBIDRef first, DBIDRef second) {
     return new IntegerDBIDPair(first.internalGetIndex(), second.internalGetIndex());
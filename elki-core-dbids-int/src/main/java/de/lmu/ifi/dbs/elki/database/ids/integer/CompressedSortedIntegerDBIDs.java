@@ -0,0 +1,610 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.ids.integer;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
+
+/**
+ * Static, sorted array of DBIDs, stored in compressed form.
+ * <p>
+ * The ids are stored as differences to their predecessor, encoded as unsigned
+ * varints. Every {@link #BLOCK_SIZE} entries, the absolute value and the byte
+ * offset are kept, such that random access and binary search only need to
+ * decode a single block. Sequential iteration decodes one varint per step.
+ * <p>
+ * For neighborhoods or inverted lists with small gaps, this usually needs one
+ * or two bytes per id instead of four. Arrays that fit into a single block do
+ * not store the block index at all. If compression does not reduce the memory
+ * use, {@link #fromDBIDs} returns a plain sorted array instead.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+class CompressedSortedIntegerDBIDs implements IntegerArrayStaticDBIDs {
+  /**
+   * Block size, as bit shift.
+   */
+  private static final int BLOCK_SHIFT = 6;
+
+  /**
+   * Number of entries per block.
+   */
+  static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+  /**
+   * Mask for the position within a block.
+   */
+  private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+  /**
+   * Number of ids.
+   */
+  private final int size;
+
+  /**
+   * First id.
+   */
+  private final int first;
+
+  /**
+   * First id of each block, {@code null} for a single block.
+   */
+  private final int[] heads;
+
+  /**
+   * Byte offset of the first delta of each block, {@code null} for a single
+   * block.
+   */
+  private final int[] offsets;
+
+  /**
+   * Encoded deltas.
+   */
+  private final byte[] data;
+
+  /**
+   * Constructor.
+   *
+   * @param ids Sorted ids, <em>must</em> be sorted.
+   * @param size Number of ids to use
+   */
+  protected CompressedSortedIntegerDBIDs(int[] ids, int size) {
+    this(ids, size, encodedSize(ids, size));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids Sorted ids, <em>must</em> be sorted.
+   * @param size Number of ids to use
+   * @param len Encoded size, see {@link #encodedSize}
+   */
+  private CompressedSortedIntegerDBIDs(int[] ids, int size, int len) {
+    super();
+    this.size = size;
+    this.first = size > 0 ? ids[0] : 0;
+    final int numblocks = (size + BLOCK_MASK) >>> BLOCK_SHIFT;
+    this.heads = numblocks > 1 ? new int[numblocks] : null;
+    this.offsets = numblocks > 1 ? new int[numblocks] : null;
+    this.data = new byte[len];
+    int p = 0;
+    for(int i = 0; i < size; i++) {
+      if((i & BLOCK_MASK) == 0) {
+        if(heads != null) {
+          heads[i >>> BLOCK_SHIFT] = ids[i];
+          offsets[i >>> BLOCK_SHIFT] = p;
+        }
+        continue;
+      }
+      assert (ids[i - 1] <= ids[i]) : "Input ids are not sorted.";
+      int v = ids[i] - ids[i - 1];
+      while((v & ~0x7F) != 0) {
+        data[p++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      data[p++] = (byte) v;
+    }
+  }
+
+  /**
+   * Build from existing DBIDs. The input will be sorted if necessary.
+   * <p>
+   * If the compressed representation would not be smaller, a plain sorted
+   * array is returned instead (e.g., for short lists with large gaps).
+   *
+   * @param existing Existing DBIDs
+   * @return Compressed array, or a sorted array
+   */
+  protected static IntegerArrayStaticDBIDs fromDBIDs(DBIDs existing) {
+    final int size = existing.size();
+    int[] ids = new int[size];
+    boolean sorted = true;
+    int i = 0;
+    for(DBIDIter iter = existing.iter(); iter.valid(); iter.advance(), i++) {
+      ids[i] = iter.internalGetIndex();
+      sorted &= i == 0 || ids[i - 1] <= ids[i];
+    }
+    if(!sorted) {
+      Arrays.sort(ids);
+    }
+    final int len = encodedSize(ids, size);
+    return memorySize(size, len) < arrayMemorySize(size) ? //
+        new CompressedSortedIntegerDBIDs(ids, size, len) : new ArrayStaticIntegerDBIDs(ids);
+  }
+
+  /**
+   * Compute the number of bytes needed for the encoded deltas.
+   *
+   * @param ids Sorted ids
+   * @param size Number of ids to use
+   * @return Encoded size
+   */
+  private static int encodedSize(int[] ids, int size) {
+    int len = 0;
+    for(int i = 1; i < size; i++) {
+      if((i & BLOCK_MASK) != 0) {
+        len += varintSize(ids[i] - ids[i - 1]);
+      }
+    }
+    return len;
+  }
+
+  /**
+   * Estimate the memory use of a compressed array, assuming compressed
+   * references (12 byte object headers, 16 byte array headers, 8 byte
+   * alignment).
+   *
+   * @param size Number of ids
+   * @param len Encoded size
+   * @return Estimated memory use in bytes
+   */
+  protected static long memorySize(int size, int len) {
+    // Object: header, size, first, and three references.
+    long mem = align(12 + 4 + 4 + 3 * 4) + align(16L + len);
+    final int numblocks = (size + BLOCK_MASK) >>> BLOCK_SHIFT;
+    return numblocks > 1 ? mem + 2 * align(16L + 4L * numblocks) : mem;
+  }
+
+  /**
+   * Estimate the memory use of a plain array of the given size, for
+   * comparison, see {@link #memorySize}.
+   *
+   * @param size Number of ids
+   * @return Estimated memory use in bytes
+   */
+  protected static long arrayMemorySize(int size) {
+    // Object: header and one reference.
+    return align(12 + 4) + align(16L + 4L * size);
+  }
+
+  /**
+   * Round up to a multiple of 8 bytes.
+   *
+   * @param bytes Size
+   * @return Aligned size
+   */
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  /**
+   * Number of bytes needed to encode a value as unsigned varint.
+   *
+   * @param v Value
+   * @return Number of bytes, 1 to 5
+   */
+  private static int varintSize(int v) {
+    return v == 0 ? 1 : (38 - Integer.numberOfLeadingZeros(v)) / 7;
+  }
+
+  /**
+   * Get the number of bytes used by the encoded deltas.
+   *
+   * @return Encoded size
+   */
+  protected int getEncodedSize() {
+    return data.length;
+  }
+
+  /**
+   * Estimate the memory use of this array, see {@link #memorySize}.
+   *
+   * @return Estimated memory use in bytes
+   */
+  protected long getMemorySize() {
+    return memorySize(size, data.length);
+  }
+
+  /**
+   * Get the first id of a block.
+   *
+   * @param b Block number
+   * @return First id
+   */
+  private int head(int b) {
+    return heads != null ? heads[b] : first;
+  }
+
+  /**
+   * Get the byte offset of the first delta of a block.
+   *
+   * @param b Block number
+   * @return Byte offset
+   */
+  private int offset(int b) {
+    return offsets != null ? offsets[b] : 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Get the integer value at a given position.
+   *
+   * @param i Position
+   * @return Integer id
+   */
+  protected int internalGet(int i) {
+    if(i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+    int v = head(i >>> BLOCK_SHIFT), p = offset(i >>> BLOCK_SHIFT);
+    for(int j = i & BLOCK_MASK; j > 0; j--) {
+      int d = 0, s = 0;
+      byte b;
+      do {
+        b = data[p++];
+        d |= (b & 0x7F) << s;
+        s += 7;
+      }
+      while(b < 0);
+      v += d;
+    }
+    return v;
+  }
+
+  @Deprecated
+  @Override
+  public DBID get(int i) {
+    return DBIDFactory.FACTORY.importInteger(internalGet(i));
+  }
+
+  @Override
+  public DBIDVar assignVar(int i, DBIDVar var) {
+    if(var instanceof IntegerDBIDVar) {
+      ((IntegerDBIDVar) var).internalSetIndex(internalGet(i));
+      return var;
+    }
+    // Much less efficient:
+    var.set(get(i));
+    return var;
+  }
+
+  @Override
+  public boolean contains(DBIDRef o) {
+    return binarySearch(o) >= 0;
+  }
+
+  @Override
+  public int binarySearch(DBIDRef key) {
+    return search(key.internalGetIndex(), 0, size);
+  }
+
+  /**
+   * Binary search on the block heads, followed by a linear scan of a single
+   * block.
+   *
+   * @param key Key
+   * @param begin First position to consider, inclusive
+   * @param end Last position to consider, exclusive
+   * @return Position of the key, or -(insertion point) - 1
+   */
+  private int search(int key, int begin, int end) {
+    if(begin >= end) {
+      return -begin - 1;
+    }
+    int b = heads != null ? Arrays.binarySearch(heads, begin >>> BLOCK_SHIFT, ((end - 1) >>> BLOCK_SHIFT) + 1, key) : //
+        key < first ? -1 : key == first ? 0 : -2;
+    if(b < 0) {
+      b = -b - 2; // Block that may contain the key.
+      if(b < (begin >>> BLOCK_SHIFT)) {
+        b = begin >>> BLOCK_SHIFT;
+      }
+    }
+    else if((b << BLOCK_SHIFT) >= begin) {
+      return b << BLOCK_SHIFT; // Found a block head.
+    }
+    Itr it = new Itr().seek(b << BLOCK_SHIFT);
+    int pos = it.pos;
+    if(pos < begin) {
+      it.seek(begin);
+      pos = begin;
+    }
+    for(; pos < end; it.advance(), pos++) {
+      final int v = it.cur;
+      if(v >= key) {
+        return v == key ? pos : -pos - 1;
+      }
+    }
+    return -end - 1;
+  }
+
+  @Override
+  public Itr iter() {
+    return new Itr();
+  }
+
+  @Override
+  public IntegerArrayDBIDs slice(int begin, int end) {
+    return new Slice(begin, end);
+  }
+
+  /**
+   * Sequential iterator, decoding one delta per step.
+   *
+   * @author agent
+   */
+  protected class Itr implements IntegerDBIDArrayIter {
+    /**
+     * Current position.
+     */
+    int pos = 0;
+
+    /**
+     * Byte position of the next delta.
+     */
+    int p;
+
+    /**
+     * Current value.
+     */
+    int cur;
+
+    /**
+     * Constructor.
+     */
+    protected Itr() {
+      super();
+      cur = first;
+    }
+
+    @Override
+    public boolean valid() {
+      return pos < size && pos >= 0;
+    }
+
+    @Override
+    public Itr advance() {
+      if(++pos >= size) {
+        return this;
+      }
+      if((pos & BLOCK_MASK) == 0) {
+        cur = head(pos >>> BLOCK_SHIFT);
+        p = offset(pos >>> BLOCK_SHIFT);
+        return this;
+      }
+      int d = 0, s = 0;
+      byte b;
+      do {
+        b = data[p++];
+        d |= (b & 0x7F) << s;
+        s += 7;
+      }
+      while(b < 0);
+      cur += d;
+      return this;
+    }
+
+    @Override
+    public Itr advance(int count) {
+      return seek(pos + count);
+    }
+
+    @Override
+    public Itr retract() {
+      return seek(pos - 1);
+    }
+
+    @Override
+    public Itr seek(int off) {
+      if(off < 0 || off >= size) {
+        pos = off; // Invalid position.
+        return this;
+      }
+      // Skip to the block start, unless we can continue within the block.
+      if(!(pos >= 0 && pos < size && pos <= off && (pos >>> BLOCK_SHIFT) == (off >>> BLOCK_SHIFT))) {
+        pos = off & ~BLOCK_MASK;
+        cur = head(pos >>> BLOCK_SHIFT);
+        p = offset(pos >>> BLOCK_SHIFT);
+      }
+      while(pos < off) {
+        advance();
+      }
+      return this;
+    }
+
+    @Override
+    public int getOffset() {
+      return pos;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return cur;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if(other instanceof DBID) {
+        LoggingUtil.warning("Programming error detected: DBIDItr.equals(DBID). Use sameDBID()!", new Throwable());
+      }
+      return super.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+      // Override, because we also are overriding equals.
+      return super.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return Integer.toString(internalGetIndex()) + "@" + pos;
+    }
+  }
+
+  /**
+   * Slice of the compressed array.
+   *
+   * @author agent
+   */
+  private class Slice implements IntegerArrayDBIDs {
+    /**
+     * Slice positions.
+     */
+    final int begin, end;
+
+    /**
+     * Constructor.
+     *
+     * @param begin Begin, inclusive
+     * @param end End, exclusive
+     */
+    public Slice(int begin, int end) {
+      super();
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @Override
+    public int size() {
+      return end - begin;
+    }
+
+    @Override
+    public boolean contains(DBIDRef o) {
+      return search(o.internalGetIndex(), begin, end) >= 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return begin == end;
+    }
+
+    @Deprecated
+    @Override
+    public DBID get(int i) {
+      return CompressedSortedIntegerDBIDs.this.get(begin + i);
+    }
+
+    @Override
+    public DBIDVar assignVar(int index, DBIDVar var) {
+      return CompressedSortedIntegerDBIDs.this.assignVar(begin + index, var);
+    }
+
+    @Override
+    public int binarySearch(DBIDRef key) {
+      int r = search(key.internalGetIndex(), begin, end);
+      return r >= 0 ? r - begin : r + begin;
+    }
+
+    @Override
+    public SliceItr iter() {
+      return new SliceItr();
+    }
+
+    @Override
+    public Slice slice(int begin, int end) {
+      return new Slice(this.begin + begin, this.begin + end);
+    }
+
+    /**
+     * Iterator class.
+     *
+     * @author agent
+     */
+    private class SliceItr implements IntegerDBIDArrayIter {
+      /**
+       * Inner iterator.
+       */
+      Itr inner = new Itr().seek(begin);
+
+      @Override
+      public int internalGetIndex() {
+        return inner.cur;
+      }
+
+      @Override
+      public boolean valid() {
+        return inner.pos < end && inner.pos >= begin;
+      }
+
+      @Override
+      public SliceItr advance() {
+        inner.advance();
+        return this;
+      }
+
+      @Override
+      public int getOffset() {
+        return inner.pos - begin;
+      }
+
+      @Override
+      public SliceItr advance(int count) {
+        inner.advance(count);
+        return this;
+      }
+
+      @Override
+      public SliceItr retract() {
+        inner.retract();
+        return this;
+      }
+
+      @Override
+      public SliceItr seek(int off) {
+        inner.seek(begin + off);
+        return this;
+      }
+
+      @Override
+      public String toString() {
+        return Integer.toString(internalGetIndex()) + "@" + inner.pos;
+      }
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.ids.integer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+
+/**
+ * Test the compressed sorted DBID arrays.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class CompressedSortedIntegerDBIDsTest {
+  @Test
+  public void testCompressed() {
+    Random r = new Random(0L);
+    int[] ids = new int[1000];
+    ids[0] = -5;
+    for(int i = 1; i < ids.length; i++) {
+      // Mostly small gaps, some large gaps and duplicates.
+      ids[i] = ids[i - 1] + (i % 100 == 0 ? 1000000 : r.nextInt(20));
+    }
+    ArrayDBIDs comp = DBIDUtil.newCompressedArray(shuffled(ids));
+    assertTrue("Not compressed.", comp instanceof CompressedSortedIntegerDBIDs);
+    assertTrue("Not compressed.", ((CompressedSortedIntegerDBIDs) comp).getEncodedSize() < ids.length * 2);
+    checkAccess(comp, ids, r);
+    // Slices
+    ArrayDBIDs slice = comp.slice(70, 250);
+    DBIDVar var = DBIDUtil.newVar();
+    int i = 70;
+    for(DBIDArrayIter sit = slice.iter(); sit.valid(); sit.advance(), i++) {
+      assertEquals("Slice differs at " + i, ids[i], sit.internalGetIndex());
+    }
+    assertEquals("Slice size differs.", 250, i);
+    DBIDFactory.FACTORY.assignVar(var, ids[300]);
+    assertFalse("Slice should not contain element.", slice.contains(var) && ids[300] != ids[249]);
+    DBIDFactory.FACTORY.assignVar(var, ids[100]);
+    assertTrue("Slice should contain element.", slice.contains(var));
+    assertEquals("Slice get differs.", ids[200], slice.assignVar(130, var).internalGetIndex());
+  }
+
+  @Test
+  public void testSingleBlock() {
+    Random r = new Random(0L);
+    int[] ids = new int[20];
+    for(int i = 1; i < ids.length; i++) {
+      ids[i] = ids[i - 1] + r.nextInt(100);
+    }
+    ArrayDBIDs comp = DBIDUtil.newCompressedArray(shuffled(ids));
+    assertTrue("Not compressed.", comp instanceof CompressedSortedIntegerDBIDs);
+    CompressedSortedIntegerDBIDs c = (CompressedSortedIntegerDBIDs) comp;
+    // Object with 3 references, and the data array only; no block index.
+    assertEquals("Block index stored.", 32 + ((16 + c.getEncodedSize() + 7) & ~7), c.getMemorySize());
+    assertTrue("Larger than an array.", c.getMemorySize() < CompressedSortedIntegerDBIDs.arrayMemorySize(ids.length));
+    checkAccess(comp, ids, r);
+  }
+
+  @Test
+  public void testMemorySize() {
+    Random r = new Random(0L);
+    for(int size : new int[] { 1, 5, 20, 64, 65, 200, 1000 }) {
+      for(int maxgap : new int[] { 2, 100, 100000, 1000000 }) {
+        int[] ids = new int[size];
+        for(int i = 1; i < ids.length; i++) {
+          ids[i] = ids[i - 1] + r.nextInt(maxgap);
+        }
+        ArrayDBIDs comp = DBIDUtil.newCompressedArray(shuffled(ids));
+        final long plain = CompressedSortedIntegerDBIDs.arrayMemorySize(size);
+        if(comp instanceof CompressedSortedIntegerDBIDs) {
+          assertTrue("Compressed array is larger than a plain array: " + size + " " + maxgap, ((CompressedSortedIntegerDBIDs) comp).getMemorySize() < plain);
+        }
+        else {
+          assertTrue("Dense ids not compressed: " + size + " " + maxgap, maxgap > 100 || size < 20);
+        }
+        checkAccess(comp, ids, r);
+      }
+    }
+    // Typical SNN neighborhood of a large data set: 20 ids with large gaps.
+    int[] ids = new int[20];
+    for(int i = 1; i < ids.length; i++) {
+      ids[i] = ids[i - 1] + 10000000 + r.nextInt(10000000);
+    }
+    assertTrue("Not stored as array.", DBIDUtil.newCompressedArray(shuffled(ids)) instanceof ArrayStaticIntegerDBIDs);
+  }
+
+  /**
+   * Build an unsorted DBID array.
+   *
+   * @param ids Sorted ids
+   * @return Array in reverse order
+   */
+  private static ArrayModifiableDBIDs shuffled(int[] ids) {
+    ArrayModifiableDBIDs input = DBIDUtil.newArray(ids.length);
+    DBIDVar var = DBIDUtil.newVar();
+    for(int i = ids.length - 1; i >= 0; i--) {
+      input.add(DBIDFactory.FACTORY.assignVar(var, ids[i]));
+    }
+    return input;
+  }
+
+  /**
+   * Check iteration, random access, seeking, and binary search.
+   *
+   * @param comp Array to test
+   * @param ids Expected ids
+   * @param r Random generator
+   */
+  private static void checkAccess(ArrayDBIDs comp, int[] ids, Random r) {
+    assertEquals("Size differs.", ids.length, comp.size());
+    DBIDVar var = DBIDUtil.newVar();
+
+    // Sequential iteration
+    int i = 0;
+    for(DBIDArrayIter it = comp.iter(); it.valid(); it.advance(), i++) {
+      assertEquals("Iteration differs at " + i, ids[i], it.internalGetIndex());
+      assertEquals("Offset differs.", i, it.getOffset());
+    }
+    assertEquals("Iteration size differs.", ids.length, i);
+    // Random access and seeking
+    DBIDArrayIter it = comp.iter();
+    for(int j = 0; j < 500; j++) {
+      int k = r.nextInt(ids.length);
+      assertEquals("Get differs at " + k, ids[k], comp.assignVar(k, var).internalGetIndex());
+      assertEquals("Seek differs at " + k, ids[k], it.seek(k).internalGetIndex());
+    }
+    if(ids.length > 1) {
+      it.seek(ids.length - 1).retract();
+      assertEquals("Retract differs.", ids[ids.length - 2], it.internalGetIndex());
+    }
+    assertFalse("Iterator should be invalid.", it.seek(-1).valid());
+    // Binary search
+    for(int j = 0; j < 1000; j++) {
+      int k = ids[0] - 2 + r.nextInt(ids[ids.length - 1] - ids[0] + 4);
+      DBIDFactory.FACTORY.assignVar(var, k);
+      int exp = Arrays.binarySearch(ids, k), act = comp.binarySearch(var);
+      if(exp >= 0) {
+        assertEquals("Found wrong element.", k, ids[act]);
+        assertTrue("Contains failed.", comp.contains(var));
+      }
+      else {
+        assertEquals("Insertion point differs.", exp, act);
+        assertFalse("Contains failed.", comp.contains(var));
+      }
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    ArrayDBIDs comp = DBIDUtil.newCompressedArray(DBIDUtil.newArray());
+    assertTrue("Not empty.", comp.isEmpty());
+    assertFalse("Iterator should be invalid.", comp.iter().valid());
+    assertEquals("Wrong insertion point.", -1, comp.binarySearch(DBIDFactory.FACTORY.assignVar(DBIDUtil.newVar(), 1)));
+  }
+}
@@ -64,6 +64,18 @@ public interface DataStoreFactory {
    */
   int HINT_SORTED = 0x08;
 
+  /**
+   * Data will only be stored for the given DBIDs (which must not change), so
+   * the DBIDs can be mapped to a dense array layout once.
+   */
+  int HINT_FIXED_IDS = 0x20;
+
+  /**
+   * Very large data, that should be stored outside of the Java heap (for
+   * primitive values and DBIDs). Implies {@link #HINT_FIXED_IDS}.
+   */
+  int HINT_OFFHEAP = 0x40;
+
   /**
    * Data that is the main database. Includes HOT, STATIC, SORTED
    */
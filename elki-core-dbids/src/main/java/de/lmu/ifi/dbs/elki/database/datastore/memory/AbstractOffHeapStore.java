@@ -0,0 +1,242 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Base class for data stores of primitive values outside of the Java heap,
+ * for very large data sets.
+ * <p>
+ * The values are stored in chunks of direct buffers, or, if a directory is
+ * given, in chunks mapped from a temporary file in this directory. In both
+ * cases, they are not subject to garbage collection. Which one is used is
+ * decided by {@link MemoryDataStoreFactory}, see there for the configuration.
+ * <p>
+ * Direct buffers count against the JVM limit {@code -XX:MaxDirectMemorySize},
+ * which defaults to the maximum heap size {@code -Xmx}; exceeding it fails with
+ * an {@link OutOfMemoryError} "Direct buffer memory". The memory of direct
+ * buffers is released when the store is destroyed.
+ * <p>
+ * The file contains the values in native byte order, in the order of the
+ * offsets of the DBIDs, without any header. It is deleted when the store is
+ * destroyed, or when the JVM exits, unless {@link #keepFile} was called.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <T> Data type
+ */
+public abstract class AbstractOffHeapStore<T> implements WritableDataStore<T> {
+  /**
+   * Maximum chunk size, in bytes.
+   */
+  private static final int CHUNK_BYTES = 1 << 30;
+
+  /**
+   * Temporary files to delete on exit, {@code null} until the first file is
+   * created.
+   */
+  private static Set<File> temporaryFiles;
+
+  /**
+   * Buffer chunks.
+   */
+  protected ByteBuffer[] chunks;
+
+  /**
+   * Number of values per chunk, as bit shift.
+   */
+  protected final int shift;
+
+  /**
+   * Mask for the offset within a chunk.
+   */
+  protected final int mask;
+
+  /**
+   * Number of values.
+   */
+  protected final int size;
+
+  /**
+   * DBID to offset map.
+   */
+  protected DataStoreIDMap idmap;
+
+  /**
+   * Backing file, may be {@code null}.
+   */
+  private File file;
+
+  /**
+   * Keep the backing file when destroyed.
+   */
+  private boolean keep;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of values
+   * @param idmap DBID to offset map
+   * @param bytesShift Size of a value in bytes, as bit shift
+   * @param dir Directory for the backing file, {@code null} for direct buffers
+   */
+  protected AbstractOffHeapStore(int size, DataStoreIDMap idmap, int bytesShift, File dir) {
+    super();
+    this.size = size;
+    this.idmap = idmap;
+    this.shift = 30 - bytesShift;
+    this.mask = (1 << shift) - 1;
+    final int numchunks = size > 0 ? ((size - 1) >>> shift) + 1 : 0;
+    this.chunks = new ByteBuffer[numchunks];
+    try {
+      if(dir != null) {
+        file = File.createTempFile("elki-datastore", ".bin", dir);
+        registerTemporary(file);
+      }
+      try (RandomAccessFile raf = file != null ? new RandomAccessFile(file, "rw") : null) {
+        for(int c = 0; c < numchunks; c++) {
+          final int bytes = Math.min(1 << shift, size - (c << shift)) << bytesShift;
+          ByteBuffer chunk = raf != null ? raf.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) c * CHUNK_BYTES, bytes) : ByteBuffer.allocateDirect(bytes);
+          chunks[c] = chunk.order(ByteOrder.nativeOrder());
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not allocate off-heap storage.", e);
+    }
+  }
+
+  /**
+   * Register a temporary file, to be deleted on exit.
+   *
+   * @param f File
+   */
+  private static synchronized void registerTemporary(File f) {
+    if(temporaryFiles == null) {
+      temporaryFiles = new HashSet<>();
+      Runtime.getRuntime().addShutdownHook(new Thread(AbstractOffHeapStore::deleteTemporaryFiles));
+    }
+    temporaryFiles.add(f);
+  }
+
+  /**
+   * Remove a file from the temporary files.
+   *
+   * @param f File
+   */
+  private static synchronized void unregisterTemporary(File f) {
+    temporaryFiles.remove(f);
+  }
+
+  /**
+   * Delete the remaining temporary files, on exit.
+   */
+  private static synchronized void deleteTemporaryFiles() {
+    for(File f : temporaryFiles) {
+      f.delete();
+    }
+    temporaryFiles.clear();
+  }
+
+  /**
+   * Get the backing file.
+   *
+   * @return File, or {@code null} if direct buffers are used.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Keep the backing file when the store is destroyed and when the JVM exits.
+   * The file is then owned by the caller; it contains the raw values only, see
+   * the class documentation for the layout.
+   *
+   * @return File, or {@code null} if direct buffers are used.
+   */
+  public File keepFile() {
+    if(file != null && !keep) {
+      keep = true;
+      unregisterTemporary(file);
+    }
+    return file;
+  }
+
+  /**
+   * Get the number of values stored.
+   *
+   * @return Size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Force changes to the backing file.
+   */
+  public void force() {
+    if(file != null) {
+      for(ByteBuffer chunk : chunks) {
+        ((MappedByteBuffer) chunk).force();
+      }
+    }
+  }
+
+  /**
+   * Destroy the store. The memory of direct buffers is released immediately,
+   * and the backing file is deleted unless {@link #keepFile} was called.
+   */
+  @Override
+  public void destroy() {
+    if(chunks == null) {
+      return; // Already destroyed.
+    }
+    if(keep) {
+      force();
+    }
+    // Unmap the file before deleting it (required on Windows).
+    for(ByteBuffer chunk : chunks) {
+      ByteArrayUtil.releaseDirectBuffer(chunk);
+    }
+    chunks = null;
+    idmap = null;
+    if(file != null && !keep) {
+      file.delete();
+      unregisterTemporary(file);
+    }
+    file = null;
+  }
+}
@@ -20,7 +20,10 @@
  */
 package de.lmu.ifi.dbs.elki.database.datastore.memory;
 
+import java.io.File;
+
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
@@ -33,8 +36,15 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
  * Simple factory class that will store all data in memory using object arrays
  * or hashmaps.
  * 
- * Hints are currently not used by this implementation, since everything is
- * in-memory.
+ * For {@link DBIDRange}s, arrays are used. For other DBIDs, hash maps are used
+ * unless {@link DataStoreFactory#HINT_FIXED_IDS} is given, in which case the
+ * DBIDs are remapped to array offsets once, see {@link RemappedIDMap}.
+ * With {@link DataStoreFactory#HINT_OFFHEAP}, primitive values and DBIDs are
+ * stored outside of the Java heap, see {@link AbstractOffHeapStore}. These
+ * stores use direct buffers, unless a spill directory is configured (for the
+ * default factory with the system property {@code elki.datastore.spill}), or
+ * the store is larger than the direct buffer limit (default 1 GB); then they
+ * use a temporary file in the spill directory, or in {@code java.io.tmpdir}.
  * 
  * @author Erich Schubert
  * @since 0.4.0
@@ -44,8 +54,48 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
  * @navhas - create - ArrayRecordStore
  * @navhas - create - MapStore
  * @navhas - create - MapRecordStore
+ * @navhas - create - RemappedIDMap
+ * @navhas - create - AbstractOffHeapStore
  */
 public class MemoryDataStoreFactory implements DataStoreFactory {
+  /**
+   * Default maximum size of off-heap stores using direct buffers, in bytes.
+   */
+  public static final long DEFAULT_DIRECT_LIMIT = 1L << 30;
+
+  /**
+   * Directory for file-backed off-heap stores, {@code null} for direct
+   * buffers.
+   */
+  private final File spillDirectory;
+
+  /**
+   * Maximum size of off-heap stores using direct buffers, in bytes.
+   */
+  private final long directLimit;
+
+  /**
+   * Constructor, using the spill directory from the system property
+   * {@code elki.datastore.spill}, if set.
+   */
+  public MemoryDataStoreFactory() {
+    this(System.getProperty("elki.datastore.spill") != null ? new File(System.getProperty("elki.datastore.spill")) : null, DEFAULT_DIRECT_LIMIT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param spillDirectory Directory for file-backed off-heap stores,
+   *        {@code null} to use direct buffers
+   * @param directLimit Maximum size of off-heap stores using direct buffers,
+   *        in bytes; larger stores use a temporary file
+   */
+  public MemoryDataStoreFactory(File spillDirectory, long directLimit) {
+    super();
+    this.spillDirectory = spillDirectory;
+    this.directLimit = directLimit;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public <T> WritableDataStore<T> makeStorage(DBIDs ids, int hints, Class<? super T> dataclass) {
@@ -55,10 +105,10 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
     if (Integer.class.equals(dataclass)) {
       return (WritableDataStore<T>) makeIntegerStorage(ids, hints);
     }
-    if(ids instanceof DBIDRange) {
-      DBIDRange range = (DBIDRange) ids;
-      Object[] data = new Object[range.size()];
-      return new ArrayStore<>(data, range);
+    DataStoreIDMap idmap = makeIDMap(ids, hints);
+    if(idmap != null) {
+      Object[] data = new Object[ids.size()];
+      return new ArrayStore<>(data, idmap);
     }
     else {
       return new MapIntegerDBIDStore<>(ids.size());
@@ -67,9 +117,9 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
 
   @Override
   public WritableDBIDDataStore makeDBIDStorage(DBIDs ids, int hints) {
-    if(ids instanceof DBIDRange) {
-      DBIDRange range = (DBIDRange) ids;
-      return new ArrayDBIDStore(range.size(), range);
+    DataStoreIDMap idmap = makeIDMap(ids, hints);
+    if(idmap != null) {
+      return (hints & HINT_OFFHEAP) != 0 ? new OffHeapDBIDStore(ids.size(), idmap, offHeapDirectory(ids.size(), 2)) : new ArrayDBIDStore(ids.size(), idmap);
     }
     else {
       return new MapIntegerDBIDDBIDStore(ids.size());
@@ -78,9 +128,9 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
 
   @Override
   public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints) {
-    if(ids instanceof DBIDRange) {
-      DBIDRange range = (DBIDRange) ids;
-      return new ArrayDoubleStore(range.size(), range);
+    DataStoreIDMap idmap = makeIDMap(ids, hints);
+    if(idmap != null) {
+      return (hints & HINT_OFFHEAP) != 0 ? new OffHeapDoubleStore(ids.size(), idmap, Double.NaN, offHeapDirectory(ids.size(), 3)) : new ArrayDoubleStore(ids.size(), idmap);
     }
     else {
       return new MapIntegerDBIDDoubleStore(ids.size());
@@ -89,9 +139,9 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
 
   @Override
   public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints, double def) {
-    if(ids instanceof DBIDRange) {
-      DBIDRange range = (DBIDRange) ids;
-      return new ArrayDoubleStore(range.size(), range, def);
+    DataStoreIDMap idmap = makeIDMap(ids, hints);
+    if(idmap != null) {
+      return (hints & HINT_OFFHEAP) != 0 ? new OffHeapDoubleStore(ids.size(), idmap, def, offHeapDirectory(ids.size(), 3)) : new ArrayDoubleStore(ids.size(), idmap, def);
     }
     else {
       return new MapIntegerDBIDDoubleStore(ids.size(), def);
@@ -100,9 +150,9 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
 
   @Override
   public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints) {
-    if(ids instanceof DBIDRange) {
-      DBIDRange range = (DBIDRange) ids;
-      return new ArrayIntegerStore(range.size(), range);
+    DataStoreIDMap idmap = makeIDMap(ids, hints);
+    if(idmap != null) {
+      return (hints & HINT_OFFHEAP) != 0 ? new OffHeapIntegerStore(ids.size(), idmap, 0, offHeapDirectory(ids.size(), 2)) : new ArrayIntegerStore(ids.size(), idmap);
     }
     else {
       return new MapIntegerDBIDIntegerStore(ids.size());
@@ -111,9 +161,9 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
 
   @Override
   public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints, int def) {
-    if(ids instanceof DBIDRange) {
-      DBIDRange range = (DBIDRange) ids;
-      return new ArrayIntegerStore(range.size(), range, def);
+    DataStoreIDMap idmap = makeIDMap(ids, hints);
+    if(idmap != null) {
+      return (hints & HINT_OFFHEAP) != 0 ? new OffHeapIntegerStore(ids.size(), idmap, def, offHeapDirectory(ids.size(), 2)) : new ArrayIntegerStore(ids.size(), idmap, def);
     }
     else {
       return new MapIntegerDBIDIntegerStore(ids.size(), def);
@@ -122,13 +172,39 @@ public class MemoryDataStoreFactory implements DataStoreFactory {
 
   @Override
   public WritableRecordStore makeRecordStorage(DBIDs ids, int hints, Class<?>... dataclasses) {
-    if(ids instanceof DBIDRange) {
-      DBIDRange range = (DBIDRange) ids;
-      Object[][] data = new Object[range.size()][dataclasses.length];
-      return new ArrayRecordStore(data, range);
+    DataStoreIDMap idmap = makeIDMap(ids, hints);
+    if(idmap != null) {
+      Object[][] data = new Object[ids.size()][dataclasses.length];
+      return new ArrayRecordStore(data, idmap);
     }
     else {
       return new MapIntegerDBIDRecordStore(ids.size(), dataclasses.length);
     }
   }
+
+  /**
+   * Choose the mapping of DBIDs to array offsets.
+   * 
+   * @param ids DBIDs
+   * @param hints Storage hints
+   * @return ID map, or {@code null} to use a hash map store.
+   */
+  private static DataStoreIDMap makeIDMap(DBIDs ids, int hints) {
+    if(ids instanceof DBIDRange) {
+      return (DBIDRange) ids;
+    }
+    return (hints & (HINT_FIXED_IDS | HINT_OFFHEAP)) != 0 ? new RemappedIDMap(ids) : null;
+  }
+
+  /**
+   * Choose the directory for the backing file of an off-heap store.
+   *
+   * @param size Number of values
+   * @param bytesShift Size of a value in bytes, as bit shift
+   * @return Directory, or {@code null} to use direct buffers
+   */
+  private File offHeapDirectory(int size, int bytesShift) {
+    return spillDirectory != null ? spillDirectory : //
+        ((long) size << bytesShift) > directLimit ? new File(System.getProperty("java.io.tmpdir")) : null;
+  }
 }
@@ -0,0 +1,139 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+
+/**
+ * Data store for DBIDs, outside of the Java heap. DBIDs are stored as
+ * integers.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap
+ */
+public class OffHeapDBIDStore extends AbstractOffHeapStore<DBID> implements WritableDBIDDataStore {
+  /**
+   * Integer value of the invalid DBID.
+   */
+  private final int invalid = DBIDUtil.asInteger(DBIDUtil.invalid());
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   */
+  public OffHeapDBIDStore(int size, DataStoreIDMap idmap) {
+    this(size, idmap, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   * @param dir Directory for the backing file, {@code null} for direct buffers
+   */
+  public OffHeapDBIDStore(int size, DataStoreIDMap idmap, File dir) {
+    super(size, idmap, 2, dir);
+    clear();
+  }
+
+  /**
+   * Get the stored integer value.
+   *
+   * @param id Key
+   * @return Integer value
+   */
+  private int getInt(DBIDRef id) {
+    final int off = idmap.mapDBIDToOffset(id);
+    return chunks[off >>> shift].getInt((off & mask) << 2);
+  }
+
+  /**
+   * Store an integer value.
+   *
+   * @param id Key
+   * @param value Value
+   * @return Previous value
+   */
+  private int putInt(DBIDRef id, int value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final ByteBuffer chunk = chunks[off >>> shift];
+    final int pos = (off & mask) << 2;
+    final int ret = chunk.getInt(pos);
+    chunk.putInt(pos, value);
+    return ret;
+  }
+
+  @Override
+  @Deprecated
+  public DBID get(DBIDRef id) {
+    return DBIDUtil.importInteger(getInt(id));
+  }
+
+  @Override
+  public DBIDVar assignVar(DBIDRef id, DBIDVar var) {
+    DBIDFactory.FACTORY.assignVar(var, getInt(id));
+    return var;
+  }
+
+  @Override
+  @Deprecated
+  public DBID put(DBIDRef id, DBID value) {
+    return DBIDUtil.importInteger(putInt(id, DBIDUtil.asInteger(value)));
+  }
+
+  @Override
+  public void putDBID(DBIDRef id, DBIDRef value) {
+    putInt(id, DBIDUtil.asInteger(value));
+  }
+
+  @Override
+  public void put(DBIDRef id, DBIDRef value) {
+    putInt(id, DBIDUtil.asInteger(value));
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    putInt(id, invalid);
+  }
+
+  @Override
+  public void clear() {
+    for(ByteBuffer chunk : chunks) {
+      for(int pos = 0, end = chunk.capacity(); pos < end; pos += 4) {
+        chunk.putInt(pos, invalid);
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+
+/**
+ * Data store for double values, outside of the Java heap.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap
+ */
+public class OffHeapDoubleStore extends AbstractOffHeapStore<Double> implements WritableDoubleDataStore {
+  /**
+   * Default value.
+   */
+  private double def;
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   */
+  public OffHeapDoubleStore(int size, DataStoreIDMap idmap) {
+    this(size, idmap, Double.NaN, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   * @param def Default value
+   */
+  public OffHeapDoubleStore(int size, DataStoreIDMap idmap, double def) {
+    this(size, idmap, def, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   * @param def Default value
+   * @param dir Directory for the backing file, {@code null} for direct buffers
+   */
+  public OffHeapDoubleStore(int size, DataStoreIDMap idmap, double def, File dir) {
+    super(size, idmap, 3, dir);
+    this.def = def;
+    if(def != 0) {
+      clear();
+    }
+  }
+
+  @Override
+  @Deprecated
+  public Double get(DBIDRef id) {
+    return Double.valueOf(doubleValue(id));
+  }
+
+  @Override
+  @Deprecated
+  public Double put(DBIDRef id, Double value) {
+    return Double.valueOf(putDouble(id, value.doubleValue()));
+  }
+
+  @Override
+  public double doubleValue(DBIDRef id) {
+    final int off = idmap.mapDBIDToOffset(id);
+    return chunks[off >>> shift].getDouble((off & mask) << 3);
+  }
+
+  @Override
+  public double putDouble(DBIDRef id, double value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final ByteBuffer chunk = chunks[off >>> shift];
+    final int pos = (off & mask) << 3;
+    final double ret = chunk.getDouble(pos);
+    chunk.putDouble(pos, value);
+    return ret;
+  }
+
+  @Override
+  public double put(DBIDRef id, double value) {
+    return putDouble(id, value);
+  }
+
+  @Override
+  public void increment(DBIDRef id, double adjust) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final ByteBuffer chunk = chunks[off >>> shift];
+    final int pos = (off & mask) << 3;
+    chunk.putDouble(pos, chunk.getDouble(pos) + adjust);
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    putDouble(id, def);
+  }
+
+  @Override
+  public void clear() {
+    for(ByteBuffer chunk : chunks) {
+      for(int pos = 0, end = chunk.capacity(); pos < end; pos += 8) {
+        chunk.putDouble(pos, def);
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+
+/**
+ * Data store for integer values, outside of the Java heap.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap
+ */
+public class OffHeapIntegerStore extends AbstractOffHeapStore<Integer> implements WritableIntegerDataStore {
+  /**
+   * Default value.
+   */
+  private int def;
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   */
+  public OffHeapIntegerStore(int size, DataStoreIDMap idmap) {
+    this(size, idmap, 0, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   * @param def Default value
+   */
+  public OffHeapIntegerStore(int size, DataStoreIDMap idmap, int def) {
+    this(size, idmap, def, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   * @param def Default value
+   * @param dir Directory for the backing file, {@code null} for direct buffers
+   */
+  public OffHeapIntegerStore(int size, DataStoreIDMap idmap, int def, File dir) {
+    super(size, idmap, 2, dir);
+    this.def = def;
+    if(def != 0) {
+      clear();
+    }
+  }
+
+  @Override
+  @Deprecated
+  public Integer get(DBIDRef id) {
+    return Integer.valueOf(intValue(id));
+  }
+
+  @Override
+  @Deprecated
+  public Integer put(DBIDRef id, Integer value) {
+    return Integer.valueOf(putInt(id, value.intValue()));
+  }
+
+  @Override
+  public int intValue(DBIDRef id) {
+    final int off = idmap.mapDBIDToOffset(id);
+    return chunks[off >>> shift].getInt((off & mask) << 2);
+  }
+
+  @Override
+  public int putInt(DBIDRef id, int value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final ByteBuffer chunk = chunks[off >>> shift];
+    final int pos = (off & mask) << 2;
+    final int ret = chunk.getInt(pos);
+    chunk.putInt(pos, value);
+    return ret;
+  }
+
+  @Override
+  public int put(DBIDRef id, int value) {
+    return putInt(id, value);
+  }
+
+  @Override
+  public void increment(DBIDRef id, int adjust) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final ByteBuffer chunk = chunks[off >>> shift];
+    final int pos = (off & mask) << 2;
+    chunk.putInt(pos, chunk.getInt(pos) + adjust);
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    putInt(id, def);
+  }
+
+  @Override
+  public void clear() {
+    for(ByteBuffer chunk : chunks) {
+      for(int pos = 0, end = chunk.capacity(); pos < end; pos += 4) {
+        chunk.putInt(pos, def);
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+/**
+ * Map a fixed set of DBIDs to dense array offsets, for storing data of DBID
+ * subsets in arrays.
+ * <p>
+ * If the integer ids span at most twice as many values as there are DBIDs
+ * (which is common for subsets of a database, such as samples of a range), a
+ * direct lookup table is used. Otherwise, the offsets are stored in an
+ * open-addressing hash map.
+ * <p>
+ * DBIDs not in the original set are not supported.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class RemappedIDMap implements DataStoreIDMap {
+  /**
+   * Smallest integer id.
+   */
+  private int min;
+
+  /**
+   * Direct lookup table, or {@code null}.
+   */
+  private int[] table;
+
+  /**
+   * Hash map of offsets, or {@code null}.
+   */
+  private Int2IntOpenHashMap map;
+
+  /**
+   * Constructor.
+   *
+   * @param ids DBIDs to map (duplicates will share the first offset)
+   */
+  public RemappedIDMap(DBIDs ids) {
+    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      final int i = DBIDUtil.asInteger(iter);
+      min = i < min ? i : min;
+      max = i > max ? i : max;
+    }
+    this.min = min;
+    final int size = ids.size();
+    if(size > 0 && (long) max - min < (long) size << 1) {
+      table = new int[max - min + 1];
+      Arrays.fill(table, -1);
+      int off = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), off++) {
+        final int i = DBIDUtil.asInteger(iter) - min;
+        if(table[i] < 0) {
+          table[i] = off;
+        }
+      }
+    }
+    else {
+      map = new Int2IntOpenHashMap(size);
+      map.defaultReturnValue(-1);
+      int off = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), off++) {
+        final int i = DBIDUtil.asInteger(iter);
+        if(map.get(i) < 0) {
+          map.put(i, off);
+        }
+      }
+    }
+  }
+
+  @Override
+  public int mapDBIDToOffset(DBIDRef dbid) {
+    return table != null ? table[DBIDUtil.asInteger(dbid) - min] : map.get(DBIDUtil.asInteger(dbid));
+  }
+}
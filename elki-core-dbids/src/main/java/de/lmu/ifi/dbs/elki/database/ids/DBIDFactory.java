@@ -178,6 +178,25 @@ public interface DBIDFactory {
    */
   HashSetModifiableDBIDs newHashSet(DBIDs existing);
 
+  /**
+   * Make a new static, sorted array of DBIDs in a compressed representation.
+   * Random access is more expensive than with {@link #newArray}, but sequential
+   * iteration is fast, and the memory use is much lower for dense ids. The
+   * result must not be modified. Implementations may return an uncompressed
+   * array if compression does not reduce the memory use.
+   * <p>
+   * The default implementation does not compress, but returns a sorted copy
+   * produced by {@link #newArray(DBIDs)}.
+   *
+   * @param existing existing DBIDs to use, will be sorted if necessary
+   * @return New compressed array
+   */
+  default ArrayDBIDs newCompressedArray(DBIDs existing) {
+    ArrayModifiableDBIDs copy = newArray(existing);
+    copy.sort();
+    return copy;
+  }
+
   /**
    * Create an heap for kNN search.
    *
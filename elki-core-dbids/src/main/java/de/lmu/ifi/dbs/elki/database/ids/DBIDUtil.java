@@ -272,6 +272,18 @@ public final class DBIDUtil {
     return DBIDFactory.FACTORY.newArray(existing);
   }
 
+  /**
+   * Make a new static, sorted array of DBIDs in a compressed representation,
+   * for large amounts of ids that are mostly accessed sequentially. If
+   * compression does not reduce the memory use, a plain array is returned.
+   *
+   * @param existing Existing DBIDs, will be sorted if necessary
+   * @return New compressed array
+   */
+  public static ArrayDBIDs newCompressedArray(DBIDs existing) {
+    return DBIDFactory.FACTORY.newCompressedArray(existing);
+  }
+
   /**
    * Make a new (modifiable) hash set of DBIDs.
    *
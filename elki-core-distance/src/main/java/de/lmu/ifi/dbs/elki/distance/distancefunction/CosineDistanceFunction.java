@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.distance.distancefunction;
 
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.VectorUtil;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
@@ -27,6 +28,7 @@ import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import net.jafama.FastMath;
 
 /**
  * Cosine distance function for feature vectors.
@@ -75,10 +77,44 @@ public class CosineDistanceFunction implements SpatialPrimitiveDistanceFunction<
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    double d = VectorUtil.cosAngle(v1, v2);
+    double d = (v1 instanceof FloatVector && v2 instanceof FloatVector) ? //
+        cosAngle((FloatVector) v1, (FloatVector) v2) : //
+        VectorUtil.cosAngle(v1, v2);
     return (d <= 1) ? 1 - d : 0;
   }
 
+  /**
+   * Compute the absolute cosine of the angle between two float vectors, using
+   * the float values directly; see {@link VectorUtil#angleDense}.
+   *
+   * @param v1 first vector
+   * @param v2 second vector
+   * @return Angle
+   */
+  private static double cosAngle(FloatVector v1, FloatVector v2) {
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = (dim1 <= dim2) ? dim1 : dim2;
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int k = 0; k < mindim; k++) {
+      final double r1 = v1.floatValue(k), r2 = v2.floatValue(k);
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    for(int k = mindim; k < dim1; k++) {
+      final double r1 = v1.floatValue(k);
+      l1 += r1 * r1;
+    }
+    for(int k = mindim; k < dim2; k++) {
+      final double r2 = v2.floatValue(k);
+      l2 += r2 * r2;
+    }
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
     double d = VectorUtil.minCosAngle(mbr1, mbr2);
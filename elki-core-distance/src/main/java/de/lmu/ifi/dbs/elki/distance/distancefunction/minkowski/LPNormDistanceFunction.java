@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
@@ -171,8 +172,68 @@ public class LPNormDistanceFunction implements SpatialPrimitiveDistanceFunction<
     return agg;
   }
 
+  /**
+   * Compute unscaled distance in a range of dimensions.
+   *
+   * @param v1 First object
+   * @param v2 Second object
+   * @param start First dimension
+   * @param end Exclusive last dimension
+   * @return Aggregated values.
+   */
+  private double preDistance(FloatVector v1, FloatVector v2, final int start, final int end) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.floatValue(d), yd = v2.floatValue(d);
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg += FastMath.pow(delta, p);
+    }
+    return agg;
+  }
+
+  /**
+   * Compute unscaled norm in a range of dimensions.
+   *
+   * @param v Data object
+   * @param start First dimension
+   * @param end Exclusive last dimension
+   * @return Aggregated values.
+   */
+  private double preNorm(FloatVector v, final int start, final int end) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v.floatValue(d);
+      final double delta = xd >= 0. ? xd : -xd;
+      agg += FastMath.pow(delta, p);
+    }
+    return agg;
+  }
+
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+      return floatDistance((FloatVector) v1, (FloatVector) v2);
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim);
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      agg += preNorm(v2, mindim, dim2);
+    }
+    return FastMath.pow(agg, invp);
+  }
+
+  /**
+   * Special version for float vectors, using the float values directly.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Distance
+   */
+  private double floatDistance(FloatVector v1, FloatVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
@@ -109,8 +110,68 @@ public class ManhattanDistanceFunction extends LPIntegerNormDistanceFunction {
     return agg;
   }
 
+  /**
+   * Compute the aggregated differences of two float vectors, for a range of
+   * dimensions.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @param start First dimension
+   * @param end End dimension (exclusive)
+   * @return Aggregated values
+   */
+  private double preDistance(FloatVector v1, FloatVector v2, int start, int end) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.floatValue(d), yd = v2.floatValue(d);
+      agg += xd >= yd ? xd - yd : yd - xd;
+    }
+    return agg;
+  }
+
+  /**
+   * Compute the aggregated values of a float vector, for a range of
+   * dimensions.
+   *
+   * @param v Vector
+   * @param start First dimension
+   * @param end End dimension (exclusive)
+   * @return Aggregated values
+   */
+  private double preNorm(FloatVector v, int start, int end) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v.floatValue(d);
+      agg += xd >= 0. ? xd : -xd;
+    }
+    return agg;
+  }
+
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+      return floatDistance((FloatVector) v1, (FloatVector) v2);
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim);
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      agg += preNorm(v2, mindim, dim2);
+    }
+    return agg;
+  }
+
+  /**
+   * Special version for float vectors, using the float values directly.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Distance
+   */
+  private double floatDistance(FloatVector v1, FloatVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
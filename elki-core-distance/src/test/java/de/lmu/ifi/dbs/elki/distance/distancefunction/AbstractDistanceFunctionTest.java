@@ -27,6 +27,7 @@ import static org.junit.Assert.assertTrue;
 import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
@@ -210,6 +211,30 @@ public abstract class AbstractDistanceFunctionTest {
     }
   }
 
+  /**
+   * Check that the specialized code for float vectors yields exactly the same
+   * results as the general code, including vectors of different length.
+   *
+   * @param dist Distance function to test
+   */
+  public static void floatConsistency(PrimitiveDistanceFunction<? super NumberVector> dist) {
+    final Random rnd = new FastNonThreadsafeRandom(2);
+    final int iters = 1000;
+    for(int i = 0; i < iters; i++) {
+      float[] f1 = new float[TEST_DIM - (i & 1)], f2 = new float[TEST_DIM - (i & 2)];
+      for(int d = 0; d < f1.length; d++) {
+        f1[d] = (float) (rnd.nextDouble() * 2E4 - 1E4);
+      }
+      for(int d = 0; d < f2.length; d++) {
+        f2[d] = (float) (rnd.nextDouble() * 2E4 - 1E4);
+      }
+      FloatVector v1 = new FloatVector(f1), v2 = new FloatVector(f2);
+      DoubleVector w1 = DoubleVector.wrap(v1.toArray()), w2 = DoubleVector.wrap(v2.toArray());
+      assertEquals("Float distance differs: " + dist.toString(), dist.distance(w1, w2), dist.distance(v1, v2), 0.);
+      assertEquals("Float distance differs: " + dist.toString(), dist.distance(w2, w1), dist.distance(v2, v1), 0.);
+    }
+  }
+
   public static void compareDistances(NumberVector v1, NumberVector v2, HyperBoundingBox mbr2, SpatialPrimitiveDistanceFunction<? super NumberVector> dist) {
     double exact = dist.distance(v1, v2), mind = dist.minDist(v1, v2),
         mbrd = dist.minDist(v1, mbr2), zero = dist.minDist(v2, mbr2),
@@ -37,6 +37,7 @@ public class CosineDistanceFunctionTest extends AbstractDistanceFunctionTest {
     basicChecks(dist);
     // Note: some of these are not well defined, as we have zero vectors.
     varyingLengthBasic(0, dist, 1, 1, 1, 1, 1, 1);
+    floatConsistency(dist);
     nonnegativeSpatialConsistency(dist);
   }
 }
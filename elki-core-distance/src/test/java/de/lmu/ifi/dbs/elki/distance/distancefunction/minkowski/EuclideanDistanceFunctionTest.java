@@ -38,6 +38,7 @@ public class EuclideanDistanceFunctionTest extends AbstractDistanceFunctionTest
     EuclideanDistanceFunction dist = new ELKIBuilder<>(EuclideanDistanceFunction.class).build();
     basicChecks(dist);
     varyingLengthBasic(0, dist, 1, 0, 1, 1, MathUtil.SQRT2, 1);
+    floatConsistency(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
   }
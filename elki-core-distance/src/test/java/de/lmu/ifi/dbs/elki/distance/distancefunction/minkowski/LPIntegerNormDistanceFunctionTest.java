@@ -43,6 +43,7 @@ public class LPIntegerNormDistanceFunctionTest extends AbstractDistanceFunctionT
     assertSame("Subtyped", LPIntegerNormDistanceFunction.class, dist.getClass());
     basicChecks(dist);
     varyingLengthBasic(0, dist, 1, 0, 1, 1, FastMath.pow(2, 1. / 3), 1);
+    floatConsistency(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
   }
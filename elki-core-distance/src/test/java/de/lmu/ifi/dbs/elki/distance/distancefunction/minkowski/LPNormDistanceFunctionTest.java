@@ -46,6 +46,7 @@ public class LPNormDistanceFunctionTest extends AbstractDistanceFunctionTest {
     assertFalse("Not metric", dist.isMetric());
     basicChecks(dist);
     varyingLengthBasic(0, dist, 1, 0, 1, 1, 4, 1);
+    floatConsistency(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
     dist = new ELKIBuilder<>(LPNormDistanceFunction.class) //
@@ -55,6 +56,7 @@ public class LPNormDistanceFunctionTest extends AbstractDistanceFunctionTest {
     assertTrue("Not metric", dist.isMetric());
     basicChecks(dist);
     varyingLengthBasic(0, dist, 1, 0, 1, 1, FastMath.pow(2, 1. / 3), 1);
+    floatConsistency(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
   }
@@ -37,6 +37,7 @@ public class ManhattanDistanceFunctionTest extends AbstractDistanceFunctionTest
     ManhattanDistanceFunction dist = new ELKIBuilder<>(ManhattanDistanceFunction.class).build();
     basicChecks(dist);
     varyingLengthBasic(0, dist, 1, 0, 1, 1, 2, 1);
+    floatConsistency(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
   }
@@ -37,6 +37,7 @@ public class SquaredEuclideanDistanceFunctionTest extends AbstractDistanceFuncti
     SquaredEuclideanDistanceFunction dist = new ELKIBuilder<>(SquaredEuclideanDistanceFunction.class).build();
     basicChecks(dist);
     varyingLengthBasic(0, dist, 1, 0, 1, 1, 2, 1);
+    floatConsistency(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
   }
@@ -21,16 +21,16 @@
 package de.lmu.ifi.dbs.elki.parallel;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
- * 
- * TODO: make configurable how many threads are used.
+ * Core for parallel processing in ELKI, based on a work-stealing
+ * {@link ForkJoinPool}.
+ * <p>
+ * The number of threads defaults to the number of available processors, and
+ * can be changed with {@link #setParallelism} while no tasks are running.
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -48,8 +48,10 @@ public class ParallelCore {
 
   /**
    * Executor service.
+   * <p>
+   * Only replaced while holding the lock, but read by submitting threads.
    */
-  ThreadPoolExecutor executor;
+  volatile ForkJoinPool executor;
 
   /**
    * Number of connected submitters.
@@ -58,8 +60,10 @@ public class ParallelCore {
 
   /**
    * Maximum number of processors to use.
+   * <p>
+   * Only modified while holding the lock, but read by worker threads.
    */
-  private int processors;
+  private volatile int processors;
 
   /**
    * Constructor.
@@ -84,7 +88,30 @@ public class ParallelCore {
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor != null ? executor.getMaximumPoolSize() : processors;
+    return processors;
+  }
+
+  /**
+   * Set the desired level of parallelism.
+   * 
+   * @param processors Number of threads to run in parallel
+   * @throws IllegalStateException when tasks are currently running
+   */
+  public synchronized void setParallelism(int processors) {
+    if(processors < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
+    if(processors == this.processors) {
+      return;
+    }
+    if(connected.get() > 0) {
+      throw new IllegalStateException("Cannot change the parallelism while tasks are running.");
+    }
+    this.processors = processors;
+    if(executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
   }
 
   /**
@@ -94,7 +121,7 @@ public class ParallelCore {
    * 
    * @return Future to observe completion
    */
-  public <T> Future<T> submit(Callable<T> task) {
+  public <T> ForkJoinTask<T> submit(Callable<T> task) {
     return executor.submit(task);
   }
 
@@ -102,31 +129,20 @@ public class ParallelCore {
    * Connect to the executor.
    */
   public void connect() {
-    if(executor == null) {
-      synchronized(this) {
-        if(executor == null) {
-          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-          executor.allowCoreThreadTimeOut(true);
-        }
+    synchronized(this) {
+      if(executor == null) {
+        executor = new ForkJoinPool(processors);
       }
-    }
-    int c = this.connected.incrementAndGet();
-    if(c == 1) {
-      executor.allowCoreThreadTimeOut(false);
-      executor.setCorePoolSize(executor.getMaximumPoolSize());
+      this.connected.incrementAndGet();
     }
   }
 
   /**
    * Disconnect to the executor.
+   * <p>
+   * Idle worker threads of the pool are retired automatically.
    */
   public void disconnect() {
-    int c = this.connected.decrementAndGet();
-    if(c == 0) {
-      synchronized(this) {
-        executor.allowCoreThreadTimeOut(true);
-        executor.setCorePoolSize(0);
-      }
-    }
+    this.connected.decrementAndGet();
   }
 }
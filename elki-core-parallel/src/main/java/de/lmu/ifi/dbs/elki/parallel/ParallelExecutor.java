@@ -25,28 +25,46 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 
 /**
  * Class to run processors in parallel, on all available cores.
- *
- * TODO: add progress
+ * <p>
+ * One worker is started per thread of the {@link ParallelCore}. Each worker
+ * instantiates the processors once, and then repeatedly claims the next chunk
+ * of the data set (guided self-scheduling: chunks shrink as the remaining work
+ * decreases). Workers that finish their chunks early simply claim more, so
+ * expensive objects do not leave other threads idle.
  *
  * @author Erich Schubert
  * @since 0.7.0
  *
  * @has - - - BlockArrayRunner
+ * @has - - - RangeTask
+ * @has - - - WorkerRangeTask
+ * @has - - - Partitioning
  * @assoc - - - ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Maximum size of the smallest chunks.
+   */
+  private static final int MAX_MIN_CHUNK = 64;
+
   /**
    * Private constructor. Static methods only.
    */
@@ -61,42 +79,275 @@ public final class ParallelExecutor {
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
+    run(ids, null, null, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs.
+   *
+   * @param ids IDs to process
+   * @param progress Progress to update (may be {@code null})
+   * @param logger Logger to report the progress to
+   * @param procs Processors to run
+   */
+  public static void run(DBIDs ids, FiniteProgress progress, Logging logger, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
     core.connect();
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    final int parallelism = core.getParallelism();
+    final int minchunk = Math.max(1, Math.min(MAX_MIN_CHUNK, size / (parallelism << 8)));
+    Partitioning part = new Partitioning(size, parallelism, minchunk);
+    final int numworkers = Math.max(1, Math.min(parallelism, (size + minchunk - 1) / minchunk));
+    List<Future<?>> parts = new ArrayList<>(numworkers);
     try {
-      // TODO: try different strategies anyway!
-      ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-      final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = Math.min(start + blocksize, size);
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
+      for(int i = 0; i < numworkers; i++) {
+        parts.add(core.submit(new BlockArrayRunner(aids, part, procs, progress, logger)));
       }
+      await(parts, part);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Run a task on ranges of the integers {@code 0..size-1}, on all available
+   * CPUs. The ranges are claimed dynamically, as in
+   * {@link #run(DBIDs, FiniteProgress, Logging, Processor...)}.
+   * <p>
+   * If only a single thread is available, or the range is small, the task is
+   * simply invoked once for the full range in the calling thread.
+   *
+   * @param size Number of integers to process
+   * @param minchunk Minimum chunk size
+   * @param task Task to run
+   */
+  public static void run(int size, int minchunk, RangeTask task) {
+    run(size, minchunk, () -> null, (worker, start, end) -> task.run(start, end), null);
+  }
 
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
+  /**
+   * Run a task on ranges of the integers {@code 0..size-1}, on all available
+   * CPUs, with per-worker state (e.g., queries or counters that must not be
+   * shared across threads).
+   * <p>
+   * Every worker obtains its state from {@code setup} once, before processing
+   * its first range. After all workers have finished, {@code cleanup} is
+   * invoked for each state in the calling thread, so results can be
+   * aggregated without synchronization.
+   *
+   * @param size Number of integers to process
+   * @param minchunk Minimum chunk size
+   * @param setup Per-worker setup
+   * @param task Task to run
+   * @param cleanup Per-worker cleanup, may be {@code null}
+   * @param <W> Worker state type
+   */
+  public static <W> void run(int size, int minchunk, Supplier<? extends W> setup, WorkerRangeTask<W> task, Consumer<? super W> cleanup) {
+    ParallelCore core = ParallelCore.getCore();
+    final int parallelism = core.getParallelism();
+    minchunk = Math.max(1, minchunk);
+    if(parallelism <= 1 || size <= minchunk) {
+      if(size > 0) {
+        W worker = setup.get();
+        task.run(worker, 0, size);
+        if(cleanup != null) {
+          cleanup.accept(worker);
+        }
       }
+      return;
     }
-    catch(ExecutionException e) {
-      throw new RuntimeException("Processor execution failed.", e);
-    }
-    catch(InterruptedException e) {
-      throw new RuntimeException("Parallel execution interrupted.");
+    core.connect();
+    final Partitioning part = new Partitioning(size, parallelism, minchunk);
+    final int numworkers = Math.min(parallelism, (size + minchunk - 1) / minchunk);
+    List<ForkJoinTask<W>> parts = new ArrayList<>(numworkers);
+    try {
+      for(int i = 0; i < numworkers; i++) {
+        parts.add(core.submit(new Callable<W>() {
+          @Override
+          public W call() {
+            int[] range = new int[2];
+            try {
+              W worker = null;
+              while(part.claim(range)) {
+                worker = worker != null ? worker : setup.get();
+                task.run(worker, range[0], range[1]);
+              }
+              return worker;
+            }
+            catch(RuntimeException | Error e) {
+              part.cancel();
+              throw e;
+            }
+          }
+        }));
+      }
+      await(parts, part);
     }
     finally {
       core.disconnect();
     }
+    if(cleanup != null) {
+      for(ForkJoinTask<W> fut : parts) {
+        W worker = fut.join();
+        if(worker != null) {
+          cleanup.accept(worker);
+        }
+      }
+    }
+  }
+
+  /**
+   * Wait for all workers to finish, and rethrow the first failure.
+   *
+   * @param parts Worker futures
+   * @param part Partitioning, to cancel on failure
+   */
+  private static void await(List<? extends Future<?>> parts, Partitioning part) {
+    try {
+      ExecutionException failure = null;
+      for(Future<?> fut : parts) {
+        try {
+          fut.get();
+        }
+        catch(ExecutionException e) {
+          // Stop the other workers, but wait for them to finish.
+          part.cancel();
+          failure = failure != null ? failure : e;
+        }
+      }
+      if(failure != null) {
+        throw new RuntimeException("Processor execution failed.", failure.getCause());
+      }
+    }
+    catch(InterruptedException e) {
+      part.cancel();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Parallel execution interrupted.", e);
+    }
+  }
+
+  /**
+   * Task operating on a range of integers.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface RangeTask {
+    /**
+     * Process a range.
+     *
+     * @param start First integer (inclusive)
+     * @param end Last integer (exclusive)
+     */
+    void run(int start, int end);
+  }
+
+  /**
+   * Task operating on a range of integers, with per-worker state.
+   *
+   * @author agent
+   *
+   * @param <W> Worker state type
+   */
+  @FunctionalInterface
+  public interface WorkerRangeTask<W> {
+    /**
+     * Process a range.
+     *
+     * @param worker Worker state, obtained from the setup of this thread
+     * @param start First integer (inclusive)
+     * @param end Last integer (exclusive)
+     */
+    void run(W worker, int start, int end);
+  }
+
+  /**
+   * Shared partitioning of an array into chunks.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Partitioning {
+    /**
+     * Next position to process.
+     */
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    /**
+     * Array size.
+     */
+    private final int size;
+
+    /**
+     * Divisor for the remaining work.
+     */
+    private final int divisor;
+
+    /**
+     * Minimum chunk size.
+     */
+    private final int minchunk;
+
+    /**
+     * Cancellation flag.
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructor.
+     *
+     * @param size Array size
+     * @param parallelism Number of threads
+     * @param minchunk Minimum chunk size
+     */
+    protected Partitioning(int size, int parallelism, int minchunk) {
+      this.size = size;
+      this.divisor = parallelism << 1;
+      this.minchunk = minchunk;
+    }
+
+    /**
+     * Claim the next chunk.
+     *
+     * @param range Output array, receives start and end
+     * @return {@code false} when no work is left
+     */
+    protected boolean claim(int[] range) {
+      while(!cancelled) {
+        final int start = next.get();
+        if(start >= size) {
+          return false;
+        }
+        final int end = Math.min(size, start + Math.max(minchunk, (size - start) / divisor));
+        if(next.compareAndSet(start, end)) {
+          range[0] = start;
+          range[1] = end;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Stop handing out work.
+     */
+    protected void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Test for cancellation.
+     *
+     * @return {@code true} when cancelled
+     */
+    protected boolean isCancelled() {
+      return cancelled;
+    }
   }
 
   /**
-   * Run for an array part, without step size.
+   * Worker processing chunks of an array.
    *
    * @author Erich Schubert
    *
@@ -109,19 +360,24 @@ public final class ParallelExecutor {
     private ArrayDBIDs ids;
 
     /**
-     * Start position
+     * Partitioning of the array.
+     */
+    private Partitioning part;
+
+    /**
+     * The processor masters that own the instances.
      */
-    private int start;
+    private Processor[] procs;
 
     /**
-     * End position
+     * Progress, may be {@code null}.
      */
-    private int end;
+    private FiniteProgress progress;
 
     /**
-     * The processor masters that own the instances.
+     * Logger for progress reporting.
      */
-    private Processor[] procs;
+    private Logging logger;
 
     /**
      * Variables map.
@@ -132,16 +388,18 @@ public final class ParallelExecutor {
      * Constructor.
      *
      * @param ids IDs to process
-     * @param start Starting position
-     * @param end End position
+     * @param part Shared partitioning
      * @param procs Processors to run
+     * @param progress Progress, may be {@code null}
+     * @param logger Logger for progress reporting
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected BlockArrayRunner(ArrayDBIDs ids, Partitioning part, Processor[] procs, FiniteProgress progress, Logging logger) {
       super();
       this.ids = ids;
-      this.start = start;
-      this.end = end;
+      this.part = part;
       this.procs = procs;
+      this.progress = progress;
+      this.logger = logger;
     }
 
     @Override
@@ -150,11 +408,30 @@ public final class ParallelExecutor {
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
       }
-      for(DBIDArrayIter iter = ids.iter().seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
-        for(int i = 0; i < instances.length; i++) {
-          instances[i].map(iter);
+      try {
+        int[] range = new int[2];
+        DBIDArrayIter iter = ids.iter();
+        while(part.claim(range)) {
+          for(iter.seek(range[0]); iter.getOffset() < range[1]; iter.advance()) {
+            for(int i = 0; i < instances.length; i++) {
+              instances[i].map(iter);
+            }
+            if(part.isCancelled()) {
+              return ids;
+            }
+          }
+          if(progress != null) {
+            progress.incrementProcessed(range[1] - range[0], logger);
+          }
         }
       }
+      catch(RuntimeException | Error e) {
+        part.cancel();
+        throw e;
+      }
+      if(part.isCancelled()) {
+        return ids;
+      }
       for(int i = 0; i < instances.length; i++) {
         procs[i].cleanup(instances[i]);
       }
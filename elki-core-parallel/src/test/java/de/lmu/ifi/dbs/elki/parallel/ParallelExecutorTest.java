@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Test the dynamic chunking of the parallel executor.
+ *
+ * @author agent
+ */
+public class ParallelExecutorTest {
+  /**
+   * Sizes to test.
+   */
+  private static final int[] SIZES = { 0, 1, 2, 63, 64, 65, 1000, 100003 };
+
+  /**
+   * Minimum chunk sizes to test.
+   */
+  private static final int[] MINCHUNKS = { 0, 1, 7, 64, 1000 };
+
+  @Test
+  public void testRangeCoverage() {
+    ParallelCore core = ParallelCore.getCore();
+    final int before = core.getParallelism();
+    try {
+      for(int parallelism : new int[] { 1, 2, 4, 7 }) {
+        core.setParallelism(parallelism);
+        for(int size : SIZES) {
+          for(int minchunk : MINCHUNKS) {
+            final AtomicIntegerArray seen = new AtomicIntegerArray(size);
+            ParallelExecutor.run(size, minchunk, (start, end) -> {
+              assertTrue("Empty or invalid range.", 0 <= start && start < end && end <= seen.length());
+              for(int i = start; i < end; i++) {
+                seen.incrementAndGet(i);
+              }
+            });
+            for(int i = 0; i < size; i++) {
+              assertEquals("Index " + i + " of " + size + " not covered exactly once, minchunk " + minchunk + " parallelism " + parallelism, 1, seen.get(i));
+            }
+          }
+        }
+      }
+    }
+    finally {
+      core.setParallelism(before);
+    }
+  }
+
+  @Test
+  public void testWorkerState() {
+    ParallelCore core = ParallelCore.getCore();
+    final int before = core.getParallelism();
+    try {
+      for(int parallelism : new int[] { 1, 2, 4, 7 }) {
+        core.setParallelism(parallelism);
+        for(int size : SIZES) {
+          // Each worker counts privately, the counts are summed in cleanup.
+          final Thread caller = Thread.currentThread();
+          final long[] sum = new long[1];
+          final AtomicInteger workers = new AtomicInteger();
+          ParallelExecutor.run(size, 7, () -> {
+            workers.incrementAndGet();
+            return new int[] { 0 };
+          }, (count, start, end) -> count[0] += end - start, count -> {
+            assertSame("Cleanup not in the calling thread.", caller, Thread.currentThread());
+            sum[0] += count[0];
+          });
+          assertEquals("Not all indexes were processed.", size, sum[0]);
+          assertTrue("More workers than threads.", workers.get() <= parallelism);
+        }
+      }
+    }
+    finally {
+      core.setParallelism(before);
+    }
+  }
+
+  @Test
+  public void testPartitioning() {
+    for(int parallelism : new int[] { 1, 2, 4, 7 }) {
+      for(int size : SIZES) {
+        for(int minchunk : MINCHUNKS) {
+          final int mc = Math.max(1, minchunk);
+          ParallelExecutor.Partitioning part = new ParallelExecutor.Partitioning(size, parallelism, mc);
+          int[] range = new int[2];
+          int pos = 0;
+          while(part.claim(range)) {
+            assertEquals("Chunks are not contiguous.", pos, range[0]);
+            assertTrue("Empty chunk.", range[1] > range[0]);
+            assertTrue("Chunk too small.", range[1] - range[0] >= mc || range[1] == size);
+            pos = range[1];
+          }
+          assertEquals("Not all indexes were claimed.", size, pos);
+          assertFalse("Claimed after the end.", part.claim(range));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCancel() {
+    ParallelExecutor.Partitioning part = new ParallelExecutor.Partitioning(1000, 4, 1);
+    int[] range = new int[2];
+    assertTrue(part.claim(range));
+    part.cancel();
+    assertTrue(part.isCancelled());
+    assertFalse("Claimed after cancellation.", part.claim(range));
+  }
+}
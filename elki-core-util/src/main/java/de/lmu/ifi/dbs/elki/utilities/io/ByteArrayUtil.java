@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.utilities.io;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -849,19 +850,34 @@ public final class ByteArrayUtil {
         return; // At later Java, the hack below will not work anymore.
     }
     catch(NoSuchMethodException e) {
-      // This is an ugly hack, but all that Java <8 offers to help freeing
-      // memory allocated using such buffers.
-      // See also: http://bugs.sun.com/view_bug.do?bug_id=4724038
+      cleanByteBuffer(map);
+    }
+    catch(SecurityException e1) {
+      // Ignore.
+    }
+  }
+
+  /**
+   * Invoke the cleaner of a direct byte buffer, on Java 8, without writing
+   * mapped buffers to disk first.
+   *
+   * @param buffer Byte buffer to release.
+   */
+  private static void cleanByteBuffer(final ByteBuffer buffer) {
+    // This is an ugly hack, but all that Java <8 offers to help freeing
+    // memory allocated using such buffers.
+    // See also: http://bugs.sun.com/view_bug.do?bug_id=4724038
+    try {
       AccessController.doPrivileged(new PrivilegedAction<Object>() {
         @Override
         public Object run() {
           try {
-            Method getCleanerMethod = map.getClass().getMethod("cleaner", new Class[0]);
+            Method getCleanerMethod = buffer.getClass().getMethod("cleaner", new Class[0]);
             if(getCleanerMethod == null) {
               return null;
             }
             getCleanerMethod.setAccessible(true);
-            Object cleaner = getCleanerMethod.invoke(map, new Object[0]);
+            Object cleaner = getCleanerMethod.invoke(buffer, new Object[0]);
             Method cleanMethod = cleaner.getClass().getMethod("clean");
             if(cleanMethod == null) {
               return null;
@@ -875,8 +891,40 @@ public final class ByteArrayUtil {
         }
       });
     }
-    catch(SecurityException e1) {
+    catch(SecurityException e) {
       // Ignore.
     }
   }
+
+  /**
+   * Release the memory of a direct (or mapped) byte buffer immediately, rather
+   * than when the buffer is garbage collected. The buffer, and any view of it,
+   * must not be used afterwards.
+   * <p>
+   * This uses {@code sun.misc.Unsafe.invokeCleaner} where available (Java 9+),
+   * and the buffer cleaner otherwise. If neither works, the memory is released
+   * by the garbage collector as usual. Mapped buffers are <em>not</em> written
+   * to disk first; call {@link MappedByteBuffer#force()} if the contents are
+   * to be kept.
+   *
+   * @param buffer Buffer to release, must not be a slice or duplicate.
+   */
+  public static void releaseDirectBuffer(ByteBuffer buffer) {
+    if(buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    }
+    catch(NoSuchMethodException e) {
+      cleanByteBuffer(buffer); // Java 8
+    }
+    catch(ReflectiveOperationException | RuntimeException e) {
+      // Ignore, the garbage collector will release the memory.
+    }
+  }
 }
@@ -226,7 +226,7 @@ public final class DatabaseUtil {
    * Get (or create) a precomputed distance query for the database.
    * 
    * This will usually force computing a distance matrix, unless there already
-   * is one.
+   * is one. If no matrix can be computed, a bounded distance cache is used.
    * 
    * @param database Database
    * @param relation Relation
@@ -247,7 +247,7 @@ public final class DatabaseUtil {
       }
     }
     if(dq == null) {
-      dq = database.getDistanceQuery(relation, distf, DatabaseQuery.HINT_HEAVY_USE);
+      dq = database.getDistanceQuery(relation, distf, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_DISTANCE_CACHE);
       log.warning("We could not automatically use a distance matrix, expect a performance degradation.");
     }
     return dq;
@@ -22,26 +22,37 @@ package de.lmu.ifi.dbs.elki.database;
 
 import java.util.Collection;
 
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.MappedNumberVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedColumnarDoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedColumnarFloatRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedNumberVectorColumn;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -80,6 +91,23 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Store dense vector fields in columnar relations.
+   */
+  protected boolean columnar = false;
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param columnar Store dense vector fields in columnar relations
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories, boolean columnar) {
+    this(databaseConnection, indexFactories);
+    this.columnar = columnar;
+  }
+
   /**
    * Constructor.
    *
@@ -147,13 +175,24 @@ public class StaticArrayDatabase extends AbstractDatabase {
     int numrel = bundle.metaLength();
     for(int i = 0; i < numrel; i++) {
       SimpleTypeInformation<?> meta = bundle.meta(i);
-      @SuppressWarnings("unchecked")
-      SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-      WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-      for(it.seek(0); it.valid(); it.advance()) {
-        store.put(it, bundle.data(it.getOffset(), i));
+      final Relation<?> relation;
+      if(bundle.getColumn(i) instanceof MappedNumberVectorColumn) {
+        relation = new MappedNumberVectorRelation(ids, null, (MappedNumberVectorColumn) bundle.getColumn(i));
+      }
+      else if(columnar && ids instanceof DBIDRange && isDenseVectorField(meta)) {
+        relation = makeColumnarRelation(meta, bundle, i);
       }
-      Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
+      else {
+        @SuppressWarnings("unchecked")
+        SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+        for(it.seek(0); it.valid(); it.advance()) {
+          store.put(it, bundle.data(it.getOffset(), i));
+        }
+        relation = new MaterializedRelation<>(ometa, ids, null, store);
+      }
+      @SuppressWarnings("unchecked")
+      final SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) relation.getDataTypeInformation();
       relations.add(relation);
       getHierarchy().add(this, relation);
 
@@ -179,6 +218,49 @@ public class StaticArrayDatabase extends AbstractDatabase {
     eventManager.fireObjectsInserted(ids);
   }
 
+  /**
+   * Build a columnar relation for a dense vector field. Float vectors are
+   * stored in single precision.
+   *
+   * @param meta Type information
+   * @param bundle Data bundle
+   * @param col Column in bundle
+   * @return Relation
+   */
+  @SuppressWarnings("unchecked")
+  private Relation<NumberVector> makeColumnarRelation(SimpleTypeInformation<?> meta, MultipleObjectsBundle bundle, int col) {
+    final VectorFieldTypeInformation<? extends NumberVector> vmeta = (VectorFieldTypeInformation<? extends NumberVector>) meta;
+    if(FloatVector.class.isAssignableFrom(meta.getRestrictionClass())) {
+      MaterializedColumnarFloatRelation relation = new MaterializedColumnarFloatRelation(vmeta, (DBIDRange) ids, null);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        relation.set(it, (NumberVector) bundle.data(it.getOffset(), col));
+      }
+      return relation;
+    }
+    MaterializedColumnarDoubleRelation relation = new MaterializedColumnarDoubleRelation(vmeta, (DBIDRange) ids, null, false);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      relation.set(it, (NumberVector) bundle.data(it.getOffset(), col));
+    }
+    return relation;
+  }
+
+  /**
+   * Test whether a type is a dense number vector field of fixed
+   * dimensionality, that can be stored in a columnar relation.
+   *
+   * @param meta Type information
+   * @return {@code true} when a columnar relation can be used.
+   */
+  private static boolean isDenseVectorField(SimpleTypeInformation<?> meta) {
+    if(!(meta instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    final VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    return vmeta.mindim() == vmeta.maxdim() //
+        && NumberVector.class.isAssignableFrom(meta.getRestrictionClass()) //
+        && !SparseNumberVector.class.isAssignableFrom(meta.getRestrictionClass());
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -190,6 +272,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @author Erich Schubert
    */
   public static class Parameterizer extends AbstractDatabase.Parameterizer {
+    /**
+     * Option to store dense vector fields in columnar relations.
+     */
+    public static final OptionID COLUMNAR_ID = new OptionID("db.columnar", "Store dense, fixed-dimensional number vector fields in columnar block storage (float vectors in single precision). This reduces memory usage and accelerates linear scans, but algorithms that explicitly require DoubleVector relations will not find their input.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -200,6 +287,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<? extends IndexFactory<?>> indexFactories;
 
+    /**
+     * Store dense vector fields in columnar relations.
+     */
+    private boolean columnar = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -213,11 +305,15 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      Flag columnarF = new Flag(COLUMNAR_ID);
+      if(config.grab(columnarF)) {
+        columnar = columnarF.isTrue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, columnar);
     }
   }
 }
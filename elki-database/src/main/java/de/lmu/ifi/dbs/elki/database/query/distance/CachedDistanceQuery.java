@@ -0,0 +1,369 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.distance;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+
+/**
+ * Distance query that memoizes the distances of pairs of DBIDs, for
+ * algorithms that compute the same distances repeatedly, but where a full
+ * distance matrix would need too much memory.
+ * <p>
+ * The distances are kept in a primitive open addressing hash table (linear
+ * probing) of bounded size. When the table is full, entries are evicted with
+ * the CLOCK approximation of least-recently-used.
+ * <p>
+ * This query is used when {@link DatabaseQuery#HINT_DISTANCE_CACHE} is given,
+ * unless {@link DatabaseQuery#HINT_NO_CACHE} is given, too. Queries on objects
+ * (rather than DBIDs) are not cached. Table access is synchronized, but the
+ * distances are computed outside of the lock. The table is only allocated on
+ * first use, and by default no larger than needed for all pairs of the
+ * relation.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <O> Object type
+ */
+public class CachedDistanceQuery<O> implements DistanceQuery<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(CachedDistanceQuery.class);
+
+  /**
+   * Default maximum number of cached distances (about 36 MB of memory).
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+
+  /**
+   * Slot states.
+   */
+  private static final byte EMPTY = 0, USED = 1, REFERENCED = 2;
+
+  /**
+   * Inner distance query.
+   */
+  private final DistanceQuery<O> inner;
+
+  /**
+   * Whether to treat (a, b) and (b, a) as the same pair.
+   */
+  private final boolean symmetric;
+
+  /**
+   * Maximum number of entries.
+   */
+  private final int capacity;
+
+  /**
+   * Bit mask for the table size.
+   */
+  private final int mask;
+
+  /**
+   * Bit shift for hashing.
+   */
+  private final int shift;
+
+  /**
+   * Keys (pairs of DBIDs), allocated on first use.
+   */
+  private long[] keys;
+
+  /**
+   * Cached distances.
+   */
+  private double[] values;
+
+  /**
+   * Slot states.
+   */
+  private byte[] state;
+
+  /**
+   * Number of entries.
+   */
+  private int size;
+
+  /**
+   * Position of the clock hand, for eviction.
+   */
+  private int hand;
+
+  /**
+   * Statistics.
+   */
+  private long hits, misses, evictions;
+
+  /**
+   * Constructor, with a capacity of {@link #DEFAULT_CAPACITY}, or the number of
+   * pairs in the relation if smaller.
+   *
+   * @param inner Distance query to cache
+   */
+  public CachedDistanceQuery(DistanceQuery<O> inner) {
+    this(inner, defaultCapacity(inner));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param inner Distance query to cache
+   * @param capacity Maximum number of cached distances
+   */
+  public CachedDistanceQuery(DistanceQuery<O> inner, int capacity) {
+    super();
+    if(capacity < 1 || capacity > 1 << 29) {
+      throw new IllegalArgumentException("Cache capacity must be between 1 and 2^29.");
+    }
+    this.inner = inner;
+    this.symmetric = inner.getDistanceFunction().isSymmetric();
+    this.capacity = capacity;
+    // Keep the load factor at most 0.75:
+    int bits = 2;
+    while((1 << bits) * 3L < capacity * 4L) {
+      bits++;
+    }
+    this.mask = (1 << bits) - 1;
+    this.shift = 64 - bits;
+  }
+
+  /**
+   * Default capacity: the number of distinct pairs in the relation, but at most
+   * {@link #DEFAULT_CAPACITY}.
+   *
+   * @param inner Distance query
+   * @return Capacity
+   */
+  private static int defaultCapacity(DistanceQuery<?> inner) {
+    final long n = inner.getRelation().size();
+    final long pairs = inner.getDistanceFunction().isSymmetric() ? (n * (n + 1)) >>> 1 : n * n;
+    return (int) Math.max(1, Math.min(DEFAULT_CAPACITY, pairs));
+  }
+
+  @Override
+  public double distance(DBIDRef id1, DBIDRef id2) {
+    final int a = DBIDUtil.asInteger(id1), b = DBIDUtil.asInteger(id2);
+    final long key = symmetric && b < a ? pack(b, a) : pack(a, b);
+    synchronized(this) {
+      if(state == null) {
+        keys = new long[mask + 1];
+        values = new double[mask + 1];
+        state = new byte[mask + 1];
+      }
+      for(int pos = slot(key); state[pos] != EMPTY; pos = (pos + 1) & mask) {
+        if(keys[pos] == key) {
+          ++hits;
+          state[pos] = REFERENCED;
+          return values[pos];
+        }
+      }
+      ++misses;
+    }
+    // Compute outside of the lock:
+    final double d = inner.distance(id1, id2);
+    synchronized(this) {
+      insert(key, d);
+    }
+    return d;
+  }
+
+  /**
+   * Insert a distance into the table.
+   *
+   * @param key Key
+   * @param d Distance
+   */
+  private void insert(long key, double d) {
+    int pos = slot(key);
+    for(; state[pos] != EMPTY; pos = (pos + 1) & mask) {
+      if(keys[pos] == key) {
+        return; // Added concurrently.
+      }
+    }
+    if(size >= capacity) {
+      evict();
+      // Eviction may have moved entries, find a free slot again:
+      for(pos = slot(key); state[pos] != EMPTY; pos = (pos + 1) & mask) {
+        // Skip occupied slots.
+      }
+    }
+    keys[pos] = key;
+    values[pos] = d;
+    state[pos] = USED;
+    ++size;
+  }
+
+  /**
+   * Pack two integers into a key.
+   *
+   * @param a First
+   * @param b Second
+   * @return Key
+   */
+  private static long pack(int a, int b) {
+    return (((long) a) << 32) | (b & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Home slot of a key (Fibonacci hashing).
+   *
+   * @param key Key
+   * @return Slot
+   */
+  private int slot(long key) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+  }
+
+  /**
+   * Evict a single entry, using the CLOCK strategy: entries that have been
+   * used since the hand last passed them get a second chance.
+   */
+  private void evict() {
+    while(true) {
+      final byte s = state[hand];
+      if(s == REFERENCED) {
+        state[hand] = USED;
+      }
+      else if(s == USED) {
+        remove(hand);
+        ++evictions;
+        return;
+      }
+      hand = (hand + 1) & mask;
+    }
+  }
+
+  /**
+   * Remove an entry, shifting subsequent entries back to keep the probe
+   * sequences intact.
+   *
+   * @param i Slot to clear
+   */
+  private void remove(int i) {
+    for(int j = (i + 1) & mask; state[j] != EMPTY; j = (j + 1) & mask) {
+      final int k = slot(keys[j]);
+      // Keep the entry if its home slot is cyclically in (i, j]:
+      if(i <= j ? (i < k && k <= j) : (i < k || k <= j)) {
+        continue;
+      }
+      keys[i] = keys[j];
+      values[i] = values[j];
+      state[i] = state[j];
+      i = j;
+    }
+    state[i] = EMPTY;
+    --size;
+  }
+
+  @Override
+  public double distance(O o1, DBIDRef id2) {
+    return inner.distance(o1, id2);
+  }
+
+  @Override
+  public double distance(DBIDRef id1, O o2) {
+    return inner.distance(id1, o2);
+  }
+
+  @Override
+  public double distance(O o1, O o2) {
+    return inner.distance(o1, o2);
+  }
+
+  @Override
+  public DistanceFunction<? super O> getDistanceFunction() {
+    return inner.getDistanceFunction();
+  }
+
+  @Override
+  public Relation<? extends O> getRelation() {
+    return inner.getRelation();
+  }
+
+  /**
+   * Get the maximum number of cached distances.
+   *
+   * @return Capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the number of cache hits.
+   *
+   * @return Hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of cache misses, i.e. the number of distance computations.
+   *
+   * @return Misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Get the number of evicted distances.
+   *
+   * @return Evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Log the cache statistics (hits, misses, evictions).
+   */
+  public synchronized void logStatistics() {
+    if(LOG.isStatistics()) {
+      final String prefix = getClass().getName();
+      LOG.statistics(new LongStatistic(prefix + ".hits", hits));
+      LOG.statistics(new LongStatistic(prefix + ".misses", misses));
+      LOG.statistics(new LongStatistic(prefix + ".evictions", evictions));
+      LOG.statistics(new DoubleStatistic(prefix + ".hit-rate", hits / (double) Math.max(1, hits + misses)));
+    }
+  }
+
+  /**
+   * Log the cache statistics, if the distance query is cached.
+   *
+   * @param dq Distance query
+   */
+  public static void logStatistics(DistanceQuery<?> dq) {
+    if(dq instanceof CachedDistanceQuery) {
+      ((CachedDistanceQuery<?>) dq).logStatistics();
+    }
+  }
+}
@@ -21,9 +21,11 @@
 package de.lmu.ifi.dbs.elki.database.query.knn;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -96,18 +98,37 @@ public class LinearScanDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> i
 
   /**
    * Linear batch knn for arbitrary distance functions.
+   *
+   * The computation is blocked, to improve cache locality of the query
+   * objects and heaps.
    * 
    * @param ids DBIDs to process
    * @param heaps Heaps to store the results in
    */
   private void linearScanBatchKNN(ArrayDBIDs ids, List<KNNHeap> heaps) {
     final DistanceQuery<O> dq = distanceQuery;
+    final ArrayDBIDs data = DBIDUtil.ensureArray(getRelation().getDBIDs());
+    final int size = ids.size(), dsize = data.size();
+    final double[] kdists = new double[size];
+    Arrays.fill(kdists, Double.POSITIVE_INFINITY);
+    DBIDArrayIter iter = data.iter(), iter2 = ids.iter();
     // The distance is computed on database IDs
-    for(DBIDIter iter = getRelation().getDBIDs().iter(); iter.valid(); iter.advance()) {
-      int index = 0;
-      for(DBIDIter iter2 = ids.iter(); iter2.valid(); iter2.advance(), index++) {
-        KNNHeap heap = heaps.get(index);
-        heap.insert(dq.distance(iter2, iter), iter);
+    for(int qstart = 0; qstart < size; qstart += LinearScanPrimitiveDistanceKNNQuery.QUERY_BLOCKSIZE) {
+      final int qend = Math.min(qstart + LinearScanPrimitiveDistanceKNNQuery.QUERY_BLOCKSIZE, size);
+      for(int dstart = 0; dstart < dsize; dstart += LinearScanPrimitiveDistanceKNNQuery.DATA_BLOCKSIZE) {
+        final int dend = Math.min(dstart + LinearScanPrimitiveDistanceKNNQuery.DATA_BLOCKSIZE, dsize);
+        for(int index = qstart; index < qend; index++) {
+          final KNNHeap heap = heaps.get(index);
+          iter2.seek(index);
+          double max = kdists[index];
+          for(iter.seek(dstart); iter.getOffset() < dend; iter.advance()) {
+            final double dist = dq.distance(iter2, iter);
+            if(dist <= max) {
+              max = heap.insert(dist, iter);
+            }
+          }
+          kdists[index] = max;
+        }
       }
     }
   }
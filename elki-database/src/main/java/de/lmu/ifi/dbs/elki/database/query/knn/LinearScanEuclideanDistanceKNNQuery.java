@@ -24,7 +24,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -32,6 +35,8 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedColumnarDoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedColumnarFloatRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
@@ -48,6 +53,8 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * @assoc - - - PrimitiveDistanceQuery
  * @assoc - - - EuclideanDistanceFunction
  * @assoc - - - SquaredEuclideanDistanceFunction
+ * @assoc - - - MaterializedColumnarDoubleRelation
+ * @assoc - - - MaterializedColumnarFloatRelation
  */
 public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends LinearScanPrimitiveDistanceKNNQuery<O> implements LinearScanQuery {
   /**
@@ -63,12 +70,28 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   @Override
   public KNNList getKNNForDBID(DBIDRef id, int k) {
     final Relation<? extends O> relation = getRelation();
-    return linearScan(relation , relation.iterDBIDs(), relation.get(id), DBIDUtil.newHeap(k)).toKNNListSqrt();
+    if(relation instanceof MaterializedColumnarDoubleRelation) {
+      final MaterializedColumnarDoubleRelation rel = (MaterializedColumnarDoubleRelation) relation;
+      return linearScan(rel, rel.get(id).toArray(), DBIDUtil.newHeap(k)).toKNNListSqrt();
+    }
+    if(relation instanceof MaterializedColumnarFloatRelation) {
+      final MaterializedColumnarFloatRelation rel = (MaterializedColumnarFloatRelation) relation;
+      return linearScan(rel, rel.get(id).toArray(), DBIDUtil.newHeap(k)).toKNNListSqrt();
+    }
+    return linearScan(relation, relation.iterDBIDs(), relation.get(id), DBIDUtil.newHeap(k)).toKNNListSqrt();
   }
 
   @Override
   public KNNList getKNNForObject(O obj, int k) {
     final Relation<? extends O> relation = getRelation();
+    if(relation instanceof MaterializedColumnarDoubleRelation //
+        && ((MaterializedColumnarDoubleRelation) relation).getDimensionality() == obj.getDimensionality()) {
+      return linearScan((MaterializedColumnarDoubleRelation) relation, obj.toArray(), DBIDUtil.newHeap(k)).toKNNListSqrt();
+    }
+    if(relation instanceof MaterializedColumnarFloatRelation //
+        && ((MaterializedColumnarFloatRelation) relation).getDimensionality() == obj.getDimensionality()) {
+      return linearScan((MaterializedColumnarFloatRelation) relation, obj.toArray(), DBIDUtil.newHeap(k)).toKNNListSqrt();
+    }
     return linearScan(relation, relation.iterDBIDs(), obj, DBIDUtil.newHeap(k)).toKNNListSqrt();
   }
 
@@ -94,6 +117,65 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
     return heap;
   }
 
+  /**
+   * Main loop of the linear scan, operating on the storage blocks of a
+   * columnar relation directly. This always scans all objects of the relation.
+   *
+   * @param relation Data relation
+   * @param obj Query vector
+   * @param heap Output heap
+   * @return Heap
+   */
+  private static KNNHeap linearScan(MaterializedColumnarDoubleRelation relation, double[] obj, KNNHeap heap) {
+    final int dim = obj.length;
+    double max = Double.POSITIVE_INFINITY;
+    DBIDArrayIter iter = relation.getDBIDs().iter();
+    for(int b = 0, nb = relation.numBlocks(); b < nb; b++) {
+      final double[] block = relation.getBlock(b);
+      for(int i = 0; i < block.length; i += dim, iter.advance()) {
+        double dist = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double v = obj[d] - block[i + d];
+          dist += v * v;
+        }
+        if(dist <= max) {
+          max = heap.insert(dist, iter);
+        }
+      }
+    }
+    return heap;
+  }
+
+  /**
+   * Main loop of the linear scan, operating on the single precision storage
+   * blocks of a columnar relation directly. This always scans all objects of
+   * the relation.
+   *
+   * @param relation Data relation
+   * @param obj Query vector
+   * @param heap Output heap
+   * @return Heap
+   */
+  private static KNNHeap linearScan(MaterializedColumnarFloatRelation relation, double[] obj, KNNHeap heap) {
+    final int dim = obj.length;
+    double max = Double.POSITIVE_INFINITY;
+    DBIDArrayIter iter = relation.getDBIDs().iter();
+    for(int b = 0, nb = relation.numBlocks(); b < nb; b++) {
+      final float[] block = relation.getBlock(b);
+      for(int i = 0; i < block.length; i += dim, iter.advance()) {
+        double dist = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double v = obj[d] - block[i + d];
+          dist += v * v;
+        }
+        if(dist <= max) {
+          max = heap.insert(dist, iter);
+        }
+      }
+    }
+    return heap;
+  }
+
   @Override
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
     final Relation<? extends O> relation = getRelation();
@@ -116,24 +198,181 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   /**
    * Perform a linear scan batch kNN for primitive distance functions.
    *
+   * Blocks of queries are processed against blocks of data vectors, copied
+   * into primitive arrays (or read directly from a
+   * {@link MaterializedColumnarDoubleRelation}). Candidates are filtered using
+   * the expansion \(||x-y||^2=||x||^2+||y||^2-2x\cdot y\), which only needs a
+   * dot product; the squared distance is then recomputed exactly for the
+   * candidates that may enter the heap, so the results are identical to the
+   * naive scan.
+   *
    * @param objs Objects list
    * @param heaps Heaps array
    */
   @Override
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
-    final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     final Relation<? extends O> relation = getRelation();
-    final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = squared.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+    final int size = objs.size(), dim = size > 0 ? objs.get(0).getDimensionality() : 0;
+    if(size == 0 || dim == 0 || !hasDimensionality(relation, dim)) {
+      super.linearScanBatchKNN(objs, heaps);
+      return;
+    }
+    final MaterializedColumnarDoubleRelation columnar = relation instanceof MaterializedColumnarDoubleRelation ? (MaterializedColumnarDoubleRelation) relation : null;
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int dsize = ids.size();
+    // Scale the block sizes with the dimensionality:
+    final int qblock = Math.max(4, Math.min(size, (QUERY_BLOCKSIZE << 4) / dim));
+    final int dblock = Math.max(16, (DATA_BLOCKSIZE << 4) / dim);
+    // Query block and norms
+    final double[] qbuf = new double[qblock * dim], qnorm = new double[qblock];
+    final KNNHeap[] qheaps = new KNNHeap[qblock];
+    final double[] kdists = new double[qblock];
+    // Data block and norms
+    final double[] dbuf = columnar == null ? new double[dblock * dim] : null;
+    final double[] dnorm = new double[dblock];
+    final double errfactor = (dim + 2) * 0x1p-50; // Bound on the rounding error
+    DBIDArrayIter iter = ids.iter();
+    for(int qstart = 0; qstart < size; qstart += qblock) {
+      final int qlen = Math.min(qblock, size - qstart);
+      for(int q = 0; q < qlen; q++) {
+        final O obj = objs.get(qstart + q);
+        double n = 0.;
+        for(int d = 0, p = q * dim; d < dim; d++, p++) {
+          final double v = qbuf[p] = obj.doubleValue(d);
+          n += v * v;
         }
+        qnorm[q] = n;
+        qheaps[q] = heaps.get(qstart + q);
+        kdists[q] = qheaps[q].getKNNDistance();
       }
+      for(int dstart = 0, dlen; dstart < dsize; dstart += dlen) {
+        dlen = Math.min(dblock, dsize - dstart);
+        final double[] data;
+        final int doff;
+        if(columnar != null) {
+          // Read directly from storage, but do not cross storage blocks.
+          final int bsize = columnar.getBlockSize(), b = dstart / bsize;
+          dlen = Math.min(dlen, (b + 1) * bsize - dstart);
+          data = columnar.getBlock(b);
+          doff = (dstart - b * bsize) * dim;
+          for(int j = 0, p = doff; j < dlen; j++) {
+            double n = 0.;
+            for(int d = 0; d < dim; d++, p++) {
+              n += data[p] * data[p];
+            }
+            dnorm[j] = n;
+          }
+        }
+        else {
+          copyBlock(relation, iter, dstart, dlen, dim, dbuf, dnorm);
+          data = dbuf;
+          doff = 0;
+        }
+        for(int q = 0; q < qlen; q++) {
+          kdists[q] = scanBlock(qbuf, q * dim, qnorm[q], data, doff, dnorm, dlen, dim, kdists[q], qheaps[q], iter, dstart, errfactor);
+        }
+      }
+    }
+  }
+
+  /**
+   * Scan a block of data vectors for a single query.
+   *
+   * @param qbuf Query buffer
+   * @param qoff Query offset
+   * @param qn Squared query norm
+   * @param data Data buffer
+   * @param doff Data offset
+   * @param dnorm Squared data norms
+   * @param dlen Number of data vectors
+   * @param dim Dimensionality
+   * @param max Current kNN distance
+   * @param heap Output heap
+   * @param iter Data iterator
+   * @param dstart Iterator offset of the first data vector
+   * @param errfactor Bound on the relative rounding error
+   * @return New kNN distance
+   */
+  private static double scanBlock(double[] qbuf, int qoff, double qn, double[] data, int doff, double[] dnorm, int dlen, int dim, double max, KNNHeap heap, DBIDArrayIter iter, int dstart, double errfactor) {
+    for(int j = 0, p = doff; j < dlen; j++, p += dim) {
+      final double norms = qn + dnorm[j];
+      if(norms - 2 * dot(qbuf, qoff, data, p, dim) > max + norms * errfactor) {
+        continue; // Cannot enter the heap.
+      }
+      double dist = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double v = qbuf[qoff + d] - data[p + d];
+        dist += v * v;
+      }
+      if(dist <= max) {
+        max = heap.insert(dist, iter.seek(dstart + j));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Dot product of two array ranges, using independent accumulators to
+   * break up the dependency chain of the additions.
+   *
+   * @param a First array
+   * @param aoff Offset in first array
+   * @param b Second array
+   * @param boff Offset in second array
+   * @param dim Length
+   * @return Dot product
+   */
+  private static double dot(double[] a, int aoff, double[] b, int boff, int dim) {
+    double s0 = 0., s1 = 0., s2 = 0., s3 = 0.;
+    int d = 0;
+    for(final int end = dim & ~3; d < end; d += 4) {
+      s0 += a[aoff + d] * b[boff + d];
+      s1 += a[aoff + d + 1] * b[boff + d + 1];
+      s2 += a[aoff + d + 2] * b[boff + d + 2];
+      s3 += a[aoff + d + 3] * b[boff + d + 3];
+    }
+    for(; d < dim; d++) {
+      s0 += a[aoff + d] * b[boff + d];
+    }
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  /**
+   * Copy a block of data vectors into a primitive array.
+   *
+   * @param relation Data relation
+   * @param iter Iterator over the relations ids
+   * @param start First offset
+   * @param len Number of vectors
+   * @param dim Dimensionality
+   * @param buf Output buffer
+   * @param norms Output squared norms
+   */
+  private static void copyBlock(Relation<? extends NumberVector> relation, DBIDArrayIter iter, int start, int len, int dim, double[] buf, double[] norms) {
+    for(int j = 0, p = 0; j < len; j++) {
+      final NumberVector vec = relation.get(iter.seek(start + j));
+      double n = 0.;
+      for(int d = 0; d < dim; d++, p++) {
+        final double v = buf[p] = vec.doubleValue(d);
+        n += v * v;
+      }
+      norms[j] = n;
+    }
+  }
+
+  /**
+   * Test whether a relation has a fixed dimensionality.
+   *
+   * @param relation Relation
+   * @param dim Expected dimensionality
+   * @return {@code true} if all vectors have the expected dimensionality.
+   */
+  private static boolean hasDimensionality(Relation<?> relation, int dim) {
+    final SimpleTypeInformation<?> type = relation.getDataTypeInformation();
+    if(!(type instanceof VectorFieldTypeInformation)) {
+      return false;
     }
+    final VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    return vtype.mindim() == dim && vtype.maxdim() == dim;
   }
-}
\ No newline at end of file
+}
@@ -21,9 +21,11 @@
 package de.lmu.ifi.dbs.elki.database.query.knn;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -52,6 +54,16 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    */
   private PrimitiveDistanceFunction<? super O> rawdist;
 
+  /**
+   * Number of query objects processed together in batch queries.
+   */
+  protected static final int QUERY_BLOCKSIZE = 64;
+
+  /**
+   * Number of data objects processed together in batch queries.
+   */
+  protected static final int DATA_BLOCKSIZE = 256;
+
   /**
    * Constructor.
    * 
@@ -117,6 +129,10 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
 
   /**
    * Perform a linear scan batch kNN for primitive distance functions.
+   *
+   * The computation is blocked: a block of queries is processed against a
+   * block of data objects at a time, such that both remain in the CPU cache,
+   * instead of streaming all queries once per data object.
    * 
    * @param objs Objects list
    * @param heaps Heaps array
@@ -124,17 +140,34 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
     final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
     final Relation<? extends O> relation = getRelation();
-    final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = rawdist.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = objs.size(), dsize = ids.size();
+    final double[] kdists = new double[size];
+    Arrays.fill(kdists, Double.POSITIVE_INFINITY);
+    final Object[] block = new Object[DATA_BLOCKSIZE];
+    DBIDArrayIter iter = ids.iter();
+    for(int qstart = 0; qstart < size; qstart += QUERY_BLOCKSIZE) {
+      final int qend = Math.min(qstart + QUERY_BLOCKSIZE, size);
+      for(int dstart = 0; dstart < dsize; dstart += DATA_BLOCKSIZE) {
+        final int dlen = Math.min(DATA_BLOCKSIZE, dsize - dstart);
+        // Fetch the data block only once per query block.
+        for(int j = 0; j < dlen; j++) {
+          block[j] = relation.get(iter.seek(dstart + j));
+        }
+        for(int index = qstart; index < qend; index++) {
+          final O obj = objs.get(index);
+          final KNNHeap heap = heaps.get(index);
+          double max = kdists[index];
+          for(int j = 0; j < dlen; j++) {
+            @SuppressWarnings("unchecked")
+            final double dist = rawdist.distance(obj, (O) block[j]);
+            if(dist <= max) {
+              max = heap.insert(dist, iter.seek(dstart + j));
+            }
+          }
+          kdists[index] = max;
         }
       }
     }
   }
-}
\ No newline at end of file
+}
@@ -21,12 +21,15 @@
 package de.lmu.ifi.dbs.elki.database.query.range;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedColumnarDoubleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedColumnarFloatRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import net.jafama.FastMath;
@@ -38,6 +41,8 @@ import net.jafama.FastMath;
  * @since 0.4.0
  * 
  * @assoc - - - SquaredEuclideanDistanceFunction
+ * @assoc - - - MaterializedColumnarDoubleRelation
+ * @assoc - - - MaterializedColumnarFloatRelation
  * 
  * @param <O> Database object type
  */
@@ -57,7 +62,7 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
     // Note: subtle optimization. Get "id" only once!
     final O obj = relation.get(id);
     ModifiableDoubleDBIDList result = DBIDUtil.newDistanceDBIDList();
-    linearScan(relation, relation.iterDBIDs(), obj, range, result);
+    linearScan(relation, obj, range, result);
     result.sort();
     return result;
   }
@@ -66,7 +71,7 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
   public DoubleDBIDList getRangeForObject(O obj, double range) {
     final Relation<? extends O> relation = getRelation();
     ModifiableDoubleDBIDList result = DBIDUtil.newDistanceDBIDList();
-    linearScan(relation, relation.iterDBIDs(), obj, range, result);
+    linearScan(relation, obj, range, result);
     result.sort();
     return result;
   }
@@ -74,13 +79,36 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
   @Override
   public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList neighbors) {
     final Relation<? extends O> relation = getRelation();
-    linearScan(relation, relation.iterDBIDs(), relation.get(id), range, neighbors);
+    linearScan(relation, relation.get(id), range, neighbors);
   }
 
   @Override
   public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList neighbors) {
     final Relation<? extends O> relation = getRelation();
-    linearScan(relation, relation.iterDBIDs(), obj, range, neighbors);
+    linearScan(relation, obj, range, neighbors);
+  }
+
+  /**
+   * Linear scan over all objects of the relation, using the storage blocks
+   * directly for columnar relations.
+   *
+   * @param relation Data relation
+   * @param obj Query object
+   * @param range Query radius
+   * @param result Output data structure
+   */
+  private void linearScan(Relation<? extends O> relation, O obj, double range, ModifiableDoubleDBIDList result) {
+    if(relation instanceof MaterializedColumnarDoubleRelation //
+        && ((MaterializedColumnarDoubleRelation) relation).getDimensionality() == obj.getDimensionality()) {
+      linearScan((MaterializedColumnarDoubleRelation) relation, obj.toArray(), range, result);
+    }
+    else if(relation instanceof MaterializedColumnarFloatRelation //
+        && ((MaterializedColumnarFloatRelation) relation).getDimensionality() == obj.getDimensionality()) {
+      linearScan((MaterializedColumnarFloatRelation) relation, obj.toArray(), range, result);
+    }
+    else {
+      linearScan(relation, relation.iterDBIDs(), obj, range, result);
+    }
   }
 
   /**
@@ -110,4 +138,69 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
       iter.advance();
     }
   }
+
+  /**
+   * Main loop for linear scan, operating on the storage blocks of a columnar
+   * relation directly. This always scans all objects of the relation.
+   *
+   * @param relation Data relation
+   * @param obj Query vector
+   * @param range Query radius
+   * @param result Output data structure
+   */
+  private static void linearScan(MaterializedColumnarDoubleRelation relation, double[] obj, double range, ModifiableDoubleDBIDList result) {
+    final int dim = obj.length;
+    final double upper = range * 1.0000001;
+    final double sqrange = upper * upper;
+    DBIDArrayIter iter = relation.getDBIDs().iter();
+    for(int b = 0, nb = relation.numBlocks(); b < nb; b++) {
+      final double[] block = relation.getBlock(b);
+      for(int i = 0; i < block.length; i += dim, iter.advance()) {
+        double sqdistance = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double v = obj[d] - block[i + d];
+          sqdistance += v * v;
+        }
+        if(sqdistance <= sqrange) {
+          final double dist = FastMath.sqrt(sqdistance);
+          if(dist <= range) { // double check, as we increased the radius above
+            result.add(dist, iter);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Main loop for linear scan, operating on the single precision storage
+   * blocks of a columnar relation directly. This always scans all objects of
+   * the relation.
+   *
+   * @param relation Data relation
+   * @param obj Query vector
+   * @param range Query radius
+   * @param result Output data structure
+   */
+  private static void linearScan(MaterializedColumnarFloatRelation relation, double[] obj, double range, ModifiableDoubleDBIDList result) {
+    final int dim = obj.length;
+    final double upper = range * 1.0000001;
+    final double sqrange = upper * upper;
+    DBIDArrayIter iter = relation.getDBIDs().iter();
+    for(int b = 0, nb = relation.numBlocks(); b < nb; b++) {
+      final float[] block = relation.getBlock(b);
+      for(int i = 0; i < block.length; i += dim, iter.advance()) {
+        double sqdistance = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double v = obj[d] - block[i + d];
+          sqdistance += v * v;
+        }
+        if(sqdistance <= sqrange) {
+          final double dist = FastMath.sqrt(sqdistance);
+          if(dist <= range) { // double check, as we increased the radius above
+            result.add(dist, iter);
+          }
+        }
+      }
+    }
+  }
 }
@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.database.relation;
 
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.CachedDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -73,12 +74,16 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
         return q;
       }
     }
+    boolean cache = false, nocache = false;
     for(Object o : hints) {
       if(o == DatabaseQuery.HINT_OPTIMIZED_ONLY && !(distanceFunction instanceof DBIDDistanceFunction)) {
         return null; // Linear scan is not desirable.
       }
+      cache |= o == DatabaseQuery.HINT_DISTANCE_CACHE;
+      nocache |= o == DatabaseQuery.HINT_NO_CACHE;
     }
-    return distanceFunction.instantiate(this);
+    DistanceQuery<O> dq = distanceFunction.instantiate(this);
+    return cache && !nocache ? new CachedDistanceQuery<>(dq) : dq;
   }
 
   @Override
@@ -0,0 +1,140 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedNumberVectorColumn;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Static relation of dense number vectors that remain in a memory-mapped
+ * bundle file. The objects returned by {@link #get} are lightweight views into
+ * the mapped file, produced on demand.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - MappedNumberVectorColumn
+ */
+public class MappedNumberVectorRelation extends AbstractRelation<NumberVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedNumberVectorRelation.class);
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  private final ArrayStaticDBIDs ids;
+
+  /**
+   * Mapped vector column, in the order of {@link #ids}.
+   */
+  private final MappedNumberVectorColumn column;
+
+  /**
+   * Row numbers, if the DBIDs are not a range.
+   */
+  private final WritableIntegerDataStore rows;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * The relation name (short version)
+   */
+  private String shortname = "relation";
+
+  /**
+   * Constructor.
+   *
+   * @param ids IDs, in the order of the column
+   * @param name Name
+   * @param column Mapped vector column
+   */
+  public MappedNumberVectorRelation(ArrayStaticDBIDs ids, String name, MappedNumberVectorColumn column) {
+    super();
+    assert (ids.size() == column.size()) : "Size mismatch.";
+    this.ids = ids;
+    this.name = name;
+    this.column = column;
+    if(ids instanceof DBIDRange) {
+      this.rows = null;
+    }
+    else {
+      this.rows = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        rows.putInt(it, it.getOffset());
+      }
+    }
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    return column.get(rows == null ? ((DBIDRange) ids).getOffset(id) : rows.intValue(id));
+  }
+
+  @Override
+  public ArrayStaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public VectorFieldTypeInformation<NumberVector> getDataTypeInformation() {
+    return column.getType();
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : column.getType().toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortname;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
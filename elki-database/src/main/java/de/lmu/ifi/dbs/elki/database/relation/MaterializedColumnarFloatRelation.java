@@ -0,0 +1,344 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.datasource.bundle.NumberVectorViewFactory;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Static relation of dense, fixed-dimensional number vectors, stored in
+ * contiguous row-major blocks of primitive floats. This is the single precision
+ * counterpart of {@link MaterializedColumnarDoubleRelation}, and uses half the
+ * memory (and memory bandwidth) for data where float precision is sufficient.
+ *
+ * The objects returned by {@link #get} are lightweight views into the shared
+ * storage, without a copy of the data. Performance-critical code can access the
+ * storage blocks directly, see {@link #getBlock}.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - View
+ */
+public class MaterializedColumnarFloatRelation extends AbstractRelation<NumberVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MaterializedColumnarFloatRelation.class);
+
+  /**
+   * Maximum number of floats to store in a single block (1 GB).
+   */
+  private static final int MAX_BLOCK_SIZE = 1 << 28;
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Number of rows per block, as bit shift.
+   */
+  private final int blockshift;
+
+  /**
+   * Row-major storage blocks.
+   */
+  private final float[][] blocks;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * The relation name (short version)
+   */
+  private String shortname = "relation";
+
+  /**
+   * Constructor.
+   *
+   * @param type Type information of the original vectors
+   * @param ids IDs
+   * @param name Name
+   */
+  public MaterializedColumnarFloatRelation(VectorFieldTypeInformation<? extends NumberVector> type, DBIDRange ids, String name) {
+    super();
+    this.dim = type.getDimensionality();
+    this.type = new VectorFieldTypeInformation<>(new NumberVectorViewFactory(type.getFactory(), SERIALIZER), dim, NumberVectorViewFactory.labels(type), SERIALIZER);
+    this.ids = ids;
+    this.name = name;
+    final int size = ids.size();
+    // Largest power of two number of rows that fits into a block:
+    int shift = 30;
+    while(shift > 0 && ((long) dim << shift) > MAX_BLOCK_SIZE) {
+      shift--;
+    }
+    this.blockshift = shift;
+    final int numblocks = size > 0 ? ((size - 1) >>> shift) + 1 : 0;
+    this.blocks = new float[numblocks][];
+    for(int b = 0; b < numblocks; b++) {
+      blocks[b] = new float[Math.min(1 << shift, size - (b << shift)) * dim];
+    }
+  }
+
+  /**
+   * Set the value of an object.
+   *
+   * @param id Object id
+   * @param vec Vector value
+   */
+  public void set(DBIDRef id, NumberVector vec) {
+    final int off = ids.getOffset(id);
+    assert (vec.getDimensionality() == dim) : "Dimensionality mismatch.";
+    final float[] block = blocks[off >>> blockshift];
+    final int start = (off & ((1 << blockshift) - 1)) * dim;
+    for(int d = 0; d < dim; d++) {
+      block[start + d] = vec.floatValue(d);
+    }
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    final int off = ids.getOffset(id);
+    return new View(blocks[off >>> blockshift], (off & ((1 << blockshift) - 1)) * dim, dim);
+  }
+
+  /**
+   * Get the array offset of an object.
+   *
+   * @param id Object id
+   * @return Offset
+   */
+  public int getOffset(DBIDRef id) {
+    return ids.getOffset(id);
+  }
+
+  /**
+   * Get the dimensionality of the stored vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Get the number of storage blocks.
+   *
+   * @return Number of blocks
+   */
+  public int numBlocks() {
+    return blocks.length;
+  }
+
+  /**
+   * Get the (maximum) number of rows per storage block. All blocks except the
+   * last contain exactly this many rows.
+   *
+   * @return Number of rows per block
+   */
+  public int getBlockSize() {
+    return 1 << blockshift;
+  }
+
+  /**
+   * Get a row-major storage block. Row {@code i} of block {@code b} corresponds
+   * to the object at offset {@code b * getBlockSize() + i}, and its values are
+   * stored at {@code i * getDimensionality()} onwards.
+   *
+   * The array <em>must not</em> be modified.
+   *
+   * @param b Block number
+   * @return Storage array
+   */
+  public float[] getBlock(int b) {
+    return blocks[b];
+  }
+
+  /**
+   * Get a read-only buffer view of a row-major storage block.
+   *
+   * @param b Block number
+   * @return Read-only buffer
+   */
+  public FloatBuffer getBlockBuffer(int b) {
+    return FloatBuffer.wrap(blocks[b]).asReadOnlyBuffer();
+  }
+
+  @Override
+  public DBIDRange getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public VectorFieldTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortname;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Vector view into the shared storage.
+   *
+   * @author agent
+   */
+  private static final class View implements NumberVector {
+    /**
+     * Storage block.
+     */
+    private final float[] data;
+
+    /**
+     * Start offset.
+     */
+    private final int start;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param data Storage block
+     * @param start Start offset
+     * @param dim Dimensionality
+     */
+    private View(float[] data, int start, int dim) {
+      this.data = data;
+      this.start = start;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return data[start + dimension];
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return data[start + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) floatValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        ret[d] = data[start + d];
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder buf = new StringBuilder(dim * 10);
+      for(int i = 0; i < dim; i++) {
+        buf.append(i > 0 ? ATTRIBUTE_SEPARATOR : "").append(data[start + i]);
+      }
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Serializer, compatible with {@link FloatVector#VARIABLE_SERIALIZER}.
+   */
+  private static final ByteBufferSerializer<NumberVector> SERIALIZER = new ByteBufferSerializer<NumberVector>() {
+    @Override
+    public NumberVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      return FloatVector.VARIABLE_SERIALIZER.fromByteBuffer(buffer);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, NumberVector vec) throws IOException {
+      final int dim = vec.getDimensionality();
+      ByteArrayUtil.writeUnsignedVarint(buffer, dim);
+      for(int i = 0; i < dim; i++) {
+        buffer.putFloat(vec.floatValue(i));
+      }
+    }
+
+    @Override
+    public int getByteSize(NumberVector vec) {
+      final int dim = vec.getDimensionality();
+      return ByteArrayUtil.getUnsignedVarintSize(dim) + ByteArrayUtil.SIZE_FLOAT * dim;
+    }
+  };
+}
@@ -21,14 +21,18 @@
 package de.lmu.ifi.dbs.elki.index.lsh;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -45,16 +49,24 @@ import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 
 /**
  * Locality Sensitive Hashing.
+ * <p>
+ * The buckets of each hash table are stored compactly as offsets into an
+ * array of the indexed objects, sorted by bucket (compressed sparse row
+ * layout). The tables are built in parallel.
+ * <p>
+ * With more than one probe, queries also inspect the neighboring buckets most
+ * likely to contain near neighbors (multi-probe LSH), if supported by the hash
+ * functions. This achieves a similar recall with fewer hash tables.
  *
  * @author Erich Schubert
  * @since 0.6.0
@@ -70,6 +82,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    */
   private static final Logging LOG = Logging.getLogger(InMemoryLSHIndex.class);
 
+  /**
+   * Minimum number of objects to hash in a single task.
+   */
+  private static final int MIN_PARALLEL_BLOCK = 1 << 10;
+
   /**
    * LSH hash function family to use.
    */
@@ -85,6 +102,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each table.
+   */
+  int probes;
+
   /**
    * Constructor.
    *
@@ -93,15 +115,28 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each table.
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
   }
 
   @Override
   public Instance instantiate(Relation<V> relation) {
-    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets, probes);
   }
 
   @Override
@@ -123,25 +158,54 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * Indexed objects; buckets store offsets into this array.
      */
-    ArrayList<Int2ObjectOpenHashMap<DBIDs>> hashtables;
+    ArrayDBIDs ids;
+
+    /**
+     * Start of each bucket in {@link #members}, for each table.
+     */
+    int[][] bucketStart;
+
+    /**
+     * Bucket members, as offsets into {@link #ids}, for each table.
+     */
+    int[][] members;
 
     /**
      * Number of buckets to use.
      */
     private int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    private int probes;
+
     /**
      * Constructor.
      *
      * @param relation Relation to index.
      * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets to use.
      */
     public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+      this(relation, hashfunctions, numberOfBuckets, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation to index.
+     * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets to use.
+     * @param probes Number of buckets to probe in each table.
+     */
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets, int probes) {
       super(relation);
       this.hashfunctions = hashfunctions;
       this.numberOfBuckets = numberOfBuckets;
+      this.probes = probes;
     }
 
     @Override
@@ -157,57 +221,76 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     @Override
     public void initialize() {
       final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new Int2ObjectOpenHashMap<DBIDs>(numberOfBuckets));
-      }
-
-      // TODO: We assume all hash functions have the same dimensionality.
-      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
-        for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size();
+      // Bucket of every object in every table, computed in parallel.
+      final int[][] buckets = new int[numhash][size];
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", size, LOG) : null;
+      ParallelExecutor.run(size, MIN_PARALLEL_BLOCK, (start, end) -> {
+        // TODO: We assume all hash functions have the same dimensionality.
+        double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+        DBIDArrayIter iter = ids.iter();
+        for(iter.seek(start); iter.getOffset() < end; iter.advance()) {
+          V obj = relation.get(iter);
+          for(int i = 0; i < numhash; i++) {
+            buckets[i][iter.getOffset()] = bucket(hashfunctions.get(i).hashObject(obj, buf));
           }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
+        }
+        if(progress != null) {
+          progress.incrementProcessed(end - start, LOG);
+        }
+      });
+      LOG.ensureCompleted(progress);
+      // Sort the objects by bucket (counting sort), one table per task:
+      bucketStart = new int[numhash][];
+      members = new int[numhash][];
+      ParallelExecutor.run(numhash, 1, (start, end) -> {
+        for(int i = start; i < end; i++) {
+          final int[] bucket = buckets[i];
+          final int[] bstart = bucketStart[i] = new int[numberOfBuckets + 1];
+          for(int j = 0; j < size; j++) {
+            ++bstart[bucket[j] + 1];
+          }
+          for(int b = 0; b < numberOfBuckets; b++) {
+            bstart[b + 1] += bstart[b];
           }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
+          final int[] pos = Arrays.copyOf(bstart, numberOfBuckets);
+          final int[] mem = members[i] = new int[size];
+          for(int j = 0; j < size; j++) {
+            mem[pos[bucket[j]]++] = j;
           }
+          buckets[i] = null; // Allow garbage collection
         }
-        LOG.incrementProcessed(progress);
-      }
-      LOG.ensureCompleted(progress);
+      });
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
         for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          for(DBIDs set : table.values()) {
-            final int size = set.size();
-            min = size < min ? size : min;
-            max = size > max ? size : max;
+          final int[] bstart = bucketStart[i];
+          for(int b = 0; b < numberOfBuckets; b++) {
+            final int bsize = bstart[b + 1] - bstart[b];
+            if(bsize > 0) {
+              min = bsize < min ? bsize : min;
+              max = bsize > max ? bsize : max;
+            }
           }
         }
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", numhash));
       }
     }
 
+    /**
+     * Reduce a hash code to the hash table size.
+     *
+     * @param hash Hash code
+     * @return Bucket number
+     */
+    private int bucket(int hash) {
+      final int bucket = hash % numberOfBuckets;
+      return bucket < 0 ? bucket + numberOfBuckets : bucket;
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -242,31 +325,44 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     }
 
     /**
-     * Get the candidates: points which have at least one hash bucket in common.
+     * Get the candidates: points which have at least one hash bucket in common
+     * with the query, or with one of the probed neighboring buckets.
      * 
      * @param obj Query object
      * @return Candidates
      */
     protected DBIDs getCandidates(V obj) {
-      ModifiableDBIDs candidates = null;
-      final int numhash = hashtables.size();
+      final int numhash = hashfunctions.size();
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int[] probed = new int[probes];
+      int[] cands = new int[16];
+      int size = 0;
       for(int i = 0; i < numhash; i++) {
-        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-        // Get the initial (unbounded) hash code:
-        int hash = hashfunc.hashObject(obj, buf);
-        // Reduce to hash table size
-        int bucket = hash % numberOfBuckets;
-        DBIDs cur = table.get(bucket);
-        if(cur != null) {
-          if(candidates == null) {
-            candidates = DBIDUtil.newHashSet(cur.size() * numhash);
+        final int[] bstart = bucketStart[i], mem = members[i];
+        final int numprobes = hashfunctions.get(i).hashObject(obj, buf, probed);
+        for(int p = 0; p < numprobes; p++) {
+          final int b = bucket(probed[p]);
+          final int start = bstart[b], len = bstart[b + 1] - start;
+          if(size + len > cands.length) {
+            cands = Arrays.copyOf(cands, Math.max(cands.length << 1, size + len));
           }
-          candidates.addDBIDs(cur);
+          System.arraycopy(mem, start, cands, size, len);
+          size += len;
+        }
+      }
+      if(size == 0) {
+        return DBIDUtil.EMPTYDBIDS;
+      }
+      // Remove duplicates:
+      Arrays.sort(cands, 0, size);
+      ArrayModifiableDBIDs candidates = DBIDUtil.newArray(size);
+      DBIDVar var = DBIDUtil.newVar();
+      for(int j = 0; j < size; j++) {
+        if(j == 0 || cands[j] != cands[j - 1]) {
+          candidates.add(ids.assignVar(cands[j], var));
         }
       }
-      return (candidates == null) ? DBIDUtil.EMPTYDBIDS : candidates;
+      return candidates;
     }
 
     /**
@@ -349,6 +445,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH), if supported by the hash functions.");
+
     /**
      * LSH hash function family to use.
      */
@@ -364,6 +465,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    int probes;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -384,11 +490,17 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
       if(config.grab(bucketsP)) {
         numberOfBuckets = bucketsP.intValue();
       }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
     }
 
     @Override
     protected InMemoryLSHIndex<V> makeInstance() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes);
     }
   }
 }
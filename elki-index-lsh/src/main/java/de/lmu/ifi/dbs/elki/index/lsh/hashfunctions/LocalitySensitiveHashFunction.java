@@ -46,6 +46,24 @@ public interface LocalitySensitiveHashFunction<V> {
    */
   int hashObject(V obj, double[] buf);
 
+  /**
+   * Compute the hash values of the bucket of an object, and of neighboring
+   * buckets likely to contain near neighbors, for multi-probe LSH.
+   * <p>
+   * The default implementation does not support probing, and only produces
+   * the hash value of the object itself.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param probes Output hash values, the first is the hash value of the
+   *        object; the length of the array is the maximum number of probes.
+   * @return Number of hash values produced
+   */
+  default int hashObject(V obj, double[] buf, int[] probes) {
+    probes[0] = hashObject(obj, buf);
+    return 1;
+  }
+
   /**
    * Get the number of projections performed.
    *
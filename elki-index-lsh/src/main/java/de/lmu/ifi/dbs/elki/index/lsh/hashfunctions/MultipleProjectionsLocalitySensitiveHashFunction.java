@@ -20,10 +20,13 @@
  */
 package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.projection.random.RandomProjectionFamily;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
@@ -35,6 +38,13 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * M. Datar, N. Immorlica, P. Indyk, V. S. Mirrokni<br>
  * Locality-sensitive hashing scheme based on p-stable distributions<br>
  * Proc. 20th Annual Symposium on Computational Geometry<br>
+ * <p>
+ * Multi-probe querying follows the query-directed probing sequence of:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br>
+ * Multi-probe LSH: efficient indexing for high-dimensional similarity
+ * search<br>
+ * Proc. 33rd Int. Conf. Very Large Data Bases (VLDB'07)
  *
  * @author Erich Schubert
  * @since 0.6.0
@@ -44,6 +54,11 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
     booktitle = "Proc. 20th Annual Symposium on Computational Geometry", //
     url = "https://doi.org/10.1145/997817.997857", //
     bibkey = "DBLP:conf/compgeom/DatarIIM04")
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+    title = "Multi-probe LSH: efficient indexing for high-dimensional similarity search", //
+    booktitle = "Proc. 33rd Int. Conf. Very Large Data Bases (VLDB'07)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf", //
+    bibkey = "DBLP:conf/vldb/LvJWCL07")
 public class MultipleProjectionsLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector> {
   /**
    * Projection matrix.
@@ -118,6 +133,85 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int hashObject(NumberVector vec, double[] buf, int[] probes) {
+    // Project the vector:
+    projection.project(vec, buf);
+    final int num = shift.length;
+    long t1sum = 0L;
+    for(int i = 0; i < num; i++) {
+      final double v = (buf[i] + shift[i]) * iwidth, fv = Math.floor(v);
+      t1sum += (randoms1[i] & MASK32) * (int) fv; // unsigned math!
+      buf[i] = v - fv; // Relative position within the bin
+    }
+    probes[0] = fastModPrime(t1sum);
+    if(probes.length == 1) {
+      return 1;
+    }
+    // Perturbations: 2i moves to the lower, 2i+1 to the upper bin, scored by
+    // the squared distance to the bin boundary.
+    final int m = num << 1;
+    double[] score = new double[m];
+    int[] perturb = new int[m];
+    for(int i = 0, j = 0; i < num; i++) {
+      score[j] = buf[i] * buf[i];
+      perturb[j++] = i << 1;
+      score[j] = (1 - buf[i]) * (1 - buf[i]);
+      perturb[j++] = (i << 1) + 1;
+    }
+    DoubleIntegerArrayQuickSort.sort(score, perturb, m);
+    // Generate perturbation sets in order of their score, using shift and
+    // expand operations on sets of indexes into the sorted perturbations:
+    DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>();
+    heap.add(score[0], new int[] { 0 });
+    int found = 1;
+    while(found < probes.length && !heap.isEmpty()) {
+      final double sc = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int last = set[set.length - 1];
+      if(last + 1 < m) {
+        int[] shifted = set.clone();
+        shifted[set.length - 1] = last + 1;
+        heap.add(sc - score[last] + score[last + 1], shifted);
+        int[] expanded = Arrays.copyOf(set, set.length + 1);
+        expanded[set.length] = last + 1;
+        heap.add(sc + score[last + 1], expanded);
+      }
+      if(!isValid(set, perturb)) {
+        continue;
+      }
+      long psum = t1sum;
+      for(int i = 0; i < set.length; i++) {
+        final int p = perturb[set[i]];
+        final long r = randoms1[p >> 1] & MASK32; // unsigned math!
+        psum += (p & 1) == 0 ? -r : r;
+      }
+      probes[found++] = fastModPrime(psum);
+    }
+    return found;
+  }
+
+  /**
+   * Test whether a perturbation set is valid, i.e. does not move along the
+   * same projection twice.
+   *
+   * @param set Perturbation set (indexes into the sorted perturbations)
+   * @param perturb Sorted perturbations
+   * @return {@code true} if valid
+   */
+  private static boolean isValid(int[] set, int[] perturb) {
+    for(int i = 1; i < set.length; i++) {
+      final int pi = perturb[set[i]] >> 1;
+      for(int j = 0; j < i; j++) {
+        if(perturb[set[j]] >> 1 == pi) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
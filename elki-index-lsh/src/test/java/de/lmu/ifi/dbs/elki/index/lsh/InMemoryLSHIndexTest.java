@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the in-memory LSH index.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class InMemoryLSHIndexTest {
+  /**
+   * Test data set.
+   */
+  static final String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Number of neighbors.
+   */
+  static final int k = 10;
+
+  @Test
+  public void testSingleProbe() {
+    assertEquals("Recall does not match.", 3415, recall(1));
+  }
+
+  @Test
+  public void testMultiProbe() {
+    final int recall = recall(10);
+    assertEquals("Recall does not match.", 5168, recall);
+    assertTrue("Multi-probe did not improve recall.", recall > recall(1));
+  }
+
+  @Test
+  public void testParallel() {
+    withParallelism(2, () -> {
+      assertEquals("Recall does not match.", 5168, recall(10));
+    });
+  }
+
+  /**
+   * Count the true nearest neighbors found, for all objects.
+   *
+   * @param probes Number of probes
+   * @return Number of correct neighbors
+   */
+  private int recall(int probes) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 600);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    InMemoryLSHIndex<DoubleVector> factory = new ELKIBuilder<InMemoryLSHIndex<DoubleVector>>(InMemoryLSHIndex.class) //
+        .with(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.RANDOM_ID, 0L) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.WIDTH_ID, .2) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.NUMPROJ_ID, 4) //
+        .with(InMemoryLSHIndex.Parameterizer.L_ID, 2) //
+        .with(InMemoryLSHIndex.Parameterizer.PROBES_ID, probes).build();
+    InMemoryLSHIndex<DoubleVector>.Instance index = factory.instantiate(rel);
+    index.initialize();
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(dq, k);
+    KNNQuery<DoubleVector> linq = new LinearScanDistanceKNNQuery<>(dq);
+    int found = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList exact = linq.getKNNForDBID(it, k);
+      KNNList approx = knnq.getKNNForDBID(it, k);
+      for(DBIDIter n = approx.iter(); n.valid(); n.advance()) {
+        found += exact.contains(n) ? 1 : 0;
+      }
+    }
+    return found;
+  }
+}
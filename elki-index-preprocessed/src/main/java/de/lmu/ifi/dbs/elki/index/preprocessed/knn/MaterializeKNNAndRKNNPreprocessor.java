@@ -100,15 +100,12 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
       }
     }
 
-    // knn query
-    List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
-    for(DBIDArrayIter id = ids.iter(); id.valid(); id.advance()) {
-      KNNList kNNs = kNNList.get(id.getOffset());
-      storage.put(id, kNNs);
-      for(DoubleDBIDListIter iter = kNNs.iter(); iter.valid(); iter.advance()) {
+    // knn query, then the reverse neighbors
+    materializeKNNs(ids, progress);
+    for(DBIDIter id = ids.iter(); id.valid(); id.advance()) {
+      for(DoubleDBIDListIter iter = storage.get(id).iter(); iter.valid(); iter.advance()) {
         materialized_RkNN.get(iter).add(DBIDUtil.newPair(iter.doubleValue(), id));
       }
-      LOG.incrementProcessed(progress);
     }
 
     LOG.ensureCompleted(progress);
@@ -125,7 +122,7 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
 
     // update the old kNNs and RkNNs
     LOG.beginStep(stepprog, 2, "New insertions ocurred, update the affected kNNs and RkNNs.");
-    ArrayDBIDs rkNN_ids = updateKNNsAndRkNNs(ids);
+    ArrayDBIDs rkNN_ids = updateKNNsAfterInsertion(ids);
 
     // inform listener
     LOG.beginStep(stepprog, 3, "New insertions ocurred, inform listeners.");
@@ -135,76 +132,53 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
   }
 
   /**
-   * Updates the kNNs and RkNNs after insertion of the specified ids.
+   * Updates the RkNNs after the kNNs of an object changed due to an insertion.
    *
-   * @param ids the ids of newly inserted objects causing a change of
-   *        materialized kNNs and RkNNs
-   * @return the RkNNs of the specified ids, i.e. the kNNs which have been
-   *         updated
+   * @param id Object
+   * @param oldkNNs Previous neighbors
+   * @param newkNNs New neighbors
    */
-  private ArrayDBIDs updateKNNsAndRkNNs(DBIDs ids) {
-    ArrayModifiableDBIDs rkNN_ids = DBIDUtil.newArray();
-    DBIDs oldids = DBIDUtil.difference(relation.getDBIDs(), ids);
-    for(DBIDIter id = oldids.iter(); id.valid(); id.advance()) {
-      KNNList oldkNNs = storage.get(id);
-      double knnDist = oldkNNs.getKNNDistance();
-      // look for new kNNs
-      KNNHeap heap = null;
-      for(DBIDIter newid = ids.iter(); newid.valid(); newid.advance()) {
-        double dist = distanceQuery.distance(id, newid);
-        if(dist <= knnDist) {
-          // New id changes the kNNs of oldid.
-          heap = heap != null ? heap : DBIDUtil.newHeap(oldkNNs);
-          heap.insert(dist, newid);
-        }
+  @Override
+  protected void updateKNN(DBIDRef id, KNNList oldkNNs, KNNList newkNNs) {
+    storage.put(id, newkNNs);
+
+    // get the difference
+    ModifiableDoubleDBIDList added = DBIDUtil.newDistanceDBIDList(),
+        removed = DBIDUtil.newDistanceDBIDList();
+    DoubleDBIDListIter olditer = oldkNNs.iter(), newiter = newkNNs.iter();
+    while(olditer.valid() && newiter.valid()) {
+      if(DBIDUtil.equal(olditer, newiter)) {
+        olditer.advance();
+        newiter.advance();
+        continue;
       }
-      // kNNs for oldid have changed:
-      if(heap != null) {
-        KNNList newkNNs = heap.toKNNList();
-        storage.put(id, newkNNs);
-
-        // get the difference
-        ModifiableDoubleDBIDList added = DBIDUtil.newDistanceDBIDList(),
-            removed = DBIDUtil.newDistanceDBIDList();
-        DoubleDBIDListIter olditer = oldkNNs.iter(), newiter = newkNNs.iter();
-        while(olditer.valid() && newiter.valid()) {
-          if(DBIDUtil.equal(olditer, newiter)) {
-            olditer.advance();
-            newiter.advance();
-            continue;
-          }
-          double newd = newiter.doubleValue(), oldd = olditer.doubleValue();
-          if(newd < oldd || (newd == oldd && !oldkNNs.contains(newiter))) {
-            added.add(newiter.doubleValue(), newiter);
-            newiter.advance();
-          }
-          else if(oldd < newd || (oldd == newd && !newkNNs.contains(olditer))) {
-            removed.add(olditer.doubleValue(), olditer);
-            olditer.advance();
-          }
-          else {
-            throw new IllegalStateException("Unexpected third case, needs debug!");
-          }
-        }
-        for(; olditer.valid(); olditer.advance()) {
-          removed.add(olditer.doubleValue(), olditer);
-        }
-        for(; newiter.valid(); newiter.advance()) {
-          added.add(newiter.doubleValue(), newiter);
-        }
-        // add new RkNN
-        for(DoubleDBIDListIter newnn = added.iter(); newnn.valid(); newnn.advance()) {
-          materialized_RkNN.get(newnn).add(DBIDUtil.newPair(newnn.doubleValue(), id));
-        }
-        // remove old RkNN
-        for(DoubleDBIDListIter oldnn = removed.iter(); oldnn.valid(); oldnn.advance()) {
-          materialized_RkNN.get(oldnn).remove(DBIDUtil.newPair(oldnn.doubleValue(), id));
-        }
-
-        rkNN_ids.add(id);
+      double newd = newiter.doubleValue(), oldd = olditer.doubleValue();
+      if(newd < oldd || (newd == oldd && !oldkNNs.contains(newiter))) {
+        added.add(newiter.doubleValue(), newiter);
+        newiter.advance();
+      }
+      else if(oldd < newd || (oldd == newd && !newkNNs.contains(olditer))) {
+        removed.add(olditer.doubleValue(), olditer);
+        olditer.advance();
+      }
+      else {
+        throw new IllegalStateException("Unexpected third case, needs debug!");
       }
     }
-    return rkNN_ids;
+    for(; olditer.valid(); olditer.advance()) {
+      removed.add(olditer.doubleValue(), olditer);
+    }
+    for(; newiter.valid(); newiter.advance()) {
+      added.add(newiter.doubleValue(), newiter);
+    }
+    // add new RkNN
+    for(DoubleDBIDListIter newnn = added.iter(); newnn.valid(); newnn.advance()) {
+      materialized_RkNN.get(newnn).add(DBIDUtil.newPair(newnn.doubleValue(), id));
+    }
+    // remove old RkNN
+    for(DoubleDBIDListIter oldnn = removed.iter(); oldnn.valid(); oldnn.advance()) {
+      materialized_RkNN.get(oldnn).remove(DBIDUtil.newPair(oldnn.doubleValue(), id));
+    }
   }
 
   @Override
@@ -244,9 +218,9 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     LOG.beginStep(stepprog, 2, "New deletions ocurred, update the affected kNNs and RkNNs.");
     // Recompute the kNN for affected objects (in rkNN lists)
     {
-      List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(rkNN_ids, k);
-      for(DBIDArrayIter reknn = rkNN_ids.iter(); reknn.valid(); reknn.advance()) {
-        final KNNList rknnlist = kNNList.get(reknn.getOffset());
+      materializeKNNs(rkNN_ids, null);
+      for(DBIDIter reknn = rkNN_ids.iter(); reknn.valid(); reknn.advance()) {
+        final KNNList rknnlist = storage.get(reknn);
         if(rknnlist == null && !valid.contains(reknn)) {
           LOG.warning("BUG in online kNN/RkNN maintainance: " + DBIDUtil.toString(reknn) + " no longer in database.");
           continue;
@@ -20,22 +20,30 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.event.EventListenerList;
 
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.PreprocessorKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
@@ -44,6 +52,10 @@ import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
@@ -53,6 +65,12 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
  * distances) to each database object.
  * <p>
  * Used for example by {@link de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF}.
+ * <p>
+ * When multiple threads are available (see {@link ParallelCore}), the
+ * neighborhoods are computed in parallel, with one query object per thread.
+ * Insertions and deletions are processed in batches: the objects affected by an
+ * insertion are found with one range query per inserted object, rather than
+ * by comparing every old object to every new object.
  *
  * @author Erich Schubert
  * @since 0.2
@@ -79,6 +97,11 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   private static final boolean usebulk = false;
 
+  /**
+   * Minimum number of objects to process in parallel.
+   */
+  private static final int MIN_PARALLEL = 100;
+
   /**
    * KNNQuery instance to use.
    */
@@ -116,10 +139,11 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
     FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
-    // Try bulk
-    List<? extends KNNList> kNNList = null;
-    if(usebulk) {
-      kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
+    if(useParallel(ids.size())) {
+      ParallelExecutor.run(ids, progress, log, new KNNMaterializer());
+    }
+    else if(usebulk) { // Try bulk
+      List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
       if(kNNList != null) {
         int i = 0;
         for(DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
@@ -190,13 +214,7 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
     // materialize the new kNNs
     log.beginStep(stepprog, 1, "New insertions ocurred, materialize their new kNNs.");
-    // Bulk-query kNNs
-    List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(aids, k);
-    // Store in storage
-    DBIDIter iter = aids.iter();
-    for(int i = 0; i < aids.size(); i++, iter.advance()) {
-      storage.put(iter, kNNList.get(i));
-    }
+    materializeKNNs(aids, null);
 
     // update the affected kNNs
     log.beginStep(stepprog, 2, "New insertions ocurred, update the affected kNNs.");
@@ -209,15 +227,101 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     log.setCompleted(stepprog);
   }
 
+  /**
+   * Test whether to use parallel processing.
+   *
+   * @param size Number of objects to process
+   * @return {@code true} if multiple threads should be used
+   */
+  protected static boolean useParallel(int size) {
+    return size >= MIN_PARALLEL && ParallelCore.getCore().getParallelism() > 1;
+  }
+
+  /**
+   * Compute and store the kNNs of the given objects, in parallel if possible.
+   *
+   * @param ids Objects to process
+   * @param progress Progress (may be {@code null})
+   */
+  protected void materializeKNNs(ArrayDBIDs ids, FiniteProgress progress) {
+    final Logging log = getLogger(); // Could be subclass
+    if(useParallel(ids.size())) {
+      ParallelExecutor.run(ids, progress, log, new KNNMaterializer());
+      return;
+    }
+    List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      storage.put(iter, kNNList.get(iter.getOffset()));
+      log.incrementProcessed(progress);
+    }
+  }
+
   /**
    * Updates the kNNs of the RkNNs of the specified ids.
+   * <p>
+   * For symmetric distances, the candidates are obtained by a single range
+   * query for each new object, with the largest kNN distance of all old objects
+   * as radius. Otherwise, all old objects are compared to all new objects.
+   *
+   * @param ids the ids of newly inserted objects causing a change of
+   *        materialized kNNs
+   * @return the RkNNs of the specified ids, i.e. the kNNs which have been
+   *         updated
+   */
+  protected ArrayDBIDs updateKNNsAfterInsertion(DBIDs ids) {
+    if(!distanceFunction.isSymmetric()) {
+      return updateKNNsAfterInsertionScan(ids);
+    }
+    SetDBIDs newids = DBIDUtil.ensureSet(ids);
+    double maxknn = 0.;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      if(!newids.contains(iter)) {
+        maxknn = Math.max(maxknn, storage.get(iter).getKNNDistance());
+      }
+    }
+    RangeQuery<O> rangeQuery = relation.getRangeQuery(distanceQuery, maxknn, DatabaseQuery.HINT_BULK);
+    // Collect the new neighbors of the old objects, in insertion order.
+    WritableDataStore<KNNHeap> heaps = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNHeap.class);
+    ArrayModifiableDBIDs rkNN_ids = DBIDUtil.newArray();
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      DoubleDBIDList cands = rangeQuery.getRangeForDBID(iter, maxknn);
+      for(DoubleDBIDListIter cand = cands.iter(); cand.valid(); cand.advance()) {
+        if(newids.contains(cand)) {
+          continue;
+        }
+        final double dist = cand.doubleValue();
+        KNNHeap heap = heaps.get(cand);
+        if(heap == null) {
+          KNNList kNNs = storage.get(cand);
+          if(dist > kNNs.getKNNDistance()) {
+            continue;
+          }
+          heaps.put(cand, heap = DBIDUtil.newHeap(kNNs));
+          rkNN_ids.add(cand);
+        }
+        else if(dist > storage.get(cand).getKNNDistance()) {
+          continue;
+        }
+        heap.insert(dist, iter);
+      }
+    }
+    for(DBIDIter iter = rkNN_ids.iter(); iter.valid(); iter.advance()) {
+      updateKNN(iter, storage.get(iter), heaps.get(iter).toKNNList());
+    }
+    heaps.destroy();
+    return rkNN_ids;
+  }
+
+  /**
+   * Updates the kNNs of the RkNNs of the specified ids, by comparing all old
+   * objects to all new objects.
    *
    * @param ids the ids of newly inserted objects causing a change of
    *        materialized kNNs
    * @return the RkNNs of the specified ids, i.e. the kNNs which have been
    *         updated
    */
-  private ArrayDBIDs updateKNNsAfterInsertion(DBIDs ids) {
+  private ArrayDBIDs updateKNNsAfterInsertionScan(DBIDs ids) {
     ArrayModifiableDBIDs rkNN_ids = DBIDUtil.newArray();
     DBIDs oldids = DBIDUtil.difference(relation.getDBIDs(), ids);
     for(DBIDIter iter = oldids.iter(); iter.valid(); iter.advance()) {
@@ -233,13 +337,24 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
         }
       }
       if(heap != null) {
-        storage.put(iter, kNNs = heap.toKNNList());
+        updateKNN(iter, kNNs, heap.toKNNList());
         rkNN_ids.add(iter);
       }
     }
     return rkNN_ids;
   }
 
+  /**
+   * Replace the kNN of an existing object after an insertion.
+   *
+   * @param id Object
+   * @param oldkNNs Previous neighbors
+   * @param newkNNs New neighbors
+   */
+  protected void updateKNN(DBIDRef id, KNNList oldkNNs, KNNList newkNNs) {
+    storage.put(id, newkNNs);
+  }
+
   /**
    * Updates the kNNs of the RkNNs of the specified ids.
    *
@@ -261,12 +376,7 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
 
     // update the kNNs of the RkNNs
-    List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(rkNN_ids, k);
-    DBIDIter iter = rkNN_ids.iter();
-    for(int i = 0; i < rkNN_ids.size(); i++, iter.advance()) {
-      storage.put(iter, kNNList.get(i));
-    }
-
+    materializeKNNs(rkNN_ids, null);
     return rkNN_ids;
   }
 
@@ -378,6 +488,78 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     return LOG;
   }
 
+  /**
+   * Processor to materialize the kNN in parallel. Every worker uses its own
+   * query object, and stores its results when it has finished.
+   *
+   * @author Erich Schubert
+   */
+  private class KNNMaterializer implements Processor {
+    @Override
+    public KNNMaterializerInstance<O> instantiate(Executor executor) {
+      KNNQuery<O> q = relation.getKNNQuery(distanceFunction.instantiate(relation), k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+      // Preprocessor queries may refer to this incomplete index, but are
+      // read-only; so we can share the query object used otherwise.
+      return new KNNMaterializerInstance<>(q instanceof PreprocessorKNNQuery ? knnQuery : q, k);
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      KNNMaterializerInstance<?> instance = (KNNMaterializerInstance<?>) inst;
+      synchronized(storage) {
+        for(DBIDArrayIter iter = instance.ids.iter(); iter.valid(); iter.advance()) {
+          storage.put(iter, instance.knns.get(iter.getOffset()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Worker instance of the {@link KNNMaterializer}.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class KNNMaterializerInstance<O> implements Processor.Instance {
+    /**
+     * kNN query of this worker.
+     */
+    private final KNNQuery<O> q;
+
+    /**
+     * Number of neighbors.
+     */
+    private final int k;
+
+    /**
+     * Processed objects.
+     */
+    private final ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+
+    /**
+     * Neighbors of the processed objects.
+     */
+    private final List<KNNList> knns = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param q kNN query
+     * @param k Number of neighbors
+     */
+    private KNNMaterializerInstance(KNNQuery<O> q, int k) {
+      this.q = q;
+      this.k = k;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      ids.add(id);
+      knns.add(q.getKNNForDBID(id, k));
+    }
+  }
+
   /**
    * The parameterizable factory.
    *
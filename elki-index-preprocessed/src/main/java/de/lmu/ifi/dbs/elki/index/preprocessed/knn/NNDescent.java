@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import java.util.ArrayList;
+
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.*;
@@ -32,6 +34,7 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -42,11 +45,20 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
 import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
 
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
 /**
  * NN-desent (also known as KNNGraph) is an approximate nearest neighbor search
  * algorithm beginning with a random sample, then iteratively refining this
  * sample until.
  * <p>
+ * The local joins of each iteration are computed in parallel, in fixed blocks
+ * of objects. Candidates are collected in one buffer per block, and are
+ * applied to the neighbor heaps in block order after each round of blocks, so
+ * the result does not depend on the number of threads. As the neighbor heaps
+ * are stale during a round, each buffer keeps only the best k candidates per
+ * object.
+ * <p>
  * Reference:
  * <p>
  * W. Dong and C. Moses and K. Li<br>
@@ -69,6 +81,16 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    */
   private static final Logging LOG = Logging.getLogger(NNDescent.class);
 
+  /**
+   * Number of objects joined by a single task.
+   */
+  private static final int BLOCK_SIZE = 1 << 8;
+
+  /**
+   * Number of objects joined before the candidates are applied.
+   */
+  private static final int ROUND_SIZE = 1 << 14;
+
   /**
    * Log prefix.
    */
@@ -104,6 +126,16 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    */
   private WritableDataStore<KNNHeap> store;
 
+  /**
+   * Number of iterations performed.
+   */
+  private int performedIterations;
+
+  /**
+   * Number of distance computations.
+   */
+  private long distanceComputations;
+
   /**
    * Constructor.
    *
@@ -144,12 +176,15 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
     // data structures for new and sampled new neighbors
     WritableDataStore<HashSetModifiableDBIDs> flag = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
+    // Old forward neighbors of the current iteration.
+    WritableDataStore<HashSetModifiableDBIDs> oldNeighborStore = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
 
     // Initialize data structures:
     for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
       store.put(iditer, DBIDUtil.newHeap(internal_k));
       newReverseNeighbors.put(iditer, DBIDUtil.newHashSet());
       oldReverseNeighbors.put(iditer, DBIDUtil.newHashSet());
+      oldNeighborStore.put(iditer, DBIDUtil.newHashSet());
     }
 
     // this variable is the sampling size
@@ -179,18 +214,21 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
       }
     }
 
-    final int size = relation.size();
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    CandidateBuffer[] buffers = new CandidateBuffer[(Math.min(size, ROUND_SIZE) + BLOCK_SIZE - 1) / BLOCK_SIZE];
+    for(int i = 0; i < buffers.length; i++) {
+      buffers[i] = new CandidateBuffer(internal_k);
+    }
     double rate = 0.0;
     int iter = 0;
 
     for(; iter < iterations; iter++) {
-      long counter = 0;
-
-      // iterate through dataset
-      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-        // determine new and old neighbors
+      // determine new and old neighbors; sequentially, because of sampling.
+      for(DBIDIter iditer = aids.iter(); iditer.valid(); iditer.advance()) {
         HashSetModifiableDBIDs newNeighbors = flag.get(iditer);
-        HashSetModifiableDBIDs oldNeighbors = DBIDUtil.newHashSet();
+        HashSetModifiableDBIDs oldNeighbors = oldNeighborStore.get(iditer);
+        oldNeighbors.clear(); // Reuse
         KNNHeap heap = store.get(iditer);
         for(DoubleDBIDListIter heapiter = heap.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
           if(!newNeighbors.contains(heapiter)) {
@@ -208,10 +246,23 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         HashSetModifiableDBIDs oldRev = oldReverseNeighbors.get(iditer);
         oldRev.removeDBIDs(oldNeighbors);
         boundSize(oldRev, items);
-        counter += processNewNeighbors(flag, sampleNew, oldNeighbors, newRev, oldRev);
+      }
+
+      // Local joins, in parallel; candidates are applied after each round.
+      long counter = 0, updates = 0;
+      for(int start = 0; start < size; start += ROUND_SIZE) {
+        final int end = Math.min(size, start + ROUND_SIZE);
+        final int numblocks = (end - start + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ParallelExecutor.run(numblocks, 1, new LocalJoin(aids, start, end, buffers, sampleNewNeighbors, oldNeighborStore, newReverseNeighbors, oldReverseNeighbors));
+        for(int b = 0; b < numblocks; b++) {
+          counter += buffers[b].distances;
+          updates += apply(buffers[b], flag);
+        }
       }
       counter_all += counter;
       if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(prefix + ".iteration-" + iter + ".distance-computations", counter));
+        LOG.statistics(new LongStatistic(prefix + ".iteration-" + iter + ".updates", updates));
         LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all * .5 / (size * (size - 1L))));
       }
 
@@ -237,6 +288,8 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
       }
       LOG.incrementProcessed(progress);
     }
+    performedIterations = iter < iterations ? iter + 1 : iter;
+    distanceComputations = counter_all;
     if(LOG.isVerbose() && iter == iterations) {
       LOG.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
     }
@@ -291,23 +344,20 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * This is a complex join, because we do not need to join old neighbors with
    * old neighbors, and we have forward- and reverse neighbors each.
    *
-   * @param flag Flags to mark new neighbors.
+   * @param buf Output buffer for candidate pairs
    * @param newFwd New forward neighbors
    * @param oldFwd Old forward neighbors
    * @param newRev New reverse neighbors
    * @param oldRev Old reverse neighbors
-   * @return Number of new neighbors
    */
-  private int processNewNeighbors(WritableDataStore<HashSetModifiableDBIDs> flag, HashSetModifiableDBIDs newFwd, HashSetModifiableDBIDs oldFwd, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev) {
-    int counter = 0;
+  private void processNewNeighbors(CandidateBuffer buf, HashSetModifiableDBIDs newFwd, HashSetModifiableDBIDs oldFwd, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev) {
     // nn_new
     if(!newFwd.isEmpty()) {
       for(DBIDIter sniter = newFwd.iter(); sniter.valid(); sniter.advance()) {
         // nn_new X nn_new
         for(DBIDIter niter2 = newFwd.iter(); niter2.valid(); niter2.advance()) {
           if(DBIDUtil.compare(sniter, niter2) < 0) { // Only x < y.
-            addpair(flag, sniter, niter2);
-            counter++;
+            candidate(buf, sniter, niter2);
           }
         }
         // nn_new X nn_old
@@ -315,8 +365,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
           if(DBIDUtil.equal(sniter, niter2)) {
             continue;
           }
-          addpair(flag, sniter, niter2);
-          counter++;
+          candidate(buf, sniter, niter2);
         }
       }
     }
@@ -326,8 +375,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         // rnn_new X rnn_new
         for(DBIDIter niter2 = newRev.iter(); niter2.valid(); niter2.advance()) {
           if(DBIDUtil.compare(nriter, niter2) < 0) { // Only x < y
-            addpair(flag, nriter, niter2);
-            counter++;
+            candidate(buf, nriter, niter2);
           }
         }
         // rnn_new X rnn_old
@@ -335,8 +383,7 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
           if(DBIDUtil.equal(nriter, niter2)) {
             continue;
           }
-          addpair(flag, nriter, niter2);
-          counter++;
+          candidate(buf, nriter, niter2);
         }
       }
     }
@@ -347,15 +394,13 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         // nn_new X rnn_old
         for(DBIDIter niter2 = oldRev.iter(); niter2.valid(); niter2.advance()) {
           if(!DBIDUtil.equal(sniter2, niter2)) {
-            addpair(flag, sniter2, niter2);
-            counter++;
+            candidate(buf, sniter2, niter2);
           }
         }
         // nn_new X rnn_new
         for(DBIDIter niter2 = newRev.iter(); niter2.valid(); niter2.advance()) {
           if(DBIDUtil.compare(sniter2, niter2) < 0) {
-            addpair(flag, sniter2, niter2);
-            counter++;
+            candidate(buf, sniter2, niter2);
           }
         }
       }
@@ -368,12 +413,10 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
           if(DBIDUtil.equal(niter, niter2)) {
             continue;
           }
-          addpair(flag, niter, niter2);
-          counter++;
+          candidate(buf, niter, niter2);
         }
       }
     }
-    return counter;
   }
 
   /**
@@ -393,14 +436,54 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     return (distance <= newKDistance);
   }
 
-  private void addpair(WritableDataStore<HashSetModifiableDBIDs> newNeighbors, DBIDRef o1, DBIDRef o2) {
+  /**
+   * Compute the distance of a pair, and keep it as candidate if it may improve
+   * either neighbor heap.
+   *
+   * @param buf Candidate buffer
+   * @param o1 First object
+   * @param o2 Second object
+   */
+  private void candidate(CandidateBuffer buf, DBIDRef o1, DBIDRef o2) {
     final double distance = distanceQuery.distance(o1, o2);
-    if(add(o1, o2, distance)) {
-      newNeighbors.get(o1).add(o2);
+    ++buf.distances;
+    if(distance <= kDistance(o1)) {
+      buf.add(o1, o2, distance);
+    }
+    if(distance <= kDistance(o2)) {
+      buf.add(o2, o1, distance);
     }
-    if(add(o2, o1, distance)) {
-      newNeighbors.get(o2).add(o1);
+  }
+
+  /**
+   * Current k-distance of an object.
+   *
+   * @param cur Object
+   * @return k-distance, infinity if not enough neighbors are known yet.
+   */
+  private double kDistance(DBIDRef cur) {
+    KNNHeap neighbors = store.get(cur);
+    return neighbors.size() < neighbors.getK() ? Double.POSITIVE_INFINITY : neighbors.getKNNDistance();
+  }
+
+  /**
+   * Apply the candidates of a local join to the neighbor heaps.
+   *
+   * @param buf Candidate buffer
+   * @param newNeighbors Flags to mark new neighbors
+   * @return Number of heap updates
+   */
+  private int apply(CandidateBuffer buf, WritableDataStore<HashSetModifiableDBIDs> newNeighbors) {
+    int updates = 0;
+    for(DBIDArrayIter o = buf.objs.iter(); o.valid(); o.advance()) {
+      for(DoubleDBIDListIter cand = buf.heaps.get(o.getOffset()).unorderedIterator(); cand.valid(); cand.advance()) {
+        if(add(o, cand, cand.doubleValue())) {
+          newNeighbors.get(o).add(cand);
+          ++updates;
+        }
+      }
     }
+    return updates;
   }
 
   /**
@@ -457,7 +540,8 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
 
   @Override
   public void logStatistics() {
-    // TODO
+    LOG.statistics(new LongStatistic(prefix + ".iterations", performedIterations));
+    LOG.statistics(new LongStatistic(prefix + ".distance-computations", distanceComputations));
   }
 
   @Override
@@ -480,6 +564,154 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     return super.getKNNQuery(distanceQuery, hints);
   }
 
+  /**
+   * Local join of a range of objects, one candidate buffer per block.
+   *
+   * @author Erich Schubert
+   */
+  private class LocalJoin implements ParallelExecutor.RangeTask {
+    /**
+     * Objects to process.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Range of objects in this round.
+     */
+    private final int start, end;
+
+    /**
+     * Candidate buffers, one per block.
+     */
+    private final CandidateBuffer[] buffers;
+
+    /**
+     * Sampled new and old forward and reverse neighbors.
+     */
+    private final WritableDataStore<HashSetModifiableDBIDs> newFwd, oldFwd, newRev, oldRev;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Objects to process
+     * @param start First object of this round
+     * @param end End of this round
+     * @param buffers Candidate buffers
+     * @param newFwd New forward neighbors
+     * @param oldFwd Old forward neighbors
+     * @param newRev New reverse neighbors
+     * @param oldRev Old reverse neighbors
+     */
+    LocalJoin(ArrayDBIDs ids, int start, int end, CandidateBuffer[] buffers, WritableDataStore<HashSetModifiableDBIDs> newFwd, WritableDataStore<HashSetModifiableDBIDs> oldFwd, WritableDataStore<HashSetModifiableDBIDs> newRev, WritableDataStore<HashSetModifiableDBIDs> oldRev) {
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.buffers = buffers;
+      this.newFwd = newFwd;
+      this.oldFwd = oldFwd;
+      this.newRev = newRev;
+      this.oldRev = oldRev;
+    }
+
+    @Override
+    public void run(int bstart, int bend) {
+      DBIDArrayIter iter = ids.iter();
+      for(int b = bstart; b < bend; b++) {
+        CandidateBuffer buf = buffers[b];
+        buf.clear();
+        final int e = Math.min(end, start + (b + 1) * BLOCK_SIZE);
+        for(iter.seek(start + b * BLOCK_SIZE); iter.getOffset() < e; iter.advance()) {
+          processNewNeighbors(buf, newFwd.get(iter), oldFwd.get(iter), newRev.get(iter), oldRev.get(iter));
+        }
+      }
+    }
+  }
+
+  /**
+   * Candidates found by a local join, as a small heap for each object.
+   * <p>
+   * Because the neighbor heaps are not updated during a round, their
+   * k-distances are stale. The buffer therefore only keeps the k best distinct
+   * candidates of each object; any other candidate could not enter the
+   * neighbor heap of the object either. This bounds the buffer size by k times
+   * the number of objects involved in the block.
+   *
+   * @author Erich Schubert
+   */
+  private static class CandidateBuffer {
+    /**
+     * Number of candidates to keep per object.
+     */
+    final int k;
+
+    /**
+     * Objects with candidates, in order of their first candidate.
+     */
+    ArrayModifiableDBIDs objs = DBIDUtil.newArray();
+
+    /**
+     * Candidate heaps, in the order of {@link #objs}; heaps beyond the number
+     * of objects are kept for reuse.
+     */
+    ArrayList<KNNHeap> heaps = new ArrayList<>();
+
+    /**
+     * Position of each object in {@link #objs}.
+     */
+    Int2IntOpenHashMap index = new Int2IntOpenHashMap();
+
+    /**
+     * Number of distance computations.
+     */
+    long distances;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of candidates to keep per object
+     */
+    CandidateBuffer(int k) {
+      this.k = k;
+      index.defaultReturnValue(-1);
+    }
+
+    /**
+     * Add a candidate neighbor of an object.
+     *
+     * @param o Object
+     * @param cand Candidate neighbor
+     * @param distance Distance
+     */
+    void add(DBIDRef o, DBIDRef cand, double distance) {
+      final int key = DBIDUtil.asInteger(o);
+      int pos = index.get(key);
+      if(pos < 0) {
+        index.put(key, pos = objs.size());
+        objs.add(o);
+        if(pos == heaps.size()) {
+          heaps.add(DBIDUtil.newHeap(k));
+        }
+      }
+      KNNHeap heap = heaps.get(pos);
+      if(heap.size() >= k && distance > heap.getKNNDistance() || heap.contains(cand)) {
+        return;
+      }
+      heap.insert(distance, cand);
+    }
+
+    /**
+     * Clear the buffer, for reuse.
+     */
+    void clear() {
+      for(int i = 0; i < objs.size(); i++) {
+        heaps.get(i).clear();
+      }
+      objs.clear();
+      index.clear();
+      distances = 0;
+    }
+  }
+
   /**
    * Index factory.
    *
@@ -113,8 +113,8 @@ public class SharedNearestNeighborPreprocessor<O> extends AbstractPreprocessorIn
           break;
         }
       }
-      neighbors.sort();
-      storage.put(iditer, neighbors);
+      // Sorted, and only accessed sequentially: store compressed, if smaller.
+      storage.put(iditer, DBIDUtil.newCompressedArray(neighbors));
       getLogger().incrementProcessed(progress);
     }
     getLogger().ensureCompleted(progress);
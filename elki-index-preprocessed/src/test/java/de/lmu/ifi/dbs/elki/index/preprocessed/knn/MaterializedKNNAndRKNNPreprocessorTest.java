@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
@@ -76,6 +77,11 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
   // size of the data set
   int shoulds = 330;
 
+  @Test
+  public void testParallelPreprocessor() {
+    withParallelism(2, () -> testPreprocessor());
+  }
+
   @Test
   public void testPreprocessor() {
     UpdatableDatabase db;
@@ -140,6 +146,7 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
     // test queries
     MaterializedKNNPreprocessorTest.testKNNQueries(rep, lin_knn_query, preproc_knn_query, k);
     testRKNNQueries(rep, lin_rknn_query, preproc_rknn_query, k);
+    MaterializedKNNPreprocessorTest.assertSameAsRecomputation(rep, distanceQuery, preproc_knn_query, k);
 
     // delete objects
     // System.out.println("Delete " + deletions);
@@ -148,6 +155,7 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
     // test queries
     MaterializedKNNPreprocessorTest.testKNNQueries(rep, lin_knn_query, preproc_knn_query, k);
     testRKNNQueries(rep, lin_rknn_query, preproc_rknn_query, k);
+    MaterializedKNNPreprocessorTest.assertSameAsRecomputation(rep, distanceQuery, preproc_knn_query, k);
   }
 
   public static void testRKNNQueries(Relation<DoubleVector> rep, RKNNQuery<DoubleVector> lin_rknn_query, RKNNQuery<DoubleVector> preproc_rknn_query, int k) {
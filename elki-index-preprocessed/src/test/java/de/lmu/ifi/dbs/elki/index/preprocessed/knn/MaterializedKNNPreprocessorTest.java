@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
@@ -71,25 +72,13 @@ public class MaterializedKNNPreprocessorTest {
   int shoulds = 330;
 
   @Test
-  public void testPreprocessor() {
-    UpdatableDatabase db;
-    // get database
-    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
-      ListParameterization params = new ListParameterization();
-      // Setup parser and data loading
-      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
-      InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, new ArrayList<>(), parser);
-
-      // We want to allow the use of indexes via "params"
-      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, dbc);
-      db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
-      db.initialize();
-    }
-    catch(IOException e) {
-      fail("Test data " + dataset + " not found.");
-      return;
-    }
+  public void testParallelPreprocessor() {
+    withParallelism(2, () -> testPreprocessor());
+  }
 
+  @Test
+  public void testPreprocessor() {
+    UpdatableDatabase db = loadDatabase();
     Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
     DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
 
@@ -138,6 +127,92 @@ public class MaterializedKNNPreprocessorTest {
     testKNNQueries(rep, lin_knn_query, preproc_knn_query, k);
   }
 
+  @Test
+  public void testParallelIncrementalUpdate() {
+    withParallelism(2, () -> testIncrementalUpdate());
+  }
+
+  /**
+   * The kNN after inserting objects close to existing objects (which changes
+   * many neighborhoods, found via range queries) and deleting objects must
+   * match a full recomputation.
+   */
+  @Test
+  public void testIncrementalUpdate() {
+    UpdatableDatabase db = loadDatabase();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    MaterializeKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNPreprocessor<>(rep, EuclideanDistanceFunction.STATIC, k);
+    preproc.initialize();
+    db.getHierarchy().add(rep, preproc);
+    KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+
+    // Insert objects next to existing objects.
+    Random random = new Random(seed);
+    List<DoubleVector> insertions = new ArrayList<>();
+    for(DBIDIter iter = DBIDUtil.randomSample(rep.getDBIDs(), updatesize, seed).iter(); iter.valid(); iter.advance()) {
+      double[] v = rep.get(iter).toArray();
+      for(int d = 0; d < v.length; d++) {
+        v[d] += (random.nextDouble() - .5) * 1e-3;
+      }
+      insertions.add(new DoubleVector(v));
+    }
+    DBIDs inserted = db.insert(MultipleObjectsBundle.makeSimple(rep.getDataTypeInformation(), insertions));
+    assertSameAsRecomputation(rep, distanceQuery, preproc_knn_query, k);
+
+    // Delete the new objects, and some of the old objects.
+    ModifiableDBIDs deletions = DBIDUtil.newHashSet(inserted);
+    deletions.addDBIDs(DBIDUtil.randomSample(DBIDUtil.difference(rep.getDBIDs(), inserted), updatesize, seed + 1));
+    db.delete(deletions);
+    assertSameAsRecomputation(rep, distanceQuery, preproc_knn_query, k);
+  }
+
+  /**
+   * Load the test database.
+   *
+   * @return Database
+   */
+  static UpdatableDatabase loadDatabase() {
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
+      ListParameterization params = new ListParameterization();
+      // Setup parser and data loading
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, new ArrayList<>(), parser);
+
+      // We want to allow the use of indexes via "params"
+      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, dbc);
+      UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+      db.initialize();
+      return db;
+    }
+    catch(IOException e) {
+      fail("Test data " + dataset + " not found.");
+      return null;
+    }
+  }
+
+  /**
+   * Compare the (incrementally updated) kNN of a preprocessor to a newly
+   * materialized preprocessor.
+   *
+   * @param rep Relation
+   * @param distanceQuery Distance query
+   * @param preproc_knn_query kNN query of the updated preprocessor
+   * @param k Number of neighbors
+   */
+  public static void assertSameAsRecomputation(Relation<DoubleVector> rep, DistanceQuery<DoubleVector> distanceQuery, KNNQuery<DoubleVector> preproc_knn_query, int k) {
+    MaterializeKNNPreprocessor<DoubleVector> full = new MaterializeKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k);
+    full.initialize();
+    KNNQuery<DoubleVector> full_knn_query = full.getKNNQuery(distanceQuery, k);
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList upd = preproc_knn_query.getKNNForDBID(iter, k), ref = full_knn_query.getKNNForDBID(iter, k);
+      assertEquals("kNN sizes do not agree.", ref.size(), upd.size());
+      for(DoubleDBIDListIter u = upd.iter(), r = ref.iter(); r.valid(); u.advance(), r.advance()) {
+        assertEquals("Updated kNN differ from recomputation: " + upd + " expected: " + ref, r.doubleValue(), u.doubleValue(), 0.);
+      }
+    }
+  }
+
   public static void testKNNQueries(Relation<DoubleVector> rep, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> preproc_knn_query, int k) {
     ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
     List<? extends KNNList> lin_knn_ids = lin_knn_query.getKNNForBulkDBIDs(sample, k);
@@ -20,7 +20,10 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -28,6 +31,9 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
@@ -53,6 +59,11 @@ public class NNDescentTest {
   // size of the data set
   int shoulds = 330;
 
+  @Test
+  public void testParallelPreprocessor() {
+    withParallelism(2, () -> testPreprocessor());
+  }
+
   @Test
   public void testPreprocessor() {
     Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
@@ -81,4 +92,43 @@ public class NNDescentTest {
     // also test partial queries, forward only
     MaterializedKNNPreprocessorTest.testKNNQueries(rel, lin_knn_query, preproc_knn_query, k / 2);
   }
+
+  /**
+   * The parallel local joins must reach the same recall as the sequential
+   * joins, on a data set that needs several blocks.
+   */
+  @Test
+  public void testParallelRecall() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "hierarchical-2d.ascii", 710);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    final int seq = recall(rel), par = withParallelism(2, () -> recall(rel));
+    assertEquals("Parallel recall differs.", seq, par);
+    assertTrue("Recall too low: " + seq, seq >= .95 * k * rel.size());
+  }
+
+  /**
+   * Count the true nearest neighbors found, for all objects.
+   *
+   * @param rel Relation
+   * @return Number of correct neighbors
+   */
+  private int recall(Relation<DoubleVector> rel) {
+    DistanceQuery<DoubleVector> distanceQuery = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+    NNDescent<DoubleVector> preproc = new ELKIBuilder<NNDescent.Factory<DoubleVector>>(NNDescent.Factory.class) //
+        .with(NNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistanceFunction()) //
+        .with(NNDescent.Factory.K_ID, k) //
+        .with(NNDescent.Factory.Parameterizer.SEED_ID, 0) //
+        .build().instantiate(rel);
+    preproc.initialize();
+    KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+    int found = 0;
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance()) {
+      SetDBIDs truth = DBIDUtil.ensureSet(lin_knn_query.getKNNForDBID(iter, k));
+      for(DBIDIter it = preproc_knn_query.getKNNForDBID(iter, k).iter(); it.valid(); it.advance()) {
+        found += truth.contains(it) ? 1 : 0;
+      }
+    }
+    return found;
+  }
 }
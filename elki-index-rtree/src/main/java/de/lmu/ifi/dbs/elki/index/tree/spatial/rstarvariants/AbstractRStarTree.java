@@ -92,6 +92,11 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    */
   protected S settings;
 
+  /**
+   * Packed read-only snapshot of the tree, may be {@code null}.
+   */
+  private PackedRStarTree packed = null;
+
   /**
    * Constructor.
    *
@@ -139,6 +144,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
 
   @Override
   public void insertLeaf(E leaf) {
+    packed = null;
     if(!initialized) {
       initialize(leaf);
     }
@@ -201,6 +207,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    * @param deletionPath Path to delete
    */
   protected void deletePath(IndexTreePath<E> deletionPath) {
+    packed = null;
     N leaf = getNode(deletionPath.getParentPath().getEntry());
     int index = deletionPath.getIndex();
 
@@ -373,6 +380,25 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    */
   protected abstract void bulkLoad(List<E> entries);
 
+  /**
+   * Build a packed read-only snapshot of the current tree, to be used by
+   * queries until the tree is modified the next time.
+   *
+   * @return Snapshot
+   */
+  public PackedRStarTree pack() {
+    return packed = new PackedRStarTree(this);
+  }
+
+  /**
+   * Get the packed read-only snapshot, if available and up to date.
+   *
+   * @return Snapshot, or {@code null}
+   */
+  public PackedRStarTree getPacked() {
+    return packed;
+  }
+
   /**
    * Returns the height of this R*-Tree.
    *
@@ -0,0 +1,319 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+
+/**
+ * Read-only snapshot of an R-tree, packed into flat primitive arrays.
+ * <p>
+ * Directory nodes are numbered in breadth-first order, the entries of
+ * directory node {@code i} are stored at positions
+ * {@code [dirStart(i), dirEnd(i))}: their bounding boxes (first the minima,
+ * then the maxima), and their children. Non-negative children are directory
+ * nodes, negative children {@code c} refer to leaf {@code ~c}. The points of
+ * leaf {@code j} are stored contiguously at positions
+ * {@code [leafStart(j), leafEnd(j))}, the corresponding object ids at the same
+ * positions.
+ * <p>
+ * This avoids the page lookups and the pointer chasing through entry objects
+ * of the object tree, which makes queries noticeably more cache friendly. The
+ * snapshot is not updated when the tree is modified; it needs to be rebuilt.
+ * <p>
+ * The snapshot is a copy: the object tree is kept for updates, for other
+ * distance functions and for bulk queries, so enabling it costs additional
+ * memory of about {@code 8 * dim} bytes per point and {@code 16 * dim} bytes
+ * per directory entry (plus 4 bytes each for ids and children), in addition
+ * to the tree itself.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class PackedRStarTree {
+  /**
+   * Dimensionality.
+   */
+  final int dim;
+
+  /**
+   * Root node, either 0 (directory) or {@code ~0} (single leaf).
+   */
+  final int root;
+
+  /**
+   * Start offsets of the directory node entries.
+   */
+  final int[] dirStart;
+
+  /**
+   * Bounding boxes of the directory node entries.
+   */
+  final double[] dirMBR;
+
+  /**
+   * Children of the directory node entries.
+   */
+  final int[] dirChild;
+
+  /**
+   * Start offsets of the leaf node entries.
+   */
+  final int[] leafStart;
+
+  /**
+   * Point coordinates.
+   */
+  final double[] points;
+
+  /**
+   * Object ids, aligned with the points.
+   */
+  final ArrayModifiableDBIDs ids;
+
+  /**
+   * Pack a tree.
+   *
+   * @param tree Tree to pack
+   */
+  public PackedRStarTree(AbstractRStarTree<?, ?, ?> tree) {
+    AbstractRStarTreeNode<?, ?> rootnode = tree.getRoot();
+    int dim = 0, numdir = 0, numdirent = 0, numleaf = 0, numpoints = 0;
+    // First pass: count nodes and entries, breadth-first.
+    int[] queue = new int[] { tree.getRootID() };
+    for(int qs = 1; qs > 0;) {
+      int[] next = new int[16];
+      int ns = 0;
+      for(int i = 0; i < qs; i++) {
+        AbstractRStarTreeNode<?, ?> node = tree.getNode(queue[i]);
+        final int num = node.getNumEntries();
+        if(num > 0 && dim == 0) {
+          dim = node.getEntry(0).getDimensionality();
+        }
+        if(node.isLeaf()) {
+          ++numleaf;
+          numpoints += num;
+          continue;
+        }
+        ++numdir;
+        numdirent += num;
+        for(int j = 0; j < num; j++) {
+          if(ns == next.length) {
+            next = Arrays.copyOf(next, next.length << 1);
+          }
+          next[ns++] = ((SpatialDirectoryEntry) node.getEntry(j)).getPageID();
+        }
+      }
+      queue = next;
+      qs = ns;
+    }
+    this.dim = dim;
+    this.root = rootnode.isLeaf() ? ~0 : 0;
+    this.dirStart = new int[numdir + 1];
+    this.dirMBR = new double[numdirent * dim * 2];
+    this.dirChild = new int[numdirent];
+    this.leafStart = new int[numleaf + 1];
+    this.points = new double[numpoints * dim];
+    this.ids = DBIDUtil.newArray(numpoints);
+    // Second pass: copy the data. Directory nodes are appended in the order
+    // they are referenced, which is again breadth-first.
+    int[] pages = new int[numdir + numleaf];
+    boolean[] isleaf = new boolean[numdir + numleaf];
+    int[] index = new int[numdir + numleaf];
+    pages[0] = tree.getRootID();
+    isleaf[0] = rootnode.isLeaf();
+    int nd = isleaf[0] ? 0 : 1, nl = isleaf[0] ? 1 : 0, np = 1;
+    int de = 0, le = 0;
+    for(int p = 0; p < np; p++) {
+      AbstractRStarTreeNode<?, ?> node = tree.getNode(pages[p]);
+      final int num = node.getNumEntries();
+      if(isleaf[p]) {
+        final int l = index[p];
+        leafStart[l] = le;
+        for(int j = 0; j < num; j++, le++) {
+          SpatialEntry entry = node.getEntry(j);
+          for(int d = 0, o = le * dim; d < dim; d++) {
+            points[o + d] = entry.getMin(d);
+          }
+          ids.add(((LeafEntry) entry).getDBID());
+        }
+        continue;
+      }
+      final int di = index[p];
+      dirStart[di] = de;
+      for(int j = 0; j < num; j++, de++) {
+        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(j);
+        for(int d = 0, o = de * dim * 2; d < dim; d++) {
+          dirMBR[o + d] = entry.getMin(d);
+          dirMBR[o + dim + d] = entry.getMax(d);
+        }
+        final int child = entry.getPageID();
+        final boolean leaf = tree.getNode(child).isLeaf();
+        pages[np] = child;
+        isleaf[np] = leaf;
+        index[np] = leaf ? nl++ : nd++;
+        dirChild[de] = leaf ? ~index[np] : index[np];
+        ++np;
+      }
+    }
+    // Leaves are visited in order of their index, directory nodes, too.
+    assert (nd == numdir && nl == numleaf && le == numpoints && de == numdirent);
+    dirStart[numdir] = de;
+    leafStart[numleaf] = le;
+  }
+
+  /**
+   * Get the root node, either 0 (directory) or {@code ~0} (single leaf).
+   *
+   * @return Root node
+   */
+  public int getRoot() {
+    return root;
+  }
+
+  /**
+   * Get the first entry of a directory node.
+   *
+   * @param node Directory node
+   * @return First entry (inclusive)
+   */
+  public int dirStart(int node) {
+    return dirStart[node];
+  }
+
+  /**
+   * Get the end of the entries of a directory node.
+   *
+   * @param node Directory node
+   * @return Last entry (exclusive)
+   */
+  public int dirEnd(int node) {
+    return dirStart[node + 1];
+  }
+
+  /**
+   * Get the child of a directory entry. Non-negative values are directory
+   * nodes, negative values {@code c} refer to leaf {@code ~c}.
+   *
+   * @param e Entry number
+   * @return Child node
+   */
+  public int dirChild(int e) {
+    return dirChild[e];
+  }
+
+  /**
+   * Get the first point of a leaf.
+   *
+   * @param leaf Leaf number
+   * @return First point (inclusive)
+   */
+  public int leafStart(int leaf) {
+    return leafStart[leaf];
+  }
+
+  /**
+   * Get the end of the points of a leaf.
+   *
+   * @param leaf Leaf number
+   * @return Last point (exclusive)
+   */
+  public int leafEnd(int leaf) {
+    return leafStart[leaf + 1];
+  }
+
+  /**
+   * Get an iterator over the object ids, for random access.
+   *
+   * @return Iterator
+   */
+  public DBIDArrayIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  /**
+   * Number of directory nodes.
+   *
+   * @return Number of directory nodes.
+   */
+  public int numDirectoryNodes() {
+    return dirStart.length - 1;
+  }
+
+  /**
+   * Number of leaf nodes.
+   *
+   * @return Number of leaves.
+   */
+  public int numLeaves() {
+    return leafStart.length - 1;
+  }
+
+  /**
+   * Squared Euclidean minimum distance of a query point to a directory entry.
+   *
+   * @param q Query point
+   * @param e Entry number
+   * @return Squared minimum distance
+   */
+  public double squaredMinDist(double[] q, int e) {
+    final int o = e * dim * 2;
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double v = q[d], min = dirMBR[o + d];
+      if(v < min) {
+        final double delta = min - v;
+        agg += delta * delta;
+      }
+      else {
+        final double max = dirMBR[o + dim + d];
+        if(v > max) {
+          final double delta = v - max;
+          agg += delta * delta;
+        }
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance of a query point to a stored point.
+   *
+   * @param q Query point
+   * @param i Point number
+   * @return Squared distance
+   */
+  public double squaredDistance(double[] q, int i) {
+    final int o = i * dim;
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = q[d] - points[o + d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+}
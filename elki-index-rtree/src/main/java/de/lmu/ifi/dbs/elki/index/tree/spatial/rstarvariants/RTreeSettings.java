@@ -65,6 +65,12 @@ public class RTreeSettings {
    */
   protected double relativeMinFill = 0.4;
 
+  /**
+   * Build a packed read-only snapshot for queries after loading. The snapshot
+   * is a copy of the data kept in addition to the tree.
+   */
+  protected boolean packed = false;
+
   /**
    * Constructor with default values.
    */
@@ -125,6 +131,22 @@ public class RTreeSettings {
     this.relativeMinFill = relative;
   }
 
+  /**
+   * Enable the packed read-only snapshot used for queries.
+   *
+   * @param packed Build a packed snapshot after loading the data
+   */
+  public void setPacked(boolean packed) {
+    this.packed = packed;
+  }
+
+  /**
+   * @return {@code true} if a packed snapshot is to be built after loading
+   */
+  public boolean isPacked() {
+    return packed;
+  }
+
   /**
    * @return the overflowTreatment
    */
@@ -0,0 +1,99 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.PackedRStarTree;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+
+/**
+ * Euclidean kNN query on the packed read-only snapshot of an R-tree.
+ * <p>
+ * Falls back to the object tree if the snapshot is not available anymore,
+ * because the tree was modified.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @assoc - - - PackedRStarTree
+ */
+public class PackedEuclideanRStarTreeKNNQuery<O extends NumberVector> extends EuclideanRStarTreeKNNQuery<O> {
+  /**
+   * Constructor.
+   *
+   * @param tree Index to use
+   * @param relation Data relation to query
+   */
+  public PackedEuclideanRStarTreeKNNQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation) {
+    super(tree, relation);
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    final PackedRStarTree packed = tree.getPacked();
+    if(packed == null) {
+      return super.getKNNForObject(obj, k);
+    }
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one neighbor has to be requested!");
+    }
+    tree.statistics.countKNNQuery();
+    final double[] q = obj.toArray();
+    final DBIDArrayIter ids = packed.iterDBIDs();
+    final KNNHeap knnList = DBIDUtil.newHeap(k);
+    final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(k << 1, 21));
+    double maxDist = Double.POSITIVE_INFINITY;
+    int node = packed.getRoot();
+    while(true) {
+      if(node < 0) { // Leaf
+        final int l = ~node;
+        for(int i = packed.leafStart(l), end = packed.leafEnd(l); i < end; i++) {
+          final double distance = packed.squaredDistance(q, i);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= maxDist) {
+            maxDist = knnList.insert(distance, ids.seek(i));
+          }
+        }
+      }
+      else { // Directory
+        for(int e = packed.dirStart(node), end = packed.dirEnd(node); e < end; e++) {
+          final double distance = packed.squaredMinDist(q, e);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= maxDist) {
+            pq.add(distance, packed.dirChild(e));
+          }
+        }
+      }
+      if(pq.isEmpty() || pq.peekKey() > maxDist) {
+        break;
+      }
+      node = pq.peekValue();
+      pq.poll();
+    }
+    return knnList.toKNNListSqrt();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.PackedRStarTree;
+import net.jafama.FastMath;
+
+/**
+ * Euclidean range query on the packed read-only snapshot of an R-tree.
+ * <p>
+ * Falls back to the object tree if the snapshot is not available anymore,
+ * because the tree was modified.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @assoc - - - PackedRStarTree
+ */
+public class PackedEuclideanRStarTreeRangeQuery<O extends NumberVector> extends EuclideanRStarTreeRangeQuery<O> {
+  /**
+   * Constructor.
+   *
+   * @param tree Index to use
+   * @param relation Relation to use.
+   */
+  public PackedEuclideanRStarTreeRangeQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation) {
+    super(tree, relation);
+  }
+
+  @Override
+  public void getRangeForObject(O object, double range, ModifiableDoubleDBIDList result) {
+    final PackedRStarTree packed = tree.getPacked();
+    if(packed == null) {
+      super.getRangeForObject(object, range, result);
+      return;
+    }
+    tree.statistics.countRangeQuery();
+    final double sqepsilon = range * range;
+    final double[] q = object.toArray();
+    final DBIDArrayIter ids = packed.iterDBIDs();
+
+    // Processing stack.
+    int[] pq = new int[101];
+    int ps = 0;
+    pq[ps++] = packed.getRoot();
+    while(ps > 0) {
+      final int node = pq[--ps]; // Pop last.
+      if(node < 0) { // Leaf
+        final int l = ~node;
+        for(int i = packed.leafStart(l), end = packed.leafEnd(l); i < end; i++) {
+          final double distance = packed.squaredDistance(q, i);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= sqepsilon) {
+            result.add(FastMath.sqrt(distance), ids.seek(i));
+          }
+        }
+      }
+      else { // Directory
+        for(int e = packed.dirStart(node), end = packed.dirEnd(node); e < end; e++) {
+          final double distance = packed.squaredMinDist(q, e);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= sqepsilon) {
+            if(ps == pq.length) { // Resize:
+              pq = Arrays.copyOf(pq, pq.length + (pq.length >>> 1));
+            }
+            pq[ps++] = packed.dirChild(e);
+          }
+        }
+      }
+    }
+  }
+}
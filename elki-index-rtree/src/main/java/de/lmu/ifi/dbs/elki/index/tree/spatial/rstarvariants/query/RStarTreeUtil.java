@@ -41,6 +41,8 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
  * @assoc - - - AbstractRStarTree
  * @assoc - - - EuclideanRStarTreeKNNQuery
  * @assoc - - - EuclideanRStarTreeRangeQuery
+ * @assoc - - - PackedEuclideanRStarTreeKNNQuery
+ * @assoc - - - PackedEuclideanRStarTreeRangeQuery
  * @assoc - - - RStarTreeKNNQuery
  * @assoc - - - RStarTreeRangeQuery
  * @has - - - RangeQuery
@@ -69,6 +71,9 @@ public final class RStarTreeUtil {
     // Can we support this distance function - spatial distances only!
     SpatialPrimitiveDistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
     if(EuclideanDistanceFunction.STATIC.equals(df)) {
+      if(tree.getPacked() != null) {
+        return (RangeQuery<O>) new PackedEuclideanRStarTreeRangeQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation());
+      }
       return (RangeQuery<O>) new EuclideanRStarTreeRangeQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation());
     }
     return new RStarTreeRangeQuery<>(tree, distanceQuery.getRelation(), df);
@@ -89,6 +94,9 @@ public final class RStarTreeUtil {
     // Can we support this distance function - spatial distances only!
     SpatialPrimitiveDistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
     if(EuclideanDistanceFunction.STATIC.equals(df)) {
+      if(tree.getPacked() != null) {
+        return (KNNQuery<O>) new PackedEuclideanRStarTreeKNNQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation());
+      }
       return (KNNQuery<O>) new EuclideanRStarTreeKNNQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation());
     }
     return new RStarTreeKNNQuery<>(tree, distanceQuery.getRelation(), df);
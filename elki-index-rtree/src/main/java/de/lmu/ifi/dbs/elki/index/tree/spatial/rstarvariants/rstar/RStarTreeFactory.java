@@ -28,6 +28,9 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.RTreeSettings;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.persistent.PageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * Factory for regular R*-Trees.
@@ -72,6 +75,22 @@ public class RStarTreeFactory<O extends NumberVector> extends AbstractRStarTreeF
    * @param <O> Object type
    */
   public static class Parameterizer<O extends NumberVector> extends AbstractRStarTreeFactory.Parameterizer<O, RTreeSettings> {
+    /**
+     * Build a packed, array-based read-only snapshot after loading the data,
+     * for faster Euclidean queries. The snapshot is kept in addition to the
+     * object tree.
+     */
+    public static final OptionID PACKED_ID = new OptionID("rtree.packed", "Pack the tree into flat arrays after (bulk) loading, for faster Euclidean queries. The packed snapshot is a copy kept in addition to the tree, and needs about as much memory as the data itself. Modifications of the tree discard the packed snapshot.");
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag packedF = new Flag(PACKED_ID);
+      if(config.grab(packedF)) {
+        settings.setPacked(packedF.isTrue());
+      }
+    }
+
     @Override
     protected RStarTreeFactory<O> makeInstance() {
       return new RStarTreeFactory<>(pageFileFactory, settings);
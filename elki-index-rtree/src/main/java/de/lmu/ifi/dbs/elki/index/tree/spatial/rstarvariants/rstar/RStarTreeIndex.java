@@ -89,6 +89,9 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
   public void initialize() {
     super.initialize();
     insertAll(relation.getDBIDs()); // Will check for actual bulk load!
+    if(settings.isPacked() && initialized) {
+      pack();
+    }
   }
 
   /**
@@ -25,6 +25,8 @@ import org.junit.Test;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.PackedEuclideanRStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.PackedEuclideanRStarTreeRangeQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.*;
@@ -282,4 +284,33 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
     testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
+
+  /**
+   * Test the packed snapshot of a {@link RStarTree} bulk loaded using
+   * {@link SortTileRecursiveBulkSplit}
+   */
+  @Test
+  public void testPackedSortTileRecursiveBulkSplit() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+        .with(RStarTreeFactory.Parameterizer.PACKED_ID) //
+        .build();
+    testExactEuclidean(factory, PackedEuclideanRStarTreeKNNQuery.class, PackedEuclideanRStarTreeRangeQuery.class);
+    testExactCosine(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test the packed snapshot of a {@link RStarTree} built by insertion.
+   */
+  @Test
+  public void testPackedInsertion() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .with(RStarTreeFactory.Parameterizer.PACKED_ID) //
+        .build();
+    testExactEuclidean(factory, PackedEuclideanRStarTreeKNNQuery.class, PackedEuclideanRStarTreeRangeQuery.class);
+    testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
 }
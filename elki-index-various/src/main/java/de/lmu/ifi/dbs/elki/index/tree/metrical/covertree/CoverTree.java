@@ -31,6 +31,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
@@ -39,6 +40,7 @@ import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -63,7 +65,9 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * parent nodes. It thus needs more than twice the memory of
  * {@link SimplifiedCoverTree}, but computes fewer distances.
  * <p>
- * TODO: allow insertions and removals, as in the original publication.
+ * Insertions descend into the nearest child that covers the new object, as in
+ * the original publication; leaves that grow too large are rebuilt locally.
+ * When the routing object of a node is removed, its subtree is rebuilt.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -76,7 +80,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
     booktitle = "In Proc. 23rd Int. Conf. Machine Learning (ICML 2006)", //
     url = "https://doi.org/10.1145/1143844.1143857", //
     bibkey = "DBLP:conf/icml/BeygelzimerKL06")
-public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
@@ -126,9 +130,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     ArrayList<Node> children;
 
     /**
-     * Expansion scale.
+     * Expansion scale; for leaves the maximum scale permitted by the parent.
      */
-    // int scale = SCALE_LEAF;
+    int scale = Integer.MAX_VALUE;
 
     /**
      * Constructor.
@@ -228,7 +232,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     // Leaf node, because points coincide, we are too deep, or have too few
     // elements remaining:
     if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
-      return new Node(cur, max, parentDist, elems);
+      Node leaf = new Node(cur, max, parentDist, elems);
+      leaf.scale = maxScale;
+      return leaf;
     }
     // Find neighbors in the cover of the current object:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
@@ -240,6 +246,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     }
     // We will have at least one other child, so build the parent:
     Node node = new Node(cur, max, parentDist);
+    node.scale = scale;
     // Routing element now is a singleton:
     final boolean curSingleton = elems.size() == 0;
     if(!curSingleton) {
@@ -277,6 +284,213 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     return node;
   }
 
+  @Override
+  public void insert(DBIDRef id) {
+    if(root == null) {
+      root = new Node(id, 0., 0., DBIDUtil.newDistanceDBIDList(0));
+      return;
+    }
+    Node parent = null, cur = root;
+    int pos = -1;
+    double d = distance(cur.singletons.iter(), id);
+    while(true) {
+      cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+      if(cur.isLeaf()) {
+        cur.singletons.add(d, id);
+        // Rebuild leaves that have become too large:
+        if(cur.singletons.size() > truncate << 1 && cur.maxDist > 0 //
+            && Math.min(distToScale(cur.maxDist) - 1, cur.scale) > scaleBottom) {
+          replace(parent, pos, rebuild(parent, cur, null));
+        }
+        return;
+      }
+      final DoubleDBIDListIter r = cur.singletons.iter();
+      final double fmax = scaleToDist(cur.scale - 1);
+      // Find the nearest child that covers the new object:
+      Node best = null;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int i = 0; i < cur.children.size(); i++) {
+        final Node c = cur.children.get(i);
+        final double lb = Math.abs(d - c.parentDist);
+        if(lb > fmax || lb >= bestd) {
+          continue;
+        }
+        final DoubleDBIDListIter f = c.singletons.iter();
+        final double cd = DBIDUtil.equal(f, r) ? d : distance(f, id);
+        if(cd <= fmax && cd < bestd) {
+          best = c;
+          bestd = cd;
+          pos = i;
+        }
+      }
+      if(best != null) {
+        parent = cur;
+        cur = best;
+        d = bestd;
+        continue;
+      }
+      // New singleton, unless it covers an existing singleton:
+      for(DoubleDBIDListIter it = cur.singletons.iter().advance(); it.valid(); it.advance()) {
+        if(Math.abs(d - it.doubleValue()) > fmax || DBIDUtil.equal(it, r)) {
+          continue;
+        }
+        final double sd = distance(it, id);
+        if(sd <= fmax) {
+          ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(1);
+          elems.add(sd, id);
+          Node leaf = new Node(it, sd, it.doubleValue(), elems);
+          leaf.scale = cur.scale - 1;
+          cur.singletons.removeSwap(it.getOffset());
+          cur.children.add(leaf);
+          return;
+        }
+      }
+      cur.singletons.add(d, id);
+      return;
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(root == null) {
+      bulkLoad(ids);
+      return;
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      insert(it);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    return root != null && delete(null, -1, root, id, distance(root.singletons.iter(), id));
+  }
+
+  /**
+   * Recursive deletion.
+   *
+   * @param parent Parent node
+   * @param pos Position in parent
+   * @param cur Current node
+   * @param id Object to remove
+   * @param d Distance to the routing object of the current node
+   * @return {@code true} if found
+   */
+  private boolean delete(Node parent, int pos, Node cur, DBIDRef id, double d) {
+    if(d > cur.maxDist) {
+      return false;
+    }
+    final DoubleDBIDListIter r = cur.singletons.iter();
+    if(DBIDUtil.equal(r, id)) {
+      // Routing object removed, rebuild the subtree:
+      replace(parent, pos, rebuild(parent, cur, id));
+      return true;
+    }
+    for(DoubleDBIDListIter it = cur.singletons.iter().advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        cur.singletons.removeSwap(it.getOffset());
+        return true;
+      }
+    }
+    if(!cur.isLeaf()) {
+      for(int i = 0; i < cur.children.size(); i++) {
+        final Node c = cur.children.get(i);
+        if(Math.abs(d - c.parentDist) > c.maxDist) {
+          continue;
+        }
+        final DoubleDBIDListIter f = c.singletons.iter();
+        if(delete(cur, i, c, id, DBIDUtil.equal(f, r) ? d : distance(f, id))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Rebuild a subtree.
+   *
+   * @param parent Parent node, may be {@code null}
+   * @param node Subtree root
+   * @param removed Object to remove, or {@code null} to keep the routing object
+   * @return New subtree, or {@code null} if empty
+   */
+  private Node rebuild(Node parent, Node node, DBIDRef removed) {
+    ModifiableDBIDs ids = DBIDUtil.newHashSet();
+    collect(node, ids);
+    if(removed != null) {
+      ids.remove(removed);
+      if(ids.isEmpty()) {
+        return null;
+      }
+    }
+    final DBID first = DBIDUtil.deref(removed == null ? node.singletons.iter() : ids.iter());
+    ids.remove(first);
+    ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(ids.size());
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      elems.add(distance(first, it), it);
+    }
+    final double parentDist = removed == null ? node.parentDist : //
+        parent == null ? 0. : distance(parent.singletons.iter(), first);
+    return bulkConstruct(first, node.scale, parentDist, elems);
+  }
+
+  /**
+   * Collect all objects of a subtree.
+   *
+   * @param node Subtree root
+   * @param ids Output set
+   */
+  private void collect(Node node, ModifiableDBIDs ids) {
+    ids.addDBIDs(node.singletons);
+    if(node.children != null) {
+      for(Node c : node.children) {
+        collect(c, ids);
+      }
+    }
+  }
+
+  /**
+   * Replace a child node.
+   *
+   * @param parent Parent node, {@code null} for the root
+   * @param pos Position in parent
+   * @param node Replacement, {@code null} to remove
+   */
+  private void replace(Node parent, int pos, Node node) {
+    if(parent == null) {
+      root = node;
+      return;
+    }
+    if(node != null) {
+      parent.children.set(pos, node);
+      return;
+    }
+    final Node old = parent.children.get(pos);
+    final Node last = parent.children.remove(parent.children.size() - 1);
+    if(last != old) {
+      parent.children.set(pos, last);
+    }
+    if(parent.children.isEmpty()) {
+      // Parent becomes a leaf, where the routing object is stored only once:
+      parent.children = null;
+      final DoubleDBIDListIter r = parent.singletons.iter();
+      for(DoubleDBIDListIter it = parent.singletons.iter().advance(); it.valid(); it.advance()) {
+        if(DBIDUtil.equal(it, r)) {
+          parent.singletons.removeSwap(it.getOffset());
+          break;
+        }
+      }
+    }
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -351,6 +565,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       while(!open.isEmpty()) {
@@ -413,6 +630,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
       double d_k = Double.POSITIVE_INFINITY;
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
@@ -20,10 +20,30 @@
  */
 package de.lmu.ifi.dbs.elki.index;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
 
 /**
  * This unit test verifies that the linear scan produces the reference result.
@@ -49,4 +69,38 @@ public class LinearScanReferenceTest extends AbstractIndexStructureTest {
     testExactCosine(null, LinearScanPrimitiveDistanceKNNQuery.class, LinearScanPrimitiveDistanceRangeQuery.class);
     testSinglePoint(null, LinearScanPrimitiveDistanceKNNQuery.class, LinearScanPrimitiveDistanceRangeQuery.class);
   }
+
+  /**
+   * Test that the blocked bulk queries agree with single queries.
+   */
+  @Test
+  public void testBulk() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    testBulk(rel, EuclideanDistanceFunction.STATIC);
+    testBulk(rel, ManhattanDistanceFunction.STATIC);
+  }
+
+  /**
+   * Compare bulk and single queries.
+   *
+   * @param rel Relation
+   * @param df Distance function
+   */
+  private void testBulk(Relation<DoubleVector> rel, DistanceFunction<? super DoubleVector> df) {
+    DistanceQuery<DoubleVector> dq = rel.getDistanceQuery(df);
+    KNNQuery<DoubleVector> knnq = rel.getKNNQuery(dq, k);
+    assertTrue("Not a linear scan: " + knnq.getClass(), knnq instanceof LinearScanPrimitiveDistanceKNNQuery);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, k);
+    assertEquals("Wrong number of results.", ids.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      KNNList single = knnq.getKNNForDBID(it, k), b = bulk.get(i);
+      assertEquals("Result size does not match.", single.size(), b.size());
+      for(DoubleDBIDListIter i1 = single.iter(), i2 = b.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("Distance does not match.", i1.doubleValue(), i2.doubleValue(), 0.);
+      }
+    }
+  }
 }
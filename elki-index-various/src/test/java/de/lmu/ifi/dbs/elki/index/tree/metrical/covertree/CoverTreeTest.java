@@ -43,4 +43,14 @@ public class CoverTreeTest extends AbstractIndexStructureTest {
     testExactEuclidean(factory, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
     testSinglePoint(factory, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
   }
+
+  /**
+   * Test dynamic insertions and deletions of {@link CoverTree}.
+   */
+  @Test
+  public void testDynamic() {
+    CoverTree.Factory<?> factory = new ELKIBuilder<>(CoverTree.Factory.class) //
+        .with(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class).build();
+    testDynamicUpdates(factory);
+  }
 }
@@ -43,4 +43,14 @@ public class SimplifiedCoverTreeTest extends AbstractIndexStructureTest {
     testExactEuclidean(factory, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
     testSinglePoint(factory, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
   }
+
+  /**
+   * Test dynamic insertions and deletions of {@link SimplifiedCoverTree}.
+   */
+  @Test
+  public void testDynamic() {
+    SimplifiedCoverTree.Factory<?> factory = new ELKIBuilder<>(SimplifiedCoverTree.Factory.class) //
+        .with(SimplifiedCoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class).build();
+    testDynamicUpdates(factory);
+  }
 }
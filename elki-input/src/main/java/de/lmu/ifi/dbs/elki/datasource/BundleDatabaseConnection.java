@@ -27,6 +27,7 @@ import java.nio.channels.FileChannel;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedBundleReader;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -34,6 +35,7 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * Class to load a database from a bundle file.
@@ -42,10 +44,18 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
  * that parsing should be simpler, albeit the focus was on using it in on-disk
  * indexes.
  *
+ * Optionally, fixed-dimensional dense vector columns can be left in the
+ * memory-mapped file (see {@link MappedBundleReader}) instead of being loaded
+ * into the Java heap. The vectors are then served as lightweight
+ * {@link de.lmu.ifi.dbs.elki.data.NumberVector} views, which reduces memory
+ * usage and load time for large data sets, and allows sharing the operating
+ * system page cache across processes.
+ *
  * @author Erich Schubert
  * @since 0.5.5
  *
  * @composed - - - BundleReader
+ * @composed - - - MappedBundleReader
  */
 public class BundleDatabaseConnection extends AbstractDatabaseConnection {
   /**
@@ -58,15 +68,32 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
    */
   private File infile;
 
+  /**
+   * Keep vector columns in the memory-mapped file.
+   */
+  private boolean mmap;
+
   /**
    * Constructor.
    *
    * @param filters Filters
    * @param infile Input file
+   * @param mmap Keep vector columns in the memory-mapped file
    */
-  public BundleDatabaseConnection(List<ObjectFilter> filters, File infile) {
+  public BundleDatabaseConnection(List<ObjectFilter> filters, File infile, boolean mmap) {
     super(filters);
     this.infile = infile;
+    this.mmap = mmap;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   */
+  public BundleDatabaseConnection(List<ObjectFilter> filters, File infile) {
+    this(filters, infile, false);
   }
 
   @Override
@@ -74,7 +101,16 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     try {
       FileInputStream fis = new FileInputStream(infile);
       FileChannel channel = fis.getChannel();
-      MultipleObjectsBundle bundle = invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
+      MultipleObjectsBundle bundle = mmap ? new MappedBundleReader(channel).load() : null;
+      if(bundle != null) {
+        bundle = invokeBundleFilters(bundle);
+      }
+      else {
+        if(mmap) {
+          LOG.warning("Bundle does not contain fixed-dimensional vectors that can be mapped, loading into memory.");
+        }
+        bundle = invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
+      }
       channel.close();
       fis.close();
       return bundle;
@@ -98,13 +134,23 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     /**
      * Option ID for the bundle parameter.
      */
-    private static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
+    public static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
+
+    /**
+     * Flag to keep vector columns in the memory-mapped file.
+     */
+    public static final OptionID MMAP_ID = new OptionID("bundle.mmap", "Keep fixed-dimensional vector columns in the memory-mapped bundle file instead of loading them into memory. The vectors are then only available as generic number vectors.");
 
     /**
      * File to load.
      */
     private File infile;
 
+    /**
+     * Keep vector columns in the memory-mapped file.
+     */
+    private boolean mmap;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -113,11 +159,15 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
       if(config.grab(infileP)) {
         infile = infileP.getValue();
       }
+      Flag mmapF = new Flag(MMAP_ID);
+      if(config.grab(mmapF)) {
+        mmap = mmapF.isTrue();
+      }
     }
 
     @Override
     protected BundleDatabaseConnection makeInstance() {
-      return new BundleDatabaseConnection(filters, infile);
+      return new BundleDatabaseConnection(filters, infile, mmap);
     }
   }
 }
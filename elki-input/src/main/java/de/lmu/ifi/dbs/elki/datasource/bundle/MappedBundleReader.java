@@ -0,0 +1,315 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
+
+/**
+ * Open an ELKI bundle file without deserializing the vector columns.
+ * <p>
+ * Fixed-dimensional dense vector columns are served as
+ * {@link MappedNumberVectorColumn}s directly from the mapped file. If all
+ * records have the same size (i.e., the file only contains such vector
+ * columns, and optionally fixed-size DBIDs), the file is opened in constant
+ * time. Otherwise, the file is scanned once to locate the records, and the
+ * remaining columns (e.g., labels) are deserialized as usual.
+ * <p>
+ * Files larger than 2 GB are mapped in multiple windows.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @assoc - reads - FileChannel
+ * @has - - - MappedNumberVectorColumn
+ */
+public class MappedBundleReader {
+  /**
+   * Maximum size of a mapped window (1 GB).
+   */
+  private static final long WINDOW_SIZE = 1L << 30;
+
+  /**
+   * When scanning, start a new window if less than this remains.
+   */
+  private static final int RESERVE = 1 << 20;
+
+  /**
+   * Input channel.
+   */
+  private final FileChannel input;
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   */
+  public MappedBundleReader(FileChannel input) {
+    super();
+    this.input = input;
+  }
+
+  /**
+   * Load the bundle.
+   *
+   * @return Bundle, or {@code null} if the file does not contain any vector
+   *         column that can be mapped.
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle load() throws IOException {
+    final long filesize = input.size();
+    ByteBuffer head = input.map(MapMode.READ_ONLY, 0, Math.min(filesize, WINDOW_SIZE));
+    if(head.getInt() != BundleReader.MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int nummeta = head.getInt();
+    SimpleTypeInformation<?>[] types = new SimpleTypeInformation<?>[nummeta];
+    ByteBufferSerializer<?>[] sers = new ByteBufferSerializer<?>[nummeta];
+    MappedNumberVectorColumn.Layout[] layouts = new MappedNumberVectorColumn.Layout[nummeta];
+    boolean hasids = false, any = false;
+    for(int i = 0; i < nummeta; i++) {
+      try {
+        types[i] = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(head);
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+      }
+      sers[i] = types[i].getSerializer();
+      if(i == 0 && DBID.class.isAssignableFrom(types[i].getRestrictionClass())) {
+        hasids = true;
+        continue;
+      }
+      any |= (layouts[i] = MappedNumberVectorColumn.layout(types[i])) != null;
+    }
+    if(!any) {
+      return null;
+    }
+    // Check for fixed-size records:
+    int stride = 0;
+    for(int i = 0; i < nummeta; i++) {
+      if(layouts[i] != null) {
+        stride += layouts[i].getByteSize();
+      }
+      else if(i == 0 && hasids && sers[0] instanceof FixedSizeByteBufferSerializer) {
+        stride += ((FixedSizeByteBufferSerializer<?>) sers[0]).getFixedByteSize();
+      }
+      else {
+        stride = -1;
+        break;
+      }
+    }
+    return stride > 0 ? loadFixed(head.position(), filesize, stride, hasids, types, sers, layouts) : //
+        loadVariable(head, filesize, hasids, types, sers, layouts);
+  }
+
+  /**
+   * Open a bundle where all records have the same size.
+   *
+   * @param start Start of the first record
+   * @param filesize File size
+   * @param stride Record size
+   * @param hasids Bundle contains DBIDs
+   * @param types Column types
+   * @param sers Column serializers
+   * @param layouts Vector column layouts
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  private MultipleObjectsBundle loadFixed(long start, long filesize, int stride, boolean hasids, SimpleTypeInformation<?>[] types, ByteBufferSerializer<?>[] sers, MappedNumberVectorColumn.Layout[] layouts) throws IOException {
+    final long bytes = filesize - start;
+    if(bytes % stride != 0) {
+      throw new AbortException("Bundle file size does not match the record size.");
+    }
+    if(bytes / stride > Integer.MAX_VALUE) {
+      throw new AbortException("Too many records in bundle file.");
+    }
+    final int size = (int) (bytes / stride);
+    final int perWindow = (int) Math.max(1, WINDOW_SIZE / stride);
+    ByteBuffer[] windows = new ByteBuffer[(size + perWindow - 1) / perWindow];
+    for(int w = 0; w < windows.length; w++) {
+      final long off = start + w * (long) perWindow * stride;
+      windows[w] = input.map(MapMode.READ_ONLY, off, Math.min(perWindow * (long) stride, filesize - off));
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    int off = 0;
+    if(hasids) {
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+      for(int w = 0, i = 0; w < windows.length; w++) {
+        ByteBuffer buf = windows[w].duplicate();
+        for(int j = 0; j < perWindow && i < size; j++, i++) {
+          buf.position(j * stride);
+          ids.add((DBID) sers[0].fromByteBuffer(buf));
+        }
+      }
+      bundle.setDBIDs(ids);
+      off += ((FixedSizeByteBufferSerializer<?>) sers[0]).getFixedByteSize();
+    }
+    for(int i = hasids ? 1 : 0; i < types.length; i++) {
+      if(size > 0 && !layouts[i].checkHeader(windows[0], off)) {
+        throw new AbortException("Vector dimensionality in bundle does not match its type information.");
+      }
+      MappedNumberVectorColumn col = new MappedNumberVectorColumn(layouts[i], (VectorFieldTypeInformation<?>) types[i], windows, size, perWindow, stride, off);
+      bundle.appendColumn(col.getType(), col);
+      off += layouts[i].getByteSize();
+    }
+    return bundle;
+  }
+
+  /**
+   * Open a bundle with variable-size records. The file is scanned once to find
+   * the vector positions, and to deserialize all other columns.
+   *
+   * @param head Mapped first window, positioned at the first record
+   * @param filesize File size
+   * @param hasids Bundle contains DBIDs
+   * @param types Column types
+   * @param sers Column serializers
+   * @param layouts Vector column layouts
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  private MultipleObjectsBundle loadVariable(ByteBuffer head, long filesize, boolean hasids, SimpleTypeInformation<?>[] types, ByteBufferSerializer<?>[] sers, MappedNumberVectorColumn.Layout[] layouts) throws IOException {
+    final int numcol = types.length;
+    List<ByteBuffer> windows = new ArrayList<>();
+    windows.add(head);
+    ArrayModifiableDBIDs ids = hasids ? DBIDUtil.newArray() : null;
+    long[][] positions = new long[numcol][];
+    List<?>[] data = new List<?>[numcol];
+    for(int i = hasids ? 1 : 0; i < numcol; i++) {
+      if(layouts[i] != null) {
+        positions[i] = new long[1024];
+      }
+      else {
+        data[i] = new ArrayList<>();
+      }
+    }
+    Object[] row = new Object[numcol];
+    int[] pos = new int[numcol];
+    ByteBuffer buf = head;
+    long base = 0;
+    int size = 0;
+    while(base + buf.position() < filesize) {
+      if(buf.remaining() < RESERVE && base + buf.limit() < filesize) {
+        base += buf.position();
+        windows.add(buf = input.map(MapMode.READ_ONLY, base, Math.min(WINDOW_SIZE, filesize - base)));
+      }
+      final int recstart = buf.position();
+      try {
+        readRecord(buf, sers, layouts, row, pos);
+      }
+      catch(BufferUnderflowException e) {
+        if(recstart == 0) {
+          throw new AbortException("Record too large for memory mapping.", e);
+        }
+        // Retry in a new window starting at this record.
+        base += recstart;
+        windows.add(buf = input.map(MapMode.READ_ONLY, base, Math.min(WINDOW_SIZE, filesize - base)));
+        continue;
+      }
+      if(size == Integer.MAX_VALUE) {
+        throw new AbortException("Too many records in bundle file.");
+      }
+      if(ids != null) {
+        ids.add((DBID) row[0]);
+      }
+      final int window = windows.size() - 1;
+      for(int i = hasids ? 1 : 0; i < numcol; i++) {
+        if(positions[i] != null) {
+          if(size == positions[i].length) {
+            positions[i] = Arrays.copyOf(positions[i], size + (size >>> 1));
+          }
+          positions[i][size] = MappedNumberVectorColumn.encodePosition(window, pos[i]);
+        }
+        else {
+          @SuppressWarnings("unchecked")
+          List<Object> col = (List<Object>) data[i];
+          col.add(row[i]);
+        }
+      }
+      ++size;
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    if(ids != null) {
+      bundle.setDBIDs(ids);
+    }
+    ByteBuffer[] warr = windows.toArray(new ByteBuffer[windows.size()]);
+    for(int i = hasids ? 1 : 0; i < numcol; i++) {
+      if(positions[i] != null) {
+        MappedNumberVectorColumn col = new MappedNumberVectorColumn(layouts[i], (VectorFieldTypeInformation<?>) types[i], warr, positions[i], size);
+        bundle.appendColumn(col.getType(), col);
+      }
+      else {
+        bundle.appendColumn(types[i], data[i]);
+      }
+    }
+    return bundle;
+  }
+
+  /**
+   * Read a single record. Vector columns are only located, not deserialized.
+   *
+   * @param buf Buffer, positioned at the record start
+   * @param sers Serializers
+   * @param layouts Vector column layouts
+   * @param row Output array for deserialized objects
+   * @param pos Output array for vector positions
+   * @throws IOException on IO errors
+   * @throws BufferUnderflowException if the record exceeds the buffer
+   */
+  private static void readRecord(ByteBuffer buf, ByteBufferSerializer<?>[] sers, MappedNumberVectorColumn.Layout[] layouts, Object[] row, int[] pos) throws IOException {
+    for(int i = 0; i < sers.length; i++) {
+      if(layouts[i] == null) {
+        try {
+          row[i] = sers[i].fromByteBuffer(buf);
+        }
+        catch(UnsupportedOperationException e) {
+          throw new AbortException("Deserialization failed.", e);
+        }
+        continue;
+      }
+      final int p = buf.position(), len = layouts[i].getByteSize();
+      if(buf.remaining() < len) {
+        throw new BufferUnderflowException();
+      }
+      if(!layouts[i].checkHeader(buf, p)) {
+        throw new AbortException("Vector dimensionality in bundle does not match its type information.");
+      }
+      pos[i] = p;
+      buf.position(p + len);
+    }
+  }
+}
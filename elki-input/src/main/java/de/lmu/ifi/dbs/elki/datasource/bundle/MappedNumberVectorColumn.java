@@ -0,0 +1,527 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Column of dense number vectors that remain in a memory-mapped bundle file.
+ * <p>
+ * The objects returned by {@link #get} are lightweight views that read the
+ * values from the mapped buffers on demand; no copy of the data is made, and
+ * the operating system page cache can be shared across processes.
+ * <p>
+ * Because the views are not {@link DoubleVector} (or {@link FloatVector})
+ * instances, the restriction class of the column type is
+ * {@link NumberVector}.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - Layout
+ * @has - - - NumberVector
+ */
+public class MappedNumberVectorColumn extends AbstractList<NumberVector> implements RandomAccess {
+  /**
+   * Vector layout.
+   */
+  private final Layout layout;
+
+  /**
+   * Type information of the views.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * Mapped windows of the file.
+   */
+  private final ByteBuffer[] windows;
+
+  /**
+   * Number of vectors.
+   */
+  private final int size;
+
+  /**
+   * Encoded vector positions (window number in the upper, buffer offset in the
+   * lower 32 bits), or {@code null} for regular layouts.
+   */
+  private final long[] positions;
+
+  /**
+   * Records per window, for regular layouts.
+   */
+  private final int perWindow;
+
+  /**
+   * Record size, for regular layouts.
+   */
+  private final int stride;
+
+  /**
+   * Offset of the vector values within each record, for regular layouts.
+   */
+  private final int offset;
+
+  /**
+   * Constructor for files with fixed-size records.
+   *
+   * @param layout Vector layout
+   * @param type Original type information
+   * @param windows Mapped windows, each containing {@code perWindow} records
+   * @param size Number of records
+   * @param perWindow Records per window
+   * @param stride Record size
+   * @param offset Offset of the column within each record
+   */
+  public MappedNumberVectorColumn(Layout layout, VectorFieldTypeInformation<?> type, ByteBuffer[] windows, int size, int perWindow, int stride, int offset) {
+    super();
+    this.layout = layout;
+    this.type = layout.makeType(type);
+    this.windows = windows;
+    this.size = size;
+    this.positions = null;
+    this.perWindow = perWindow;
+    this.stride = stride;
+    this.offset = offset + layout.headersize;
+  }
+
+  /**
+   * Constructor for files with variable-size records.
+   *
+   * @param layout Vector layout
+   * @param type Original type information
+   * @param windows Mapped windows
+   * @param positions Encoded positions of the vectors, see
+   *        {@link #encodePosition}
+   * @param size Number of records
+   */
+  public MappedNumberVectorColumn(Layout layout, VectorFieldTypeInformation<?> type, ByteBuffer[] windows, long[] positions, int size) {
+    super();
+    this.layout = layout;
+    this.type = layout.makeType(type);
+    this.windows = windows;
+    this.size = size;
+    this.positions = positions;
+    this.perWindow = this.stride = this.offset = 0;
+    for(int i = 0; i < size; i++) {
+      positions[i] += layout.headersize;
+    }
+  }
+
+  /**
+   * Encode the position of a vector in a mapped window.
+   *
+   * @param window Window number
+   * @param offset Offset within the window
+   * @return Encoded position
+   */
+  public static long encodePosition(int window, int offset) {
+    return (((long) window) << 32) | offset;
+  }
+
+  /**
+   * Get the type information of the vector views.
+   *
+   * @return Type information
+   */
+  public VectorFieldTypeInformation<NumberVector> getType() {
+    return type;
+  }
+
+  /**
+   * Get the dimensionality of the vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return layout.dim;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public NumberVector get(int index) {
+    if(index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + " size: " + size);
+    }
+    final ByteBuffer buf;
+    final int pos;
+    if(positions == null) {
+      final int w = index / perWindow;
+      buf = windows[w];
+      pos = (index - w * perWindow) * stride + offset;
+    }
+    else {
+      final long p = positions[index];
+      buf = windows[(int) (p >>> 32)];
+      pos = (int) p;
+    }
+    return layout.floats ? new FloatView(buf, pos, layout.dim) : new DoubleView(buf, pos, layout.dim);
+  }
+
+  /**
+   * Get the layout of a vector column, if it can be mapped.
+   *
+   * @param type Column type
+   * @return Layout, or {@code null} if the column cannot be mapped
+   */
+  public static Layout layout(SimpleTypeInformation<?> type) {
+    if(!(type instanceof VectorFieldTypeInformation)) {
+      return null;
+    }
+    final VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    if(vtype.mindim() != vtype.maxdim()) {
+      return null;
+    }
+    final int dim = vtype.mindim();
+    final ByteBufferSerializer<?> ser = type.getSerializer();
+    return ser instanceof DoubleVector.VariableSerializer ? new Layout(Layout.VARINT, ByteArrayUtil.getUnsignedVarintSize(dim), dim, false) : //
+        ser instanceof DoubleVector.ShortSerializer ? new Layout(Layout.SHORT, ByteArrayUtil.SIZE_SHORT, dim, false) : //
+            ser instanceof DoubleVector.SmallSerializer ? new Layout(Layout.BYTE, ByteArrayUtil.SIZE_BYTE, dim, false) : //
+                ser instanceof FloatVector.VariableSerializer ? new Layout(Layout.VARINT, ByteArrayUtil.getUnsignedVarintSize(dim), dim, true) : //
+                    ser instanceof FloatVector.ShortSerializer ? new Layout(Layout.SHORT, ByteArrayUtil.SIZE_SHORT, dim, true) : //
+                        ser instanceof FloatVector.SmallSerializer ? new Layout(Layout.BYTE, ByteArrayUtil.SIZE_BYTE, dim, true) : //
+                            null;
+  }
+
+  /**
+   * Serialized layout of a fixed-dimensional vector: a dimensionality header
+   * followed by the values.
+   *
+   * @author agent
+   */
+  public static class Layout {
+    /**
+     * Header encodings.
+     */
+    private static final int BYTE = 0, SHORT = 1, VARINT = 2;
+
+    /**
+     * Header encoding.
+     */
+    private final int header;
+
+    /**
+     * Header size.
+     */
+    private final int headersize;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Values are stored as floats.
+     */
+    private final boolean floats;
+
+    /**
+     * Constructor.
+     *
+     * @param header Header encoding
+     * @param headersize Header size
+     * @param dim Dimensionality
+     * @param floats Values are stored as floats
+     */
+    private Layout(int header, int headersize, int dim, boolean floats) {
+      this.header = header;
+      this.headersize = headersize;
+      this.dim = dim;
+      this.floats = floats;
+    }
+
+    /**
+     * Size of a serialized vector.
+     *
+     * @return Size in bytes
+     */
+    public int getByteSize() {
+      return headersize + dim * (floats ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+    }
+
+    /**
+     * Verify the dimensionality header of a serialized vector.
+     *
+     * @param buffer Buffer
+     * @param pos Position of the vector
+     * @return {@code true} if the header matches the expected dimensionality
+     * @throws IOException on decoding errors
+     */
+    public boolean checkHeader(ByteBuffer buffer, int pos) throws IOException {
+      switch(header){
+      case BYTE:
+        return buffer.get(pos) == dim;
+      case SHORT:
+        return buffer.getShort(pos) == dim;
+      default:
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(pos);
+        return ByteArrayUtil.readUnsignedVarint(dup) == dim;
+      }
+    }
+
+    /**
+     * Build the type information of the views.
+     *
+     * @param orig Original type
+     * @return Type information
+     */
+    private VectorFieldTypeInformation<NumberVector> makeType(VectorFieldTypeInformation<?> orig) {
+      @SuppressWarnings("unchecked")
+      ByteBufferSerializer<? extends NumberVector> ser = (ByteBufferSerializer<? extends NumberVector>) orig.getSerializer();
+      @SuppressWarnings("unchecked")
+      ByteBufferSerializer<? extends NumberVector> def = (ByteBufferSerializer<? extends NumberVector>) orig.getFactory().getDefaultSerializer();
+      Serializer defser = new Serializer(Layout.VARINT, def instanceof FloatVector.VariableSerializer, def);
+      return new VectorFieldTypeInformation<>(new NumberVectorViewFactory(orig.getFactory(), defser), dim, NumberVectorViewFactory.labels(orig), new Serializer(header, floats, ser));
+    }
+  }
+
+  /**
+   * Vector view of doubles in a mapped buffer.
+   *
+   * @author agent
+   */
+  private static final class DoubleView implements NumberVector {
+    /**
+     * Mapped buffer.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Position of the first value.
+     */
+    private final int start;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped buffer
+     * @param start Position of the first value
+     * @param dim Dimensionality
+     */
+    private DoubleView(ByteBuffer buffer, int start, int dim) {
+      this.buffer = buffer;
+      this.start = start;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return buffer.getDouble(start + (dimension << 3));
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) doubleValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] values = new double[dim];
+      for(int d = 0, p = start; d < dim; d++, p += ByteArrayUtil.SIZE_DOUBLE) {
+        values[d] = buffer.getDouble(p);
+      }
+      return values;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder buf = new StringBuilder(dim * 10);
+      for(int d = 0; d < dim; d++) {
+        buf.append(d > 0 ? ATTRIBUTE_SEPARATOR : "").append(doubleValue(d));
+      }
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Vector view of floats in a mapped buffer.
+   *
+   * @author agent
+   */
+  private static final class FloatView implements NumberVector {
+    /**
+     * Mapped buffer.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Position of the first value.
+     */
+    private final int start;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped buffer
+     * @param start Position of the first value
+     * @param dim Dimensionality
+     */
+    private FloatView(ByteBuffer buffer, int start, int dim) {
+      this.buffer = buffer;
+      this.start = start;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return buffer.getFloat(start + (dimension << 2));
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return floatValue(dimension);
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) floatValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] values = new double[dim];
+      for(int d = 0, p = start; d < dim; d++, p += ByteArrayUtil.SIZE_FLOAT) {
+        values[d] = buffer.getFloat(p);
+      }
+      return values;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder buf = new StringBuilder(dim * 10);
+      for(int d = 0; d < dim; d++) {
+        buf.append(d > 0 ? ATTRIBUTE_SEPARATOR : "").append(floatValue(d));
+      }
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Serializer, writing the same format as the original serializer.
+   *
+   * @author agent
+   */
+  private static class Serializer implements ByteBufferSerializer<NumberVector> {
+    /**
+     * Header encoding.
+     */
+    private final int header;
+
+    /**
+     * Values are stored as floats.
+     */
+    private final boolean floats;
+
+    /**
+     * Original serializer, for reading.
+     */
+    private final ByteBufferSerializer<? extends NumberVector> inner;
+
+    /**
+     * Constructor.
+     *
+     * @param header Header encoding
+     * @param floats Values are stored as floats
+     * @param inner Original serializer
+     */
+    private Serializer(int header, boolean floats, ByteBufferSerializer<? extends NumberVector> inner) {
+      this.header = header;
+      this.floats = floats;
+      this.inner = inner;
+    }
+
+    @Override
+    public NumberVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      return inner.fromByteBuffer(buffer);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, NumberVector vec) throws IOException {
+      final int dim = vec.getDimensionality();
+      switch(header){
+      case Layout.BYTE:
+        buffer.put((byte) dim);
+        break;
+      case Layout.SHORT:
+        buffer.putShort((short) dim);
+        break;
+      default:
+        ByteArrayUtil.writeUnsignedVarint(buffer, dim);
+      }
+      if(floats) {
+        for(int d = 0; d < dim; d++) {
+          buffer.putFloat(vec.floatValue(d));
+        }
+      }
+      else {
+        for(int d = 0; d < dim; d++) {
+          buffer.putDouble(vec.doubleValue(d));
+        }
+      }
+    }
+
+    @Override
+    public int getByteSize(NumberVector vec) {
+      final int dim = vec.getDimensionality();
+      return (header == Layout.BYTE ? ByteArrayUtil.SIZE_BYTE : header == Layout.SHORT ? ByteArrayUtil.SIZE_SHORT : ByteArrayUtil.getUnsignedVarintSize(dim)) //
+          + dim * (floats ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FeatureVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Vector factory for lightweight number vector views (such as columnar or
+ * memory-mapped storage); new vectors are produced by the factory of the
+ * original type.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class NumberVectorViewFactory implements NumberVector.Factory<NumberVector> {
+  /**
+   * Factory of the original vector type.
+   */
+  private final NumberVector.Factory<? extends NumberVector> inner;
+
+  /**
+   * Default serializer of the views.
+   */
+  private final ByteBufferSerializer<NumberVector> serializer;
+
+  /**
+   * Constructor.
+   *
+   * @param inner Factory of the original vector type
+   * @param serializer Default serializer of the views
+   */
+  @SuppressWarnings("unchecked")
+  public NumberVectorViewFactory(FeatureVector.Factory<?, ?> inner, ByteBufferSerializer<NumberVector> serializer) {
+    this.inner = inner instanceof NumberVector.Factory ? (NumberVector.Factory<? extends NumberVector>) inner : DoubleVector.FACTORY;
+    this.serializer = serializer;
+  }
+
+  /**
+   * Copy the column labels of a type.
+   *
+   * @param type Type information
+   * @return Labels, or {@code null}
+   */
+  public static String[] labels(VectorFieldTypeInformation<?> type) {
+    final int dim = type.getDimensionality();
+    String[] labels = new String[dim];
+    boolean any = false;
+    for(int d = 0; d < dim; d++) {
+      any |= (labels[d] = type.getLabel(d)) != null;
+    }
+    return any ? labels : null;
+  }
+
+  @Override
+  public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+    return inner.newFeatureVector(array, adapter);
+  }
+
+  @Override
+  public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+    return inner.newNumberVector(array, adapter);
+  }
+
+  @Override
+  public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+    return serializer;
+  }
+
+  @Override
+  public Class<? super NumberVector> getRestrictionClass() {
+    return NumberVector.class;
+  }
+}
@@ -0,0 +1,404 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ParseUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.TokenizedReader;
+import de.lmu.ifi.dbs.elki.utilities.io.Tokenizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Multi-threaded variant of the {@link NumberVectorLabelParser}.
+ * <p>
+ * The input is read in large chunks, which are split at line boundaries and
+ * then tokenized and parsed on the threads of the {@link ParallelCore}. The
+ * results are reassembled in input order, so the result is the same as with
+ * the sequential parser. Filters are then applied to the parsed data as usual.
+ * <p>
+ * Lines that span multiple chunks are handled; but the input encoding must use
+ * a single {@code '\n'} byte for line breaks (e.g., ASCII, ISO-8859 or UTF-8).
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> extends NumberVectorLabelParser<V> {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Default chunk size (4 MB).
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+
+  /**
+   * Input format.
+   */
+  private final CSVReaderFormat format;
+
+  /**
+   * Chunk size.
+   */
+  private final int chunksize;
+
+  /**
+   * Input stream.
+   */
+  private InputStream input;
+
+  /**
+   * Parsed data.
+   */
+  private BundleStreamSource source;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param chunksize Chunk size in bytes
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory, int chunksize) {
+    super(format, labelIndices, factory);
+    this.format = format;
+    this.chunksize = chunksize;
+  }
+
+  /**
+   * Constructor with defaults.
+   *
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(NumberVector.Factory<V> factory) {
+    this(CSVReaderFormat.DEFAULT_FORMAT, null, factory, DEFAULT_CHUNK_SIZE);
+  }
+
+  @Override
+  public void initStream(InputStream in) {
+    super.initStream(in);
+    input = in;
+    source = null;
+  }
+
+  @Override
+  public BundleMeta getMeta() {
+    return source != null ? source.getMeta() : meta;
+  }
+
+  @Override
+  public Event nextEvent() {
+    if(source == null) {
+      try {
+        source = parseParallel().asStream();
+      }
+      catch(IOException e) {
+        throw new AbortException("Error while parsing input.", e);
+      }
+    }
+    return source.nextEvent();
+  }
+
+  @Override
+  public Object data(int rnum) {
+    return source.data(rnum);
+  }
+
+  @Override
+  public void cleanup() {
+    super.cleanup();
+    input = null;
+    source = null;
+  }
+
+  /**
+   * Read the input in chunks, and parse them in parallel.
+   *
+   * @return Parsed data
+   * @throws IOException on IO errors
+   */
+  private MultipleObjectsBundle parseParallel() throws IOException {
+    List<Chunk<V>> chunks = new ArrayList<>();
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // Limit the number of chunks in memory that have not been parsed.
+      final int maxpending = core.getParallelism() << 1;
+      ArrayDeque<ForkJoinTask<Chunk<V>>> pending = new ArrayDeque<>(maxpending + 1);
+      byte[] buf = new byte[chunksize];
+      int fill = 0;
+      while(true) {
+        final int read = input.read(buf, fill, buf.length - fill);
+        if(read > 0 && (fill += read) < buf.length) {
+          continue;
+        }
+        final boolean eof = read < 0;
+        if(eof && fill == 0) {
+          break;
+        }
+        int end = fill;
+        if(!eof) { // Split after the last line break
+          while(end > 0 && buf[end - 1] != '\n') {
+            --end;
+          }
+          if(end == 0) { // Very long line, enlarge buffer
+            buf = Arrays.copyOf(buf, buf.length << 1);
+            continue;
+          }
+        }
+        byte[] next = new byte[Math.max(chunksize, (fill - end) << 1)];
+        System.arraycopy(buf, end, next, 0, fill - end);
+        pending.add(core.submit(new ChunkParser(buf, end)));
+        fill -= end;
+        buf = next;
+        while(pending.size() > maxpending) {
+          chunks.add(pending.poll().join());
+        }
+        if(eof) {
+          break;
+        }
+      }
+      while(!pending.isEmpty()) {
+        chunks.add(pending.poll().join());
+      }
+    }
+    finally {
+      core.disconnect();
+    }
+    return assemble(chunks);
+  }
+
+  /**
+   * Reassemble the parsed chunks, in input order.
+   * <p>
+   * Labels are interned here, in a single set shared by all chunks, so that
+   * repeated labels are stored only once.
+   *
+   * @param chunks Parsed chunks
+   * @return Bundle
+   */
+  private MultipleObjectsBundle assemble(List<Chunk<V>> chunks) {
+    int size = 0;
+    for(Chunk<V> chunk : chunks) {
+      size += chunk.vectors.size();
+    }
+    List<V> vecs = new ArrayList<>(size);
+    List<LabelList> lbls = new ArrayList<>(size);
+    for(Chunk<V> chunk : chunks) {
+      for(int i = 0, start = 0; i < chunk.vectors.size(); i++) {
+        final V vec = chunk.vectors.get(i);
+        final int end = chunk.labelend.getInt(i);
+        final List<String> lbl = chunk.labels.subList(start, end);
+        start = end;
+        final int dim = vec.getDimensionality();
+        // Label row before the first vector: column names
+        if(dim == 0 && vecs.isEmpty()) {
+          columnnames = new ArrayList<>(lbl);
+          continue;
+        }
+        mindim = dim < mindim ? dim : mindim;
+        maxdim = dim > maxdim ? dim : maxdim;
+        haslabels |= !lbl.isEmpty();
+        labels.clear();
+        for(String l : lbl) {
+          labels.add(unique.addOrGet(l));
+        }
+        vecs.add(vec);
+        lbls.add(LabelList.make(labels));
+      }
+    }
+    labels.clear();
+    if(maxdim == 0) {
+      throw new AbortException("No numeric data was read. Verify the column separator; for textual data use other parsers.");
+    }
+    buildMeta();
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    bundle.appendColumn(meta.get(0), vecs);
+    if(haslabels) {
+      bundle.appendColumn(meta.get(1), lbls);
+    }
+    return bundle;
+  }
+
+  /**
+   * Emit the double-precision limit warning once.
+   *
+   * @param token Offending token
+   */
+  private synchronized void warnPrecision(String token) {
+    if(!warnedPrecision) {
+      getLogger().warning("Too many digits in what looked like a double number - treating as string: " + token);
+      warnedPrecision = true;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parsed chunk of the input.
+   *
+   * @author agent
+   *
+   * @param <V> Vector type
+   */
+  private static class Chunk<V> {
+    /**
+     * Vectors, including empty vectors for label rows.
+     */
+    final List<V> vectors = new ArrayList<>();
+
+    /**
+     * Labels of all rows, not yet interned.
+     */
+    final ArrayList<String> labels = new ArrayList<>();
+
+    /**
+     * End of the labels of each row in {@link #labels}.
+     */
+    final IntArrayList labelend = new IntArrayList();
+  }
+
+  /**
+   * Task to parse a chunk, with the same rules as
+   * {@link NumberVectorLabelParser#parseLineInternal}.
+   *
+   * @author agent
+   */
+  private class ChunkParser implements Callable<Chunk<V>> {
+    /**
+     * Chunk data.
+     */
+    private final byte[] data;
+
+    /**
+     * Chunk length.
+     */
+    private final int len;
+
+    /**
+     * Constructor.
+     *
+     * @param data Chunk data
+     * @param len Chunk length
+     */
+    ChunkParser(byte[] data, int len) {
+      this.data = data;
+      this.len = len;
+    }
+
+    @Override
+    public Chunk<V> call() throws IOException {
+      Chunk<V> chunk = new Chunk<>();
+      DoubleArray attributes = new DoubleArray(11);
+      try (TokenizedReader reader = format.makeReader()) {
+        final Tokenizer tokenizer = reader.getTokenizer();
+        reader.reset(new ByteArrayInputStream(data, 0, len));
+        while(reader.nextLineExceptComments()) {
+          for(int i = 0; tokenizer.valid(); tokenizer.advance(), i++) {
+            if(!isLabelColumn(i) && !tokenizer.isQuoted()) {
+              try {
+                attributes.add(tokenizer.getDouble());
+                continue;
+              }
+              catch(NumberFormatException e) {
+                if(!warnedPrecision && (e == ParseUtil.PRECISION_OVERFLOW || e == ParseUtil.EXPONENT_OVERFLOW)) {
+                  warnPrecision(tokenizer.getSubstring());
+                }
+                // Ignore attempt, add to labels below.
+              }
+            }
+            // Else: labels.
+            String lbl = tokenizer.getStrippedSubstring();
+            if(lbl.length() > 0) {
+              chunk.labels.add(lbl);
+            }
+          }
+          chunk.vectors.add(factory.newNumberVector(attributes, attributes));
+          chunk.labelend.add(chunk.labels.size());
+          attributes.clear();
+        }
+      }
+      return chunk;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   */
+  public static class Parameterizer<V extends NumberVector> extends NumberVectorLabelParser.Parameterizer<V> {
+    /**
+     * Size of the chunks to parse in parallel.
+     */
+    public static final OptionID CHUNK_SIZE_ID = new OptionID("parser.chunksize", "Size of the input chunks (in bytes) that are parsed in parallel.");
+
+    /**
+     * Chunk size.
+     */
+    protected int chunksize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter chunksizeP = new IntParameter(CHUNK_SIZE_ID, DEFAULT_CHUNK_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(chunksizeP)) {
+        chunksize = chunksizeP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelNumberVectorLabelParser<V> makeInstance() {
+      return new ParallelNumberVectorLabelParser<>(format, labelIndices, factory, chunksize);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Test the parallel number vector parser against the sequential parser.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ParallelNumberVectorLabelParserTest extends AbstractDataSourceTest {
+  @Test
+  public void testFiles() throws IOException {
+    for(String file : new String[] { "label-selection-test-1.csv", "external-id-test-1.csv", "dimensionality-test-1.csv", "normalization-test-1.csv" }) {
+      // Small chunks, to test line splitting.
+      for(int chunksize : new int[] { 16, 100, ParallelNumberVectorLabelParser.DEFAULT_CHUNK_SIZE }) {
+        MultipleObjectsBundle expected, actual;
+        try (InputStream is = open(UNITTEST + file)) {
+          expected = load(is, new NumberVectorLabelParser<>(DoubleVector.FACTORY));
+        }
+        try (InputStream is = open(UNITTEST + file)) {
+          actual = load(is, new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, chunksize));
+        }
+        assertSameBundle(file, expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testHeaderAndComments() throws IOException {
+    String data = "# comment\nx y label\n1 2 a\n3 4 b\n# comment\n5 6 a\n7 8";
+    MultipleObjectsBundle expected = load(stream(data), new NumberVectorLabelParser<>(DoubleVector.FACTORY));
+    MultipleObjectsBundle actual = load(stream(data), new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, 8));
+    assertSameBundle("inline", expected, actual);
+    assertEquals("Column label", "y", ((VectorFieldTypeInformation<?>) actual.meta(0)).getLabel(1));
+  }
+
+  @Test
+  public void testInternLabels() throws IOException {
+    String data = "1 2 a\n3 4 b\n5 6 a\n7 8 b\n9 10 a\n";
+    // Every line in a separate chunk.
+    MultipleObjectsBundle actual = load(stream(data), new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, 6));
+    assertEquals("rows", 5, actual.dataLength());
+    String a = ((LabelList) actual.data(0, 1)).get(0), b = ((LabelList) actual.data(1, 1)).get(0);
+    for(int r = 2; r < 5; r++) {
+      assertSame("Label not shared across chunks.", (r & 1) == 0 ? a : b, ((LabelList) actual.data(r, 1)).get(0));
+    }
+  }
+
+  /**
+   * Load data with a parser.
+   *
+   * @param is Input stream
+   * @param parser Parser
+   * @return Bundle
+   */
+  private static MultipleObjectsBundle load(InputStream is, Parser parser) {
+    return new InputStreamDatabaseConnection(is, null, parser).loadData();
+  }
+
+  /**
+   * Make an input stream.
+   *
+   * @param data Data
+   * @return Stream
+   */
+  private static InputStream stream(String data) {
+    return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param file File name
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameBundle(String file, MultipleObjectsBundle expected, MultipleObjectsBundle actual) {
+    assertEquals(file + ": columns", expected.metaLength(), actual.metaLength());
+    assertEquals(file + ": rows", expected.dataLength(), actual.dataLength());
+    for(int c = 0; c < expected.metaLength(); c++) {
+      assertEquals(file + ": type", expected.meta(c).toString(), actual.meta(c).toString());
+      for(int r = 0; r < expected.dataLength(); r++) {
+        assertEquals(file + ": row " + r, expected.data(r, c).toString(), actual.data(r, c).toString());
+      }
+    }
+  }
+}
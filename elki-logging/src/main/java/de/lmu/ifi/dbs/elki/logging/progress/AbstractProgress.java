@@ -141,6 +141,18 @@ public abstract class AbstractProgress implements Progress {
     }
   }
 
+  /**
+   * Increment the processed counter by more than one.
+   * 
+   * @param increment Number of additionally processed items
+   * @param logger Logger to report to.
+   */
+  public void incrementProcessed(int increment, Logging logger) {
+    if(testLoggingRate(this.processed.addAndGet(increment))) {
+      logger.progress(this);
+    }
+  }
+
   /**
    * Logging rate control.
    *
@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.persistent;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 /**
  * Abstract base class for the page file API for both caches and true page files
@@ -48,8 +49,9 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
   public AbstractPageFile() {
     super();
     Logging log = getLogger();
-    this.readAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".reads") : null;
-    this.writeAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".writes") : null;
+    // Atomic counters, as page files may be read by concurrent queries.
+    this.readAccess = log.isStatistics() ? new AtomicLongCounter(this.getClass().getName() + ".reads") : null;
+    this.writeAccess = log.isStatistics() ? new AtomicLongCounter(this.getClass().getName() + ".writes") : null;
   }
 
   /**
@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -251,4 +252,92 @@ public abstract class AbstractIndexStructureTest {
       assertTrue("Wrong range result", DBIDUtil.equal(range.iter(), first));
     }
   }
+
+  /**
+   * Test dynamic insertions and deletions, by comparing query results to a
+   * linear scan over the currently indexed objects.
+   *
+   * @param factory Index factory, must produce a {@link DynamicIndex} that
+   *        supports kNN and range queries.
+   */
+  @SuppressWarnings("unchecked")
+  protected void testDynamicUpdates(IndexFactory<?> factory) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    Index idx = ((IndexFactory<DoubleVector>) factory).instantiate(rep);
+    DynamicIndex dyn = (DynamicIndex) idx;
+    KNNQuery<DoubleVector> knnq = ((KNNIndex<DoubleVector>) idx).getKNNQuery(dist, k);
+    RangeQuery<DoubleVector> rangeq = ((RangeIndex<DoubleVector>) idx).getRangeQuery(dist, eps);
+
+    // Bulk load a part, insert the remainder one by one.
+    ArrayModifiableDBIDs all = DBIDUtil.newArray(rep.getDBIDs());
+    ArrayModifiableDBIDs live = DBIDUtil.newArray();
+    DBIDArrayIter it = all.iter();
+    for(; it.valid() && it.getOffset() < all.size() >> 1; it.advance()) {
+      live.add(it);
+    }
+    dyn.insertAll(live);
+    for(; it.valid(); it.advance()) {
+      dyn.insert(it);
+      live.add(it);
+    }
+    assertDynamicResults(rep, dist, knnq, rangeq, live);
+
+    // Delete every other object, including some routing objects.
+    ArrayModifiableDBIDs removed = DBIDUtil.newArray();
+    for(it.seek(0); it.valid(); it.advance()) {
+      if((it.getOffset() & 1) == 0) {
+        assertTrue("Object not found for deletion.", dyn.delete(it));
+        removed.add(it);
+      }
+    }
+    assertFalse("Deleted object found again.", dyn.delete(removed.iter()));
+    live = DBIDUtil.newArray(DBIDUtil.difference(all, removed));
+    assertDynamicResults(rep, dist, knnq, rangeq, live);
+
+    // Reinsert.
+    dyn.insertAll(removed);
+    assertDynamicResults(rep, dist, knnq, rangeq, all);
+
+    // Delete everything.
+    dyn.deleteAll(all);
+    assertEquals("Index not empty.", 0, knnq.getKNNForObject(DoubleVector.wrap(querypoint), k).size());
+  }
+
+  /**
+   * Compare kNN and range query results to a linear scan.
+   *
+   * @param rep Data relation
+   * @param dist Distance query
+   * @param knnq kNN query
+   * @param rangeq Range query
+   * @param live Currently indexed objects
+   */
+  private void assertDynamicResults(Relation<DoubleVector> rep, DistanceQuery<DoubleVector> dist, KNNQuery<DoubleVector> knnq, RangeQuery<DoubleVector> rangeq, DBIDs live) {
+    for(DBIDIter q = live.iter(); q.valid(); q.advance()) {
+      if((DBIDUtil.asInteger(q) % 17) != 0) {
+        continue; // Only query a sample.
+      }
+      DoubleVector qv = rep.get(q);
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      int inrange = 0;
+      for(DBIDIter it = live.iter(); it.valid(); it.advance()) {
+        final double d = dist.distance(qv, it);
+        heap.insert(d, it);
+        inrange += d <= eps ? 1 : 0;
+      }
+      KNNList expect = heap.toKNNList();
+      KNNList knn = knnq.getKNNForObject(qv, k);
+      assertEquals("Result size does not match expectation!", expect.size(), knn.size());
+      for(DoubleDBIDListIter i1 = expect.iter(), i2 = knn.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("Expected distance doesn't match.", i1.doubleValue(), i2.doubleValue(), 1e-15);
+        assertTrue("Deleted object returned.", live.contains(i2));
+      }
+      DoubleDBIDList range = rangeq.getRangeForObject(qv, eps);
+      assertEquals("Range result size does not match expectation!", inrange, range.size());
+    }
+  }
 }
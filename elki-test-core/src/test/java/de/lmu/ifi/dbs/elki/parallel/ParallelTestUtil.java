@@ -0,0 +1,71 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import java.util.function.Supplier;
+
+/**
+ * Helper for tests that need a particular number of threads.
+ *
+ * @author agent
+ */
+public final class ParallelTestUtil {
+  /**
+   * Private constructor. Static methods only.
+   */
+  private ParallelTestUtil() {
+    // Do not use.
+  }
+
+  /**
+   * Run a test with the given number of threads, then restore the previous
+   * parallelism.
+   *
+   * @param parallelism Number of threads
+   * @param test Test to run
+   */
+  public static void withParallelism(int parallelism, Runnable test) {
+    withParallelism(parallelism, () -> {
+      test.run();
+      return null;
+    });
+  }
+
+  /**
+   * Run a test with the given number of threads, then restore the previous
+   * parallelism.
+   *
+   * @param parallelism Number of threads
+   * @param test Test to run
+   * @return Test result
+   */
+  public static <T> T withParallelism(int parallelism, Supplier<T> test) {
+    ParallelCore core = ParallelCore.getCore();
+    final int previous = core.getParallelism();
+    core.setParallelism(parallelism);
+    try {
+      return test.get();
+    }
+    finally {
+      core.setParallelism(previous);
+    }
+  }
+}
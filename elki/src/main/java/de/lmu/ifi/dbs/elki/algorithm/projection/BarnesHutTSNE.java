@@ -20,7 +20,6 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.projection;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
@@ -39,10 +38,10 @@ import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
-import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
@@ -55,6 +54,9 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * For larger data sets, use an index to make finding the nearest neighbors
  * faster, e.g. cover tree or k-d-tree.
  * <p>
+ * The forces are computed in parallel, and the tree arrays are reused in every
+ * iteration.
+ * <p>
  * Reference:
  * <p>
  * L. J. P. van der Maaten<br>
@@ -98,6 +100,11 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
    */
   private static final double QUADTREE_MIN_RESOLUION = 1e-10;
 
+  /**
+   * Minimum number of points per parallel task.
+   */
+  private static final int PARALLEL_BLOCK = 256;
+
   /**
    * (Squared) approximation quality threshold.
    */
@@ -158,11 +165,14 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     for(int off = 2 * dim; off < meta.length; off += dim3) {
       Arrays.fill(meta, off, off + dim, 1.); // Initial learning rate
     }
+    // The tree is rebuilt in every iteration, but the arrays are reused.
+    QuadTree tree = new QuadTree(dim, size);
+    double[] z = new double[size];
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Iterative Optimization", iterations, LOG) : null;
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.optimization").begin() : null;
     // Optimize
     for(int i = 0; i < iterations; i++) {
-      computeGradient(pij, sol, meta);
+      computeGradient(pij, sol, meta, tree, z);
       updateSolution(sol, meta, i);
       // Undo early exaggeration
       if(i == EARLY_EXAGGERATION_ITERATIONS) {
@@ -176,88 +186,169 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     }
   }
 
-  private void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad) {
-    final int dim3 = 3 * dim;
-    // Reset gradient / forces
-    for(int off = 0; off < grad.length; off += dim3) {
-      Arrays.fill(grad, off, off + dim, 0.);
-    }
-    // Compute repulsive forces first:
-    QuadTree tree = QuadTree.build(dim, solution);
-    double z = 0.;
-    for(int i = 0, off = 0; i < solution.length; i++, off += dim3) {
-      z -= computeRepulsiveForces(grad, off, solution[i], tree);
+  /**
+   * Compute the gradients, in parallel.
+   *
+   * @param pij Affinity matrix
+   * @param solution Current solution
+   * @param grad Gradient output (in the meta array)
+   * @param tree Tree to rebuild
+   * @param z Scratch array for the repulsive force strengths
+   */
+  private void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad, QuadTree tree, double[] z) {
+    final int dim3 = 3 * dim, size = solution.length;
+    tree.build(solution);
+    // Compute repulsive forces first, with one repulsion helper per worker:
+    ParallelExecutor.run(size, PARALLEL_BLOCK, () -> new Repulsion(tree, grad), (rep, start, end) -> {
+      for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
+        Arrays.fill(grad, off, off + dim, 0.); // Reset gradient / forces
+        z[i] = rep.compute(off, solution[i], 0);
+      }
+    }, rep -> projectedDistances += rep.distances);
+    // Sum in a fixed order, for reproducibility:
+    double sum = 0.;
+    for(int i = 0; i < size; i++) {
+      sum -= z[i];
     }
     // Normalize repulsive forces:
-    double s = 1 / z; // Scaling factor
-    for(int off = 0; off < grad.length; off += dim3) {
-      for(int j = 0; j < dim; j++) {
-        grad[off + j] *= s;
+    final double s = 1 / sum; // Scaling factor
+    // Compute attractive forces second, counting distances per worker:
+    ParallelExecutor.run(size, PARALLEL_BLOCK, () -> new long[1], (distances, start, end) -> {
+      for(int off = start * dim3, e = end * dim3; off < e; off += dim3) {
+        for(int j = 0; j < dim; j++) {
+          grad[off + j] *= s;
+        }
       }
-    }
-    // Compute attractive forces second
-    computeAttractiveForces(grad, pij, solution);
+      distances[0] += computeAttractiveForces(grad, pij, solution, start, end);
+    }, distances -> projectedDistances += distances[0]);
   }
 
-  private void computeAttractiveForces(double[] attr, AffinityMatrix pij, double[][] sol) {
+  /**
+   * Compute the attractive forces for a range of points.
+   *
+   * @param attr Gradient output
+   * @param pij Affinity matrix
+   * @param sol Current solution
+   * @param start First point
+   * @param end End of range (exclusive)
+   * @return Number of distance computations
+   */
+  private long computeAttractiveForces(double[] attr, AffinityMatrix pij, double[][] sol, int start, int end) {
     final int dim3 = 3 * dim;
-    for(int i = 0, off = 0; off < attr.length; i++, off += dim3) {
+    long distances = 0;
+    for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
       final double[] sol_i = sol[i];
       for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
         final double[] sol_j = sol[pij.iterDim(i, offj)];
         final double pij_ij = pij.iterValue(i, offj);
-        final double a = pij_ij / (1. + sqDist(sol_i, sol_j));
+        double dist = 0.;
+        for(int k = 0; k < dim; k++) {
+          final double diff = sol_i[k] - sol_j[k];
+          dist += diff * diff;
+        }
+        ++distances;
+        final double a = pij_ij / (1. + dist);
         for(int k = 0; k < dim; k++) {
           attr[off + k] += a * (sol_i[k] - sol_j[k]);
         }
       }
     }
+    return distances;
   }
 
   /**
-   * Compute the repulsive forces for a single point
-   * 
-   * @param rep_i Repulsive forces array
-   * @param off Point offset
-   * @param sol_i Solution vector
-   * @param node Quad tree
-   * @return force strength
+   * Computation of the repulsive forces, for use by a single thread.
+   *
+   * @author Erich Schubert
    */
-  private double computeRepulsiveForces(double[] rep_i, int off, double[] sol_i, QuadTree node) {
-    final double[] center = node.center;
-    double dist = sqDist(sol_i, center);
-    // Barnes-Hut approximation:
-    if(node.weight == 1 || node.squareSize / dist < sqtheta) {
-      double u = 1. / (1. + dist);
-      double z = node.weight * u;
-      double a = z * u;
-      for(int k = 0; k < dim; k++) {
-        // TODO: van der Maaten avoids computing this difference twice (also
-        // done in sqDist) - we should also use this optimization.
-        rep_i[off + k] += a * (sol_i[k] - center[k]);
-      }
-      return z;
+  private class Repulsion {
+    /**
+     * Tree.
+     */
+    private final QuadTree tree;
+
+    /**
+     * Gradient output.
+     */
+    private final double[] grad;
+
+    /**
+     * Differences to the current node.
+     */
+    private final double[] diff;
+
+    /**
+     * Number of distance computations.
+     */
+    long distances;
+
+    /**
+     * Constructor.
+     *
+     * @param tree Tree
+     * @param grad Gradient output
+     */
+    Repulsion(QuadTree tree, double[] grad) {
+      this.tree = tree;
+      this.grad = grad;
+      this.diff = new double[dim];
     }
-    double z = 0.;
-    // Aggregate points in this node:
-    if(node.points != null) {
-      for(double[] point : node.points) {
-        double pdist = sqDist(sol_i, point);
-        double pz = 1. / (1. + pdist);
-        double a = pz * pz;
+
+    /**
+     * Compute the repulsive forces for a single point
+     * 
+     * @param off Point offset in the gradient array
+     * @param sol_i Solution vector
+     * @param node Tree node
+     * @return force strength
+     */
+    double compute(int off, double[] sol_i, int node) {
+      final double[] center = tree.center;
+      final int weight = tree.end[node] - tree.begin[node];
+      double dist = 0.;
+      for(int k = 0, c = node * dim; k < dim; k++, c++) {
+        final double d = diff[k] = sol_i[k] - center[c];
+        dist += d * d;
+      }
+      ++distances;
+      // Barnes-Hut approximation:
+      if(weight == 1 || tree.squareSize[node] / dist < sqtheta) {
+        double u = 1. / (1. + dist);
+        double z = weight * u;
+        double a = z * u;
         for(int k = 0; k < dim; k++) {
-          rep_i[off + k] += a * (sol_i[k] - point[k]);
+          grad[off + k] += a * diff[k];
         }
-        z += pz;
+        return z;
       }
-    }
-    // Recurse into subtrees:
-    if(node.children != null) {
-      for(QuadTree child : node.children) {
-        z += computeRepulsiveForces(rep_i, off, sol_i, child);
+      double z = 0.;
+      final int first = tree.firstChild[node];
+      if(first < 0) {
+        // Aggregate points in this leaf:
+        final int[] idx = tree.idx;
+        for(int p = tree.begin[node], e = tree.end[node]; p < e; p++) {
+          final double[] point = tree.data[idx[p]];
+          double pdist = 0.;
+          for(int k = 0; k < dim; k++) {
+            final double d = diff[k] = sol_i[k] - point[k];
+            pdist += d * d;
+          }
+          double pz = 1. / (1. + pdist);
+          double a = pz * pz;
+          for(int k = 0; k < dim; k++) {
+            grad[off + k] += a * diff[k];
+          }
+          z += pz;
+        }
+        distances += tree.end[node] - tree.begin[node];
+        return z;
       }
+      // Recurse into subtrees:
+      for(int c = first, e = first + tree.numChildren[node]; c < e; c++) {
+        z += compute(off, sol_i, c);
+      }
+      return z;
     }
-    return z;
   }
 
   @Override
@@ -275,220 +366,222 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
    * <p>
    * This tree stores in every node the number of points contained, the center
    * of mass, and the diagonal of the cell.
+   * <p>
+   * The nodes are stored in flat arrays, in breadth-first order, and the point
+   * order is a permutation of the point indexes. All arrays are allocated once,
+   * and reused when the tree is rebuilt.
    * 
    * @author Erich Schubert
    */
   protected static class QuadTree {
     /**
-     * Center of mass (NOT center of bounding box)
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Current data points.
+     */
+    double[][] data;
+
+    /**
+     * Point indexes, ordered by tree node.
+     */
+    final int[] idx;
+
+    /**
+     * Center of mass (NOT center of bounding box), {@code dim} values per node.
+     */
+    final double[] center;
+
+    /**
+     * Square size of each node, for Barnes-Hut approximation.
      */
-    public double[] center;
+    final double[] squareSize;
 
     /**
-     * Points stored in this node.
+     * Range of points of each node in {@link #idx}; the difference is the
+     * weight of the node.
      */
-    public double[][] points;
+    final int[] begin, end;
 
     /**
-     * Square size of this node, for Barnes-Hut approximation.
+     * First child node, or -1 for leaves, and number of child nodes.
      */
-    public double squareSize;
+    final int[] firstChild, numChildren;
 
     /**
-     * Total weight of this node.
+     * Number of nodes in use.
      */
-    public int weight;
+    int numNodes;
 
     /**
-     * Child nodes.
+     * Bounding box of the current node.
      */
-    public QuadTree[] children;
+    private final double[] minmax;
 
     /**
      * Constructor.
      *
-     * @param data Data points
-     * @param children Child nodes
-     * @param mid Center of mass
-     * @param weight Node weight
-     * @param squareSize Square size of the node
+     * @param dim Dimensionality
+     * @param size Number of points
      */
-    private QuadTree(double[][] data, QuadTree[] children, double[] mid, int weight, double squareSize) {
-      this.center = mid;
-      this.points = data;
-      this.weight = weight;
-      this.squareSize = squareSize;
-      this.children = children;
+    public QuadTree(int dim, int size) {
+      this.dim = dim;
+      this.idx = new int[size];
+      for(int i = 0; i < size; i++) {
+        idx[i] = i;
+      }
+      // Every inner node has at least two children:
+      final int cap = Math.max(1, 2 * size - 1);
+      this.center = new double[cap * dim];
+      this.squareSize = new double[cap];
+      this.begin = new int[cap];
+      this.end = new int[cap];
+      this.firstChild = new int[cap];
+      this.numChildren = new int[cap];
+      this.minmax = new double[dim << 1];
     }
 
     /**
-     * Construct the quad tree approximation.
+     * (Re-)build the quad tree approximation.
+     * <p>
+     * The point order of the previous tree is kept as starting point, which is
+     * usually almost sorted already.
      * 
-     * @param dim Dimensionality
-     * @param data Data set (will be modified!)
-     * @return Quad tree
+     * @param data Data set (will not be modified)
      */
-    public static QuadTree build(int dim, double[][] data) {
-      return build(dim, data.clone(), 0, data.length);
+    public void build(double[][] data) {
+      assert (data.length == idx.length);
+      this.data = data;
+      numNodes = 1;
+      begin[0] = 0;
+      end[0] = data.length;
+      // Nodes are appended while building, in breadth-first order.
+      for(int node = 0; node < numNodes; node++) {
+        buildNode(node);
+      }
     }
 
     /**
-     * Recursive build function.
-     * 
-     * @param dim Dimensionality
-     * @param data Input data (WILL BE MODIFIED)
-     * @param begin Subset begin
-     * @param end Subset end
-     * @return Subtree
+     * Build a single node, and append its children.
+     *
+     * @param node Node number
      */
-    private static QuadTree build(int dim, double[][] data, int begin, int end) {
-      double[] minmax = computeExtend(dim, data, begin, end);
-      double squareSize = computeSquareSize(minmax);
-      double[] mid = computeCenterofMass(dim, data, begin, end);
+    private void buildNode(int node) {
+      final int b = begin[node], e = end[node];
+      computeCenterofMass(node, b, e);
+      firstChild[node] = -1;
+      numChildren[node] = 0;
+      if(e - b == 1) {
+        squareSize[node] = 0.;
+        return;
+      }
+      computeExtend(b, e);
+      final double sqSize = squareSize[node] = computeSquareSize(minmax);
       // Leaf:
-      final int size = end - begin;
-      if(squareSize <= QUADTREE_MIN_RESOLUION) {
-        data = Arrays.copyOfRange(data, begin, end);
-        return new QuadTree(data, null, mid, size, squareSize);
+      if(sqSize <= QUADTREE_MIN_RESOLUION) {
+        return;
       }
-
-      ArrayList<double[]> singletons = new ArrayList<>();
-      ArrayList<QuadTree> children = new ArrayList<>();
-      splitRecursively(data, begin, end, 0, dim, minmax, singletons, children);
-
-      double[][] sing = singletons.size() > 0 ? singletons.toArray(new double[singletons.size()][]) : null;
-      QuadTree[] chil = children.size() > 0 ? children.toArray(new QuadTree[children.size()]) : null;
-      return new QuadTree(sing, chil, mid, size, squareSize);
+      final int first = numNodes;
+      splitRecursively(b, e, 0);
+      if(numNodes - first <= 1) {
+        // Could not split due to numerical precision.
+        numNodes = first;
+        return;
+      }
+      firstChild[node] = first;
+      numChildren[node] = numNodes - first;
     }
 
     /**
-     * Build the quadtree by recursive splitting.
+     * Split the current node by recursive splitting along each dimension, and
+     * append the resulting cells as new nodes.
      * 
-     * @param data Input data
-     * @param begin Subset begin
-     * @param end Subset end
-     * @param initdim Current dimension
-     * @param dims Data dimensionality
-     * @param minmax Bounding box
-     * @param singletons Output for singletons
-     * @param children Output for child nodes
+     * @param b Subset begin
+     * @param e Subset end
+     * @param d Current dimension
      */
-    private static void splitRecursively(double[][] data, int begin, int end, int initdim, int dims, double[] minmax, ArrayList<double[]> singletons, ArrayList<QuadTree> children) {
-      final int len = end - begin;
-      if(len <= 1) {
-        if(len == 1) {
-          singletons.add(data[begin]);
-        }
-        return;
-      }
+    private void splitRecursively(int b, int e, int d) {
       double mid = Double.NaN;
-      // Find next non-zero dimension:
-      int cur = initdim;
-      while(true) {
-        int dim2 = cur << 1;
-        double min = minmax[dim2], max = minmax[dim2 + 1];
+      // Find next non-constant dimension:
+      for(; d < dim; d++) {
+        double min = minmax[d << 1], max = minmax[(d << 1) + 1];
         mid = .5 * (min + max);
         if(min < mid) {
-          break; // Non-constant dimension found.
-        }
-        ++cur; // Try next dimension
-        // All remaining dimensions were constant?
-        if(cur == dims) {
-          LOG.warning("Should not be reached", new Throwable());
-          assert (initdim != 0) : "All dimensions constant?";
-          LOG.warning("Unexpected all-constant split.");
-          double[] center = computeCenterofMass(dims, data, begin, end);
-          data = Arrays.copyOfRange(data, begin, end);
-          children.add(new QuadTree(data, null, center, len, 0.));
-          return;
+          break;
         }
       }
+      if(d == dim) {
+        begin[numNodes] = b;
+        end[numNodes] = e;
+        ++numNodes;
+        return;
+      }
       // Pivotize
-      int l = begin, r = end - 1;
+      int l = b, r = e - 1;
       while(l <= r) {
-        while(l <= r && data[l][cur] <= mid) {
+        while(l <= r && data[idx[l]][d] <= mid) {
           ++l;
         }
-        while(l <= r && data[r][cur] >= mid) {
+        while(l <= r && data[idx[r]][d] >= mid) {
           --r;
         }
         if(l < r) {
-          assert (data[l][cur] > mid);
-          assert (data[r][cur] < mid);
-          double[] tmp = data[r];
-          data[r] = data[l];
-          data[l] = tmp;
+          int tmp = idx[r];
+          idx[r] = idx[l];
+          idx[l] = tmp;
           ++l;
           --r;
         }
       }
-      assert (l == end || data[l][cur] >= mid);
-      assert (l == begin || data[l - 1][cur] <= mid);
-      ++cur;
-      // Recursion into next dimension:
-      if(cur < dims) {
-        if(begin < l) {
-          splitRecursively(data, begin, l, cur, dims, minmax, singletons, children);
-        }
-        if(l < end) {
-          splitRecursively(data, l, end, cur, dims, minmax, singletons, children);
-        }
-        return;
-      }
-      // Recurse into next depth:
-      if(begin < l) {
-        children.add(build(dims, data, begin, l));
+      if(b < l) {
+        splitRecursively(b, l, d + 1);
       }
-      if(l < end) {
-        children.add(build(dims, data, l, end));
+      if(l < e) {
+        splitRecursively(l, e, d + 1);
       }
     }
 
     /**
      * Computer the center of mass.
      * 
-     * @param dim Dimensionality
-     * @param data Data set
-     * @param begin Begin of subset
-     * @param end End of subset
-     * @return Center of mass
+     * @param node Node number
+     * @param b Begin of subset
+     * @param e End of subset
      */
-    private static double[] computeCenterofMass(int dim, double[][] data, int begin, int end) {
-      final int size = end - begin;
-      if(size == 1) {
-        return data[begin];
+    private void computeCenterofMass(int node, int b, int e) {
+      final int off = node * dim;
+      if(e - b == 1) {
+        System.arraycopy(data[idx[b]], 0, center, off, dim);
+        return;
       }
-      double[] center = new double[dim];
-      for(int i = begin; i < end; i++) {
-        double[] row = data[i];
+      Arrays.fill(center, off, off + dim, 0.);
+      for(int i = b; i < e; i++) {
+        double[] row = data[idx[i]];
         for(int d = 0; d < dim; d++) {
-          center[d] += row[d];
+          center[off + d] += row[d];
         }
       }
-      double norm = 1. / size;
+      double norm = 1. / (e - b);
       for(int d = 0; d < dim; d++) {
-        center[d] *= norm;
+        center[off + d] *= norm;
       }
-      return center;
     }
 
     /**
-     * Compute the bounding box of a data set.
+     * Compute the bounding box of a data subset, into {@link #minmax}.
      * 
-     * @param dim Dimensionality
-     * @param data Data set
-     * @param begin Begin of subset
-     * @param end End of subset
-     * @return Bounding box
+     * @param b Begin of subset
+     * @param e End of subset
      */
-    private static double[] computeExtend(int dim, double[][] data, int begin, int end) {
-      double[] minmax = new double[dim << 1];
+    private void computeExtend(int b, int e) {
       for(int d = 0; d < minmax.length;) {
         minmax[d++] = Double.POSITIVE_INFINITY;
         minmax[d++] = Double.NEGATIVE_INFINITY;
       }
-      for(int i = begin; i < end; i++) {
-        double[] row = data[i];
+      for(int i = b; i < e; i++) {
+        double[] row = data[idx[i]];
         for(int d = 0, d2 = 0; d < dim; d++) {
           final double v = row[d];
           minmax[d2] = MathUtil.min(minmax[d2], v);
@@ -497,7 +590,6 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
           ++d2;
         }
       }
-      return minmax;
     }
 
     /**
@@ -523,7 +615,7 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
 
     @Override
     public String toString() {
-      return "QuadTree[center=" + FormatUtil.format(center) + ", weight=" + weight + ", points=" + points.length + ", children=" + children.length + ", sqSize=" + squareSize + "]";
+      return "QuadTree[nodes=" + numNodes + ", points=" + idx.length + "]";
     }
   }
 
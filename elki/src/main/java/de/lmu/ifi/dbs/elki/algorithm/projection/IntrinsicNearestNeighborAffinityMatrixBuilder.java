@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.projection;
 
+import java.util.function.Supplier;
+
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -118,7 +120,7 @@ public class IntrinsicNearestNeighborAffinityMatrixBuilder<O> extends NearestNei
     double[][] pij = new double[size][];
     int[][] indices = new int[size][];
     final boolean square = !SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction());
-    computePij(rids, knnq, square, numberOfNeighbours, pij, indices, initialScale);
+    computePij(rids, () -> knnq, square, numberOfNeighbours, pij, indices, initialScale);
     SparseAffinityMatrix mat = new SparseAffinityMatrix(pij, indices, rids);
     return mat;
   }
@@ -127,14 +129,15 @@ public class IntrinsicNearestNeighborAffinityMatrixBuilder<O> extends NearestNei
    * Compute the sparse pij using the nearest neighbors only.
    * 
    * @param ids ID range
-   * @param knnq kNN query
+   * @param knnqs Factory for kNN queries
    * @param square Use squared distances
    * @param numberOfNeighbours Number of neighbors to get
    * @param pij Output of distances
    * @param indices Output of indexes
    * @param initialScale Initial scaling factor
    */
-  protected void computePij(DBIDRange ids, KNNQuery<?> knnq, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
+  protected void computePij(DBIDRange ids, Supplier<? extends KNNQuery<?>> knnqs, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
+    final KNNQuery<?> knnq = knnqs.get();
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.neighborspijmatrix").begin() : null;
     final double logPerp = FastMath.log(perplexity);
     // Scratch arrays, resizable
@@ -20,6 +20,10 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.projection;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -37,6 +41,7 @@ import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -52,8 +57,8 @@ import net.jafama.FastMath;
  * Accelerating t-SNE using Tree-Based Algorithms<br>
  * Journal of Machine Learning Research 15
  * <p>
- * TODO: this implementation currently differs in one major point: we do not
- * symmetrize the sparse \(p_{ij}\) matrix.
+ * The sparse \(p_{ij}\) matrix is symmetrized as in the original code, i.e.,
+ * a neighbor relation in one direction also adds the reverse entry.
  *
  * @author Erich Schubert
  *
@@ -70,6 +75,11 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    */
   private static final Logging LOG = Logging.getLogger(NearestNeighborAffinityMatrixBuilder.class);
 
+  /**
+   * Number of points per bulk kNN query.
+   */
+  private static final int KNN_BLOCK = 256;
+
   /**
    * Number of neighbors to use.
    */
@@ -114,7 +124,8 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
     double[][] pij = new double[size][];
     int[][] indices = new int[size][];
     final boolean square = !dq.getDistanceFunction().isSquared();
-    computePij(rids, knnq, square, numberOfNeighbours, pij, indices, initialScale);
+    // kNN queries are not necessarily thread safe, use one per worker:
+    computePij(rids, () -> relation.getKNNQuery(dq, numberOfNeighbours + 1), square, numberOfNeighbours, pij, indices, initialScale);
     SparseAffinityMatrix mat = new SparseAffinityMatrix(pij, indices, rids);
     return mat;
   }
@@ -123,35 +134,44 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    * Compute the sparse pij using the nearest neighbors only.
    * 
    * @param ids ID range
-   * @param knnq kNN query
+   * @param knnqs Factory for kNN queries, one per worker thread
    * @param square Use squared distances
    * @param numberOfNeighbours Number of neighbors to get
    * @param pij Output of distances
    * @param indices Output of indexes
    * @param initialScale Initial scaling factor
    */
-  protected void computePij(DBIDRange ids, KNNQuery<?> knnq, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
+  protected void computePij(DBIDRange ids, Supplier<? extends KNNQuery<?>> knnqs, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.neighborspijmatrix").begin() : null;
     final double logPerp = FastMath.log(perplexity);
-    // Scratch arrays, resizable
-    DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
-    IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
     // Compute nearest-neighbor sparse affinity matrix
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", ids.size(), LOG) : null;
-    MeanVariance mv = LOG.isStatistics() ? new MeanVariance() : null;
-    for(DBIDArrayIter ix = ids.iter(); ix.valid(); ix.advance()) {
-      dists.clear();
-      inds.clear();
-      KNNList neighbours = knnq.getKNNForDBID(ix, numberOfNeighbours + 1);
-      convertNeighbors(ids, ix, square, neighbours, dists, inds);
-      double beta = computeSigma(ix.getOffset(), dists, perplexity, logPerp, //
-          pij[ix.getOffset()] = new double[dists.size()]);
-      if(mv != null) {
-        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+    final double[] sigma = LOG.isStatistics() ? new double[ids.size()] : null;
+    // Bulk kNN queries on blocks of points, in parallel:
+    ParallelExecutor.run(ids.size(), KNN_BLOCK, knnqs, (knnq, start, end) -> {
+      // Scratch arrays, resizable
+      DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
+      IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
+      DBIDArrayIter ix = ids.iter();
+      for(int b = start; b < end; b += KNN_BLOCK) {
+        final int e = Math.min(b + KNN_BLOCK, end);
+        List<? extends KNNList> neighbors = knnq.getKNNForBulkDBIDs(ids.slice(b, e), numberOfNeighbours + 1);
+        for(ix.seek(b); ix.getOffset() < e; ix.advance()) {
+          dists.clear();
+          inds.clear();
+          convertNeighbors(ids, ix, square, neighbors.get(ix.getOffset() - b), dists, inds);
+          double beta = computeSigma(ix.getOffset(), dists, perplexity, logPerp, //
+              pij[ix.getOffset()] = new double[dists.size()]);
+          if(sigma != null) {
+            sigma[ix.getOffset()] = beta > 0 ? FastMath.sqrt(.5 / beta) : 0.;
+          }
+          indices[ix.getOffset()] = inds.toArray();
+        }
+        if(prog != null) {
+          prog.incrementProcessed(e - b, LOG);
+        }
       }
-      indices[ix.getOffset()] = inds.toArray();
-      LOG.incrementProcessed(prog);
-    }
+    }, null);
     LOG.ensureCompleted(prog);
     // Sum of the sparse affinity matrix:
     double sum = 0.;
@@ -162,34 +182,92 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
       }
     }
     final double scale = initialScale / (2 * sum);
-    for(int i = 0; i < pij.length; i++) {
-      final double[] pij_i = pij[i];
-      for(int offi = 0; offi < pij_i.length; offi++) {
-        int j = indices[i][offi];
-        assert (i != j);
-        int offj = containsIndex(indices[j], i);
-        if(offj >= 0) { // Found
-          assert (indices[j][offj] == i);
-          // Exploit symmetry:
-          if(i < j) {
+    // Position of the symmetric entry of each neighbor, or -1 if missing:
+    final int[][] sym = new int[pij.length][];
+    ParallelExecutor.run(pij.length, KNN_BLOCK, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        final int[] ind_i = indices[i];
+        final int[] sym_i = sym[i] = new int[ind_i.length];
+        for(int offi = 0; offi < ind_i.length; offi++) {
+          assert (i != ind_i[offi]);
+          sym_i[offi] = containsIndex(indices[ind_i[offi]], i);
+        }
+      }
+    });
+    addMissingEntries(pij, indices, sym);
+    // Every entry is updated exactly once, by the row with the smaller index,
+    // or by the row that contained the neighbor originally.
+    ParallelExecutor.run(pij.length, KNN_BLOCK, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        final double[] pij_i = pij[i];
+        final int[] ind_i = indices[i], sym_i = sym[i];
+        // Entries added by addMissingEntries are not in sym[i].
+        for(int offi = 0; offi < sym_i.length; offi++) {
+          final int j = ind_i[offi], offj = sym_i[offi];
+          if(offj >= 0 && i < j) {
+            assert (indices[j][offj] == i);
             final double val = pij_i[offi] + pij[j][offj]; // Symmetrize
             pij_i[offi] = pij[j][offj] = MathUtil.max(val * scale, MIN_PIJ);
           }
-        }
-        else { // Not found
-          // TODO: the original code produces a symmetric matrix
-          // And it will now not sum to EARLY_EXAGGERATION anymore.
-          pij_i[offi] = MathUtil.max(pij_i[offi] * scale, MIN_PIJ);
+          else if(offj < 0) {
+            // Added entry in row j, at the position stored as ~offj:
+            pij_i[offi] = pij[j][~offj] = MathUtil.max(pij_i[offi] * scale, MIN_PIJ);
+          }
         }
       }
-    }
-    if(LOG.isStatistics()) { // timer != null, mv != null
+    });
+    if(LOG.isStatistics()) { // timer != null, sigma != null
+      MeanVariance mv = new MeanVariance();
+      for(double s : sigma) {
+        mv.put(s);
+      }
       LOG.statistics(timer.end());
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.average", mv.getMean()));
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.stddev", mv.getSampleStddev()));
     }
   }
 
+  /**
+   * Add the entries that are missing in the sparse matrix to make it
+   * symmetric, i.e., where {@code j} is a neighbor of {@code i}, but not vice
+   * versa. The position of the added entry is stored as {@code ~offj} in the
+   * symmetry array; the values are set by the caller.
+   *
+   * @param pij Affinity rows
+   * @param indices Index rows
+   * @param sym Position of the symmetric entries, or -1
+   */
+  private static void addMissingEntries(double[][] pij, int[][] indices, int[][] sym) {
+    final int size = pij.length;
+    int[] fill = new int[size];
+    for(int i = 0; i < size; i++) {
+      final int[] ind_i = indices[i], sym_i = sym[i];
+      for(int offi = 0; offi < sym_i.length; offi++) {
+        if(sym_i[offi] < 0) {
+          ++fill[ind_i[offi]];
+        }
+      }
+    }
+    for(int j = 0; j < size; j++) {
+      if(fill[j] > 0) {
+        final int len = indices[j].length;
+        indices[j] = Arrays.copyOf(indices[j], len + fill[j]);
+        pij[j] = Arrays.copyOf(pij[j], len + fill[j]);
+        fill[j] = len; // Next free position
+      }
+    }
+    for(int i = 0; i < size; i++) {
+      final int[] ind_i = indices[i], sym_i = sym[i];
+      for(int offi = 0; offi < sym_i.length; offi++) {
+        if(sym_i[offi] < 0) {
+          final int j = ind_i[offi], offj = fill[j]++;
+          indices[j][offj] = i;
+          sym_i[offi] = ~offj;
+        }
+      }
+    }
+  }
+
   /**
    * Load a neighbor query result into a double and and integer array, also
    * removing the query point. This is necessary, because we have to modify the
@@ -0,0 +1,325 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Page cache using the CLOCK (second chance) replacement strategy, an
+ * approximation of LRU suitable for concurrent access.
+ * <p>
+ * Contrary to {@link LRUCache}, cache hits do not require a global lock: the
+ * pages are kept in a concurrent hash map, and a hit only sets the reference
+ * bit of the entry. Only cache misses, writes, and deletions synchronize, to
+ * choose a victim page by advancing the clock hand. Pages are loaded from the
+ * underlying file outside of the lock, so the file should support concurrent
+ * reads (as, e.g., {@link MappedPageFile} does).
+ * <p>
+ * Writes must be serialized by the caller, as with any other page file.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @assoc - - - PageFile
+ *
+ * @param <P> Page type
+ */
+public class ClockPageCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ClockPageCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * The maximum number of pages in this cache.
+   */
+  protected int cacheSize;
+
+  /**
+   * Map of cached pages.
+   */
+  private ConcurrentHashMap<Integer, Entry<P>> map;
+
+  /**
+   * Clock of cache entries.
+   */
+  private Entry<P>[] clock;
+
+  /**
+   * Position of the clock hand.
+   */
+  private int hand;
+
+  /**
+   * Number of used entries in the clock.
+   */
+  private int used;
+
+  /**
+   * The underlying file of this cache.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Cache hit counter.
+   */
+  private Counter hits;
+
+  /**
+   * Initializes this cache with the specified parameters.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ClockPageCache(int cacheSizeBytes, PageFile<P> file) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.hits = LOG.isStatistics() ? new AtomicLongCounter(this.getClass().getName() + ".hits") : null;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    Entry<P> e = map.get(pageID);
+    if(e != null) {
+      P page = e.page;
+      if(page != null) {
+        e.referenced = true;
+        if(hits != null) {
+          hits.increment();
+        }
+        return page;
+      }
+    }
+    P page = file.readPage(pageID);
+    return page != null ? insert(pageID, page, false) : null;
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    insert(pageID, page, true);
+  }
+
+  /**
+   * Insert a page into the cache.
+   *
+   * @param pageID Page id
+   * @param page Page
+   * @param replace Replace an existing page (on writes)
+   * @return Cached page
+   */
+  private synchronized P insert(int pageID, P page, boolean replace) {
+    Entry<P> e = map.get(pageID);
+    if(e != null && e.page != null) {
+      // Concurrently loaded, or overwritten.
+      if(replace) {
+        e.page = page;
+      }
+      e.referenced = true;
+      return e.page;
+    }
+    final int slot = victim();
+    map.put(pageID, clock[slot] = new Entry<>(pageID, page));
+    return page;
+  }
+
+  /**
+   * Find a free slot, evicting a page if necessary.
+   *
+   * @return Free slot
+   */
+  private int victim() {
+    if(used < cacheSize) {
+      return used++;
+    }
+    while(true) {
+      final int slot = hand;
+      hand = hand + 1 < cacheSize ? hand + 1 : 0;
+      final Entry<P> e = clock[slot];
+      if(e == null || e.page == null) {
+        return slot; // Deleted page.
+      }
+      if(e.referenced) {
+        e.referenced = false; // Second chance.
+        continue;
+      }
+      // Write back before removing, so concurrent misses read the current page.
+      expirePage(e.page);
+      map.remove(e.id);
+      return slot;
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    synchronized(this) {
+      Entry<P> e = map.remove(pageID);
+      if(e != null) {
+        e.page = null;
+      }
+    }
+    file.deletePage(pageID);
+  }
+
+  /**
+   * Write page through to disk.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to backing:" + page.getPageID());
+    }
+    if(page.isDirty()) {
+      file.writePage(page);
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    this.cacheSize = cacheSizeBytes / header.getPageSize();
+    if(this.cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("Clock cache size is " + cacheSize + " pages.");
+    }
+    this.map = new ConcurrentHashMap<>((int) Math.ceil(cacheSize / 0.75) + 1);
+    this.clock = (Entry<P>[]) new Entry<?>[cacheSize];
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this cache by writing all dirty pages to the underlying file.
+   */
+  public synchronized void flush() {
+    for(int i = 0; i < used; i++) {
+      final Entry<P> e = clock[i];
+      if(e != null && e.page != null) {
+        expirePage(e.page);
+      }
+    }
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public synchronized void clear() {
+    map.clear();
+    Arrays.fill(clock, null);
+    used = hand = 0;
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Cache entry.
+   *
+   * @author agent
+   *
+   * @param <P> Page type
+   */
+  private static class Entry<P> {
+    /**
+     * Page id.
+     */
+    final int id;
+
+    /**
+     * Cached page, {@code null} when deleted.
+     */
+    volatile P page;
+
+    /**
+     * Reference bit.
+     */
+    volatile boolean referenced;
+
+    /**
+     * Constructor.
+     *
+     * @param id Page id
+     * @param page Page
+     */
+    Entry(int id, P page) {
+      this.id = id;
+      this.page = page;
+    }
+  }
+}
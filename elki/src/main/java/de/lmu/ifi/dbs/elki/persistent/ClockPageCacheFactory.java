@@ -0,0 +1,109 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Page file factory for concurrent page caches.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @has - - - ClockPageCache
+ * @composed - - - PageFileFactory
+ *
+ * @param <P> Page type
+ */
+public class ClockPageCacheFactory<P extends Page> implements PageFileFactory<P> {
+  /**
+   * Inner page file factory.
+   */
+  private PageFileFactory<P> pageFileFactory;
+
+  /**
+   * Cache size, in bytes.
+   */
+  private int cacheSize;
+
+  /**
+   * Constructor.
+   *
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   */
+  public ClockPageCacheFactory(PageFileFactory<P> pageFileFactory, int cacheSize) {
+    super();
+    this.cacheSize = cacheSize;
+    this.pageFileFactory = pageFileFactory;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    return new ClockPageCache<>(cacheSize, pageFileFactory.newPageFile(cls));
+  }
+
+  @Override
+  public int getPageSize() {
+    return pageFileFactory.getPageSize();
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Inner page file factory.
+     */
+    PageFileFactory<Page> pageFileFactory;
+
+    /**
+     * Cache size, in bytes.
+     */
+    protected int cacheSize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<PageFileFactory<Page>> pffP = new ObjectParameter<>(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, PageFileFactory.class, MappedPageFileFactory.class);
+      if(config.grab(pffP)) {
+        pageFileFactory = pffP.instantiateClass(config);
+      }
+
+      IntParameter cacheSizeP = new IntParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(cacheSizeP)) {
+        cacheSize = cacheSizeP.getValue();
+      }
+    }
+
+    @Override
+    protected ClockPageCacheFactory<Page> makeInstance() {
+      return new ClockPageCacheFactory<>(pageFileFactory, cacheSize);
+    }
+  }
+}
@@ -0,0 +1,432 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.lmu.ifi.dbs.elki.index.tree.Node;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.Statistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+
+/**
+ * Page file decorator recording page-level I/O statistics, for sizing caches.
+ * <p>
+ * The decorator wraps the configured page file. Accesses are recorded above
+ * it, page faults where the pages are read from the underlying page file: if
+ * the decorated page file is a cache ({@link ClockPageCache} or
+ * {@link LRUCache}), page faults are recorded below the cache, otherwise every
+ * access is a page fault. Caching itself is left to the cache implementations
+ * and their factories. Both are counted
+ * separately for directory and leaf pages of index trees, which gives the hit
+ * ratio per level. For page faults, the latency is recorded in a histogram
+ * with power-of-two buckets (in nanoseconds), and the number of bytes read and
+ * written to the underlying page file is counted.
+ * <p>
+ * The statistics can be queried at any time with {@link #getStatistics()}, and
+ * can be logged periodically during long runs.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - PageFile
+ *
+ * @param <P> Page type
+ */
+public class InstrumentedPageFile<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(InstrumentedPageFile.class);
+
+  /**
+   * Directory pages.
+   */
+  public static final int DIRECTORY = 0;
+
+  /**
+   * Leaf pages (and pages that are not tree nodes).
+   */
+  public static final int LEAF = 1;
+
+  /**
+   * Level names.
+   */
+  private static final String[] LEVELS = { "directory", "leaf" };
+
+  /**
+   * Number of latency histogram buckets.
+   */
+  private static final int BUCKETS = 64;
+
+  /**
+   * Decorated page file.
+   */
+  private PageFile<P> file;
+
+  /**
+   * Key prefix for statistics.
+   */
+  private String prefix;
+
+  /**
+   * Interval for logging the statistics (in page accesses), 0 to disable.
+   */
+  private int interval;
+
+  /**
+   * Number of page accesses, for periodic logging.
+   */
+  private AtomicLong total = new AtomicLong();
+
+  /**
+   * Page accesses by level.
+   */
+  private AtomicLongArray accesses = new AtomicLongArray(LEVELS.length);
+
+  /**
+   * Page faults by level.
+   */
+  private AtomicLongArray faults = new AtomicLongArray(LEVELS.length);
+
+  /**
+   * Histogram of page fault latencies.
+   */
+  private AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+
+  /**
+   * Sum of page fault latencies.
+   */
+  private AtomicLong latencySum = new AtomicLong();
+
+  /**
+   * Bytes read from the underlying page file.
+   */
+  private AtomicLong bytesRead = new AtomicLong();
+
+  /**
+   * Bytes written to the underlying page file.
+   */
+  private AtomicLong bytesWritten = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param name Name for the statistics (e.g., the page class)
+   * @param inner Page file to decorate, may be a cache
+   * @param interval Interval for logging the statistics (in page accesses), 0
+   *        to disable.
+   */
+  public InstrumentedPageFile(String name, PageFile<P> inner, int interval) {
+    super();
+    this.prefix = this.getClass().getName() + "." + name + ".";
+    this.file = inner;
+    this.interval = interval;
+    // Record the page faults below the cache, if any.
+    if(inner instanceof ClockPageCache) {
+      ClockPageCache<P> cache = (ClockPageCache<P>) inner;
+      cache.file = new Backing(cache.file);
+    }
+    else if(inner instanceof LRUCache) {
+      LRUCache<P> cache = (LRUCache<P>) inner;
+      cache.file = new Backing(cache.file);
+    }
+    else {
+      this.file = new Backing(inner);
+    }
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    P page = file.readPage(pageID);
+    if(page != null) {
+      accesses.incrementAndGet(level(page));
+    }
+    if(interval > 0 && total.incrementAndGet() % interval == 0) {
+      logPageStatistics();
+    }
+    return page;
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    file.writePage(page);
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    file.deletePage(pageID);
+  }
+
+  /**
+   * Get the level of a page.
+   *
+   * @param page Page
+   * @return {@link #DIRECTORY} or {@link #LEAF}
+   */
+  private static int level(Page page) {
+    return page instanceof Node && !((Node<?>) page).isLeaf() ? DIRECTORY : LEAF;
+  }
+
+  /**
+   * Get the number of page accesses.
+   *
+   * @param level {@link #DIRECTORY} or {@link #LEAF}
+   * @return Number of accesses
+   */
+  public long getAccesses(int level) {
+    return accesses.get(level);
+  }
+
+  /**
+   * Get the number of page faults, i.e., reads from the underlying file.
+   *
+   * @param level {@link #DIRECTORY} or {@link #LEAF}
+   * @return Number of page faults
+   */
+  public long getFaults(int level) {
+    return faults.get(level);
+  }
+
+  /**
+   * Get the cache hit ratio.
+   *
+   * @param level {@link #DIRECTORY} or {@link #LEAF}
+   * @return Hit ratio, NaN if there were no accesses.
+   */
+  public double getHitRatio(int level) {
+    final long a = accesses.get(level);
+    return a > 0 ? Math.max(0., 1. - faults.get(level) / (double) a) : Double.NaN;
+  }
+
+  /**
+   * Get the number of bytes read from the underlying file.
+   *
+   * @return Bytes read
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * Get the number of bytes written to the underlying file.
+   *
+   * @return Bytes written
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * Get the page fault latency histogram. Bucket {@code i} counts the page
+   * faults with a latency in [2<sup>i</sup>;2<sup>i+1</sup>) nanoseconds.
+   *
+   * @return Copy of the histogram
+   */
+  public long[] getLatencyHistogram() {
+    long[] hist = new long[BUCKETS];
+    for(int i = 0; i < BUCKETS; i++) {
+      hist[i] = latency.get(i);
+    }
+    return hist;
+  }
+
+  /**
+   * Get a snapshot of the current statistics.
+   *
+   * @return Statistics
+   */
+  public List<Statistic> getStatistics() {
+    List<Statistic> stats = new ArrayList<>();
+    long sumf = 0;
+    for(int l = 0; l < LEVELS.length; l++) {
+      stats.add(new LongStatistic(prefix + LEVELS[l] + ".accesses", getAccesses(l)));
+      stats.add(new LongStatistic(prefix + LEVELS[l] + ".faults", getFaults(l)));
+      stats.add(new DoubleStatistic(prefix + LEVELS[l] + ".hit-ratio", getHitRatio(l)));
+      sumf += getFaults(l);
+    }
+    stats.add(new LongStatistic(prefix + "bytes-read", getBytesRead()));
+    stats.add(new LongStatistic(prefix + "bytes-written", getBytesWritten()));
+    stats.add(new DoubleStatistic(prefix + "mean-fault-latency-ns", sumf > 0 ? latencySum.get() / (double) sumf : Double.NaN));
+    StringBuilder buf = new StringBuilder(200);
+    long[] hist = getLatencyHistogram();
+    for(int i = 0; i < BUCKETS; i++) {
+      if(hist[i] > 0) {
+        buf.append(buf.length() > 0 ? " " : "").append(1L << i).append("ns:").append(hist[i]);
+      }
+    }
+    stats.add(new StringStatistic(prefix + "fault-latency-histogram", buf.toString()));
+    return stats;
+  }
+
+  /**
+   * Log the statistics recorded by this decorator.
+   */
+  public void logPageStatistics() {
+    if(LOG.isStatistics()) {
+      for(Statistic s : getStatistics()) {
+        LOG.statistics(s);
+      }
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    logPageStatistics();
+    file.logStatistics();
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    return file.initialize(header);
+  }
+
+  @Override
+  public void close() {
+    file.close();
+  }
+
+  @Override
+  public void clear() {
+    file.clear();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Recorder for the page faults, placed below the cache (if any).
+   *
+   * @author agent
+   */
+  private class Backing implements PageFile<P> {
+    /**
+     * Underlying page file.
+     */
+    private PageFile<P> inner;
+
+    /**
+     * Constructor.
+     *
+     * @param inner Underlying page file
+     */
+    Backing(PageFile<P> inner) {
+      this.inner = inner;
+    }
+
+    @Override
+    public P readPage(int pageID) {
+      final long start = System.nanoTime();
+      P page = inner.readPage(pageID);
+      final long ns = Math.max(1L, System.nanoTime() - start);
+      latency.incrementAndGet(63 - Long.numberOfLeadingZeros(ns));
+      latencySum.addAndGet(ns);
+      bytesRead.addAndGet(inner.getPageSize());
+      if(page != null) {
+        faults.incrementAndGet(level(page));
+      }
+      return page;
+    }
+
+    @Override
+    public int writePage(P page) {
+      bytesWritten.addAndGet(inner.getPageSize());
+      return inner.writePage(page);
+    }
+
+    @Override
+    public void deletePage(int pageID) {
+      bytesWritten.addAndGet(inner.getPageSize());
+      inner.deletePage(pageID);
+    }
+
+    @Override
+    public int setPageID(P page) {
+      return inner.setPageID(page);
+    }
+
+    @Override
+    public int getNextPageID() {
+      return inner.getNextPageID();
+    }
+
+    @Override
+    public void setNextPageID(int nextPageID) {
+      inner.setNextPageID(nextPageID);
+    }
+
+    @Override
+    public int getPageSize() {
+      return inner.getPageSize();
+    }
+
+    @Override
+    public boolean initialize(PageHeader header) {
+      return inner.initialize(header);
+    }
+
+    @Override
+    public void close() {
+      inner.close();
+    }
+
+    @Override
+    public void clear() {
+      inner.clear();
+    }
+
+    @Override
+    public void logStatistics() {
+      inner.logStatistics();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Page file factory for instrumented page files.
+ * <p>
+ * To record the cache hit ratio, use a cache factory (e.g.,
+ * {@link ClockPageCacheFactory}) as the page file to instrument.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @has - - - InstrumentedPageFile
+ * @composed - - - PageFileFactory
+ *
+ * @param <P> Page type
+ */
+public class InstrumentedPageFileFactory<P extends Page> implements PageFileFactory<P> {
+  /**
+   * Inner page file factory.
+   */
+  private PageFileFactory<P> pageFileFactory;
+
+  /**
+   * Logging interval, in page accesses.
+   */
+  private int interval;
+
+  /**
+   * Constructor.
+   *
+   * @param pageFileFactory Inner page file
+   * @param interval Interval for logging the statistics (in page accesses), 0
+   *        to disable.
+   */
+  public InstrumentedPageFileFactory(PageFileFactory<P> pageFileFactory, int interval) {
+    super();
+    this.pageFileFactory = pageFileFactory;
+    this.interval = interval;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    return new InstrumentedPageFile<>(cls.getSimpleName(), pageFileFactory.newPageFile(cls), interval);
+  }
+
+  @Override
+  public int getPageSize() {
+    return pageFileFactory.getPageSize();
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Parameter to specify the underlying page file.
+     */
+    public static final OptionID PAGEFILE_ID = new OptionID("pagefile.instrument.pagefile", "The pagefile to instrument, use a cache to record the hit ratio.");
+
+    /**
+     * Parameter for periodic logging of the statistics.
+     */
+    public static final OptionID INTERVAL_ID = new OptionID("pagefile.instrument.interval", "Log the page statistics every n page accesses, 0 to log them at the end only.");
+
+    /**
+     * Inner page file factory.
+     */
+    PageFileFactory<Page> pageFileFactory;
+
+    /**
+     * Logging interval, in page accesses.
+     */
+    protected int interval;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<PageFileFactory<Page>> pffP = new ObjectParameter<>(PAGEFILE_ID, PageFileFactory.class, MemoryPageFileFactory.class);
+      if(config.grab(pffP)) {
+        pageFileFactory = pffP.instantiateClass(config);
+      }
+
+      IntParameter intervalP = new IntParameter(INTERVAL_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(intervalP)) {
+        interval = intervalP.getValue();
+      }
+    }
+
+    @Override
+    protected InstrumentedPageFileFactory<Page> makeInstance() {
+      return new InstrumentedPageFileFactory<>(pageFileFactory, interval);
+    }
+  }
+}
@@ -0,0 +1,388 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferInputStream;
+
+/**
+ * A page file using memory-mapped regions of a single file, in the same file
+ * format as {@link PersistentPageFile}.
+ * <p>
+ * Pages are deserialized directly from the mapped buffers, without an
+ * intermediate copy and without a file position shared across threads. Reading
+ * pages is therefore safe for concurrent queries; writes must be serialized
+ * by the caller, as with any other page file.
+ * <p>
+ * The file is mapped in regions of a fixed number of pages, which are mapped
+ * on first access (and extend the file as necessary). When closing, the file
+ * is truncated to the used pages, and the header and list of empty pages are
+ * written.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @composed - - - PageHeader
+ * @composed - - - MappedByteBuffer
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Size of a mapped region, in bytes (4 MB, rounded down to full pages).
+   */
+  private static final int REGION_SIZE = 1 << 22;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The file channel used for mapping.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private final boolean existed;
+
+  /**
+   * Number of pages per mapped region.
+   */
+  private int pagesPerRegion;
+
+  /**
+   * Mapped regions; replaced (copy on write) when a region is added.
+   */
+  private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+  /**
+   * Serialized empty page.
+   */
+  private byte[] emptyPage;
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize the page size
+   * @param fileName the file name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading persistent page file.", e);
+    }
+    channel = file.getChannel();
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    try {
+      return byteBufferToPage(pageBuffer(pageID));
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error reading page " + pageID, e);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    super.deletePage(pageID);
+    countWrite();
+    try {
+      if(emptyPage == null) {
+        emptyPage = pageToByteArray(null);
+      }
+      pageBuffer(pageID).put(emptyPage);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error deleting page " + pageID, e);
+    }
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    countWrite();
+    try {
+      pageBuffer(pageID).put(pageToByteArray(page));
+      page.setDirty(false);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing to page file.", e);
+    }
+  }
+
+  /**
+   * Get a buffer view of a single page. The view has its own position, so
+   * concurrent readers do not interfere.
+   *
+   * @param pageID Page id
+   * @return Buffer, positioned at the page start and limited to the page size
+   * @throws IOException on mapping errors
+   */
+  private ByteBuffer pageBuffer(int pageID) throws IOException {
+    final long slot = (long) header.getReservedPages() + pageID;
+    final int r = (int) (slot / pagesPerRegion);
+    final int off = (int) (slot % pagesPerRegion) * pageSize;
+    final MappedByteBuffer[] regs = regions;
+    MappedByteBuffer region = r < regs.length ? regs[r] : null;
+    ByteBuffer buf = (region != null ? region : mapRegion(r)).duplicate();
+    buf.limit(off + pageSize);
+    buf.position(off);
+    return buf;
+  }
+
+  /**
+   * Map a region of the file, if not yet mapped.
+   *
+   * @param r Region number
+   * @return Mapped region
+   * @throws IOException on mapping errors
+   */
+  private synchronized MappedByteBuffer mapRegion(int r) throws IOException {
+    MappedByteBuffer[] regs = regions;
+    if(r < regs.length && regs[r] != null) {
+      return regs[r]; // Mapped concurrently.
+    }
+    regs = Arrays.copyOf(regs, Math.max(r + 1, regs.length));
+    final long size = (long) pagesPerRegion * pageSize;
+    regs[r] = channel.map(FileChannel.MapMode.READ_WRITE, r * size, size);
+    regions = regs;
+    return regs[r];
+  }
+
+  /**
+   * Write all mapped regions to disk and unmap them, so that the file can be
+   * truncated. Pages must not be accessed concurrently.
+   */
+  private synchronized void unmapRegions() {
+    final MappedByteBuffer[] regs = regions;
+    regions = new MappedByteBuffer[0];
+    for(MappedByteBuffer region : regs) {
+      if(region != null) {
+        region.force();
+        ByteArrayUtil.releaseDirectBuffer(region);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      unmapRegions();
+      // Truncate to the used pages, then store the empty pages and header.
+      file.setLength(((long) header.getReservedPages() + nextPageID) * pageSize);
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("Error closing page file.", e);
+    }
+  }
+
+  @Override
+  public void clear() {
+    try {
+      unmapRegions();
+      file.setLength(header.size());
+    }
+    catch(IOException e) {
+      throw new AbortException("Error clearing page file.", e);
+    }
+  }
+
+  /**
+   * Reconstruct a page from a buffer.
+   *
+   * @param buffer Buffer to read from
+   * @return Page, or {@code null} for empty pages
+   */
+  private P byteBufferToPage(ByteBuffer buffer) {
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(buffer))) {
+      int type = ois.readInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+      P page = pageclass.newInstance();
+      page.readExternal(ois);
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO Error in page file", e);
+    }
+  }
+
+  /**
+   * Serialize a page.
+   *
+   * @param page Page to serialize, {@code null} for an empty page
+   * @return Serialized page, at most the page size
+   */
+  private byte[] pageToByteArray(P page) {
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(pageSize);
+      try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+        if(page == null) {
+          oos.writeInt(EMPTY_PAGE);
+        }
+        else {
+          oos.writeInt(FILLED_PAGE);
+          page.writeExternal(oos);
+        }
+      }
+      byte[] array = baos.toByteArray();
+      if(array.length > pageSize) {
+        throw new IllegalArgumentException("Size of page " + page + " is greater than specified" + " pagesize: " + array.length + " > " + pageSize);
+      }
+      return array;
+    }
+    catch(IOException e) {
+      throw new AbortException("IO Error in page file", e);
+    }
+  }
+
+  /**
+   * Get the header of this page file.
+   *
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    this.header = header;
+    try {
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        this.pageSize = header.getPageSize();
+        this.pagesPerRegion = Math.max(1, REGION_SIZE / pageSize);
+        // Read the empty pages before mapping, which may extend the file.
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new AbortException("Error reading the empty pages.", e);
+          }
+        }
+        else { // Scan the complete file.
+          final long numpages = file.length() / pageSize - header.getReservedPages();
+          for(int i = 0; i < numpages; i++) {
+            if(byteBufferToPage(pageBuffer(i)) == null) {
+              emptyPages.push(i);
+            }
+            else {
+              nextPageID = i + 1;
+            }
+          }
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        this.pageSize = header.getPageSize();
+        this.pagesPerRegion = Math.max(1, REGION_SIZE / pageSize);
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error initializing the page file.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -29,14 +29,17 @@ import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.BasicResult;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 
 /**
@@ -60,6 +63,11 @@ public class AlgorithmStep implements WorkflowStep {
    */
   private List<? extends Algorithm> algorithms;
 
+  /**
+   * Number of threads for parallel processing, 0 for the default.
+   */
+  private int threads;
+
   /**
    * The algorithm output
    */
@@ -71,8 +79,20 @@ public class AlgorithmStep implements WorkflowStep {
    * @param algorithms
    */
   public AlgorithmStep(List<? extends Algorithm> algorithms) {
+    this(algorithms, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param algorithms
+   * @param threads Number of threads for parallel processing, 0 for the
+   *        default
+   */
+  public AlgorithmStep(List<? extends Algorithm> algorithms, int threads) {
     super();
     this.algorithms = algorithms;
+    this.threads = threads;
   }
 
   /**
@@ -82,6 +102,9 @@ public class AlgorithmStep implements WorkflowStep {
    * @return Algorithm result
    */
   public Result runAlgorithms(Database database) {
+    if(threads > 0) {
+      ParallelCore.getCore().setParallelism(threads);
+    }
     ResultHierarchy hier = database.getHierarchy();
     if(LOG.isStatistics()) {
       boolean first = true;
@@ -139,6 +162,11 @@ public class AlgorithmStep implements WorkflowStep {
      */
     protected boolean time = false;
 
+    /**
+     * Number of threads for parallel processing, 0 for the default.
+     */
+    protected int threads = 0;
+
     /**
      * Holds the algorithm to run.
      */
@@ -154,6 +182,11 @@ public class AlgorithmStep implements WorkflowStep {
      */
     public static final OptionID ALGORITHM_ID = AbstractAlgorithm.ALGORITHM_ID;
 
+    /**
+     * Number of threads to use in parallel algorithms.
+     */
+    public static final OptionID PARALLELISM_ID = new OptionID("parallel.threads", "Number of threads to use in parallel algorithms. Defaults to the number of available processors.");
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -162,6 +195,12 @@ public class AlgorithmStep implements WorkflowStep {
       if(config.grab(timeF)) {
         time = timeF.getValue();
       }
+      IntParameter threadsP = new IntParameter(PARALLELISM_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .setOptional(true);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
       // parameter algorithm
       final ObjectListParameter<Algorithm> ALGORITHM_PARAM = new ObjectListParameter<>(ALGORITHM_ID, Algorithm.class);
       if(config.grab(ALGORITHM_PARAM)) {
@@ -174,7 +213,7 @@ public class AlgorithmStep implements WorkflowStep {
       if(time) {
         LoggingConfiguration.setStatistics();
       }
-      return new AlgorithmStep(algorithms);
+      return new AlgorithmStep(algorithms, threads);
     }
   }
 }
@@ -0,0 +1,135 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.projection;
+
+import static de.lmu.ifi.dbs.elki.parallel.ParallelTestUtil.withParallelism;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Test the Barnes-Hut tSNE projection, and its sparse affinity matrix.
+ *
+ * @author agent
+ */
+public class BarnesHutTSNETest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Data set: five clusters of 200 points each, in file order.
+   */
+  private static final String DATASET = UNITTEST + "different-densities-2d-no-noise.ascii";
+
+  /**
+   * Size of the clusters in the data set.
+   */
+  private static final int CLUSTER_SIZE = 200;
+
+  /**
+   * The embedding must not depend on the number of threads, and keep the
+   * clusters apart.
+   */
+  @Test
+  public void testParallelism() {
+    Database db = makeSimpleDatabase(DATASET, 1000);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    double[][] seq = withParallelism(1, () -> project(db));
+    double[][] par = withParallelism(2, () -> project(db));
+    assertEquals("Wrong size", rel.size(), seq.length);
+    for(int i = 0; i < seq.length; i++) {
+      assertArrayEquals("Embedding differs at " + i, seq[i], par[i], 0.);
+    }
+    // Points of the same cluster must be closer together on average:
+    double intra = 0., inter = 0.;
+    long nintra = 0, ninter = 0;
+    for(int i = 0; i < seq.length; i++) {
+      for(int j = 0; j < i; j++) {
+        double d = SquaredEuclideanDistanceFunction.STATIC.distance(seq[i], seq[j]);
+        if(i / CLUSTER_SIZE == j / CLUSTER_SIZE) {
+          intra += Math.sqrt(d);
+          ++nintra;
+        }
+        else {
+          inter += Math.sqrt(d);
+          ++ninter;
+        }
+      }
+    }
+    intra /= nintra;
+    inter /= ninter;
+    assertTrue("Clusters not separated: " + intra + " >= " + inter, intra * 2 < inter);
+  }
+
+  /**
+   * The symmetrized sparse affinity matrix must be symmetric, and sum to the
+   * requested scale.
+   */
+  @Test
+  public void testAffinityMatrix() {
+    Database db = makeSimpleDatabase(DATASET, 1000);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    AffinityMatrix pij = new NearestNeighborAffinityMatrixBuilder<NumberVector>(EuclideanDistanceFunction.STATIC, 10.).computeAffinityMatrix(rel, 1.);
+    assertEquals("Wrong size", rel.size(), pij.size());
+    double sum = 0.;
+    for(int i = 0; i < pij.size(); i++) {
+      for(int it = pij.iter(i); pij.iterValid(i, it); it = pij.iterAdvance(i, it)) {
+        final int j = pij.iterDim(i, it);
+        final double v = pij.iterValue(i, it);
+        assertTrue("Not positive: " + v, v > 0);
+        assertEquals("Not symmetric at " + i + "," + j, v, pij.get(j, i), 0.);
+        sum += v;
+      }
+    }
+    assertEquals("Does not sum to 1", 1., sum, 1e-10);
+  }
+
+  /**
+   * Run tSNE with fixed parameters.
+   *
+   * @param db Database
+   * @return Embedding, by offset
+   */
+  private static double[][] project(Database db) {
+    Relation<DoubleVector> proj = new ELKIBuilder<BarnesHutTSNE<DoubleVector>>(BarnesHutTSNE.class) //
+        .with(TSNE.Parameterizer.ITER_ID, 250) //
+        .with(TSNE.Parameterizer.RANDOM_ID, 0L) //
+        .with(AbstractProjectionAlgorithm.KEEP_ID) //
+        .build().run(db);
+    DBIDRange ids = (DBIDRange) proj.getDBIDs();
+    double[][] sol = new double[ids.size()][];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      sol[it.getOffset()] = proj.get(it).toArray();
+    }
+    return sol;
+  }
+}
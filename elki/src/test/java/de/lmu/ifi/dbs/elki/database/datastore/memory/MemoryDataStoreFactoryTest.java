@@ -0,0 +1,219 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+
+/**
+ * Unit test for the choice of memory data stores.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MemoryDataStoreFactoryTest {
+  /**
+   * Test stores for a dense subset (direct lookup table).
+   */
+  @Test
+  public void testDenseSubset() {
+    testSubset(2);
+  }
+
+  /**
+   * Test stores for a sparse subset (hash map of offsets).
+   */
+  @Test
+  public void testSparseSubset() {
+    testSubset(10);
+  }
+
+  /**
+   * Test off-heap stores using direct buffers.
+   */
+  @Test
+  public void testOffHeap() {
+    testOffHeap(DataStoreFactory.FACTORY, DBIDUtil.generateStaticDBIDRange(1000));
+  }
+
+  /**
+   * Test file-backed off-heap stores.
+   */
+  @Test
+  public void testOffHeapSpill() throws IOException {
+    File dir = Files.createTempDirectory("elki-test").toFile();
+    dir.deleteOnExit();
+    MemoryDataStoreFactory factory = new MemoryDataStoreFactory(dir, MemoryDataStoreFactory.DEFAULT_DIRECT_LIMIT);
+    testOffHeap(factory, DBIDUtil.generateStaticDBIDRange(1000));
+    OffHeapDoubleStore store = (OffHeapDoubleStore) factory.makeDoubleStorage(DBIDUtil.generateStaticDBIDRange(100), DataStoreFactory.HINT_OFFHEAP);
+    File file = store.getFile();
+    assertTrue("No backing file.", file != null && file.exists());
+    assertEquals("File size", 800, file.length());
+    store.destroy();
+    assertFalse("File not deleted.", file.exists());
+  }
+
+  /**
+   * Test keeping the backing file after the store is destroyed.
+   */
+  @Test
+  public void testOffHeapKeepFile() throws IOException {
+    File dir = Files.createTempDirectory("elki-test").toFile();
+    dir.deleteOnExit();
+    MemoryDataStoreFactory factory = new MemoryDataStoreFactory(dir, MemoryDataStoreFactory.DEFAULT_DIRECT_LIMIT);
+    File file = null;
+    try {
+      OffHeapIntegerStore store = (OffHeapIntegerStore) factory.makeIntegerStorage(DBIDUtil.generateStaticDBIDRange(100), DataStoreFactory.HINT_OFFHEAP, 7);
+      file = store.keepFile();
+      store.destroy();
+      assertTrue("File deleted.", file.exists());
+      byte[] data = Files.readAllBytes(file.toPath());
+      assertEquals("File size", 400, data.length);
+      IntBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder()).asIntBuffer();
+      for(int i = 0; i < 100; i++) {
+        assertEquals("Stored value", 7, buf.get(i));
+      }
+    }
+    finally {
+      if(file != null) {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Large stores must use a file even without a spill directory.
+   */
+  @Test
+  public void testOffHeapDirectLimit() {
+    MemoryDataStoreFactory factory = new MemoryDataStoreFactory(null, 1000);
+    OffHeapDoubleStore small = (OffHeapDoubleStore) factory.makeDoubleStorage(DBIDUtil.generateStaticDBIDRange(100), DataStoreFactory.HINT_OFFHEAP);
+    assertTrue("Small store should use direct buffers.", small.getFile() == null);
+    small.destroy();
+    OffHeapDoubleStore large = (OffHeapDoubleStore) factory.makeDoubleStorage(DBIDUtil.generateStaticDBIDRange(1000), DataStoreFactory.HINT_OFFHEAP);
+    File file = large.getFile();
+    assertTrue("Large store should use a file.", file != null && file.exists());
+    large.destroy();
+    assertFalse("File not deleted.", file.exists());
+  }
+
+  /**
+   * Test the off-heap stores.
+   *
+   * @param factory Data store factory
+   * @param ids DBIDs
+   */
+  private void testOffHeap(DataStoreFactory factory, DBIDs ids) {
+    final int hints = DataStoreFactory.HINT_OFFHEAP;
+    WritableDoubleDataStore dstore = factory.makeDoubleStorage(ids, hints, -1.);
+    WritableIntegerDataStore istore = factory.makeIntegerStorage(ids, hints, -1);
+    WritableDBIDDataStore nstore = factory.makeDBIDStorage(ids, hints);
+    assertTrue("Off-heap store expected.", dstore instanceof OffHeapDoubleStore);
+    assertTrue("Off-heap store expected.", istore instanceof OffHeapIntegerStore);
+    assertTrue("Off-heap store expected.", nstore instanceof OffHeapDBIDStore);
+    DBIDVar prev = DBIDUtil.newVar(), var = DBIDUtil.newVar();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      assertEquals("Default value", -1., dstore.doubleValue(it), 0.);
+      assertEquals("Default value", -1, istore.intValue(it));
+      assertFalse("Default value", nstore.assignVar(it, var).isSet());
+      final int i = DBIDUtil.asInteger(it);
+      dstore.putDouble(it, i * .5);
+      istore.putInt(it, i);
+      istore.increment(it, 1);
+      if(prev.isSet()) {
+        nstore.putDBID(it, prev);
+      }
+      prev.set(it);
+    }
+    prev.unset();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = DBIDUtil.asInteger(it);
+      assertEquals("Double value", i * .5, dstore.doubleValue(it), 0.);
+      assertEquals("Integer value", i + 1, istore.intValue(it));
+      assertEquals("DBID value", prev.isSet(), nstore.assignVar(it, var).isSet());
+      assertTrue("DBID value", !prev.isSet() || DBIDUtil.equal(prev, var));
+      prev.set(it);
+    }
+  }
+
+  /**
+   * Test the stores on a subset.
+   *
+   * @param step Step size for choosing the subset
+   */
+  private void testSubset(int step) {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(1000);
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(1000 / step);
+    // Reverse order, to not have offsets identical to the DBID order.
+    for(DBIDArrayIter it = range.iter().seek(range.size() - 1); it.valid(); it.retract()) {
+      if(it.getOffset() % step == 0) {
+        ids.add(it);
+      }
+    }
+    final int hints = DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_FIXED_IDS;
+    assertTrue("Hash map expected without hint.", DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP) instanceof MapIntegerDBIDDoubleStore);
+
+    WritableDoubleDataStore dstore = DataStoreUtil.makeDoubleStorage(ids, hints, -1.);
+    WritableIntegerDataStore istore = DataStoreUtil.makeIntegerStorage(ids, hints, -1);
+    WritableDataStore<String> ostore = DataStoreUtil.makeStorage(ids, hints, String.class);
+    assertTrue("Array store expected.", dstore instanceof ArrayDoubleStore);
+    assertTrue("Array store expected.", istore instanceof ArrayIntegerStore);
+    assertTrue("Array store expected.", ostore instanceof ArrayStore);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      assertEquals("Default value", -1., dstore.doubleValue(it), 0.);
+      assertEquals("Default value", -1, istore.intValue(it));
+      final int i = DBIDUtil.asInteger(it);
+      dstore.putDouble(it, i * .5);
+      istore.putInt(it, i);
+      ostore.put(it, Integer.toString(i));
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = DBIDUtil.asInteger(it);
+      assertEquals("Double value", i * .5, dstore.doubleValue(it), 0.);
+      assertEquals("Integer value", i, istore.intValue(it));
+      assertEquals("Object value", Integer.toString(i), ostore.get(it));
+    }
+  }
+}
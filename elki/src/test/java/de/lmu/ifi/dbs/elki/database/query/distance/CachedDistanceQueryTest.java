@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.distance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Unit test for the distance cache.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class CachedDistanceQueryTest {
+  /**
+   * Test data set.
+   */
+  static final String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testHints() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 600);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC, DatabaseQuery.HINT_DISTANCE_CACHE);
+    assertTrue("Not a cached distance query.", dq instanceof CachedDistanceQuery);
+    dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC, DatabaseQuery.HINT_DISTANCE_CACHE, DatabaseQuery.HINT_NO_CACHE);
+    assertFalse("Cache used despite no-cache hint.", dq instanceof CachedDistanceQuery);
+    dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    assertFalse("Cache used without hint.", dq instanceof CachedDistanceQuery);
+  }
+
+  @Test
+  public void testEviction() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 600);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    CachedDistanceQuery<DoubleVector> cq = new CachedDistanceQuery<>(dq, 1000);
+    DBIDArrayIter a = DBIDUtil.ensureArray(rel.getDBIDs()).iter();
+    DBIDArrayIter b = DBIDUtil.ensureArray(rel.getDBIDs()).iter();
+    Random r = new Random(0L);
+    for(int i = 0; i < 100000; i++) {
+      // Skewed access, to produce both hits and evictions:
+      a.seek(r.nextInt(1 + r.nextInt(rel.size())));
+      b.seek(r.nextInt(1 + r.nextInt(rel.size())));
+      assertEquals("Cached distance differs.", dq.distance(a, b), cq.distance(a, b), 0.);
+      assertEquals("Symmetric distance differs.", dq.distance(b, a), cq.distance(b, a), 0.);
+    }
+    assertEquals("Lookups do not match.", 200000, cq.getHits() + cq.getMisses());
+    assertTrue("No cache hits.", cq.getHits() > cq.getMisses());
+    assertEquals("Evictions do not match.", cq.getMisses() - 1000, cq.getEvictions());
+  }
+
+  @Test
+  public void testDefaultCapacity() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 600);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC, DatabaseQuery.HINT_DISTANCE_CACHE);
+    CachedDistanceQuery<DoubleVector> cq = (CachedDistanceQuery<DoubleVector>) dq;
+    assertEquals("Capacity not bounded by the number of pairs.", 600 * 601 / 2, cq.getCapacity());
+    for(DBIDArrayIter a = DBIDUtil.ensureArray(rel.getDBIDs()).iter(); a.valid(); a.advance()) {
+      for(DBIDArrayIter b = DBIDUtil.ensureArray(rel.getDBIDs()).iter(); b.valid(); b.advance()) {
+        cq.distance(a, b);
+      }
+    }
+    assertEquals("Not all pairs cached.", 600 * 601 / 2, cq.getMisses());
+    assertEquals("Evictions despite sufficient capacity.", 0, cq.getEvictions());
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.datasource.BundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Unit test for the memory-mapped bundle relation.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MappedNumberVectorRelationTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testFixedSizeRecords() throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 600);
+    Relation<DoubleVector> ref = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    List<DoubleVector> vecs = new ArrayList<>(ref.size());
+    for(DBIDIter it = ref.iterDBIDs(); it.valid(); it.advance()) {
+      vecs.add(ref.get(it));
+    }
+    checkMapped(ref, MultipleObjectsBundle.makeSimple(ref.getDataTypeInformation(), vecs));
+  }
+
+  @Test
+  public void testVariableSizeRecords() throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 600);
+    Relation<DoubleVector> ref = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    Relation<LabelList> labels = db.getRelation(TypeUtil.LABELLIST);
+    List<DoubleVector> vecs = new ArrayList<>(ref.size());
+    List<LabelList> labs = new ArrayList<>(ref.size());
+    for(DBIDIter it = ref.iterDBIDs(); it.valid(); it.advance()) {
+      vecs.add(ref.get(it));
+      labs.add(labels.get(it));
+    }
+    checkMapped(ref, MultipleObjectsBundle.makeSimple(ref.getDataTypeInformation(), vecs, labels.getDataTypeInformation(), labs));
+  }
+
+  /**
+   * Write a bundle, and compare the mapped relation to the reference data.
+   *
+   * @param ref Reference relation
+   * @param bundle Bundle to write
+   * @throws IOException on IO errors
+   */
+  private void checkMapped(Relation<DoubleVector> ref, MultipleObjectsBundle bundle) throws IOException {
+    File file = File.createTempFile("elki-unittest", ".bundle");
+    file.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      new BundleWriter().writeBundleStream(bundle.asStream(), out.getChannel());
+    }
+    Database db = new StaticArrayDatabase(new BundleDatabaseConnection(null, file, true), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a mapped relation.", rel instanceof MappedNumberVectorRelation);
+    assertEquals("Size does not match.", ref.size(), rel.size());
+    assertEquals("Dimensionality does not match.", 3, RelationUtil.dimensionality(rel));
+    for(DBIDIter it = ref.iterDBIDs(), it2 = rel.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      DoubleVector v1 = ref.get(it);
+      NumberVector v2 = rel.get(it2);
+      for(int d = 0; d < 3; d++) {
+        assertEquals("Values differ.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the columnar relation storage.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MaterializedColumnarDoubleRelationTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testColumnarStorage() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 600);
+    Relation<DoubleVector> ref = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    ListParameterization params = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+        .addFlag(StaticArrayDatabase.Parameterizer.COLUMNAR_ID);
+    Database cdb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 600, params);
+    Relation<NumberVector> rel = cdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a columnar relation.", rel instanceof MaterializedColumnarDoubleRelation);
+    assertEquals("Dimensionality does not match.", 3, RelationUtil.dimensionality(rel));
+
+    // Fixed DBIDs, so the objects must be identical.
+    for(DBIDIter it = ref.iterDBIDs(), it2 = rel.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      DoubleVector v1 = ref.get(it);
+      NumberVector v2 = rel.get(it2);
+      for(int d = 0; d < 3; d++) {
+        assertEquals("Values differ.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+      }
+    }
+
+    // kNN queries must agree with the object-based storage.
+    DistanceQuery<DoubleVector> rdq = db.getDistanceQuery(ref, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> rknnq = db.getKNNQuery(rdq, 10);
+    DistanceQuery<NumberVector> dq = cdb.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = cdb.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class.", knnq instanceof LinearScanEuclideanDistanceKNNQuery);
+    DoubleVector query = DoubleVector.wrap(new double[] { 0.5, 0.5, 0.5 });
+    KNNList r1 = rknnq.getKNNForObject(query, 10);
+    KNNList r2 = knnq.getKNNForObject(query, 10);
+    assertEquals("Result size does not match.", r1.size(), r2.size());
+    for(DoubleDBIDListIter i1 = r1.iter(), i2 = r2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("Distance does not match.", i1.doubleValue(), i2.doubleValue(), 1e-15);
+    }
+
+    // Bulk queries read the storage blocks directly.
+    List<? extends KNNList> b1 = rknnq.getKNNForBulkDBIDs(DBIDUtil.ensureArray(ref.getDBIDs()), 10);
+    List<? extends KNNList> b2 = knnq.getKNNForBulkDBIDs(DBIDUtil.ensureArray(rel.getDBIDs()), 10);
+    for(int i = 0; i < b1.size(); i++) {
+      for(DoubleDBIDListIter i1 = b1.get(i).iter(), i2 = b2.get(i).iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("Distance does not match.", i1.doubleValue(), i2.doubleValue(), 1e-15);
+      }
+    }
+  }
+}
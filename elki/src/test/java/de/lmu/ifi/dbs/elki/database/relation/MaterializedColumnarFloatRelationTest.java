@@ -0,0 +1,99 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the single precision columnar relation storage.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MaterializedColumnarFloatRelationTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testColumnarStorage() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 600, new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+        .addParameter(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, FloatVector.Factory.class));
+    Relation<FloatVector> ref = db.getRelation(TypeUtil.FLOAT_VECTOR_FIELD);
+
+    Database cdb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 600, new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+        .addParameter(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, FloatVector.Factory.class) //
+        .addFlag(StaticArrayDatabase.Parameterizer.COLUMNAR_ID));
+    Relation<NumberVector> rel = cdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a float columnar relation.", rel instanceof MaterializedColumnarFloatRelation);
+    assertEquals("Dimensionality does not match.", 3, RelationUtil.dimensionality(rel));
+
+    // Fixed DBIDs, so the objects must be identical.
+    for(DBIDIter it = ref.iterDBIDs(), it2 = rel.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      FloatVector v1 = ref.get(it);
+      NumberVector v2 = rel.get(it2);
+      for(int d = 0; d < 3; d++) {
+        assertEquals("Values differ.", v1.floatValue(d), v2.floatValue(d), 0.);
+      }
+    }
+
+    // Queries must agree exactly with the object-based storage.
+    DistanceQuery<FloatVector> rdq = db.getDistanceQuery(ref, EuclideanDistanceFunction.STATIC);
+    KNNQuery<FloatVector> rknnq = db.getKNNQuery(rdq, 10);
+    RangeQuery<FloatVector> rrq = db.getRangeQuery(rdq, .1);
+    DistanceQuery<NumberVector> dq = cdb.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = cdb.getKNNQuery(dq, 10);
+    RangeQuery<NumberVector> rq = cdb.getRangeQuery(dq, .1);
+    FloatVector query = new FloatVector(new float[] { .5f, .5f, .5f });
+    KNNList k1 = rknnq.getKNNForObject(query, 10), k2 = knnq.getKNNForObject(query, 10);
+    assertEquals("Result size does not match.", k1.size(), k2.size());
+    for(DoubleDBIDListIter i1 = k1.iter(), i2 = k2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("Distance does not match.", i1.doubleValue(), i2.doubleValue(), 0.);
+    }
+    DoubleDBIDList r1 = rrq.getRangeForObject(query, .1), r2 = rq.getRangeForObject(query, .1);
+    assertEquals("Result size does not match.", r1.size(), r2.size());
+    for(DoubleDBIDListIter i1 = r1.iter(), i2 = r2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("Distance does not match.", i1.doubleValue(), i2.doubleValue(), 0.);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the page file instrumentation.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class InstrumentedPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * Test the statistics on a small cache.
+   */
+  @Test
+  public void testStatistics() {
+    InstrumentedPageFile<TestPage> file = new InstrumentedPageFile<>("test", new ClockPageCache<>(200, new MemoryPageFile<TestPage>(100)), 0);
+    file.initialize(new DefaultPageHeader(100));
+    for(int i = 0; i < 10; i++) {
+      file.writePage(new TestPage());
+    }
+    // The cache holds the last two pages written.
+    file.readPage(9);
+    file.readPage(9);
+    file.readPage(0);
+    final int l = InstrumentedPageFile.LEAF;
+    assertEquals("Accesses", 3, file.getAccesses(l));
+    assertEquals("Faults", 1, file.getFaults(l));
+    assertEquals("Hit ratio", 2. / 3., file.getHitRatio(l), 1e-15);
+    assertEquals("Directory accesses", 0, file.getAccesses(InstrumentedPageFile.DIRECTORY));
+    assertEquals("Bytes read", 100, file.getBytesRead());
+    // Eight pages were evicted on writing, one on reading.
+    assertEquals("Bytes written", 900, file.getBytesWritten());
+    long sum = 0;
+    for(long c : file.getLatencyHistogram()) {
+      sum += c;
+    }
+    assertEquals("Histogram", 1, sum);
+  }
+
+  /**
+   * Test an instrumented R*-tree.
+   */
+  @Test
+  public void testRStarTree() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, InstrumentedPageFileFactory.class) //
+        .with(InstrumentedPageFileFactory.Parameterizer.PAGEFILE_ID, ClockPageCacheFactory.class) //
+        .with(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MemoryPageFileFactory.class) //
+        .with(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 3000) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .build();
+    testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Page for testing.
+   *
+   * @author agent
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+  }
+}
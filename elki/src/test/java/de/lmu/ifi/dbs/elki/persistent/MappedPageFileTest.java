@@ -0,0 +1,265 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the memory-mapped page file and the clock page cache, using an
+ * R*-tree.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MappedPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link MappedPageFile} without a cache.
+   */
+  @Test
+  public void testMappedPageFile() throws IOException {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class) //
+        .with(PersistentPageFileFactory.Parameterizer.FILE_ID, tempFile()) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1000) //
+        .build();
+    testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test {@link ClockPageCache} with a small cache, to force evictions.
+   */
+  @Test
+  public void testClockPageCache() throws IOException {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, ClockPageCacheFactory.class) //
+        .with(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 10000) //
+        .with(PersistentPageFileFactory.Parameterizer.FILE_ID, tempFile()) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1000) //
+        .build();
+    testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Run kNN queries from several threads on a small {@link ClockPageCache}, and
+   * compare the results to a linear scan.
+   */
+  @Test
+  public void testConcurrentQueries() throws Exception {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, ClockPageCacheFactory.class) //
+        .with(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 4000) //
+        .with(PersistentPageFileFactory.Parameterizer.FILE_ID, tempFile()) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1000) //
+        .build();
+    ListParameterization params = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+        .addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, factory);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600, params);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    final int k = 10, threads = 4;
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, k);
+    assertTrue("Not using the R*-tree: " + knnq.getClass(), knnq instanceof RStarTreeKNNQuery);
+    KNNQuery<DoubleVector> scan = QueryUtil.getLinearScanKNNQuery(dq);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for(int t = 0; t < threads; t++) {
+        final int start = t * rel.size() / threads;
+        futures.add(pool.submit(() -> {
+          // Every thread queries all points, starting at a different point:
+          DBIDArrayIter it = DBIDUtil.ensureArray(rel.getDBIDs()).iter();
+          for(int i = 0; i < rel.size(); i++) {
+            it.seek((start + i) % rel.size());
+            KNNList exp = scan.getKNNForDBID(it, k), act = knnq.getKNNForDBID(it, k);
+            assertEquals("Result size differs.", exp.size(), act.size());
+            for(DoubleDBIDListIter e = exp.iter(), a = act.iter(); e.valid(); e.advance(), a.advance()) {
+              assertEquals("Distance differs.", e.doubleValue(), a.doubleValue(), 1e-15);
+            }
+          }
+        }));
+      }
+      for(Future<?> f : futures) {
+        try {
+          f.get();
+        }
+        catch(ExecutionException e) {
+          if(e.getCause() instanceof AssertionError) {
+            throw (AssertionError) e.getCause();
+          }
+          throw e;
+        }
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Close and reopen a {@link MappedPageFile} with deleted pages, which
+   * exercises truncation and the stored list of empty pages.
+   */
+  @Test
+  public void testReopen() throws IOException {
+    final String fname = tempFile().getPath();
+    final int numpages = 20;
+    MappedPageFile<TestPage> pf = new MappedPageFile<>(256, fname, TestPage.class);
+    assertEquals("New file", false, pf.initialize(new TreeIndexHeader(256, 10, 10, 2, 2)));
+    for(int i = 0; i < numpages; i++) {
+      TestPage page = new TestPage(i * 7);
+      assertEquals("Page id", i, pf.setPageID(page));
+      pf.writePage(page);
+    }
+    pf.deletePage(3);
+    pf.deletePage(7);
+    pf.deletePage(numpages - 1);
+    pf.close();
+
+    pf = new MappedPageFile<>(256, fname, TestPage.class);
+    assertEquals("Existing file", true, pf.initialize(new TreeIndexHeader()));
+    assertEquals("Page size", 256, pf.getPageSize());
+    assertEquals("Next page id", numpages, pf.getNextPageID());
+    for(int i = 0; i < numpages; i++) {
+      TestPage page = pf.readPage(i);
+      if(i == 3 || i == 7 || i == numpages - 1) {
+        assertNull("Deleted page " + i, page);
+        continue;
+      }
+      assertEquals("Page id", i, page.getPageID());
+      assertEquals("Page value", i * 7, page.value);
+    }
+    // Empty pages are reused, in reverse order of deletion:
+    for(int expect : new int[] { numpages - 1, 7, 3, numpages }) {
+      TestPage page = new TestPage(-expect);
+      assertEquals("Reused page id", expect, pf.setPageID(page));
+      pf.writePage(page);
+    }
+    pf.close();
+
+    pf = new MappedPageFile<>(256, fname, TestPage.class);
+    pf.initialize(new TreeIndexHeader());
+    assertEquals("Next page id", numpages + 1, pf.getNextPageID());
+    assertEquals("Page value", -7, pf.readPage(7).value);
+    assertEquals("Page value", -numpages, pf.readPage(numpages).value);
+    pf.close();
+  }
+
+  /**
+   * Minimal page, storing a single integer.
+   *
+   * @author agent
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Stored value.
+     */
+    int value;
+
+    /**
+     * Constructor for deserialization.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param value Value to store
+     */
+    public TestPage(int value) {
+      super();
+      this.value = value;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeInt(value);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      value = in.readInt();
+    }
+  }
+
+  /**
+   * Get a temporary file name, that does not exist yet.
+   *
+   * @return File
+   * @throws IOException on errors
+   */
+  private static File tempFile() throws IOException {
+    File f = File.createTempFile("elki-test", ".pages");
+    f.delete();
+    f.deleteOnExit();
+    return f;
+  }
+}